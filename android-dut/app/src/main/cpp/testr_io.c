@@ -0,0 +1,18 @@
+// Page-cache eviction for the storage benchmark (see FadviseCacheControl).
+#include <fcntl.h>
+#include <jni.h>
+#include <unistd.h>
+
+JNIEXPORT jboolean JNICALL
+Java_com_testr_dut_storage_FadviseCacheControl_dropFileCache(JNIEnv *env, jclass clazz, jstring path) {
+    const char *p = (*env)->GetStringUTFChars(env, path, NULL);
+    if (p == NULL) return JNI_FALSE;
+    int fd = open(p, O_RDONLY | O_CLOEXEC);
+    (*env)->ReleaseStringUTFChars(env, path, p);
+    if (fd < 0) return JNI_FALSE;
+
+    // Dirty pages can't be dropped, so flush them first.
+    int ok = fdatasync(fd) == 0 && posix_fadvise(fd, 0, 0, POSIX_FADV_DONTNEED) == 0;
+    close(fd);
+    return ok ? JNI_TRUE : JNI_FALSE;
+}
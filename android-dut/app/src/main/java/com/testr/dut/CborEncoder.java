@@ -0,0 +1,102 @@
+package com.testr.dut;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Minimal CBOR (RFC 8949) writer for upload payloads.
+ *
+ * Walks a Gson tree so the field names stay exactly the ones the JSON path
+ * sends; the backend reads both with the same DTO. Only the types a Gson tree
+ * can hold are written: maps, arrays, text, integers, doubles, booleans, null.
+ */
+final class CborEncoder {
+
+    private static final int MAJOR_UINT = 0;
+    private static final int MAJOR_NINT = 1;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+    private CborEncoder() {
+    }
+
+    static byte[] encode(JsonElement tree) {
+        CborEncoder enc = new CborEncoder();
+        enc.write(tree);
+        return enc.out.toByteArray();
+    }
+
+    private void write(JsonElement e) {
+        if (e == null || e.isJsonNull()) {
+            out.write(0xf6);
+        } else if (e.isJsonObject()) {
+            JsonObject obj = e.getAsJsonObject();
+            head(MAJOR_MAP, obj.size());
+            for (Map.Entry<String, JsonElement> field : obj.entrySet()) {
+                text(field.getKey());
+                write(field.getValue());
+            }
+        } else if (e.isJsonArray()) {
+            JsonArray arr = e.getAsJsonArray();
+            head(MAJOR_ARRAY, arr.size());
+            for (JsonElement item : arr) write(item);
+        } else {
+            primitive(e.getAsJsonPrimitive());
+        }
+    }
+
+    private void primitive(JsonPrimitive p) {
+        if (p.isBoolean()) {
+            out.write(p.getAsBoolean() ? 0xf5 : 0xf4);
+        } else if (p.isString()) {
+            text(p.getAsString());
+        } else {
+            double d = p.getAsDouble();
+            long l = (long) d;
+            if (l == d && Math.abs(d) < 9.007199254740992E15) {
+                if (l >= 0) head(MAJOR_UINT, l);
+                else head(MAJOR_NINT, -1 - l);
+            } else {
+                out.write(0xfb);
+                long bits = Double.doubleToLongBits(d);
+                for (int shift = 56; shift >= 0; shift -= 8) out.write((int) (bits >>> shift));
+            }
+        }
+    }
+
+    private void text(String s) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        head(MAJOR_TEXT, utf8.length);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    // Major type in the top 3 bits, then the shortest argument encoding that fits.
+    private void head(int major, long value) {
+        int mt = major << 5;
+        if (value < 24) {
+            out.write(mt | (int) value);
+        } else if (value < 0x100) {
+            out.write(mt | 24);
+            out.write((int) value);
+        } else if (value < 0x10000) {
+            out.write(mt | 25);
+            out.write((int) (value >>> 8));
+            out.write((int) value);
+        } else if (value < 0x100000000L) {
+            out.write(mt | 26);
+            for (int shift = 24; shift >= 0; shift -= 8) out.write((int) (value >>> shift));
+        } else {
+            out.write(mt | 27);
+            for (int shift = 56; shift >= 0; shift -= 8) out.write((int) (value >>> shift));
+        }
+    }
+}
@@ -4,18 +4,27 @@ import android.app.ActivityManager;
 import android.content.Context;
 import android.os.Build;
 
+import com.testr.dut.cpu.CpuBenchmark;
+import com.testr.dut.cpu.CpuTopology;
 import com.testr.dut.dto.BatteryInfo;
+import com.testr.dut.dto.CollectorResult;
 import com.testr.dut.dto.CpuInfo;
 import com.testr.dut.dto.DiagnosticReport;
 import com.testr.dut.dto.RamInfo;
 import com.testr.dut.dto.StorageInfo;
+import com.testr.dut.pipeline.DiagnosticCollector;
+import com.testr.dut.pipeline.DiagnosticPipeline;
+import com.testr.dut.storage.CacheControl;
+import com.testr.dut.storage.FadviseCacheControl;
+import com.testr.dut.storage.StorageBenchmark;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 public class DiagnosticManager {
     private final Context appContext;
@@ -24,7 +33,35 @@ public class DiagnosticManager {
         this.appContext = context.getApplicationContext();
     }
 
-    public DiagnosticReport collectAll(String sessionId) {
+    // Blocking variant for callers already on a background thread.
+    public DiagnosticReport collectAll(String sessionId) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        DiagnosticReport report = startCollection(sessionId, new DiagnosticPipeline.Listener() {
+            @Override
+            public void onCollectorFinished(CollectorResult result, DiagnosticReport report) {
+            }
+
+            @Override
+            public void onComplete(DiagnosticReport report) {
+                done.countDown();
+            }
+        }).report;
+        done.await();
+        return report;
+    }
+
+    public static final class Collection {
+        public final DiagnosticReport report;
+        public final DiagnosticPipeline pipeline;
+
+        Collection(DiagnosticReport report, DiagnosticPipeline pipeline) {
+            this.report = report;
+            this.pipeline = pipeline;
+        }
+    }
+
+    // Starts every check in the background and returns at once; results arrive on the listener.
+    public Collection startCollection(String sessionId, DiagnosticPipeline.Listener listener) {
         DiagnosticReport diagnosticReport = new DiagnosticReport();
         diagnosticReport.sessionId = sessionId;
         diagnosticReport.collectedAtEpochMs = System.currentTimeMillis();
@@ -36,12 +73,33 @@ public class DiagnosticManager {
         diagnosticReport.androidVersion = Build.VERSION.RELEASE;
         diagnosticReport.securityPatch = Build.VERSION.SECURITY_PATCH;
 
-        diagnosticReport.battery = collectBattery();
-        diagnosticReport.cpu = collectCpuInfo();
-        diagnosticReport.ram = collectRamInfo();
-        diagnosticReport.storage = collectStorageInfo();
+        DiagnosticPipeline pipeline = new DiagnosticPipeline();
+        pipeline.start(diagnosticReport, collectors(), listener);
+        return new Collection(diagnosticReport, pipeline);
+    }
 
-        return diagnosticReport;
+    // Quick reads run side by side; the CPU and storage benchmarks take turns on the exclusive lane.
+    private List<DiagnosticCollector<?>> collectors() {
+        List<DiagnosticCollector<?>> collectors = new ArrayList<>();
+
+        collectors.add(new DiagnosticCollector<BatteryInfo>("battery", 2_000, false) {
+            @Override protected BatteryInfo collect() { return collectBattery(); }
+            @Override protected void store(DiagnosticReport r, BatteryInfo v) { r.battery = v; }
+        });
+        collectors.add(new DiagnosticCollector<RamInfo>("ram", 2_000, false) {
+            @Override protected RamInfo collect() { return collectRamInfo(); }
+            @Override protected void store(DiagnosticReport r, RamInfo v) { r.ram = v; }
+        });
+        collectors.add(new DiagnosticCollector<CpuInfo>("cpu", 15_000, true) {
+            @Override protected CpuInfo collect() { return collectCpuInfo(); }
+            @Override protected void store(DiagnosticReport r, CpuInfo v) { r.cpu = v; }
+        });
+        collectors.add(new DiagnosticCollector<StorageInfo>("storage", 30_000, true) {
+            @Override protected StorageInfo collect() { return collectStorageInfo(); }
+            @Override protected void store(DiagnosticReport r, StorageInfo v) { r.storage = v; }
+        });
+
+        return collectors;
     }
 
     // Battery
@@ -110,38 +168,57 @@ public class DiagnosticManager {
     //CPU
 
     public CpuInfo collectCpuInfo() {
-        int pct = runCpuBenchmark();
-        android.util.Log.d("TestrCPU", "CPU performancePct = " + pct);
-        return new CpuInfo(pct);
+        CpuInfo info = runCpuBenchmark();
+        android.util.Log.d("TestrCPU", "CPU performancePct = " + info.performancePct
+                + " single = " + info.singleCoreScore + " multi = " + info.multiCoreScore);
+        return info;
     }
 
-    private int runCpuBenchmark() {
-        final long testDurationNs = 1_000_000_000L; // 1 second
-
-        long start = System.nanoTime();
-        long now;
-        long iterations = 0;
+    private CpuInfo runCpuBenchmark() {
+        CpuBenchmark.Result result;
+        try {
+            result = new CpuBenchmark(new CpuBenchmark.Settings())
+                    .run(CpuBenchmark.defaultKernels(), CpuTopology.read());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new CpuInfo(-1);
+        } catch (RuntimeException | OutOfMemoryError e) {
+            android.util.Log.w("TestrCPU", "CPU benchmark failed", e);
+            return new CpuInfo(-1);
+        }
 
-        double x = 1.0;
+        CpuInfo info = new CpuInfo(computeCpuPerformancePct(result.multiCoreScore));
+        info.singleCoreScore = result.singleCoreScore;
+        info.multiCoreScore = result.multiCoreScore;
+        info.threads = result.threads;
+        info.perCoreScores = result.perCoreScores;
+        for (CpuBenchmark.ClusterResult c : result.clusters) {
+            CpuInfo.Cluster cluster = new CpuInfo.Cluster();
+            cluster.maxFreqKhz = c.maxFreqKhz;
+            cluster.cores = c.cores;
+            cluster.score = c.score;
+            info.clusters.add(cluster);
+        }
+        for (CpuBenchmark.KernelResult k : result.kernels) {
+            CpuInfo.Kernel kernel = new CpuInfo.Kernel();
+            kernel.name = k.name;
+            kernel.unit = k.unit;
+            kernel.singleCoreRate = k.singleCoreRate;
+            kernel.multiCoreRate = k.multiCoreRate;
+            info.kernels.add(kernel);
+        }
+        return info;
+    }
 
-        do {
-            x = Math.sin(x) + Math.cos(x);
-            iterations++;
-            now = System.nanoTime();
-        } while (now - start < testDurationNs);
+    private int computeCpuPerformancePct(int multiCoreScore) {
+        // Four reference cores' worth of throughput counts as a fully healthy CPU
+        final double baselineScore = 4000.0;
 
-        if (iterations <= 0) {
+        if (multiCoreScore <= 0) {
             return -1;
         }
 
-        return computeCpuPerformancePct(iterations);
-    }
-
-    private int computeCpuPerformancePct(long iterations) {
-        // Baseline iterations for a reference device in 1 second
-        final long baselineIterations = 5_000_000L;
-
-        double ratio = (double) iterations / (double) baselineIterations;
+        double ratio = multiCoreScore / baselineScore;
 
         if (ratio > 1.0) ratio = 1.0;
         if (ratio < 0.0) ratio = 0.0;
@@ -153,68 +230,71 @@ public class DiagnosticManager {
     //Storage
 
     private StorageInfo collectStorageInfo() {
-        int pct = runStorageSpeedTest();
-        android.util.Log.d("TestrStorage", "Storage speedPct = " + pct);
-        return new StorageInfo(pct);
+        StorageInfo info = runStorageSpeedTest();
+        android.util.Log.d("TestrStorage", "Storage speedPct = " + info.speedPct);
+        return info;
     }
 
-    private int runStorageSpeedTest() {
-        File dir = appContext.getCacheDir();
-        File testFile = new File(dir, "testr_storage_test.bin");
-
-        final int sizeMb = 32;
-        byte[] buffer = new byte[1024 * 1024]; // 1 MB
+    private StorageInfo runStorageSpeedTest() {
+        // Non-root devices need the JNI fadvise helper; rooted bench devices can also drop all caches.
+        CacheControl cache = CacheControl.firstOf(new FadviseCacheControl(), CacheControl.DROP_CACHES);
 
-        long writeStart = System.nanoTime();
-        try (FileOutputStream fos = new FileOutputStream(testFile)) {
-            for (int i = 0; i < sizeMb; i++) {
-                fos.write(buffer);
-            }
-            fos.getFD().sync();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return -1;
-        }
-        long writeEnd = System.nanoTime();
-
-        long readStart = System.nanoTime();
-        try (FileInputStream fis = new FileInputStream(testFile)) {
-            while (fis.read(buffer) != -1) {
-                // just read
-            }
+        StorageBenchmark.Result result;
+        try {
+            result = new StorageBenchmark(new StorageBenchmark.Settings(), cache)
+                    .run(appContext.getCacheDir());
         } catch (IOException e) {
-            e.printStackTrace();
-            testFile.delete();
-            return -1;
+            android.util.Log.w("TestrStorage", "Storage benchmark failed", e);
+            return new StorageInfo(-1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new StorageInfo(-1);
         }
-        long readEnd = System.nanoTime();
-
-        testFile.delete();
-
-        double writeSeconds = (writeEnd - writeStart) / 1_000_000_000.0;
-        double readSeconds = (readEnd - readStart) / 1_000_000_000.0;
 
-        if (writeSeconds <= 0 || readSeconds <= 0) {
-            return -1;
+        StorageInfo info = new StorageInfo(computeStorageSpeedPct(result));
+        info.testFileBytes = result.fileBytes;
+        for (StorageBenchmark.ProfileResult r : result.profiles) {
+            StorageInfo.Profile profile = new StorageInfo.Profile();
+            profile.name = r.name;
+            profile.queueDepth = r.queueDepth;
+            profile.mbPerSec = r.mbPerSec;
+            profile.iops = r.iops;
+            profile.p99LatencyUs = r.p99LatencyUs;
+            profile.cacheEvicted = r.cacheEvicted;
+            info.profiles.add(profile);
         }
-
-        double writeMbPerSec = sizeMb / writeSeconds;
-        double readMbPerSec = sizeMb / readSeconds;
-
-        return computeStorageSpeedPct(writeMbPerSec, readMbPerSec);
+        return info;
     }
 
-    private int computeStorageSpeedPct(double writeMbPerSec, double readMbPerSec) {
-        double baselineWrite = 200.0; // MB/s
-        double baselineRead = 400.0;  // MB/s
-
-        double writeRatio = writeMbPerSec / baselineWrite;
-        double readRatio = readMbPerSec / baselineRead;
+    private int computeStorageSpeedPct(StorageBenchmark.Result result) {
+        double baselineWrite = 200.0;     // MB/s
+        double baselineRead = 400.0;      // MB/s
+        double baselineRandomRead = 5000; // 4K IOPS at QD1
+        double baselineSyncWrite = 500;   // 4K IOPS with fdatasync
+
+        double ratioSum = 0;
+        int ratios = 0;
+
+        StorageBenchmark.ProfileResult seqWrite = result.find("seq-write", 0);
+        if (seqWrite != null) { ratioSum += Math.min(1.0, seqWrite.mbPerSec / baselineWrite); ratios++; }
+        StorageBenchmark.ProfileResult syncWrite = result.find("rand-write", 1);
+        if (syncWrite != null) { ratioSum += Math.min(1.0, syncWrite.iops / baselineSyncWrite); ratios++; }
+
+        // Reads served from page cache say nothing about the flash, so only count evicted ones
+        StorageBenchmark.ProfileResult seqRead = result.find("seq-read", 0);
+        if (seqRead != null && seqRead.cacheEvicted) {
+            ratioSum += Math.min(1.0, seqRead.mbPerSec / baselineRead);
+            ratios++;
+        }
+        StorageBenchmark.ProfileResult randomRead = result.find("rand-read", 1);
+        if (randomRead != null && randomRead.cacheEvicted) {
+            ratioSum += Math.min(1.0, randomRead.iops / baselineRandomRead);
+            ratios++;
+        }
 
-        if (writeRatio > 1.0) writeRatio = 1.0;
-        if (readRatio > 1.0) readRatio = 1.0;
+        if (ratios == 0) return -1;
 
-        double pct = ((writeRatio + readRatio) / 2.0) * 100.0;
+        double pct = (ratioSum / ratios) * 100.0;
 
         if (pct < 0) pct = 0;
         if (pct > 100) pct = 100;
@@ -1,6 +1,9 @@
 package com.testr.dut;
 
+import com.testr.dut.dto.DiagnosticReport;
+
 public class DiagnosticRunPayload {
+    public String sessionId; // idempotency key: retries of the same run carry the same id
     public String deviceModel;
     public int batteryHealth;
     public int storageSpeedPct;
@@ -8,4 +11,12 @@ public class DiagnosticRunPayload {
     public int ramHealthPct;
     public int displayTouchPct;
     public int cameraCheckPct;
+
+    // Summary fields the backend keeps on the run itself
+    public String manufacturer;
+    public String androidVersion;
+    public String securityPatch;
+
+    // The complete report; the backend stores it aside and returns it when one run is opened
+    public DiagnosticReport details;
 }
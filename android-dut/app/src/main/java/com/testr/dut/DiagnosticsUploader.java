@@ -1,44 +1,172 @@
 package com.testr.dut;
 
 import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.provider.Settings;
+import android.util.Log;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import com.testr.dut.dto.DiagnosticReport;
+import com.testr.dut.outbox.Outbox;
+import com.testr.dut.outbox.OutboxFlusher;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
-import okhttp3.Call;
-import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 
-public class DiagnosticsUploader {
+/**
+ * Delivers diagnostic runs through a durable outbox: each payload is written to
+ * disk first, then sent in batches to /v1/diagnostics/batch by an
+ * {@link OutboxFlusher}, which retries with backoff until the server
+ * acknowledges it. Results survive lost Wi-Fi and app restarts. The session id
+ * is sent with each run as its idempotency key.
+ *
+ * One instance and one OkHttp client per process, so uploads reuse pooled
+ * connections.
+ */
+public class DiagnosticsUploader implements OutboxFlusher.BatchSender {
+
+    private static final String TAG = "TestrUpload";
 
     private static final MediaType JSON
             = MediaType.get("application/json; charset=utf-8");
+    private static final MediaType CBOR
+            = MediaType.get("application/cbor");
+
+    // Below this size gzip costs more CPU than it saves on the wire (single runs are ~120 bytes).
+    private static final int GZIP_MIN_BYTES = 1024;
+    private static final int OUTBOX_CAPACITY = 10_000;
+
+    private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .writeTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(15, TimeUnit.SECONDS)
+            .build();
+
+    private static DiagnosticsUploader instance;
+
+    public interface StatusListener {
+        void onQueued(int pending);
+        void onDelivered(int delivered, int pending);
+        void onRetryScheduled(long delayMs, String reason, int pending);
+        void onError(Exception e);
+    }
 
-    private final OkHttpClient client;
     private final String baseUrl;
+    // Sent as Testr-Client so the server rate-limits this device on its own
+    private final String clientId;
     private final Gson gson = new Gson();
+    private final Outbox outbox;
+    private final OutboxFlusher flusher;
+    // Outbox writes fsync, so keep them off the caller's (often the UI) thread.
+    private final ExecutorService diskWriter = Executors.newSingleThreadExecutor();
+    private volatile StatusListener listener;
 
-    public interface ResultCallback {
-        void onSuccess(String resp);
-        void onError(Exception e);
+    // Flipped off for the rest of the process if the server answers 415 to a CBOR upload.
+    private volatile boolean binarySupported = true;
+
+    public static synchronized DiagnosticsUploader get(Context context) {
+        if (instance == null) {
+            instance = new DiagnosticsUploader(context.getApplicationContext(), BuildConfig.API_BASE_URL);
+        }
+        return instance;
     }
 
-    public DiagnosticsUploader(String baseUrl) {
+    private DiagnosticsUploader(Context appContext, String baseUrl) {
         this.baseUrl = baseUrl;
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(5, TimeUnit.SECONDS)
-                .writeTimeout(5, TimeUnit.SECONDS)
-                .readTimeout(8, TimeUnit.SECONDS)
-                .build();
+        this.clientId = Settings.Secure.getString(appContext.getContentResolver(), Settings.Secure.ANDROID_ID);
+        try {
+            this.outbox = new Outbox(new File(appContext.getFilesDir(), "outbox"), OUTBOX_CAPACITY);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open upload outbox", e);
+        }
+        this.flusher = new OutboxFlusher(outbox, this, new OutboxFlusher.Listener() {
+            @Override
+            public void onDelivered(int delivered, int pending) {
+                StatusListener l = listener;
+                if (l != null) l.onDelivered(delivered, pending);
+            }
+
+            @Override
+            public void onRetryScheduled(long delayMs, String reason, int pending) {
+                Log.i(TAG, "Upload failed (" + reason + "), retrying in " + delayMs + " ms");
+                StatusListener l = listener;
+                if (l != null) l.onRetryScheduled(delayMs, reason, pending);
+            }
+
+            @Override
+            public void onDropped(Outbox.Entry entry, int status) {
+                if (status == OutboxFlusher.UNSENDABLE) {
+                    Log.w(TAG, "Run " + entry.sessionId + " could not be encoded for upload; dropping it");
+                } else {
+                    Log.w(TAG, "Server refused run " + entry.sessionId + " with HTTP " + status + "; dropping it");
+                }
+            }
+        });
+
+        watchNetwork(appContext);
+        // Deliver whatever an earlier process left behind.
+        flusher.flushSoon();
+    }
+
+    // The uploader outlives activities: one that sets a listener removes it in onDestroy, or it stays reachable.
+    public synchronized void setStatusListener(StatusListener listener) {
+        this.listener = listener;
+    }
+
+    // Detaches the listener unless another one has replaced it since (e.g. the activity after a rotation).
+    public synchronized void removeStatusListener(StatusListener listener) {
+        if (this.listener == listener) this.listener = null;
     }
 
+    // Persists the payload and schedules delivery; never loses it to a network error.
+    public void enqueue(DiagnosticRunPayload payload) {
+        String json = gson.toJson(payload);
+        diskWriter.execute(() -> {
+            try {
+                outbox.add(payload.sessionId, json);
+            } catch (IOException e) {
+                StatusListener l = listener;
+                if (l != null) l.onError(e);
+                return;
+            }
+            StatusListener l = listener;
+            if (l != null) l.onQueued(outbox.size());
+            flusher.flushSoon();
+        });
+    }
+
+    private void watchNetwork(Context appContext) {
+        ConnectivityManager cm = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) return;
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        cm.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                flusher.retryNow();
+            }
+        });
+    }
 
      // Build the payload to send to the backend from the collected report.
 
@@ -46,7 +174,11 @@ public class DiagnosticsUploader {
         DiagnosticRunPayload payload = new DiagnosticRunPayload();
 
         // Basic info
+        payload.sessionId = report.sessionId;
         payload.deviceModel = report.model;
+        payload.manufacturer = report.manufacturer;
+        payload.androidVersion = report.androidVersion;
+        payload.securityPatch = report.securityPatch;
 
         // Battery: 0-100 health %, -1 if unknown
         payload.batteryHealth = (report.battery != null)
@@ -70,46 +202,71 @@ public class DiagnosticsUploader {
         //-1 for now, might add camera check and display % later
         payload.cameraCheckPct = -1;
         payload.displayTouchPct = -1;
+
+        payload.details = report;
         return payload;
     }
 
 
 
 
-    // Send the payload to the backend.
-    public void upload(Context ctx,
-                       DiagnosticRunPayload payload,
-                       ResultCallback cb) {
-
-        String bodyJson = gson.toJson(payload);
-
-        Request req = new Request.Builder()
-                .url(baseUrl + "/v1/diagnostics")
-                .post(RequestBody.create(bodyJson, JSON))
-                .build();
+    // Called on the flusher thread: one request for the whole batch.
+    @Override
+    public OutboxFlusher.Response send(List<Outbox.Entry> batch) throws IOException {
+        JsonArray items = new JsonArray();
+        for (Outbox.Entry e : batch) items.add(JsonParser.parseString(e.json));
 
-        client.newCall(req).enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                if (cb != null) cb.onError(e);
+        boolean binary = binarySupported;
+        try (Response res = CLIENT.newCall(buildRequest("/v1/diagnostics/batch", items, binary)).execute()) {
+            if (binary && res.code() == 415) {
+                binarySupported = false;
+                return send(batch);
             }
-
-            @Override
-            public void onResponse(Call call, Response response) {
-                try (Response res = response) {
-                    String resp = (res.body() != null) ? res.body().string() : "";
-                    if (res.isSuccessful()) {
-                        if (cb != null) cb.onSuccess(resp);
-                    } else {
-                        if (cb != null) {
-                            cb.onError(new RuntimeException("HTTP " + res.code() + ": " + resp));
-                        }
-                    }
-                } catch (Exception ex) {
-                    if (cb != null) cb.onError(ex);
+            if (res.isSuccessful() && res.body() != null) {
+                // Rejected items failed validation and would fail again, so they are logged, not retried.
+                String body = res.body().string();
+                try {
+                    JsonElement rejected = JsonParser.parseString(body).getAsJsonObject().get("rejected");
+                    if (rejected != null && rejected.getAsInt() > 0) Log.w(TAG, "Batch partly rejected: " + body);
+                } catch (RuntimeException e) {
+                    // The server took the batch; an odd summary (a proxy's page, a newer format) doesn't undo that.
+                    Log.w(TAG, "Unreadable batch summary: " + body, e);
                 }
             }
-        });
+            return new OutboxFlusher.Response(res.code(), retryAfterMs(res.header("Retry-After")));
+        }
+    }
+
+    private static long retryAfterMs(String header) {
+        if (header == null) return -1;
+        try {
+            return Long.parseLong(header.trim()) * 1000L;
+        } catch (NumberFormatException e) {
+            return -1; // HTTP-date form; fall back to our own backoff
+        }
+    }
+
+    private Request buildRequest(String path, JsonArray body, boolean binary) throws IOException {
+        byte[] bytes = binary
+                ? CborEncoder.encode(body)
+                : gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+
+        Request.Builder req = new Request.Builder()
+                .url(baseUrl + path)
+                .header("Accept", "application/json");
+        if (clientId != null) req.header("Testr-Client", clientId);
+        if (bytes.length >= GZIP_MIN_BYTES) {
+            bytes = gzip(bytes);
+            req.header("Content-Encoding", "gzip");
+        }
+        return req.post(RequestBody.create(bytes, binary ? CBOR : JSON)).build();
     }
-}
 
+    private static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+}
@@ -2,12 +2,18 @@ package com.testr.dut;
 
 import android.os.Bundle;
 import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
 import androidx.activity.EdgeToEdge;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.testr.dut.dto.CollectorResult;
+import com.testr.dut.dto.DiagnosticReport;
+import com.testr.dut.pipeline.DiagnosticPipeline;
+
 public class MainActivity extends AppCompatActivity {
 
     @Override
@@ -20,32 +26,75 @@ public class MainActivity extends AppCompatActivity {
             v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
             return insets;
         });
+
+        // Starts delivering results left in the outbox by an earlier run.
+        DiagnosticsUploader.get(this);
     }
 
+    private DiagnosticPipeline running;
+    // This activity's view of upload progress; removed in onDestroy so the uploader doesn't hold the activity.
+    private DiagnosticsUploader.StatusListener uploadStatus;
+
     public void getDiagnostics(View v) {
-        String sessionId = java.util.UUID.randomUUID().toString();
-        DiagnosticManager mgr = new DiagnosticManager(this);
-        com.testr.dut.dto.DiagnosticReport report = mgr.collectAll(sessionId);
+        if (running != null) return; // a run is already in progress
 
-        DiagnosticsUploader uploader =
-                new DiagnosticsUploader("https://testr-f50n.onrender.com");
+        Button button = findViewById(R.id.btnRun);
+        TextView status = findViewById(R.id.txtStatus);
+        button.setEnabled(false);
 
-        DiagnosticRunPayload payload = uploader.buildPayloadFromReport(report);
+        String sessionId = java.util.UUID.randomUUID().toString();
+        status.setText("Session " + sessionId + "\n");
+        DiagnosticManager mgr = new DiagnosticManager(this);
 
+        // Checks run in the background; each one's outcome is shown as soon as it finishes.
+        running = mgr.startCollection(sessionId, new DiagnosticPipeline.Listener() {
+            @Override
+            public void onCollectorFinished(CollectorResult result, DiagnosticReport report) {
+                String line = result.name + ": " + result.status + " (" + result.elapsedMs + " ms)"
+                        + (result.error != null ? " " + result.error : "") + "\n";
+                runOnUiThread(() -> status.append(line));
+            }
 
-        android.widget.Toast.makeText(this, "Uploading diagnostics…", android.widget.Toast.LENGTH_SHORT).show();
+            @Override
+            public void onComplete(DiagnosticReport report) {
+                runOnUiThread(() -> {
+                    running = null;
+                    button.setEnabled(true);
+                    status.append("All checks done in " + report.collectionMs + " ms\n");
+                    upload(report, status);
+                });
+            }
+        }).pipeline;
+    }
 
-        uploader.upload(this, payload, new DiagnosticsUploader.ResultCallback() {
-            @Override public void onSuccess(String resp) {
-                runOnUiThread(() ->
-                        android.widget.Toast.makeText(MainActivity.this, "Uploaded ✓", android.widget.Toast.LENGTH_LONG).show()
-                );
+    private void upload(DiagnosticReport report, TextView status) {
+        DiagnosticsUploader uploader = DiagnosticsUploader.get(this);
+        if (uploadStatus == null) uploadStatus = new DiagnosticsUploader.StatusListener() {
+            @Override public void onQueued(int pending) {
+                runOnUiThread(() -> status.append("Saved for upload (" + pending + " pending)\n"));
+            }
+            @Override public void onDelivered(int delivered, int pending) {
+                runOnUiThread(() -> status.append("Uploaded " + delivered + " ✓ (" + pending + " pending)\n"));
+            }
+            @Override public void onRetryScheduled(long delayMs, String reason, int pending) {
+                runOnUiThread(() -> status.append("Offline (" + reason + "), retry in "
+                        + (delayMs / 1000) + " s, " + pending + " pending\n"));
             }
             @Override public void onError(Exception e) {
                 runOnUiThread(() ->
-                        android.widget.Toast.makeText(MainActivity.this, "Upload failed: " + e.getMessage(), android.widget.Toast.LENGTH_LONG).show()
+                        android.widget.Toast.makeText(MainActivity.this, "Could not save result: " + e.getMessage(), android.widget.Toast.LENGTH_LONG).show()
                 );
             }
-        });
+        };
+        uploader.setStatusListener(uploadStatus);
+
+        uploader.enqueue(uploader.buildPayloadFromReport(report));
     }
+
+    @Override
+    protected void onDestroy() {
+        if (running != null) running.cancel();
+        if (uploadStatus != null) DiagnosticsUploader.get(this).removeStatusListener(uploadStatus);
+        super.onDestroy();
     }
+}
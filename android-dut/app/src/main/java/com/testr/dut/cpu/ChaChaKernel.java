@@ -0,0 +1,94 @@
+package com.testr.dut.cpu;
+
+/**
+ * ChaCha20 block function (RFC 8439) as the crypto workload. Written out in
+ * Java rather than going through a JCA provider, so every device runs the same
+ * code instead of whatever native or hardware path its provider picks.
+ */
+public class ChaChaKernel extends CpuKernel {
+
+    private static final int BLOCKS_PER_CHUNK = 64;
+    private static final int BLOCK_BYTES = 64;
+
+    @Override
+    public String name() {
+        return "chacha20";
+    }
+
+    @Override
+    public String unit() {
+        return "MB/s";
+    }
+
+    @Override
+    public double referenceRate() {
+        return 300;
+    }
+
+    @Override
+    public double unitScale() {
+        return 1e-6;
+    }
+
+    @Override
+    public Worker newWorker(int index, int count) {
+        int[] state = {
+                0x61707865, 0x3320646e, 0x79622d32, 0x6b206574,
+                index, 1, 2, 3, 4, 5, 6, 7,
+                0, 0x09000000, 0x4a000000, 0
+        };
+        int[] out = new int[16];
+
+        return new Worker() {
+            long acc;
+
+            @Override
+            public long runChunk() {
+                for (int n = 0; n < BLOCKS_PER_CHUNK; n++) {
+                    block(state, out);
+                    state[12]++;
+                    acc += out[0] ^ out[15];
+                }
+                return (long) BLOCKS_PER_CHUNK * BLOCK_BYTES;
+            }
+
+            @Override
+            public long checksum() {
+                return acc;
+            }
+        };
+    }
+
+    static void block(int[] in, int[] out) {
+        int x0 = in[0], x1 = in[1], x2 = in[2], x3 = in[3];
+        int x4 = in[4], x5 = in[5], x6 = in[6], x7 = in[7];
+        int x8 = in[8], x9 = in[9], x10 = in[10], x11 = in[11];
+        int x12 = in[12], x13 = in[13], x14 = in[14], x15 = in[15];
+
+        for (int round = 0; round < 10; round++) {
+            // Column rounds
+            x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 16); x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 12);
+            x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 8);  x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 7);
+            x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 16); x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 12);
+            x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 8);  x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 7);
+            x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 16); x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 12);
+            x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 8);  x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 7);
+            x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 16); x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 12);
+            x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 8);  x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 7);
+            // Diagonal rounds
+            x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 16); x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 12);
+            x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 8);  x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 7);
+            x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 16); x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 12);
+            x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 8);  x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 7);
+            x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 16); x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 12);
+            x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 8);  x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 7);
+            x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 16); x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 12);
+            x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 8);  x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 7);
+        }
+
+        out[0] = x0 + in[0];   out[1] = x1 + in[1];   out[2] = x2 + in[2];   out[3] = x3 + in[3];
+        out[4] = x4 + in[4];   out[5] = x5 + in[5];   out[6] = x6 + in[6];   out[7] = x7 + in[7];
+        out[8] = x8 + in[8];   out[9] = x9 + in[9];   out[10] = x10 + in[10]; out[11] = x11 + in[11];
+        out[12] = x12 + in[12]; out[13] = x13 + in[13]; out[14] = x14 + in[14]; out[15] = x15 + in[15];
+    }
+}
@@ -0,0 +1,224 @@
+package com.testr.dut.cpu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs each kernel single-threaded and then on one thread per core, after a
+ * JIT warm-up, and turns the rates into scores (1000 = the kernel's reference
+ * rate on one core; overall scores are geometric means across kernels).
+ *
+ * Android can't pin threads to cores, so per-core scores are the per-thread
+ * rates of the all-cores run. With one thread per core the scheduler spreads
+ * them across clusters, and sorting them fastest first lines them up with
+ * {@link CpuTopology}'s clusters.
+ *
+ * A rate of zero (a thread that was interrupted before measuring) is left out
+ * of the geometric mean rather than turning it into log(0); a score with no
+ * rates left is -1.
+ *
+ * Interrupting the thread that called {@link #run} (the pipeline's timeout
+ * does) stops it and its measuring threads within about one check interval,
+ * with an InterruptedException, so it doesn't hold the CPU after giving up.
+ */
+public final class CpuBenchmark {
+
+    public static final class Settings {
+        public long warmupMs = 300;
+        public long measureMs = 300;
+        public int threads = Runtime.getRuntime().availableProcessors();
+        // Target time between clock reads; chunks are batched up to roughly this long.
+        public long checkIntervalUs = 1000;
+    }
+
+    public static final class KernelResult {
+        public String name;
+        public String unit;
+        public double singleCoreRate;
+        public double multiCoreRate;
+        public double[] perThreadRates;
+        public long checksum;
+    }
+
+    public static final class ClusterResult {
+        public long maxFreqKhz;
+        public int cores;
+        public int score; // mean per-core score of the threads attributed to this cluster
+    }
+
+    public static final class Result {
+        public int singleCoreScore;
+        public int multiCoreScore;
+        public int threads;
+        public int[] perCoreScores; // fastest first
+        public List<ClusterResult> clusters = new ArrayList<>();
+        public List<KernelResult> kernels = new ArrayList<>();
+    }
+
+    public static List<CpuKernel> defaultKernels() {
+        List<CpuKernel> kernels = new ArrayList<>();
+        kernels.add(new IntegerKernel());
+        kernels.add(new FloatKernel());
+        kernels.add(new MemoryKernel());
+        kernels.add(new ChaChaKernel());
+        return kernels;
+    }
+
+    private final Settings settings;
+
+    public CpuBenchmark(Settings settings) {
+        this.settings = settings;
+    }
+
+    public Result run(List<CpuKernel> kernels, List<CpuTopology.Cluster> topology) throws InterruptedException {
+        int threads = Math.max(1, settings.threads);
+        Result result = new Result();
+        result.threads = threads;
+
+        GeoMean single = new GeoMean();
+        GeoMean multi = new GeoMean();
+        GeoMean[] perThread = new GeoMean[threads];
+        for (int t = 0; t < threads; t++) perThread[t] = new GeoMean();
+
+        for (CpuKernel kernel : kernels) {
+            KernelResult kr = measureKernel(kernel, threads);
+            result.kernels.add(kr);
+
+            double ref = kernel.referenceRate();
+            single.add(kr.singleCoreRate / ref);
+            multi.add(kr.multiCoreRate / ref);
+            for (int t = 0; t < threads; t++) perThread[t].add(kr.perThreadRates[t] / ref);
+            if (kernel instanceof MemoryKernel) ((MemoryKernel) kernel).release();
+        }
+
+        result.singleCoreScore = single.score();
+        result.multiCoreScore = multi.score();
+        result.perCoreScores = new int[threads];
+        for (int t = 0; t < threads; t++) result.perCoreScores[t] = perThread[t].score();
+        sortDescending(result.perCoreScores);
+
+        int pos = 0;
+        for (CpuTopology.Cluster c : topology) {
+            ClusterResult cr = new ClusterResult();
+            cr.maxFreqKhz = c.maxFreqKhz;
+            cr.cores = c.cores;
+            int end = Math.min(pos + c.cores, threads);
+            long sum = 0;
+            int scored = 0;
+            for (int i = pos; i < end; i++) {
+                if (result.perCoreScores[i] < 0) continue;
+                sum += result.perCoreScores[i];
+                scored++;
+            }
+            cr.score = scored > 0 ? (int) (sum / scored) : -1;
+            pos = end;
+            result.clusters.add(cr);
+        }
+        return result;
+    }
+
+    private KernelResult measureKernel(CpuKernel kernel, int threads) throws InterruptedException {
+        KernelResult kr = new KernelResult();
+        kr.name = kernel.name();
+        kr.unit = kernel.unit();
+
+        // Warm-up doubles as calibration: how many chunks fit in one clock-check interval.
+        CpuKernel.Worker warm = kernel.newWorker(0, 1);
+        long warmStart = System.nanoTime();
+        long warmChunks = 0;
+        long warmEnd = warmStart + settings.warmupMs * 1_000_000L;
+        long now;
+        do {
+            warm.runChunk();
+            warmChunks++;
+            now = System.nanoTime();
+            if (Thread.interrupted()) throw new InterruptedException();
+        } while (now < warmEnd);
+        double chunkNs = (now - warmStart) / (double) warmChunks;
+        int chunksPerCheck = (int) Math.max(1, settings.checkIntervalUs * 1000 / chunkNs);
+        long checksum = warm.checksum();
+
+        CpuKernel.Worker single = kernel.newWorker(0, 1);
+        kr.singleCoreRate = measure(single, chunksPerCheck) * kernel.unitScale();
+        checksum ^= single.checksum();
+
+        CpuKernel.Worker[] workers = new CpuKernel.Worker[threads];
+        for (int t = 0; t < threads; t++) workers[t] = kernel.newWorker(t, threads);
+        double[] rates = new double[threads];
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] pool = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            pool[t] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    rates[id] = measure(workers[id], chunksPerCheck) * kernel.unitScale();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "testr-cpu-" + kernel.name() + "-" + t);
+            pool[t].start();
+        }
+        try {
+            ready.await();
+            go.countDown();
+            for (Thread th : pool) th.join();
+        } catch (InterruptedException e) {
+            for (Thread th : pool) th.interrupt();
+            throw e;
+        }
+
+        kr.perThreadRates = rates;
+        for (int t = 0; t < threads; t++) {
+            kr.multiCoreRate += rates[t];
+            checksum ^= workers[t].checksum();
+        }
+        kr.checksum = checksum;
+        return kr;
+    }
+
+    // Raw units per second, reading the clock (and the interrupt flag) once per batch of chunks.
+    private double measure(CpuKernel.Worker worker, int chunksPerCheck) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + settings.measureMs * 1_000_000L;
+        long units = 0;
+        long now;
+        do {
+            for (int i = 0; i < chunksPerCheck; i++) units += worker.runChunk();
+            now = System.nanoTime();
+            if (Thread.interrupted()) throw new InterruptedException();
+        } while (now < end);
+        return units / ((now - start) / 1e9);
+    }
+
+    // Geometric mean of rate ratios, skipping ratios that aren't positive.
+    static final class GeoMean {
+        private double logSum;
+        private int count;
+
+        void add(double ratio) {
+            if (!(ratio > 0) || Double.isInfinite(ratio)) return;
+            logSum += Math.log(ratio);
+            count++;
+        }
+
+        // 1000 x the mean ratio, or -1 if there was none.
+        int score() {
+            if (count == 0) return -1;
+            return (int) Math.round(1000 * Math.exp(logSum / count));
+        }
+    }
+
+    private static void sortDescending(int[] a) {
+        Arrays.sort(a);
+        for (int i = 0, j = a.length - 1; i < j; i++, j--) {
+            int tmp = a[i];
+            a[i] = a[j];
+            a[j] = tmp;
+        }
+    }
+}
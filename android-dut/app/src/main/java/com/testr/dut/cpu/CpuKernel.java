@@ -0,0 +1,34 @@
+package com.testr.dut.cpu;
+
+/**
+ * One workload of the CPU benchmark. Kernels are plain Java (no Android APIs)
+ * so the same code can be run and checked on a desktop JVM.
+ *
+ * The runner never times a single operation: it calls {@link Worker#runChunk()}
+ * (a fixed slice of work taking roughly 50-500 us) several times between clock
+ * reads, so the timer cost stays out of the score.
+ */
+public abstract class CpuKernel {
+
+    public abstract String name();
+
+    // What one work unit is, e.g. "Mops/s", "MFLOPS", "MB/s".
+    public abstract String unit();
+
+    // Units per second that score 1000 on one core: one core of a desktop x86-64 JVM (Java 21).
+    public abstract double referenceRate();
+
+    // Converts raw units (as returned by runChunk) to the reported unit, e.g. bytes to MB.
+    public abstract double unitScale();
+
+    // Prepares one thread's share of the work; index/count let kernels split shared buffers.
+    public abstract Worker newWorker(int index, int count);
+
+    public interface Worker {
+        // Runs a fixed chunk of work and returns how many raw units it did.
+        long runChunk();
+
+        // Folded result of all work so far, read once so the JIT can't drop the loop.
+        long checksum();
+    }
+}
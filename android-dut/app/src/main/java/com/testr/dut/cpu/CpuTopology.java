@@ -0,0 +1,70 @@
+package com.testr.dut.cpu;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Groups cores into clusters (big.LITTLE / DynamIQ) by their maximum
+ * frequency from sysfs. A core whose cpufreq can't be read (hotplugged off,
+ * or hidden by the vendor) goes into a last cluster of unknown frequency, so
+ * the others keep theirs. Falls back to a single cluster when no core's is
+ * readable, e.g. in a container.
+ */
+public final class CpuTopology {
+
+    public static final class Cluster {
+        public final long maxFreqKhz; // -1 when unknown
+        public final int cores;
+
+        Cluster(long maxFreqKhz, int cores) {
+            this.maxFreqKhz = maxFreqKhz;
+            this.cores = cores;
+        }
+    }
+
+    private CpuTopology() {
+    }
+
+    // Fastest cluster first.
+    public static List<Cluster> read() {
+        return read(new File("/sys/devices/system/cpu"), Runtime.getRuntime().availableProcessors());
+    }
+
+    static List<Cluster> read(File cpuDir, int fallbackCores) {
+        Map<Long, Integer> byFreq = new TreeMap<>((x, y) -> Long.compare(y, x));
+        int unknown = 0;
+        for (int cpu = 0; ; cpu++) {
+            File core = new File(cpuDir, "cpu" + cpu);
+            if (!core.isDirectory()) break;
+            long khz = readLong(new File(core, "cpufreq/cpuinfo_max_freq"));
+            if (khz > 0) byFreq.merge(khz, 1, Integer::sum);
+            else unknown++;
+        }
+
+        List<Cluster> clusters = new ArrayList<>();
+        if (byFreq.isEmpty()) {
+            clusters.add(new Cluster(-1, fallbackCores));
+        } else {
+            for (Map.Entry<Long, Integer> e : byFreq.entrySet()) {
+                clusters.add(new Cluster(e.getKey(), e.getValue()));
+            }
+            if (unknown > 0) clusters.add(new Cluster(-1, unknown));
+        }
+        return clusters;
+    }
+
+    private static long readLong(File file) {
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line = br.readLine();
+            return line == null ? -1 : Long.parseLong(line.trim());
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+}
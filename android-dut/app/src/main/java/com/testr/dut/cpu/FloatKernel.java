@@ -0,0 +1,64 @@
+package com.testr.dut.cpu;
+
+// Double-precision multiply-add: a 32x32 matrix product per chunk, small enough to stay in L1.
+public class FloatKernel extends CpuKernel {
+
+    private static final int N = 32;
+    private static final long FLOPS_PER_CHUNK = 2L * N * N * N;
+
+    @Override
+    public String name() {
+        return "float";
+    }
+
+    @Override
+    public String unit() {
+        return "MFLOPS";
+    }
+
+    @Override
+    public double referenceRate() {
+        return 2200;
+    }
+
+    @Override
+    public double unitScale() {
+        return 1e-6;
+    }
+
+    @Override
+    public Worker newWorker(int index, int count) {
+        double[] a = new double[N * N];
+        double[] b = new double[N * N];
+        double[] c = new double[N * N];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = 1.0 + (i % 7) * 0.125;
+            b[i] = 1.0 - (i % 5) * 0.0625;
+        }
+
+        return new Worker() {
+            @Override
+            public long runChunk() {
+                for (int i = 0; i < N; i++) {
+                    int row = i * N;
+                    for (int k = 0; k < N; k++) {
+                        double aik = a[row + k];
+                        int bRow = k * N;
+                        for (int j = 0; j < N; j++) {
+                            c[row + j] += aik * b[bRow + j];
+                        }
+                    }
+                }
+                // Keep values bounded so long runs don't drift into infinities/denormals.
+                c[0] *= 1e-9;
+                for (int i = 1; i < c.length; i++) c[i] *= 0.5;
+                return FLOPS_PER_CHUNK;
+            }
+
+            @Override
+            public long checksum() {
+                return Double.doubleToLongBits(c[0] + c[c.length - 1]);
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package com.testr.dut.cpu;
+
+// Integer ALU mix: xorshift, multiply, popcount and a small divide per step.
+public class IntegerKernel extends CpuKernel {
+
+    private static final int STEPS_PER_CHUNK = 1 << 16;
+
+    @Override
+    public String name() {
+        return "integer";
+    }
+
+    @Override
+    public String unit() {
+        return "Mops/s";
+    }
+
+    @Override
+    public double referenceRate() {
+        return 190;
+    }
+
+    @Override
+    public double unitScale() {
+        return 1e-6;
+    }
+
+    @Override
+    public Worker newWorker(int index, int count) {
+        return new Worker() {
+            long x = 0x9E3779B97F4A7C15L + index;
+            long acc;
+
+            @Override
+            public long runChunk() {
+                long x = this.x;
+                long acc = this.acc;
+                for (int i = 0; i < STEPS_PER_CHUNK; i++) {
+                    x ^= x << 13;
+                    x ^= x >>> 7;
+                    x ^= x << 17;
+                    acc += x * 0xD1B54A32D192ED03L;
+                    acc ^= Long.bitCount(x);
+                    acc += (x & 0xFFFF) / ((i & 7) + 1);
+                }
+                this.x = x;
+                this.acc = acc;
+                return STEPS_PER_CHUNK;
+            }
+
+            @Override
+            public long checksum() {
+                return acc;
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package com.testr.dut.cpu;
+
+/**
+ * STREAM-style triad, a[i] = b[i] + s * c[i], over arrays larger than the
+ * caches, so it measures DRAM bandwidth. The arrays are shared; with several
+ * threads each one walks its own slice, as STREAM does.
+ */
+public class MemoryKernel extends CpuKernel {
+
+    // 3 x 8 MB: past the last-level cache of current phone SoCs without straining the heap.
+    static final int LENGTH = 1 << 20;
+    static final int ELEMENTS_PER_CHUNK = 1 << 15;
+    static final int BYTES_PER_ELEMENT = 3 * Double.BYTES;
+
+    private double[] a;
+    private double[] b;
+    private double[] c;
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    @Override
+    public String unit() {
+        return "MB/s";
+    }
+
+    @Override
+    public double referenceRate() {
+        return 19000;
+    }
+
+    @Override
+    public double unitScale() {
+        return 1e-6;
+    }
+
+    private synchronized void allocate() {
+        if (a != null) return;
+        a = new double[LENGTH];
+        b = new double[LENGTH];
+        c = new double[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            b[i] = i & 0xFF;
+            c[i] = 1.0;
+        }
+    }
+
+    // Drops the 24 MB of arrays once the benchmark is done.
+    public synchronized void release() {
+        a = b = c = null;
+    }
+
+    @Override
+    public Worker newWorker(int index, int count) {
+        allocate();
+        final double[] a = this.a, b = this.b, c = this.c;
+        final int sliceStart = (int) ((long) LENGTH * index / count);
+        final int sliceEnd = (int) ((long) LENGTH * (index + 1) / count);
+
+        return new Worker() {
+            int pos = sliceStart;
+
+            @Override
+            public long runChunk() {
+                int start = pos;
+                int end = Math.min(start + ELEMENTS_PER_CHUNK, sliceEnd);
+                for (int i = start; i < end; i++) {
+                    a[i] = b[i] + 3.0 * c[i];
+                }
+                pos = (end == sliceEnd) ? sliceStart : end;
+                return (long) (end - start) * BYTES_PER_ELEMENT;
+            }
+
+            @Override
+            public long checksum() {
+                return Double.doubleToLongBits(a[sliceStart]);
+            }
+        };
+    }
+}
@@ -0,0 +1,21 @@
+package com.testr.dut.dto;
+
+public class CollectorResult {
+    public static final String OK = "ok";
+    public static final String FAILED = "failed";
+    public static final String TIMEOUT = "timeout";
+
+    public String name;
+    public String status;
+    public long elapsedMs;
+    public String error; // null unless failed or timed out
+
+    public CollectorResult() { }
+
+    public CollectorResult(String name, String status, long elapsedMs, String error) {
+        this.name = name;
+        this.status = status;
+        this.elapsedMs = elapsedMs;
+        this.error = error;
+    }
+}
@@ -1,9 +1,34 @@
 package com.testr.dut.dto;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class CpuInfo {
     // CPU performance as % of baseline (0-100), -1 if failed
     public int performancePct;
 
+    // Benchmark scores, 1000 = one reference core (see CpuBenchmark); -1 if failed
+    public int singleCoreScore = -1;
+    public int multiCoreScore = -1;
+    public int threads;
+    public int[] perCoreScores;       // fastest first
+    public List<Cluster> clusters = new ArrayList<>();
+    public List<Kernel> kernels = new ArrayList<>();
+
+    public static class Cluster {
+        public long maxFreqKhz;
+        public int cores;
+        public int score;
+    }
+
+    // Raw rates for one kernel, in its unit (Mops/s, MFLOPS, MB/s)
+    public static class Kernel {
+        public String name;
+        public String unit;
+        public double singleCoreRate;
+        public double multiCoreRate;
+    }
+
     public CpuInfo() { }
 
     public CpuInfo(int performancePct) {
@@ -1,5 +1,8 @@
 package com.testr.dut.dto;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class DiagnosticReport {
     public String sessionId;
     public String manufacturer;
@@ -15,4 +18,6 @@ public class DiagnosticReport {
     public ConnectivityInfo connectivity;
     public CameraInfo cameras;
     public long collectedAtEpochMs;
+    public long collectionMs;
+    public List<CollectorResult> collectors = new ArrayList<>();
 }
@@ -1,9 +1,25 @@
 package com.testr.dut.dto;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class StorageInfo {
     // Storage speed as % of baseline (0-100), -1 if not available/failed
     public int speedPct;
 
+    public long testFileBytes;
+    public List<Profile> profiles = new ArrayList<>();
+
+    // One I/O profile of the storage benchmark (see StorageBenchmark)
+    public static class Profile {
+        public String name;
+        public int queueDepth;
+        public double mbPerSec;
+        public double iops;
+        public double p99LatencyUs;
+        public boolean cacheEvicted;
+    }
+
     public StorageInfo() {
     }
 
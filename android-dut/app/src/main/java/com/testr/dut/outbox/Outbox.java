@@ -0,0 +1,121 @@
+package com.testr.dut.outbox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Durable FIFO of upload payloads: one file per payload in a directory,
+ * written to a temp file, fsynced and renamed into place. That way a crash or
+ * power cut leaves either the whole entry or nothing. Entries are removed only
+ * after the server has acknowledged them.
+ *
+ * File names start with a zero-padded sequence number, so sorting them gives
+ * enqueue order.
+ */
+public final class Outbox {
+
+    public static final class Entry {
+        public final File file;
+        public final String sessionId;
+        public final String json;
+
+        Entry(File file, String sessionId, String json) {
+            this.file = file;
+            this.sessionId = sessionId;
+            this.json = json;
+        }
+    }
+
+    private static final String SUFFIX = ".json";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final int maxEntries;
+    private long nextSeq;
+
+    public Outbox(File dir, int maxEntries) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        this.dir = dir;
+        this.maxEntries = maxEntries;
+
+        // Half-written entries from a crash are never renamed into place; drop them.
+        File[] stale = dir.listFiles((d, name) -> name.endsWith(TMP_SUFFIX));
+        if (stale != null) for (File f : stale) f.delete();
+
+        File[] files = list();
+        nextSeq = files.length == 0 ? 1 : seqOf(files[files.length - 1]) + 1;
+    }
+
+    // Persists one payload; returns once it is on disk. Drops the oldest entry when full.
+    public synchronized void add(String sessionId, String json) throws IOException {
+        File[] files = list();
+        for (int i = 0; i <= files.length - maxEntries; i++) files[i].delete();
+
+        String name = String.format("%019d-%s", nextSeq++, safe(sessionId));
+        File tmp = new File(dir, name + TMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(dir, name + SUFFIX))) {
+            tmp.delete();
+            throw new IOException("Cannot commit outbox entry " + name);
+        }
+    }
+
+    // Oldest entries first, without removing them.
+    public synchronized List<Entry> peek(int max) throws IOException {
+        File[] files = list();
+        List<Entry> out = new ArrayList<>(Math.min(max, files.length));
+        for (int i = 0; i < files.length && out.size() < max; i++) {
+            String name = files[i].getName();
+            String sessionId = name.substring(name.indexOf('-') + 1, name.length() - SUFFIX.length());
+            out.add(new Entry(files[i], sessionId, read(files[i])));
+        }
+        return out;
+    }
+
+    public synchronized void remove(List<Entry> entries) {
+        for (Entry e : entries) e.file.delete();
+    }
+
+    public synchronized int size() {
+        return list().length;
+    }
+
+    private File[] list() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) return new File[0];
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return files;
+    }
+
+    private static long seqOf(File f) {
+        String name = f.getName();
+        return Long.parseLong(name.substring(0, name.indexOf('-')));
+    }
+
+    private static String safe(String sessionId) {
+        return sessionId == null ? "none" : sessionId.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private static String read(File f) throws IOException {
+        byte[] buf = new byte[(int) f.length()];
+        try (InputStream in = new FileInputStream(f)) {
+            int off = 0;
+            while (off < buf.length) {
+                int n = in.read(buf, off, buf.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+        }
+        return new String(buf, StandardCharsets.UTF_8);
+    }
+}
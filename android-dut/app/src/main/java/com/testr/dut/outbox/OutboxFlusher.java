@@ -0,0 +1,168 @@
+package com.testr.dut.outbox;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the {@link Outbox} in batches on one background thread.
+ *
+ * After a network error, a 408/429 or a 5xx it backs off exponentially with
+ * jitter (honouring Retry-After), and resumes at once when {@link #retryNow()}
+ * is called because the network came back. A 413 halves the batch. Any other
+ * 4xx means something in the batch is unacceptable: the batch is retried one
+ * entry at a time and only the offending entry is dropped. A sender that
+ * throws a RuntimeException (say, on an entry whose JSON was corrupted on
+ * disk) is treated the same way, so one bad entry can't wedge the queue.
+ */
+public final class OutboxFlusher {
+
+    public interface BatchSender {
+        // Sends the entries as one request and returns the HTTP status; throws on network failure.
+        Response send(List<Outbox.Entry> batch) throws IOException;
+    }
+
+    public static final class Response {
+        public final int status;
+        public final long retryAfterMs; // -1 if the server gave none
+
+        public Response(int status, long retryAfterMs) {
+            this.status = status;
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+
+    public interface Listener {
+        void onDelivered(int delivered, int pending);
+
+        void onRetryScheduled(long delayMs, String reason, int pending);
+
+        // status is the server's HTTP status, or UNSENDABLE if the sender could not send the entry at all.
+        void onDropped(Outbox.Entry entry, int status);
+    }
+
+    public static final int MAX_BATCH = 50;
+    public static final int UNSENDABLE = -1;
+    static final long BASE_BACKOFF_MS = 1_000;
+    static final long MAX_BACKOFF_MS = 5 * 60_000;
+
+    private final Outbox outbox;
+    private final BatchSender sender;
+    private final Listener listener;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "testr-outbox");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Random jitter = new Random();
+
+    // Touched only on the worker thread.
+    private int batchSize = MAX_BATCH;
+    private int isolating; // entries still to send one by one after a batch was refused
+    private int failures;
+    private ScheduledFuture<?> pending;
+
+    public OutboxFlusher(Outbox outbox, BatchSender sender, Listener listener) {
+        this.outbox = outbox;
+        this.sender = sender;
+        this.listener = listener;
+    }
+
+    // Flushes now unless a backoff wait is running (new payloads then just join the next attempt).
+    public void flushSoon() {
+        worker.execute(() -> {
+            if (pending != null && !pending.isDone()) return;
+            flush();
+        });
+    }
+
+    // Flushes now and forgets earlier failures, e.g. because the network just came back.
+    public void retryNow() {
+        worker.execute(() -> {
+            if (pending != null) pending.cancel(false);
+            pending = null;
+            failures = 0;
+            flush();
+        });
+    }
+
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private void flush() {
+        while (true) {
+            List<Outbox.Entry> batch;
+            try {
+                batch = outbox.peek(batchSize);
+            } catch (IOException e) {
+                retryLater(-1, "outbox read failed: " + e.getMessage());
+                return;
+            }
+            if (batch.isEmpty()) {
+                batchSize = MAX_BATCH;
+                return;
+            }
+
+            int s;
+            long retryAfterMs;
+            try {
+                Response res = sender.send(batch);
+                s = res.status;
+                retryAfterMs = res.retryAfterMs;
+            } catch (IOException e) {
+                retryLater(-1, e.toString());
+                return;
+            } catch (RuntimeException e) {
+                s = UNSENDABLE;
+                retryAfterMs = -1;
+            }
+
+            if (s >= 200 && s < 300) {
+                outbox.remove(batch);
+                failures = 0;
+                listener.onDelivered(batch.size(), outbox.size());
+                afterSent(batch.size());
+            } else if (s == 408 || s == 429 || s >= 500) {
+                retryLater(retryAfterMs, "HTTP " + s);
+                return;
+            } else if (s == 413 && batch.size() > 1) {
+                batchSize = Math.max(1, batch.size() / 2);
+            } else if (batch.size() > 1) {
+                batchSize = 1;
+                isolating = batch.size();
+            } else {
+                outbox.remove(batch);
+                listener.onDropped(batch.get(0), s);
+                afterSent(1);
+            }
+        }
+    }
+
+    // Back to full batches once every entry of a refused batch has been tried on its own.
+    private void afterSent(int entries) {
+        if (isolating > 0) {
+            isolating = Math.max(0, isolating - entries);
+            if (isolating > 0) return;
+        }
+        batchSize = MAX_BATCH;
+    }
+
+    private void retryLater(long retryAfterMs, String reason) {
+        long delay = delayMs(failures++, retryAfterMs, jitter.nextDouble());
+        pending = worker.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+        listener.onRetryScheduled(delay, reason, outbox.size());
+    }
+
+    // Wait before the next attempt after {@code failures} failed ones in a row; {@code random} is in [0, 1).
+    static long delayMs(int failures, long retryAfterMs, double random) {
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(failures, 20));
+        // "Equal jitter": at least half the backoff, so a flaky bench doesn't hammer the server.
+        long delay = cap / 2 + (long) (random * (cap / 2));
+        return Math.max(delay, retryAfterMs);
+    }
+}
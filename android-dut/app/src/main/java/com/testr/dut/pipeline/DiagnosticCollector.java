@@ -0,0 +1,43 @@
+package com.testr.dut.pipeline;
+
+import com.testr.dut.dto.DiagnosticReport;
+
+/**
+ * One check of the diagnostic pipeline. {@link #collect()} runs on a
+ * background thread; {@link #store} copies its result into the report and is
+ * called under the report's lock, so collectors never race on it.
+ */
+public abstract class DiagnosticCollector<T> {
+
+    private final String name;
+    private final long timeoutMs;
+    private final boolean exclusive;
+
+    /**
+     * @param exclusive heavy benchmarks (CPU, storage) that would distort each
+     *                  other; the pipeline runs these one at a time
+     */
+    protected DiagnosticCollector(String name, long timeoutMs, boolean exclusive) {
+        this.name = name;
+        this.timeoutMs = timeoutMs;
+        this.exclusive = exclusive;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // Budget from the moment this collector starts (queueing time doesn't count).
+    public long timeoutMs() {
+        return timeoutMs;
+    }
+
+    public boolean exclusive() {
+        return exclusive;
+    }
+
+    // Should stop promptly when the thread is interrupted (the timeout does that).
+    protected abstract T collect() throws Exception;
+
+    protected abstract void store(DiagnosticReport report, T result);
+}
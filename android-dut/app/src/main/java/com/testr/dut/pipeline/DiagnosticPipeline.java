@@ -0,0 +1,167 @@
+package com.testr.dut.pipeline;
+
+import com.testr.dut.dto.CollectorResult;
+import com.testr.dut.dto.DiagnosticReport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs collectors off the calling thread and reports each one as it finishes.
+ *
+ * Light collectors (sysfs reads, system services) run concurrently on a small
+ * pool. Exclusive ones take turns in the order given, each starting when the
+ * one before has been reported, so the CPU and storage benchmarks never
+ * overlap while the light ones proceed alongside them. Each collector has its
+ * own timeout from when it starts; a collector that overruns is interrupted
+ * and reported as timed out, and a late result is discarded. The next
+ * exclusive collector starts on a fresh thread at that point, so one that
+ * ignores the interrupt can't hold up the rest.
+ */
+public final class DiagnosticPipeline {
+
+    public interface Listener {
+        // Called on a pipeline thread after each collector; the report holds everything stored so far.
+        void onCollectorFinished(CollectorResult result, DiagnosticReport report);
+
+        // Called once, on a pipeline thread, when every collector has finished or timed out.
+        void onComplete(DiagnosticReport report);
+    }
+
+    private static final int LIGHT_THREADS = 3;
+
+    private final ExecutorService light = Executors.newFixedThreadPool(LIGHT_THREADS, named("testr-collect"));
+    // One exclusive collector at a time (see nextExclusive), each on its own thread, so one that overran blocks nothing.
+    private final ExecutorService exclusive = Executors.newCachedThreadPool(named("testr-bench"));
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(named("testr-timeout"));
+    private final List<Future<?>> running = new ArrayList<>();
+    // Exclusive collectors not started yet; guarded by running.
+    private final Deque<DiagnosticCollector<?>> exclusiveQueue = new ArrayDeque<>();
+    private volatile boolean cancelled;
+
+    // Starts every collector and returns immediately.
+    public void start(DiagnosticReport report, List<DiagnosticCollector<?>> collectors, Listener listener) {
+        long pipelineStart = System.nanoTime();
+        AtomicInteger remaining = new AtomicInteger(collectors.size());
+
+        Runnable finishOne = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                synchronized (report) {
+                    report.collectionMs = (System.nanoTime() - pipelineStart) / 1_000_000L;
+                }
+                if (!cancelled) listener.onComplete(report);
+                shutdown();
+            }
+        };
+
+        if (collectors.isEmpty()) {
+            listener.onComplete(report);
+            shutdown();
+            return;
+        }
+
+        synchronized (running) {
+            for (DiagnosticCollector<?> c : collectors) {
+                if (c.exclusive()) {
+                    exclusiveQueue.add(c);
+                } else {
+                    running.add(light.submit(() -> runOne(c, report, listener, finishOne, null)));
+                }
+            }
+        }
+        nextExclusive(report, listener, finishOne);
+    }
+
+    // Starts the next exclusive collector, if any; called again once it has been reported.
+    private void nextExclusive(DiagnosticReport report, Listener listener, Runnable finishOne) {
+        synchronized (running) {
+            DiagnosticCollector<?> c = exclusiveQueue.poll();
+            if (c == null || cancelled) return;
+            running.add(exclusive.submit(() -> runOne(c, report, listener, finishOne,
+                    () -> nextExclusive(report, listener, finishOne))));
+        }
+    }
+
+    // Interrupts whatever is still running; pending callbacks are dropped.
+    public void cancel() {
+        cancelled = true;
+        synchronized (running) {
+            for (Future<?> f : running) f.cancel(true);
+        }
+        shutdown();
+    }
+
+    // then (may be null) runs once the outcome is reported, whether by the collector or its watchdog.
+    private <T> void runOne(DiagnosticCollector<T> c, DiagnosticReport report, Listener listener,
+                            Runnable finishOne, Runnable then) {
+        // Whichever of the collector and its watchdog flips this first reports the outcome.
+        AtomicBoolean done = new AtomicBoolean();
+        Thread worker = Thread.currentThread();
+        long start = System.nanoTime();
+
+        Future<?> watchdog = timer.schedule(() -> {
+            if (done.compareAndSet(false, true)) {
+                worker.interrupt();
+                report(c.name(), CollectorResult.TIMEOUT, start,
+                        "no result within " + c.timeoutMs() + " ms", report, listener, finishOne);
+                if (then != null) then.run();
+            }
+        }, c.timeoutMs(), TimeUnit.MILLISECONDS);
+
+        String status;
+        String error = null;
+        try {
+            T result = c.collect();
+            if (!done.compareAndSet(false, true)) return;
+            synchronized (report) {
+                c.store(report, result);
+            }
+            status = CollectorResult.OK;
+        } catch (Exception | OutOfMemoryError e) {
+            if (!done.compareAndSet(false, true)) return;
+            status = (e instanceof InterruptedException) ? CollectorResult.TIMEOUT : CollectorResult.FAILED;
+            error = e.toString();
+        } finally {
+            watchdog.cancel(false);
+        }
+
+        report(c.name(), status, start, error, report, listener, finishOne);
+        if (then != null) then.run();
+    }
+
+    private void report(String name, String status, long startNs, String error,
+                        DiagnosticReport report, Listener listener, Runnable finishOne) {
+        if (cancelled) return;
+        CollectorResult r = new CollectorResult(name, status, (System.nanoTime() - startNs) / 1_000_000L, error);
+        synchronized (report) {
+            report.collectors.add(r);
+        }
+        listener.onCollectorFinished(r, report);
+        finishOne.run();
+    }
+
+    private void shutdown() {
+        light.shutdown();
+        exclusive.shutdown();
+        timer.shutdownNow();
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,38 @@
+package com.testr.dut.storage;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Drops a file's pages from the OS page cache so the next read hits flash.
+ * Java has no portable way to do this, so the storage benchmark takes one of
+ * these and reports per profile whether eviction actually happened.
+ */
+public interface CacheControl {
+
+    // True if the file's cached pages were evicted.
+    boolean evict(File file);
+
+    CacheControl NONE = file -> false;
+
+    // Linux drop_caches (root only): works on bench hosts and rooted/userdebug devices.
+    CacheControl DROP_CACHES = file -> {
+        try (FileWriter w = new FileWriter("/proc/sys/vm/drop_caches")) {
+            w.write("1");
+            return true;
+        } catch (IOException | SecurityException e) {
+            return false;
+        }
+    };
+
+    // Tries each control in turn until one succeeds.
+    static CacheControl firstOf(CacheControl... controls) {
+        return file -> {
+            for (CacheControl c : controls) {
+                if (c.evict(file)) return true;
+            }
+            return false;
+        };
+    }
+}
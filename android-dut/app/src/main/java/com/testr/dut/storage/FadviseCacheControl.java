@@ -0,0 +1,34 @@
+package com.testr.dut.storage;
+
+import java.io.File;
+
+/**
+ * Evicts one file with fdatasync + posix_fadvise(POSIX_FADV_DONTNEED), which
+ * needs no root but isn't reachable from Java, hence the small JNI library
+ * (src/main/cpp/testr_io.c). Reports failure when the library isn't present,
+ * e.g. on a desktop JVM.
+ */
+public final class FadviseCacheControl implements CacheControl {
+
+    private static final boolean LOADED = load();
+
+    private static boolean load() {
+        try {
+            System.loadLibrary("testr_io");
+            return true;
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            return false;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return LOADED;
+    }
+
+    @Override
+    public boolean evict(File file) {
+        return LOADED && dropFileCache(file.getAbsolutePath());
+    }
+
+    private static native boolean dropFileCache(String path);
+}
@@ -0,0 +1,271 @@
+package com.testr.dut.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Storage benchmark with several I/O profiles over one scratch file:
+ *
+ *   seq-write    1 MiB FileChannel writes, fsync included in the time
+ *   seq-read     1 MiB FileChannel reads
+ *   rand-read    4 KiB reads at random aligned offsets, at each queue depth
+ *   rand-write   4 KiB writes at random offsets, each followed by fdatasync
+ *                (the pattern SQLite commits produce)
+ *   mmap-read    touches every page of a read-only mapping
+ *
+ * Every read profile first asks the {@link CacheControl} to evict the file, so
+ * it measures flash rather than the page cache written a moment earlier; each
+ * result says whether that worked. Java has no async file I/O, so queue depth
+ * N means N threads issuing positional reads at once.
+ *
+ * Plain Java (no Android APIs), so it also runs on a desktop JVM.
+ */
+public final class StorageBenchmark {
+
+    static final int SEQ_BLOCK = 1 << 20;
+    static final int RANDOM_BLOCK = 4096;
+
+    public static final class Settings {
+        public long fileBytes = 128L << 20;
+        public long randomMs = 400;
+        public int[] queueDepths = {1, 4, 16, 32};
+    }
+
+    public static final class ProfileResult {
+        public String name;
+        public int queueDepth;        // 0 for sequential/mmap profiles
+        public double mbPerSec;
+        public double iops;           // 0 for sequential/mmap profiles
+        public double p99LatencyUs;   // random profiles only
+        public boolean cacheEvicted;  // read profiles: whether the page cache was dropped first
+    }
+
+    public static final class Result {
+        public long fileBytes;
+        public List<ProfileResult> profiles = new ArrayList<>();
+
+        public ProfileResult find(String name, int queueDepth) {
+            for (ProfileResult p : profiles) {
+                if (p.name.equals(name) && p.queueDepth == queueDepth) return p;
+            }
+            return null;
+        }
+    }
+
+    private final Settings settings;
+    private final CacheControl cache;
+
+    static volatile long sink;
+
+    public StorageBenchmark(Settings settings, CacheControl cache) {
+        this.settings = settings;
+        this.cache = cache;
+    }
+
+    // Runs every profile in dir; the scratch file is deleted afterwards.
+    public Result run(File dir) throws IOException, InterruptedException {
+        // Leave at least as much free space as we use.
+        long size = Math.min(settings.fileBytes, dir.getUsableSpace() / 2);
+        size -= size % SEQ_BLOCK;
+        if (size < 8L * SEQ_BLOCK) throw new IOException("Not enough free space for the storage benchmark");
+
+        File file = new File(dir, "testr_storage_bench.bin");
+        Result result = new Result();
+        result.fileBytes = size;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel ch = raf.getChannel()) {
+            raf.setLength(0);
+            result.profiles.add(seqWrite(ch, size));
+            result.profiles.add(seqRead(file, ch, size));
+            for (int qd : settings.queueDepths) {
+                result.profiles.add(randomRead(file, ch, size, qd));
+            }
+            result.profiles.add(randomWrite(ch, size));
+            result.profiles.add(mmapRead(file, ch, size));
+        } finally {
+            file.delete();
+        }
+        return result;
+    }
+
+    private ProfileResult seqWrite(FileChannel ch, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocateDirect(SEQ_BLOCK);
+        // Non-repeating content so compressing/deduplicating controllers can't shortcut it.
+        Random rnd = new Random(1);
+        byte[] noise = new byte[SEQ_BLOCK];
+
+        long start = System.nanoTime();
+        for (long pos = 0; pos < size; pos += SEQ_BLOCK) {
+            rnd.nextBytes(noise);
+            buf.clear();
+            buf.put(noise).flip();
+            while (buf.hasRemaining()) ch.write(buf, pos + buf.position());
+        }
+        ch.force(true);
+        long ns = System.nanoTime() - start;
+
+        return sequential("seq-write", size, ns, false);
+    }
+
+    private ProfileResult seqRead(File file, FileChannel ch, long size) throws IOException {
+        boolean evicted = cache.evict(file);
+        ByteBuffer buf = ByteBuffer.allocateDirect(SEQ_BLOCK);
+
+        long start = System.nanoTime();
+        for (long pos = 0; pos < size; pos += SEQ_BLOCK) {
+            buf.clear();
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, pos + buf.position()) < 0) break;
+            }
+        }
+        long ns = System.nanoTime() - start;
+
+        return sequential("seq-read", size, ns, evicted);
+    }
+
+    private ProfileResult mmapRead(File file, FileChannel ch, long size) throws IOException {
+        boolean evicted = cache.evict(file);
+        long sum = 0;
+
+        long start = System.nanoTime();
+        // Map in windows: a single mapping is limited to 2 GiB and 32-bit address space is tight.
+        final long window = 64L << 20;
+        for (long base = 0; base < size; base += window) {
+            int len = (int) Math.min(window, size - base);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, base, len);
+            for (int off = 0; off < len; off += RANDOM_BLOCK) {
+                sum += map.get(off);
+            }
+        }
+        long ns = System.nanoTime() - start;
+
+        sink = sum; // keeps the page reads observable
+        return sequential("mmap-read", size, ns, evicted);
+    }
+
+    private ProfileResult randomRead(File file, FileChannel ch, long size, int queueDepth)
+            throws IOException, InterruptedException {
+        boolean evicted = cache.evict(file);
+        long blocks = size / RANDOM_BLOCK;
+        // Set once every thread is up, just before go opens (which publishes it), so thread
+        // start-up at high queue depths comes out of neither the run time nor the deadline.
+        long[] end = new long[1];
+
+        long[][] latencies = new long[queueDepth][];
+        int[] counts = new int[queueDepth];
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        CountDownLatch ready = new CountDownLatch(queueDepth);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[queueDepth];
+
+        for (int t = 0; t < queueDepth; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                ByteBuffer buf = ByteBuffer.allocateDirect(RANDOM_BLOCK);
+                Random rnd = new Random(31L * id + queueDepth);
+                long[] lat = new long[4096];
+                int n = 0;
+                try {
+                    ready.countDown();
+                    go.await();
+                    long deadline = end[0];
+                    while (System.nanoTime() < deadline) {
+                        long pos = (long) (rnd.nextDouble() * blocks) * RANDOM_BLOCK;
+                        buf.clear();
+                        long s = System.nanoTime();
+                        ch.read(buf, pos);
+                        long e = System.nanoTime();
+                        if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                        lat[n++] = e - s;
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                latencies[id] = lat;
+                counts[id] = n;
+            }, "testr-io-qd" + queueDepth + "-" + t);
+            threads[t].start();
+        }
+
+        ready.await();
+        long start = System.nanoTime();
+        end[0] = start + settings.randomMs * 1_000_000L;
+        go.countDown();
+        for (Thread th : threads) th.join();
+        long ns = System.nanoTime() - start;
+        if (failure.get() != null) throw failure.get();
+
+        int total = 0;
+        for (int c : counts) total += c;
+        long[] all = new long[total];
+        int pos = 0;
+        for (int t = 0; t < queueDepth; t++) {
+            System.arraycopy(latencies[t], 0, all, pos, counts[t]);
+            pos += counts[t];
+        }
+        return random("rand-read", queueDepth, all, ns, evicted);
+    }
+
+    private ProfileResult randomWrite(FileChannel ch, long size) throws IOException {
+        long blocks = size / RANDOM_BLOCK;
+        ByteBuffer buf = ByteBuffer.allocateDirect(RANDOM_BLOCK);
+        Random rnd = new Random(7);
+        byte[] noise = new byte[RANDOM_BLOCK];
+        long[] lat = new long[1024];
+        int n = 0;
+
+        long start = System.nanoTime();
+        long end = start + settings.randomMs * 1_000_000L;
+        while (System.nanoTime() < end) {
+            rnd.nextBytes(noise);
+            buf.clear();
+            buf.put(noise).flip();
+            long pos = (long) (rnd.nextDouble() * blocks) * RANDOM_BLOCK;
+            long s = System.nanoTime();
+            ch.write(buf, pos);
+            ch.force(false);
+            long e = System.nanoTime();
+            if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+            lat[n++] = e - s;
+        }
+        long ns = System.nanoTime() - start;
+
+        return random("rand-write", 1, Arrays.copyOf(lat, n), ns, false);
+    }
+
+    static ProfileResult sequential(String name, long bytes, long ns, boolean evicted) {
+        ProfileResult r = new ProfileResult();
+        r.name = name;
+        r.mbPerSec = ns > 0 ? (bytes / 1e6) / (ns / 1e9) : 0;
+        r.cacheEvicted = evicted;
+        return r;
+    }
+
+    static ProfileResult random(String name, int queueDepth, long[] latenciesNs, long ns, boolean evicted) {
+        ProfileResult r = new ProfileResult();
+        r.name = name;
+        r.queueDepth = queueDepth;
+        r.iops = ns > 0 ? latenciesNs.length / (ns / 1e9) : 0;
+        r.mbPerSec = r.iops * RANDOM_BLOCK / 1e6;
+        r.cacheEvicted = evicted;
+        if (latenciesNs.length > 0) {
+            Arrays.sort(latenciesNs);
+            int idx = (int) Math.ceil(0.99 * latenciesNs.length) - 1;
+            r.p99LatencyUs = latenciesNs[Math.max(0, idx)] / 1e3;
+        }
+        return r;
+    }
+}
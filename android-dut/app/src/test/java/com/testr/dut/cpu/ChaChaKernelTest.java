@@ -0,0 +1,94 @@
+package com.testr.dut.cpu;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.ChaCha20ParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ChaChaKernelTest {
+
+    // The JDK's ChaCha20 keystream for one block, as the 16 little-endian words of the block function.
+    private static int[] jceBlock(int[] key, int[] nonce, int counter) throws Exception {
+        ByteBuffer keyBytes = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+        for (int w : key) keyBytes.putInt(w);
+        ByteBuffer nonceBytes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        for (int w : nonce) nonceBytes.putInt(w);
+
+        Cipher cipher = Cipher.getInstance("ChaCha20");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keyBytes.array(), "ChaCha20"),
+                new ChaCha20ParameterSpec(nonceBytes.array(), counter));
+        ByteBuffer keystream = ByteBuffer.wrap(cipher.doFinal(new byte[64])).order(ByteOrder.LITTLE_ENDIAN);
+        int[] words = new int[16];
+        for (int i = 0; i < 16; i++) words[i] = keystream.getInt();
+        return words;
+    }
+
+    private static int[] state(int[] key, int[] nonce, int counter) {
+        int[] state = {0x61707865, 0x3320646e, 0x79622d32, 0x6b206574, 0, 0, 0, 0, 0, 0, 0, 0, counter, 0, 0, 0};
+        System.arraycopy(key, 0, state, 4, 8);
+        System.arraycopy(nonce, 0, state, 13, 3);
+        return state;
+    }
+
+    @Test
+    public void matchesRfc8439BlockFunctionVector() {
+        // RFC 8439 section 2.3.2: key 00:01:...:1f, nonce 00:00:00:09:00:00:00:4a:00:00:00:00, block count 1
+        int[] in = {
+                0x61707865, 0x3320646e, 0x79622d32, 0x6b206574,
+                0x03020100, 0x07060504, 0x0b0a0908, 0x0f0e0d0c,
+                0x13121110, 0x17161514, 0x1b1a1918, 0x1f1e1d1c,
+                0x00000001, 0x09000000, 0x4a000000, 0x00000000
+        };
+        int[] expected = {
+                0xe4e7f110, 0x15593bd1, 0x1fdd0f50, 0xc47120a3,
+                0xc7f4d1c7, 0x0368c033, 0x9aaa2204, 0x4e6cd4c3,
+                0x466482d2, 0x09aa9f07, 0x05d7c214, 0xa2028bd9,
+                0xd19c12b5, 0xb94e16de, 0xe883d0cb, 0x4e3c50a2
+        };
+        int[] out = new int[16];
+        ChaChaKernel.block(in, out);
+        assertArrayEquals(expected, out);
+    }
+
+    @Test
+    public void matchesJdkChaCha20ForRandomKeys() throws Exception {
+        Random random = new Random(8439);
+        for (int trial = 0; trial < 200; trial++) {
+            int[] key = new int[8];
+            int[] nonce = new int[3];
+            for (int i = 0; i < key.length; i++) key[i] = random.nextInt();
+            for (int i = 0; i < nonce.length; i++) nonce[i] = random.nextInt();
+            int counter = random.nextInt() & Integer.MAX_VALUE;
+
+            int[] out = new int[16];
+            ChaChaKernel.block(state(key, nonce, counter), out);
+            assertArrayEquals("trial " + trial, jceBlock(key, nonce, counter), out);
+        }
+    }
+
+    @Test
+    public void workerEncryptsConsecutiveBlocks() throws Exception {
+        // Worker 2's key is {2, 1, ..., 7} with the RFC's nonce, counting blocks from 0
+        int[] key = {2, 1, 2, 3, 4, 5, 6, 7};
+        int[] nonce = {0x09000000, 0x4a000000, 0};
+        CpuKernel.Worker worker = new ChaChaKernel().newWorker(2, 4);
+
+        long expected = 0;
+        for (int chunk = 0; chunk < 2; chunk++) {
+            assertEquals(64 * 64, worker.runChunk());
+            for (int n = 0; n < 64; n++) {
+                int[] block = jceBlock(key, nonce, chunk * 64 + n);
+                expected += block[0] ^ block[15];
+            }
+            assertEquals(expected, worker.checksum());
+        }
+    }
+}
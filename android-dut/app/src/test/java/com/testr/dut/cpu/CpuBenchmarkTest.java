@@ -0,0 +1,122 @@
+package com.testr.dut.cpu;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CpuBenchmarkTest {
+
+    // A kernel that does no work, as a thread that never got to measure would report.
+    private static final class IdleKernel extends CpuKernel {
+        @Override public String name() { return "idle"; }
+        @Override public String unit() { return "ops/s"; }
+        @Override public double referenceRate() { return 1; }
+        @Override public double unitScale() { return 1; }
+
+        @Override
+        public Worker newWorker(int index, int count) {
+            return new Worker() {
+                @Override public long runChunk() { return 0; }
+                @Override public long checksum() { return 0; }
+            };
+        }
+    }
+
+    private static CpuBenchmark quick(int threads) {
+        CpuBenchmark.Settings settings = new CpuBenchmark.Settings();
+        settings.warmupMs = 20;
+        settings.measureMs = 20;
+        settings.threads = threads;
+        return new CpuBenchmark(settings);
+    }
+
+    @Test
+    public void geoMeanSkipsRatesThatArentPositive() {
+        CpuBenchmark.GeoMean mean = new CpuBenchmark.GeoMean();
+        assertEquals(-1, mean.score());
+        mean.add(0);
+        mean.add(Double.NaN);
+        mean.add(Double.POSITIVE_INFINITY);
+        assertEquals(-1, mean.score());
+
+        mean.add(2);
+        mean.add(0.5);
+        mean.add(0);
+        assertEquals(1000, mean.score());
+        mean.add(8);
+        assertEquals(2000, mean.score());
+    }
+
+    @Test
+    public void zeroRatesLeaveTheOtherKernelsScores() throws InterruptedException {
+        List<CpuTopology.Cluster> topology = Arrays.asList(new CpuTopology.Cluster(2_000_000, 1), new CpuTopology.Cluster(-1, 1));
+        CpuBenchmark.Result result = quick(2).run(Arrays.asList(new IdleKernel(), new IntegerKernel()), topology);
+
+        assertEquals(0, result.kernels.get(0).singleCoreRate, 0);
+        assertTrue(result.singleCoreScore > 0);
+        assertTrue(result.multiCoreScore > 0);
+        for (int score : result.perCoreScores) assertTrue(score > 0);
+        for (CpuBenchmark.ClusterResult cluster : result.clusters) assertTrue(cluster.score > 0);
+
+        CpuBenchmark.Result idle = quick(2).run(Collections.singletonList(new IdleKernel()), topology);
+        assertEquals(-1, idle.singleCoreScore);
+        assertEquals(-1, idle.multiCoreScore);
+        for (int score : idle.perCoreScores) assertEquals(-1, score);
+        for (CpuBenchmark.ClusterResult cluster : idle.clusters) assertEquals(-1, cluster.score);
+    }
+
+    @Test
+    public void stopsSoonAfterItsThreadIsInterrupted() throws Exception {
+        CpuBenchmark.Settings settings = new CpuBenchmark.Settings();
+        settings.warmupMs = 50;
+        settings.measureMs = 60_000;
+        settings.threads = 2;
+        AtomicReference<Throwable> outcome = new AtomicReference<>();
+        Thread runner = new Thread(() -> {
+            try {
+                new CpuBenchmark(settings).run(CpuBenchmark.defaultKernels(), CpuTopology.read());
+            } catch (Throwable t) {
+                outcome.set(t);
+            }
+        });
+        runner.start();
+        Thread.sleep(200); // into the single-thread measurement
+        runner.interrupt();
+        runner.join(2_000);
+        assertFalse(runner.isAlive());
+        assertTrue(String.valueOf(outcome.get()), outcome.get() instanceof InterruptedException);
+
+        // The measuring threads of the all-cores run stop too, well before their 3 s are up
+        settings.measureMs = 3_000;
+        runner = new Thread(() -> {
+            try {
+                new CpuBenchmark(settings).run(Collections.singletonList(new IntegerKernel()), CpuTopology.read());
+            } catch (Throwable t) {
+                outcome.set(t);
+            }
+        });
+        runner.start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!measuringThreadsRunning() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue(measuringThreadsRunning());
+        runner.interrupt();
+        runner.join(1_000);
+        assertFalse(runner.isAlive());
+        for (int i = 0; i < 100 && measuringThreadsRunning(); i++) Thread.sleep(10);
+        assertFalse(measuringThreadsRunning());
+    }
+
+    private static boolean measuringThreadsRunning() {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith("testr-cpu-integer-")) return true;
+        }
+        return false;
+    }
+}
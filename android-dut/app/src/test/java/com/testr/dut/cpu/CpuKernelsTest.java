@@ -0,0 +1,92 @@
+package com.testr.dut.cpu;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+// What the integer, float and memory kernels compute, checked against plain reference loops.
+public class CpuKernelsTest {
+
+    @Test
+    public void integerKernelFoldsItsXorshiftSequence() {
+        CpuKernel.Worker worker = new IntegerKernel().newWorker(3, 4);
+
+        long x = 0x9E3779B97F4A7C15L + 3;
+        long acc = 0;
+        for (int chunk = 0; chunk < 3; chunk++) {
+            assertEquals(1 << 16, worker.runChunk());
+            for (int i = 0; i < 1 << 16; i++) {
+                x ^= x << 13;
+                x ^= x >>> 7;
+                x ^= x << 17;
+                acc += x * 0xD1B54A32D192ED03L;
+                acc ^= Long.bitCount(x);
+                acc += (x & 0xFFFF) / ((i & 7) + 1);
+            }
+            assertEquals(acc, worker.checksum());
+        }
+        // Each thread starts its own sequence
+        CpuKernel.Worker first = new IntegerKernel().newWorker(0, 4);
+        CpuKernel.Worker second = new IntegerKernel().newWorker(1, 4);
+        first.runChunk();
+        second.runChunk();
+        assertNotEquals(first.checksum(), second.checksum());
+    }
+
+    @Test
+    public void floatKernelMultipliesItsMatricesAndStaysFinite() {
+        int n = 32;
+        double[] a = new double[n * n];
+        double[] b = new double[n * n];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = 1.0 + (i % 7) * 0.125;
+            b[i] = 1.0 - (i % 5) * 0.0625;
+        }
+        // First chunk: c = a x b, then c[0] scaled by 1e-9 and the rest halved
+        double first = 0;
+        double last = 0;
+        for (int k = 0; k < n; k++) {
+            first += a[k] * b[k * n];
+            last += a[(n - 1) * n + k] * b[k * n + n - 1];
+        }
+        CpuKernel.Worker worker = new FloatKernel().newWorker(0, 1);
+        assertEquals(2L * n * n * n, worker.runChunk());
+        assertEquals(first * 1e-9 + last * 0.5, Double.longBitsToDouble(worker.checksum()), 0);
+
+        for (int i = 0; i < 100_000; i++) worker.runChunk();
+        double c = Double.longBitsToDouble(worker.checksum());
+        assertFalse(Double.isNaN(c) || Double.isInfinite(c));
+        assertTrue(c > 0);
+    }
+
+    @Test
+    public void memoryKernelSlicesCoverTheArraysOnce() {
+        MemoryKernel kernel = new MemoryKernel();
+        int threads = 3;
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            CpuKernel.Worker worker = kernel.newWorker(t, threads);
+            int sliceStart = (int) ((long) MemoryKernel.LENGTH * t / threads);
+            int sliceEnd = (int) ((long) MemoryKernel.LENGTH * (t + 1) / threads);
+
+            // A pass over the slice is whole chunks and one shorter one, then it starts over
+            long pass = 0;
+            long bytes;
+            do {
+                bytes = worker.runChunk();
+                pass += bytes;
+            } while (bytes == (long) MemoryKernel.ELEMENTS_PER_CHUNK * MemoryKernel.BYTES_PER_ELEMENT);
+            assertEquals((long) (sliceEnd - sliceStart) * MemoryKernel.BYTES_PER_ELEMENT, pass);
+            assertEquals((long) MemoryKernel.ELEMENTS_PER_CHUNK * MemoryKernel.BYTES_PER_ELEMENT, worker.runChunk());
+            total += pass;
+
+            // a = b + 3c, with b[i] = i & 0xFF and c[i] = 1
+            assertEquals((sliceStart & 0xFF) + 3.0, Double.longBitsToDouble(worker.checksum()), 0);
+        }
+        assertEquals((long) MemoryKernel.LENGTH * MemoryKernel.BYTES_PER_ELEMENT, total);
+        kernel.release();
+    }
+}
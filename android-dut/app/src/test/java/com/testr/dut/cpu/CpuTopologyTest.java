@@ -0,0 +1,78 @@
+package com.testr.dut.cpu;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CpuTopologyTest {
+
+    @Rule
+    public TemporaryFolder sysfs = new TemporaryFolder();
+
+    // Adds cpuN with the given max frequency; null leaves out cpufreq, as for an offline core.
+    private void core(int cpu, String maxFreq) throws IOException {
+        File dir = new File(sysfs.getRoot(), "cpu" + cpu);
+        if (maxFreq == null) {
+            assertTrue(dir.mkdirs());
+            return;
+        }
+        File cpufreq = new File(dir, "cpufreq");
+        assertTrue(cpufreq.mkdirs());
+        try (FileWriter w = new FileWriter(new File(cpufreq, "cpuinfo_max_freq"))) {
+            w.write(maxFreq + "\n");
+        }
+    }
+
+    private static void assertCluster(long khz, int cores, CpuTopology.Cluster cluster) {
+        assertEquals(khz, cluster.maxFreqKhz);
+        assertEquals(cores, cluster.cores);
+    }
+
+    @Test
+    public void groupsCoresByMaxFrequencyFastestFirst() throws IOException {
+        core(0, "1800000");
+        core(1, "1800000");
+        core(2, "2400000");
+        core(3, "3000000");
+        core(4, "2400000");
+
+        List<CpuTopology.Cluster> clusters = CpuTopology.read(sysfs.getRoot(), 99);
+        assertEquals(3, clusters.size());
+        assertCluster(3_000_000, 1, clusters.get(0));
+        assertCluster(2_400_000, 2, clusters.get(1));
+        assertCluster(1_800_000, 2, clusters.get(2));
+    }
+
+    @Test
+    public void unreadableCoresKeepTheOthersClusters() throws IOException {
+        core(0, "1800000");
+        core(1, null);
+        core(2, "garbage");
+        core(3, "2800000");
+
+        List<CpuTopology.Cluster> clusters = CpuTopology.read(sysfs.getRoot(), 99);
+        assertEquals(3, clusters.size());
+        assertCluster(2_800_000, 1, clusters.get(0));
+        assertCluster(1_800_000, 1, clusters.get(1));
+        assertCluster(-1, 2, clusters.get(2));
+    }
+
+    @Test
+    public void fallsBackToOneClusterWhenNothingIsReadable() throws IOException {
+        core(0, null);
+        core(1, null);
+        List<CpuTopology.Cluster> clusters = CpuTopology.read(sysfs.getRoot(), 8);
+        assertEquals(1, clusters.size());
+        assertCluster(-1, 8, clusters.get(0));
+
+        assertCluster(-1, 4, CpuTopology.read(new File(sysfs.getRoot(), "missing"), 4).get(0));
+    }
+}
@@ -0,0 +1,193 @@
+package com.testr.dut.outbox;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxFlusherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private interface Server {
+        OutboxFlusher.Response answer(List<String> sessions) throws IOException;
+    }
+
+    private Outbox outbox;
+    private OutboxFlusher flusher;
+    private volatile Server server;
+    // Session ids of each request, in the order they were sent
+    private final List<List<String>> sent = Collections.synchronizedList(new ArrayList<>());
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    @Before
+    public void open() throws IOException {
+        outbox = new Outbox(tmp.newFolder("outbox"), 1_000);
+        flusher = new OutboxFlusher(outbox, batch -> {
+            List<String> sessions = new ArrayList<>();
+            for (Outbox.Entry e : batch) {
+                if (e.json.startsWith("{broken")) throw new IllegalStateException("Malformed JSON in " + e.file);
+                sessions.add(e.sessionId);
+            }
+            sent.add(sessions);
+            return server.answer(sessions);
+        }, new OutboxFlusher.Listener() {
+            @Override
+            public void onDelivered(int delivered, int pending) {
+                events.add("delivered " + delivered + ", " + pending + " pending");
+            }
+
+            @Override
+            public void onRetryScheduled(long delayMs, String reason, int pending) {
+                events.add("retry in " + delayMs + " ms: " + reason);
+            }
+
+            @Override
+            public void onDropped(Outbox.Entry entry, int status) {
+                events.add("dropped " + entry.sessionId + ": " + status);
+            }
+        });
+    }
+
+    @After
+    public void close() {
+        flusher.shutdown();
+    }
+
+    private void add(int from, int to) throws IOException {
+        for (int i = from; i < to; i++) outbox.add("s" + i, "{\"n\":" + i + "}");
+    }
+
+    private static OutboxFlusher.Response status(int status) {
+        return new OutboxFlusher.Response(status, -1);
+    }
+
+    private String next() throws InterruptedException {
+        String event = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull("no listener call within 5 s", event);
+        return event;
+    }
+
+    @Test
+    public void deliversInEnqueueOrderInFullBatches() throws Exception {
+        server = sessions -> status(200);
+        add(0, 120);
+        flusher.flushSoon();
+
+        assertEquals("delivered 50, 70 pending", next());
+        assertEquals("delivered 50, 20 pending", next());
+        assertEquals("delivered 20, 0 pending", next());
+        List<String> order = new ArrayList<>();
+        for (List<String> batch : sent) order.addAll(batch);
+        for (int i = 0; i < 120; i++) assertEquals("s" + i, order.get(i));
+    }
+
+    @Test
+    public void dropsOnlyTheEntryTheServerRefuses() throws Exception {
+        server = sessions -> status(sessions.contains("s2") ? 422 : 200);
+        add(0, 55);
+        flusher.flushSoon();
+
+        assertEquals("delivered 1, 54 pending", next());
+        assertEquals("delivered 1, 53 pending", next());
+        assertEquals("dropped s2: 422", next());
+        for (int pending = 51; pending >= 5; pending--) assertEquals("delivered 1, " + pending + " pending", next());
+        // Every entry of the refused batch was tried alone; the rest go as a batch again
+        assertEquals("delivered 5, 0 pending", next());
+        assertEquals(1 + 50 + 1, sent.size());
+        assertEquals(50, sent.get(0).size());
+        assertEquals(Arrays.asList("s50", "s51", "s52", "s53", "s54"), sent.get(51));
+    }
+
+    @Test
+    public void isolatesAnEntryTheSenderCannotEncode() throws Exception {
+        server = sessions -> status(200);
+        add(0, 2);
+        outbox.add("corrupt", "{broken");
+        add(3, 4);
+        flusher.flushSoon();
+
+        assertEquals("delivered 1, 3 pending", next());
+        assertEquals("delivered 1, 2 pending", next());
+        assertEquals("dropped corrupt: " + OutboxFlusher.UNSENDABLE, next());
+        assertEquals("delivered 1, 0 pending", next());
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void halvesTheBatchWhileItIsTooLarge() throws Exception {
+        server = sessions -> status(sessions.size() > 10 ? 413 : 200);
+        add(0, 20);
+        flusher.flushSoon();
+
+        int delivered = 0;
+        while (delivered < 20) {
+            String event = next();
+            assertTrue(event, event.startsWith("delivered "));
+            delivered += Integer.parseInt(event.substring(10, event.indexOf(',')));
+        }
+        List<Integer> sizes = new ArrayList<>();
+        for (List<String> batch : sent) sizes.add(batch.size());
+        assertEquals(Arrays.asList(20, 10, 10), sizes);
+    }
+
+    @Test
+    public void backsOffExponentiallyWithEqualJitter() {
+        assertEquals(500, OutboxFlusher.delayMs(0, -1, 0.0));
+        assertEquals(999, OutboxFlusher.delayMs(0, -1, 0.999));
+        assertEquals(4_000, OutboxFlusher.delayMs(3, -1, 0.0));
+        assertEquals(7_000, OutboxFlusher.delayMs(3, -1, 0.75));
+        // Capped at MAX_BACKOFF_MS, however many failures
+        assertEquals(OutboxFlusher.MAX_BACKOFF_MS / 2, OutboxFlusher.delayMs(9, -1, 0.0));
+        assertTrue(OutboxFlusher.delayMs(1_000, -1, 0.999) < OutboxFlusher.MAX_BACKOFF_MS);
+        // Retry-After wins when the server asks for longer, never when it asks for less
+        assertEquals(20_000, OutboxFlusher.delayMs(0, 20_000, 0.5));
+        assertEquals(4_000, OutboxFlusher.delayMs(3, 1_000, 0.0));
+    }
+
+    @Test
+    public void waitsOutRetryAfterUntilTheNetworkComesBack() throws Exception {
+        server = sessions -> new OutboxFlusher.Response(503, 60_000);
+        add(0, 3);
+        flusher.flushSoon();
+        assertEquals("retry in 60000 ms: HTTP 503", next());
+
+        // New payloads wait for the scheduled retry...
+        server = sessions -> status(200);
+        add(3, 4);
+        flusher.flushSoon();
+        // ...unless the network comes back, which retries at once
+        flusher.retryNow();
+        assertEquals("delivered 4, 0 pending", next());
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void retriesAfterANetworkError() throws Exception {
+        server = sessions -> {
+            throw new IOException("connection reset");
+        };
+        add(0, 1);
+        flusher.flushSoon();
+        String event = next();
+        assertTrue(event, event.endsWith("java.io.IOException: connection reset"));
+        long delay = Long.parseLong(event.substring("retry in ".length(), event.indexOf(" ms")));
+        assertTrue(delay >= OutboxFlusher.BASE_BACKOFF_MS / 2 && delay < OutboxFlusher.BASE_BACKOFF_MS);
+        assertEquals(1, outbox.size());
+    }
+}
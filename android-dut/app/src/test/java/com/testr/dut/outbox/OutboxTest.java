@@ -0,0 +1,70 @@
+package com.testr.dut.outbox;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static List<String> sessions(List<Outbox.Entry> entries) {
+        List<String> ids = new ArrayList<>();
+        for (Outbox.Entry e : entries) ids.add(e.sessionId);
+        return ids;
+    }
+
+    @Test
+    public void keepsEnqueueOrderAcrossReopening() throws IOException {
+        File dir = new File(tmp.getRoot(), "outbox");
+        Outbox outbox = new Outbox(dir, 100);
+        for (int i = 0; i < 12; i++) outbox.add("s" + i, "{\"n\":" + i + "}");
+
+        List<Outbox.Entry> first = outbox.peek(2);
+        assertEquals(Arrays.asList("s0", "s1"), sessions(first));
+        assertEquals("{\"n\":0}", first.get(0).json);
+        outbox.remove(first);
+
+        // The sequence carries on from the files left on disk, so new entries still go last
+        Outbox reopened = new Outbox(dir, 100);
+        reopened.add("s12", "{}");
+        List<Outbox.Entry> all = reopened.peek(100);
+        assertEquals(11, all.size());
+        assertEquals(11, reopened.size());
+        for (int i = 0; i < 11; i++) assertEquals("s" + (i + 2), all.get(i).sessionId);
+    }
+
+    @Test
+    public void evictsTheOldestEntriesWhenFull() throws IOException {
+        Outbox outbox = new Outbox(tmp.newFolder("outbox"), 3);
+        for (int i = 0; i < 5; i++) outbox.add("s" + i, "{}");
+        assertEquals(3, outbox.size());
+        assertEquals(Arrays.asList("s2", "s3", "s4"), sessions(outbox.peek(10)));
+    }
+
+    @Test
+    public void dropsHalfWrittenEntriesAndCleansSessionIds() throws IOException {
+        File dir = tmp.newFolder("outbox");
+        File stale = new File(dir, "0000000000000000007-s7.tmp");
+        assertTrue(stale.createNewFile());
+
+        Outbox outbox = new Outbox(dir, 10);
+        assertFalse(stale.exists());
+        assertEquals(0, outbox.size());
+
+        outbox.add("bench 4/run:1", "{}");
+        outbox.add(null, "{}");
+        assertEquals(Arrays.asList("bench_4_run_1", "none"), sessions(outbox.peek(10)));
+    }
+}
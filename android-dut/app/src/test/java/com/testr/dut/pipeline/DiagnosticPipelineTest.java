@@ -0,0 +1,132 @@
+package com.testr.dut.pipeline;
+
+import com.testr.dut.dto.CollectorResult;
+import com.testr.dut.dto.DiagnosticReport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiagnosticPipelineTest {
+
+    private final DiagnosticReport report = new DiagnosticReport();
+    private final List<String> finished = new ArrayList<>(); // "name status", in reporting order
+    private final CountDownLatch complete = new CountDownLatch(1);
+
+    // Stores its result by appending it to report.product.
+    private static DiagnosticCollector<String> collector(String name, long timeoutMs, boolean exclusive,
+                                                         Callable<String> body) {
+        return new DiagnosticCollector<String>(name, timeoutMs, exclusive) {
+            @Override
+            protected String collect() throws Exception {
+                return body.call();
+            }
+
+            @Override
+            protected void store(DiagnosticReport report, String result) {
+                report.product = report.product == null ? result : report.product + "," + result;
+            }
+        };
+    }
+
+    private DiagnosticPipeline start(DiagnosticCollector<?>... collectors) {
+        DiagnosticPipeline pipeline = new DiagnosticPipeline();
+        pipeline.start(report, Arrays.asList(collectors), new DiagnosticPipeline.Listener() {
+            @Override
+            public void onCollectorFinished(CollectorResult result, DiagnosticReport r) {
+                synchronized (finished) {
+                    finished.add(result.name + " " + result.status);
+                }
+            }
+
+            @Override
+            public void onComplete(DiagnosticReport r) {
+                complete.countDown();
+            }
+        });
+        return pipeline;
+    }
+
+    @Test
+    public void runsExclusiveCollectorsOneAtATimeInOrder() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch benchStarted = new CountDownLatch(1);
+        List<DiagnosticCollector<?>> collectors = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            String name = "bench-" + i;
+            collectors.add(collector(name, 2_000, true, () -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                benchStarted.countDown();
+                Thread.sleep(50);
+                active.decrementAndGet();
+                return name;
+            }));
+        }
+        // A light collector that can only finish while a benchmark is running alongside it
+        collectors.add(1, collector("battery", 2_000, false, () -> {
+            assertTrue(benchStarted.await(1, TimeUnit.SECONDS));
+            return "battery";
+        }));
+
+        start(collectors.toArray(new DiagnosticCollector<?>[0]));
+        assertTrue(complete.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, maxActive.get());
+        assertTrue(report.product, report.product.matches("(battery,)?bench-1,(battery,)?bench-2,bench-3"));
+        List<String> benches = new ArrayList<>(finished);
+        benches.remove("battery ok");
+        assertEquals(Arrays.asList("bench-1 ok", "bench-2 ok", "bench-3 ok"), benches);
+        assertEquals(4, report.collectors.size());
+    }
+
+    @Test
+    public void aBenchmarkThatIgnoresItsTimeoutDoesNotHoldUpTheNext() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            start(collector("stuck", 100, true, () -> {
+                // Ignores interrupts, like a kernel that never checks for them
+                while (release.getCount() > 0) Thread.onSpinWait();
+                return "stuck";
+            }), collector("storage", 1_000, true, () -> "storage"));
+
+            assertTrue(complete.await(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("stuck timeout", "storage ok"), finished);
+            assertEquals("storage", report.product);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void interruptsACollectorThatTimesOutAndDropsItsLateResult() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        start(collector("slow", 50, false, () -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "late";
+        }));
+
+        assertTrue(complete.await(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("slow timeout"), finished);
+        CollectorResult result = report.collectors.get(0);
+        assertEquals("no result within 50 ms", result.error);
+        assertTrue(result.elapsedMs >= 50);
+        Thread.sleep(50);
+        assertNull(report.product);
+    }
+}
@@ -0,0 +1,96 @@
+package com.testr.dut.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StorageBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void sequentialRateIsMegabytesPerSecond() {
+        StorageBenchmark.ProfileResult r = StorageBenchmark.sequential("seq-read", 256L << 20, 500_000_000L, true);
+        assertEquals("seq-read", r.name);
+        assertEquals(0, r.queueDepth);
+        assertEquals(268.435456 / 0.5, r.mbPerSec, 1e-9);
+        assertEquals(0, r.iops, 0);
+        assertTrue(r.cacheEvicted);
+
+        assertEquals(0, StorageBenchmark.sequential("seq-write", 1 << 20, 0, false).mbPerSec, 0);
+    }
+
+    @Test
+    public void randomRateAndNearestRankP99() {
+        // 200 reads over 0.1 s taking 1..200 us: p99 is the 198th smallest
+        long[] latencies = new long[200];
+        for (int i = 0; i < latencies.length; i++) latencies[i] = (200 - i) * 1_000L;
+        StorageBenchmark.ProfileResult r = StorageBenchmark.random("rand-read", 4, latencies, 100_000_000L, false);
+
+        assertEquals(4, r.queueDepth);
+        assertEquals(2_000, r.iops, 1e-9);
+        assertEquals(2_000 * 4096 / 1e6, r.mbPerSec, 1e-9);
+        assertEquals(198, r.p99LatencyUs, 0);
+
+        // A single sample is its own p99; no samples leave it at 0
+        assertEquals(7, StorageBenchmark.random("rand-write", 1, new long[]{7_000}, 1_000, false).p99LatencyUs, 0);
+        StorageBenchmark.ProfileResult none = StorageBenchmark.random("rand-read", 32, new long[0], 0, true);
+        assertEquals(0, none.iops, 0);
+        assertEquals(0, none.p99LatencyUs, 0);
+    }
+
+    @Test
+    public void fadviseIsUnavailableWithoutTheNativeLibrary() {
+        // No libtestr_io on a desktop JVM: eviction reports failure instead of throwing
+        assertFalse(FadviseCacheControl.isAvailable());
+        assertFalse(new FadviseCacheControl().evict(new File(tmp.getRoot(), "any")));
+    }
+
+    @Test
+    public void fallsBackToTheNextCacheControlAndSaysSoPerProfile() throws Exception {
+        List<String> evicted = new ArrayList<>();
+        CacheControl recording = file -> {
+            evicted.add(file.getName());
+            return true;
+        };
+        StorageBenchmark.Settings settings = new StorageBenchmark.Settings();
+        settings.fileBytes = 8L << 20;
+        settings.randomMs = 50;
+        settings.queueDepths = new int[]{1, 4};
+
+        File dir = tmp.newFolder("bench");
+        StorageBenchmark.Result result = new StorageBenchmark(settings,
+                CacheControl.firstOf(new FadviseCacheControl(), recording)).run(dir);
+
+        assertEquals(8L << 20, result.fileBytes);
+        // seq-read, two rand-reads and mmap-read each asked for an eviction, which the fallback gave
+        assertEquals(4, evicted.size());
+        for (String[] profile : new String[][]{{"seq-read", "0"}, {"rand-read", "1"}, {"rand-read", "4"}, {"mmap-read", "0"}}) {
+            StorageBenchmark.ProfileResult p = result.find(profile[0], Integer.parseInt(profile[1]));
+            assertNotNull(Arrays.toString(profile), p);
+            assertTrue(Arrays.toString(profile), p.cacheEvicted);
+            assertTrue(Arrays.toString(profile), p.mbPerSec > 0);
+        }
+        for (String write : new String[]{"seq-write", "rand-write"}) {
+            assertFalse(write, result.find(write, write.equals("seq-write") ? 0 : 1).cacheEvicted);
+        }
+        assertTrue(result.find("rand-read", 4).iops > 0);
+        assertNull(result.find("rand-read", 16));
+        assertEquals(0, dir.list().length);
+
+        StorageBenchmark.Result uncached = new StorageBenchmark(settings, CacheControl.NONE).run(dir);
+        assertFalse(uncached.find("seq-read", 0).cacheEvicted);
+    }
+}
@@ -0,0 +1,46 @@
+package com.testr_backend;
+
+import com.testr_backend.live.StatsDelta;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.service.IngestQueue;
+import com.testr_backend.stats.AnomalyDetector;
+import com.testr_backend.stats.AnomalyFlag;
+import com.testr_backend.stats.FleetStats;
+import com.testr_backend.web.BatchIngestResponse;
+import com.testr_backend.web.CacheStatsController;
+import com.testr_backend.web.DiagnosticRunPage;
+import com.testr_backend.web.DiagnosticRunRequest;
+import com.testr_backend.web.DiagnosticRunView;
+import com.testr_backend.web.IngestAccepted;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Reflection hints for everything Jackson reads or writes, for AOT builds
+ * (mvn -Paot) and native images. Spring infers hints from controller method
+ * signatures, but not for the nested classes behind public fields (FleetStats,
+ * StatsDelta) or for what is written through an ObjectMapper directly (NDJSON
+ * export, SSE events, retention archives). Listing every API type here keeps
+ * that from depending on which ones happen to be inferred.
+ */
+@Configuration(proxyBeanMethods = false)
+@RegisterReflectionForBinding({
+        DiagnosticRun.class,
+        DiagnosticRunRequest.class,
+        DiagnosticRunView.class,
+        DiagnosticRunPage.class,
+        BatchIngestResponse.class,
+        IngestAccepted.class,
+        IngestQueue.Stats.class,
+        FleetStats.class,
+        FleetStats.GroupStats.class,
+        FleetStats.MetricSummary.class,
+        StatsDelta.class,
+        StatsDelta.ModelDelta.class,
+        StatsDelta.MetricDelta.class,
+        AnomalyFlag.class,
+        AnomalyDetector.Baseline.class,
+        CacheStatsController.CacheStatsView.class,
+})
+public class AotHints {
+}
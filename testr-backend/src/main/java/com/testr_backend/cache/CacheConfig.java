@@ -0,0 +1,10 @@
+package com.testr_backend.cache;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+// Caches are Caffeine-backed via spring.cache.* in application.properties.
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
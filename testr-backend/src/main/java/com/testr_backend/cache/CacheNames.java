@@ -0,0 +1,11 @@
+package com.testr_backend.cache;
+
+// Caffeine caches in front of the dashboard read paths. Sizes and TTLs are set in application.properties.
+public final class CacheNames {
+    // First page of GET /v1/diagnostics, keyed by [filter, limit]
+    public static final String FIRST_PAGES = "runFirstPages";
+    // GET /v1/diagnostics/stats, keyed by filter
+    public static final String FLEET_STATS = "fleetStats";
+
+    private CacheNames() {}
+}
@@ -0,0 +1,56 @@
+package com.testr_backend.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.repo.DiagnosticRunFilter;
+import com.testr_backend.service.DiagnosticRunsSavedEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Evicts exactly the cached pages and stats a newly committed run belongs to,
+ * and leaves everything else (other models, closed time ranges) cached.
+ *
+ * Eviction happens after commit so a concurrent read can't re-cache the old rows
+ * in between. A read that started before the commit can still store its result
+ * just after the eviction; the cache TTL bounds how long that can last.
+ */
+@Component
+public class RunCacheInvalidator {
+
+    private final CacheManager cacheManager;
+
+    public RunCacheInvalidator(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @TransactionalEventListener
+    public void onSaved(DiagnosticRunsSavedEvent event) {
+        List<DiagnosticRun> runs = event.runs();
+
+        // key = [filter, limit]
+        evictIf(CacheNames.FIRST_PAGES, key -> {
+            DiagnosticRunFilter filter = (DiagnosticRunFilter) ((List<?>) key).get(0);
+            return runs.stream().anyMatch(filter::matches);
+        });
+
+        // key = filter. Stats buckets by hour, so ignore `from` rather than reason about truncation.
+        evictIf(CacheNames.FLEET_STATS, key -> {
+            DiagnosticRunFilter filter = (DiagnosticRunFilter) key;
+            DiagnosticRunFilter widened = new DiagnosticRunFilter(filter.deviceModel, null, filter.to);
+            return runs.stream().anyMatch(widened::matches);
+        });
+    }
+
+    private void evictIf(String cacheName, Predicate<Object> stale) {
+        if (cacheManager.getCache(cacheName) instanceof CaffeineCache cache) {
+            Cache<Object, Object> nativeCache = cache.getNativeCache();
+            nativeCache.asMap().keySet().removeIf(stale);
+        }
+    }
+}
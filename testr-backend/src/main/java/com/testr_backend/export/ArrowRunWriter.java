@@ -0,0 +1,294 @@
+package com.testr_backend.export;
+
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.model.DiagnosticRun;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Arrow IPC stream format: a schema message, a record batch per BATCH_ROWS
+ * runs, then the end-of-stream marker. Each message is a FlatBuffers header
+ * followed by the raw column buffers, so a batch is encoded by copying the
+ * columns it filled. Written by hand rather than with the Arrow Java library,
+ * which brings its own off-heap allocator and needs --add-opens on Java 17+.
+ *
+ * Columns, in order: id int64; sessionId, deviceModel utf8; one int8 per
+ * metric; manufacturer, androidVersion, securityPatch utf8; timestamp in
+ * microseconds without a zone, like the stored LocalDateTime. The strings and
+ * the timestamp are nullable.
+ */
+final class ArrowRunWriter implements RunWriter {
+
+    static final int BATCH_ROWS = 16 * 1024;
+
+    private static final DiagnosticMetric[] METRICS = DiagnosticMetric.values();
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Constants from Arrow's Message.fbs and Schema.fbs
+    private static final int CONTINUATION = 0xFFFFFFFF;
+    private static final int METADATA_V5 = 4;
+    private static final int HEADER_SCHEMA = 1;
+    private static final int HEADER_RECORD_BATCH = 3;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_UTF8 = 5;
+    private static final int TYPE_TIMESTAMP = 10;
+    private static final int UNIT_MICROSECOND = 2;
+
+    private record Column(String name, int type, int bitWidth, boolean nullable) {}
+
+    private static final List<Column> COLUMNS = new ArrayList<>();
+    static {
+        COLUMNS.add(new Column("id", TYPE_INT, 64, false));
+        COLUMNS.add(new Column("sessionId", TYPE_UTF8, 0, true));
+        COLUMNS.add(new Column("deviceModel", TYPE_UTF8, 0, true));
+        for (DiagnosticMetric metric : METRICS) COLUMNS.add(new Column(metric.jsonName(), TYPE_INT, 8, false));
+        COLUMNS.add(new Column("manufacturer", TYPE_UTF8, 0, true));
+        COLUMNS.add(new Column("androidVersion", TYPE_UTF8, 0, true));
+        COLUMNS.add(new Column("securityPatch", TYPE_UTF8, 0, true));
+        COLUMNS.add(new Column("timestamp", TYPE_TIMESTAMP, 0, true));
+    }
+
+    // Values, offsets and validity bits of one utf8 column in the current batch.
+    private static final class Utf8Column {
+        final int[] offsets = new int[BATCH_ROWS + 1];
+        final byte[] valid = new byte[BATCH_ROWS / 8];
+        byte[] data = new byte[BATCH_ROWS * 8];
+        int nulls;
+
+        void set(int row, String s) {
+            int start = offsets[row];
+            if (s == null) {
+                offsets[row + 1] = start;
+                nulls++;
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (start + bytes.length > data.length) data = Arrays.copyOf(data, Math.max(start + bytes.length, data.length * 2));
+            System.arraycopy(bytes, 0, data, start, bytes.length);
+            offsets[row + 1] = start + bytes.length;
+            valid[row >> 3] |= (byte) (1 << (row & 7));
+        }
+
+        void clear() {
+            Arrays.fill(valid, (byte) 0);
+            nulls = 0;
+        }
+    }
+
+    private final OutputStream out;
+
+    private final long[] ids = new long[BATCH_ROWS];
+    private final Utf8Column sessionIds = new Utf8Column();
+    private final Utf8Column models = new Utf8Column();
+    private final byte[][] metrics = new byte[METRICS.length][BATCH_ROWS];
+    private final Utf8Column manufacturers = new Utf8Column();
+    private final Utf8Column androidVersions = new Utf8Column();
+    private final Utf8Column securityPatches = new Utf8Column();
+    private final long[] micros = new long[BATCH_ROWS];
+    private final byte[] timestampValid = new byte[BATCH_ROWS / 8];
+    private int timestampNulls;
+    private int rows;
+
+    // The current batch's message body, reused across batches, and its buffers as (offset, length) pairs
+    private byte[] body = new byte[BATCH_ROWS * 32];
+    private int bodyLength;
+    private final long[] buffers = new long[2 * 32];
+    private int bufferCount;
+
+    ArrowRunWriter(OutputStream out) throws IOException {
+        this.out = out;
+        message(schemaMetadata());
+    }
+
+    @Override
+    public void write(DiagnosticRun run) throws IOException {
+        int row = rows;
+        ids[row] = run.getId();
+        sessionIds.set(row, run.getSessionId());
+        models.set(row, run.getDeviceModel());
+        for (int k = 0; k < METRICS.length; k++) metrics[k][row] = (byte) METRICS[k].valueOf(run);
+        manufacturers.set(row, run.getManufacturer());
+        androidVersions.set(row, run.getAndroidVersion());
+        securityPatches.set(row, run.getSecurityPatch());
+        LocalDateTime ts = run.getTimestamp();
+        if (ts != null) {
+            micros[row] = ts.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + ts.getNano() / 1_000;
+            timestampValid[row >> 3] |= (byte) (1 << (row & 7));
+        } else {
+            micros[row] = 0;
+            timestampNulls++;
+        }
+        if (++rows == BATCH_ROWS) flushBatch();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (rows > 0) flushBatch();
+        writeInt(CONTINUATION);
+        writeInt(0);
+        out.flush();
+    }
+
+    private void flushBatch() throws IOException {
+        int n = rows;
+        bodyLength = 0;
+        bufferCount = 0;
+        long[] nulls = new long[COLUMNS.size()];
+        int c = 0;
+
+        noValidity();
+        longs(ids, n);
+        c++;
+        for (Utf8Column col : new Utf8Column[]{sessionIds, models}) nulls[c++] = utf8(col, n);
+        for (byte[] column : metrics) {
+            noValidity();
+            bytes(column, n);
+            c++;
+        }
+        for (Utf8Column col : new Utf8Column[]{manufacturers, androidVersions, securityPatches}) nulls[c++] = utf8(col, n);
+        nulls[c] = timestampNulls;
+        validity(timestampValid, timestampNulls, n);
+        longs(micros, n);
+
+        message(recordBatchMetadata(n, nulls));
+        out.write(body, 0, bodyLength);
+
+        for (Utf8Column col : new Utf8Column[]{sessionIds, models, manufacturers, androidVersions, securityPatches}) col.clear();
+        Arrays.fill(timestampValid, (byte) 0);
+        timestampNulls = 0;
+        rows = 0;
+    }
+
+    private long utf8(Utf8Column col, int n) {
+        validity(col.valid, col.nulls, n);
+        int start = reserve(4L * (n + 1));
+        for (int i = 0; i <= n; i++) INTS.set(body, start + 4 * i, col.offsets[i]);
+        bytes(col.data, col.offsets[n]);
+        return col.nulls;
+    }
+
+    // A validity bitmap may be left out (length 0) when a column has no nulls.
+    private void validity(byte[] bits, int nulls, int n) {
+        if (nulls == 0) noValidity();
+        else bytes(bits, (n + 7) / 8);
+    }
+
+    private void noValidity() {
+        buffers[2 * bufferCount] = bodyLength;
+        buffers[2 * bufferCount + 1] = 0;
+        bufferCount++;
+    }
+
+    private void longs(long[] values, int n) {
+        int start = reserve(8L * n);
+        for (int i = 0; i < n; i++) LONGS.set(body, start + 8 * i, values[i]);
+    }
+
+    private void bytes(byte[] values, int n) {
+        int start = reserve(n);
+        System.arraycopy(values, 0, body, start, n);
+    }
+
+    // Adds a buffer of {@code length} bytes to the body, padded to 8 bytes, and returns where it starts.
+    private int reserve(long length) {
+        int start = bodyLength;
+        int end = Math.toIntExact((start + length + 7) & -8);
+        if (end > body.length) body = Arrays.copyOf(body, Math.max(end, body.length * 2));
+        Arrays.fill(body, Math.toIntExact(start + length), end, (byte) 0);
+        buffers[2 * bufferCount] = start;
+        buffers[2 * bufferCount + 1] = length;
+        bufferCount++;
+        bodyLength = end;
+        return start;
+    }
+
+    private byte[] schemaMetadata() {
+        FlatBufferWriter fb = new FlatBufferWriter();
+        FlatBufferWriter.Table message = message(fb, HEADER_SCHEMA, 0);
+        FlatBufferWriter.Table schema = fb.table(0, 4); // endianness (little, the default), fields
+        fb.ref(message.field()[2], schema.start());
+
+        int fields = fb.vector(COLUMNS.size(), 4, 4);
+        fb.ref(schema.field()[1], fields);
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            Column column = COLUMNS.get(i);
+            // name, nullable, type_type, type, dictionary, children
+            FlatBufferWriter.Table field = fb.table(4, 1, 1, 4, 0, 4);
+            fb.ref(fields + 4 + 4 * i, field.start());
+            fb.ref(field.field()[0], fb.string(column.name()));
+            fb.putByte(field.field()[1], column.nullable() ? 1 : 0);
+            fb.putByte(field.field()[2], column.type());
+
+            FlatBufferWriter.Table type;
+            if (column.type() == TYPE_INT) {
+                type = fb.table(4, 1); // bitWidth, is_signed
+                fb.putInt(type.field()[0], column.bitWidth());
+                fb.putByte(type.field()[1], 1);
+            } else if (column.type() == TYPE_TIMESTAMP) {
+                type = fb.table(2); // unit; no timezone
+                fb.putShort(type.field()[0], UNIT_MICROSECOND);
+            } else {
+                type = fb.table();
+            }
+            fb.ref(field.field()[3], type.start());
+            fb.ref(field.field()[5], fb.vector(0, 4, 4));
+        }
+        return fb.finish(message);
+    }
+
+    private byte[] recordBatchMetadata(int n, long[] nulls) {
+        FlatBufferWriter fb = new FlatBufferWriter();
+        FlatBufferWriter.Table message = message(fb, HEADER_RECORD_BATCH, bodyLength);
+        FlatBufferWriter.Table batch = fb.table(8, 4, 4); // length, nodes, buffers
+        fb.ref(message.field()[2], batch.start());
+        fb.putLong(batch.field()[0], n);
+
+        int nodes = fb.vector(COLUMNS.size(), 16, 8); // struct FieldNode { length, null_count }
+        fb.ref(batch.field()[1], nodes);
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            fb.putLong(nodes + 4 + 16 * i, n);
+            fb.putLong(nodes + 4 + 16 * i + 8, nulls[i]);
+        }
+        int bufs = fb.vector(bufferCount, 16, 8); // struct Buffer { offset, length }
+        fb.ref(batch.field()[2], bufs);
+        for (int i = 0; i < bufferCount; i++) {
+            fb.putLong(bufs + 4 + 16 * i, buffers[2 * i]);
+            fb.putLong(bufs + 4 + 16 * i + 8, buffers[2 * i + 1]);
+        }
+        return fb.finish(message);
+    }
+
+    // table Message { version, header_type, header, bodyLength }; the header is linked by the caller
+    private static FlatBufferWriter.Table message(FlatBufferWriter fb, int headerType, long bodyLength) {
+        FlatBufferWriter.Table message = fb.table(2, 1, 4, 8);
+        fb.putShort(message.field()[0], METADATA_V5);
+        fb.putByte(message.field()[1], headerType);
+        fb.putLong(message.field()[3], bodyLength);
+        return message;
+    }
+
+    // Encapsulated message: continuation marker, metadata length, metadata (8-aligned), body.
+    private void message(byte[] metadata) throws IOException {
+        writeInt(CONTINUATION);
+        writeInt(metadata.length);
+        out.write(metadata);
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.write(v);
+        out.write(v >>> 8);
+        out.write(v >>> 16);
+        out.write(v >>> 24);
+    }
+}
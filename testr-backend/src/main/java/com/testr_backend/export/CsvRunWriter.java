@@ -0,0 +1,82 @@
+package com.testr_backend.export;
+
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.model.DiagnosticRun;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+// RFC 4180 CSV with a header row, gzipped as it is written. Null strings are empty fields.
+final class CsvRunWriter implements RunWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DiagnosticMetric[] METRICS = DiagnosticMetric.values();
+
+    private final GZIPOutputStream gzip;
+    private final Writer out;
+
+    CsvRunWriter(OutputStream target) throws IOException {
+        // Level 1: about 1.5x the rows per second of the default level, for ~40% more bytes
+        this.gzip = new GZIPOutputStream(target, BUFFER_SIZE) {{
+            def.setLevel(Deflater.BEST_SPEED);
+        }};
+        this.out = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), BUFFER_SIZE);
+        out.write("id,sessionId,deviceModel");
+        for (DiagnosticMetric metric : METRICS) {
+            out.write(',');
+            out.write(metric.jsonName());
+        }
+        out.write(",manufacturer,androidVersion,securityPatch,timestamp\r\n");
+    }
+
+    @Override
+    public void write(DiagnosticRun run) throws IOException {
+        out.write(Long.toString(run.getId()));
+        out.write(',');
+        text(run.getSessionId());
+        out.write(',');
+        text(run.getDeviceModel());
+        for (DiagnosticMetric metric : METRICS) {
+            out.write(',');
+            out.write(Integer.toString(metric.valueOf(run)));
+        }
+        out.write(',');
+        text(run.getManufacturer());
+        out.write(',');
+        text(run.getAndroidVersion());
+        out.write(',');
+        text(run.getSecurityPatch());
+        out.write(',');
+        if (run.getTimestamp() != null) out.write(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(run.getTimestamp()));
+        out.write("\r\n");
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.flush();
+        gzip.finish();
+    }
+
+    private void text(String s) throws IOException {
+        if (s == null) return;
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        out.write(s.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,122 @@
+package com.testr_backend.export;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Just enough of a FlatBuffers encoder for Arrow's IPC metadata. The reference
+ * builder writes back to front; this one lays objects out front to back: a
+ * table first, then what it refers to, with each reference patched once its
+ * target is written. References then always point forward, as the format
+ * requires, and callers write in the order of the schema.
+ *
+ * Tables start at 4 mod 8 so that their 8-byte fields, which come first after
+ * the vtable offset, are 8-aligned. Everything is little-endian.
+ */
+final class FlatBufferWriter {
+
+    // Where a table starts, and where each of its fields goes (-1 = absent).
+    record Table(int start, int[] field) {}
+
+    private byte[] buf = new byte[512];
+    private int pos = 4; // 0..3: offset of the root table, set by finish()
+
+    /**
+     * Writes a table's vtable and reserves its fields. {@code sizes} holds the
+     * byte size of each field by vtable slot (its id in the .fbs), 0 for fields
+     * left out. References to tables, vectors and strings are 4 bytes.
+     */
+    Table table(int... sizes) {
+        align(2);
+        int vtable = pos;
+        int vtableSize = 4 + 2 * sizes.length;
+        int[] field = new int[sizes.length];
+        int tableSize = 4;
+        for (int size : new int[]{8, 4, 2, 1}) {
+            for (int i = 0; i < sizes.length; i++) {
+                if (sizes[i] == size) {
+                    field[i] = tableSize;
+                    tableSize += size;
+                }
+            }
+        }
+        int start = vtable + vtableSize;
+        while ((start & 7) != 4) start++;
+        reserve(start + tableSize);
+
+        putShort(vtable, vtableSize);
+        putShort(vtable + 2, tableSize);
+        for (int i = 0; i < sizes.length; i++) {
+            putShort(vtable + 4 + 2 * i, sizes[i] == 0 ? 0 : field[i]);
+            field[i] = sizes[i] == 0 ? -1 : start + field[i];
+        }
+        putInt(start, start - vtable); // the vtable sits at start minus this
+        pos = start + tableSize;
+        return new Table(start, field);
+    }
+
+    int string(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        align(4);
+        int start = pos;
+        reserve(start + 4 + bytes.length + 1);
+        putInt(start, bytes.length);
+        System.arraycopy(bytes, 0, buf, start + 4, bytes.length);
+        pos = start + 4 + bytes.length + 1; // NUL-terminated
+        return start;
+    }
+
+    /**
+     * Reserves a vector of {@code count} elements of {@code size} bytes whose
+     * elements are {@code align}-aligned. Returns where the length is; the
+     * elements follow it.
+     */
+    int vector(int count, int size, int align) {
+        align(4);
+        while (((pos + 4) % align) != 0) pos += 4;
+        int start = pos;
+        reserve(start + 4 + count * size);
+        putInt(start, count);
+        pos = start + 4 + count * size;
+        return start;
+    }
+
+    // Points the reference at {@code at} to {@code target}, which must come after it.
+    void ref(int at, int target) {
+        if (target <= at) throw new IllegalStateException("FlatBuffer references must point forward");
+        putInt(at, target - at);
+    }
+
+    void putByte(int at, int v) {
+        buf[at] = (byte) v;
+    }
+
+    void putShort(int at, int v) {
+        buf[at] = (byte) v;
+        buf[at + 1] = (byte) (v >>> 8);
+    }
+
+    void putInt(int at, int v) {
+        for (int i = 0; i < 4; i++) buf[at + i] = (byte) (v >>> (8 * i));
+    }
+
+    void putLong(int at, long v) {
+        for (int i = 0; i < 8; i++) buf[at + i] = (byte) (v >>> (8 * i));
+    }
+
+    // The finished buffer, padded to a multiple of 8 as Arrow wants its metadata.
+    byte[] finish(Table root) {
+        ref(0, root.start());
+        align(8);
+        reserve(pos);
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private void align(int n) {
+        pos = (pos + n - 1) & -n;
+    }
+
+    private void reserve(int end) {
+        if (end > buf.length) buf = Arrays.copyOf(buf, Math.max(end, buf.length * 2));
+    }
+}
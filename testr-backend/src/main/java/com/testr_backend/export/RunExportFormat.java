@@ -0,0 +1,49 @@
+package com.testr_backend.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Formats of GET /v1/diagnostics/export?format=...
+public enum RunExportFormat {
+
+    // One row per run, gzipped; opens in any spreadsheet or CSV reader after gunzip.
+    CSV("application/gzip", "runs.csv.gz") {
+        @Override
+        public RunWriter open(OutputStream out) throws IOException {
+            return new CsvRunWriter(out);
+        }
+    },
+
+    // Arrow IPC stream: pyarrow.ipc.open_stream, polars.read_ipc_stream, DuckDB, Spark, ...
+    ARROW("application/vnd.apache.arrow.stream", "runs.arrows") {
+        @Override
+        public RunWriter open(OutputStream out) throws IOException {
+            return new ArrowRunWriter(out);
+        }
+    };
+
+    private final String contentType;
+    private final String fileName;
+
+    RunExportFormat(String contentType, String fileName) {
+        this.contentType = contentType;
+        this.fileName = fileName;
+    }
+
+    public abstract RunWriter open(OutputStream out) throws IOException;
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public String fileName() {
+        return fileName;
+    }
+
+    public static RunExportFormat of(String name) {
+        for (RunExportFormat f : values()) {
+            if (f.name().equalsIgnoreCase(name)) return f;
+        }
+        throw new IllegalArgumentException("Unknown export format '" + name + "', expected csv or arrow");
+    }
+}
@@ -0,0 +1,18 @@
+package com.testr_backend.export;
+
+import com.testr_backend.model.DiagnosticRun;
+
+import java.io.IOException;
+
+/**
+ * Encodes runs one by one onto an output stream, in whatever chunks the format
+ * uses, so an export of any size holds at most one chunk in memory. Columns are
+ * the fields of the JSON API, under the same names; metrics are -1 when unknown.
+ */
+public interface RunWriter {
+
+    void write(DiagnosticRun run) throws IOException;
+
+    // Writes what is still buffered and the format's trailer. Leaves the output stream open.
+    void finish() throws IOException;
+}
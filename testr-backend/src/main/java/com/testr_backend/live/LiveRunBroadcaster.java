@@ -0,0 +1,190 @@
+package com.testr_backend.live;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.service.DiagnosticRunsSavedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes committed runs (and the stats delta they cause) to every connected
+ * dashboard over server-sent events.
+ *
+ * The ingest thread only offers the event to a bounded queue. One dispatcher
+ * serializes each event once and offers the bytes to every subscriber's own small
+ * buffer; each subscriber has a virtual thread that writes its buffer to the
+ * socket. A slow client only fills its own buffer and is then disconnected (the
+ * browser's EventSource reconnects and refetches), and idle connections hold no
+ * platform thread.
+ */
+@Component
+public class LiveRunBroadcaster implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveRunBroadcaster.class);
+
+    private static final int DISPATCH_QUEUE = 1024;
+    private static final int SUBSCRIBER_BUFFER = 256;
+
+    private final ObjectMapper mapper;
+    private final long emitterTimeoutMs;
+    private final int maxSubscribers;
+
+    private final BlockingQueue<List<DiagnosticRun>> pending = new ArrayBlockingQueue<>(DISPATCH_QUEUE);
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    public LiveRunBroadcaster(ObjectMapper mapper,
+                              @Value("${testr.live.emitter-timeout-ms:1800000}") long emitterTimeoutMs,
+                              @Value("${testr.live.max-subscribers:10000}") int maxSubscribers) {
+        this.mapper = mapper;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    /**
+     * Opens a stream for one client.
+     * @return the emitter, or null when the subscriber limit is reached
+     */
+    public SseEmitter subscribe() {
+        if (!running || subscribers.size() >= maxSubscribers) return null;
+
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber sub = new Subscriber(emitter);
+        subscribers.add(sub);
+
+        emitter.onCompletion(sub::close);
+        emitter.onTimeout(sub::close);
+        emitter.onError(e -> sub.close());
+
+        sub.offer(SseEmitter.event().name("hello").data("{}"));
+        Thread.ofVirtual().name("sse-subscriber").start(sub::writeLoop);
+        return emitter;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @TransactionalEventListener
+    public void onSaved(DiagnosticRunsSavedEvent event) {
+        if (subscribers.isEmpty()) return;
+        if (!pending.offer(event.runs())) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    // Keeps idle connections from being closed by proxies and notices dead clients.
+    @Scheduled(fixedDelayString = "${testr.live.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (Subscriber sub : subscribers) {
+            sub.offer(SseEmitter.event().comment("ping"));
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            List<DiagnosticRun> runs;
+            try {
+                runs = pending.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            try {
+                // Serialize once, then every subscriber writes the same strings.
+                String runsJson = mapper.writeValueAsString(runs);
+                String deltaJson = mapper.writeValueAsString(StatsDelta.of(runs));
+                for (Subscriber sub : subscribers) {
+                    sub.offer(SseEmitter.event().name("runs").data(runsJson));
+                    sub.offer(SseEmitter.event().name("stats").data(deltaJson));
+                }
+            } catch (JsonProcessingException e) {
+                log.warn("Could not serialize live update", e);
+            }
+        }
+    }
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final BlockingQueue<SseEmitter.SseEventBuilder> buffer = new ArrayBlockingQueue<>(SUBSCRIBER_BUFFER);
+        volatile boolean open = true;
+        Thread writer;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(SseEmitter.SseEventBuilder event) {
+            if (open && !buffer.offer(event)) {
+                // Too slow to keep up; drop it so it reconnects with a fresh snapshot.
+                close();
+                emitter.complete();
+            }
+        }
+
+        void writeLoop() {
+            writer = Thread.currentThread();
+            try {
+                while (open) {
+                    emitter.send(buffer.take());
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+
+        void close() {
+            open = false;
+            subscribers.remove(this);
+            Thread w = writer;
+            if (w != null && w != Thread.currentThread()) w.interrupt();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        dispatcher = Thread.ofPlatform().name("sse-dispatcher").daemon().start(this::dispatchLoop);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        dispatcher.interrupt();
+        for (Subscriber sub : subscribers) {
+            sub.close();
+            sub.emitter.complete();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Stop before the web server's graceful shutdown so open streams don't hold it up.
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+}
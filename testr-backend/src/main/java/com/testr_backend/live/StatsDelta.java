@@ -0,0 +1,66 @@
+package com.testr_backend.live;
+
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.stats.MetricRollupRepository;
+
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a set of newly committed runs adds to /v1/diagnostics/stats, per model.
+ * Clients add these to the count/sum/unknownCount and fleet histogram they
+ * already hold and recompute averages and percentiles locally instead of
+ * refetching stats.
+ */
+public class StatsDelta {
+    public List<ModelDelta> models = new ArrayList<>();
+
+    public static class ModelDelta {
+        public String deviceModel;
+        public long runCount;
+        public Map<String, MetricDelta> metrics = new LinkedHashMap<>();
+    }
+
+    public static class MetricDelta {
+        public long count;
+        public long sum;
+        public long unknownCount;
+        public Map<Integer, Long> values = new TreeMap<>(); // value -> runs that reported it
+    }
+
+    public static StatsDelta of(List<DiagnosticRun> runs) {
+        Map<String, ModelDelta> byModel = new LinkedHashMap<>();
+        for (DiagnosticRun run : runs) {
+            String model = MetricRollupRepository.modelKey(run.getDeviceModel());
+            ModelDelta d = byModel.computeIfAbsent(model, m -> {
+                ModelDelta md = new ModelDelta();
+                md.deviceModel = m;
+                for (DiagnosticMetric metric : DiagnosticMetric.values()) {
+                    md.metrics.put(metric.jsonName(), new MetricDelta());
+                }
+                return md;
+            });
+
+            d.runCount++;
+            for (DiagnosticMetric metric : DiagnosticMetric.values()) {
+                MetricDelta m = d.metrics.get(metric.jsonName());
+                int v = metric.valueOf(run);
+                if (v == DiagnosticMetric.UNKNOWN) {
+                    m.unknownCount++;
+                } else {
+                    m.count++;
+                    m.sum += v;
+                    m.values.merge(v, 1L, Long::sum);
+                }
+            }
+        }
+
+        StatsDelta delta = new StatsDelta();
+        delta.models.addAll(byModel.values());
+        return delta;
+    }
+}
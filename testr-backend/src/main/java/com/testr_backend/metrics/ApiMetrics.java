@@ -0,0 +1,121 @@
+package com.testr_backend.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Meters for the ingest and dashboard read endpoints, scraped from
+ * /actuator/prometheus. Timers and size summaries publish histogram buckets so
+ * percentiles and SLO alerts can be computed across instances in Prometheus.
+ *
+ * Tags are fixed, low-cardinality values only; per-model counts live in
+ * IngestedRunCounter, which caps how many models get their own series.
+ */
+@Component
+public class ApiMetrics {
+
+    // Set by GzipRequestFilter: the compressed length, since the inflated request hides it
+    public static final String WIRE_BYTES_ATTRIBUTE = ApiMetrics.class.getName() + ".wireBytes";
+
+    private final Timer createSync;
+    private final Timer createAsync;
+    private final Timer page;
+    private final DistributionSummary pageRows;
+    private final DistributionSummary streamRows;
+    private final DistributionSummary payloadPlain;
+    private final DistributionSummary payloadGzip;
+    private final Counter rateLimited;
+    private final Counter shed;
+
+    public ApiMetrics(MeterRegistry registry) {
+        this.createSync = createTimer(registry, "sync");
+        this.createAsync = createTimer(registry, "async");
+        this.page = Timer.builder("testr.api.page")
+                .description("GET /v1/diagnostics, one keyset page")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.pageRows = rows(registry, "page");
+        this.streamRows = rows(registry, "stream");
+        this.payloadPlain = payload(registry, "identity");
+        this.payloadGzip = payload(registry, "gzip");
+        this.rateLimited = throttled(registry, "rate-limit");
+        this.shed = throttled(registry, "shed");
+    }
+
+    private static Timer createTimer(MeterRegistry registry, String mode) {
+        return Timer.builder("testr.api.create")
+                .description("POST /v1/diagnostics, including the commit in sync mode")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static DistributionSummary rows(MeterRegistry registry, String endpoint) {
+        return DistributionSummary.builder("testr.api.rows")
+                .description("Runs returned per read request")
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(1_000_000.0)
+                .register(registry);
+    }
+
+    private static DistributionSummary payload(MeterRegistry registry, String encoding) {
+        return DistributionSummary.builder("testr.ingest.payload")
+                .description("Upload body size as sent on the wire")
+                .baseUnit("bytes")
+                .tag("encoding", encoding)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(64.0)
+                .maximumExpectedValue(10_485_760.0)
+                .register(registry);
+    }
+
+    private static Counter throttled(MeterRegistry registry, String reason) {
+        return Counter.builder("testr.ingest.throttled")
+                .description("Uploads turned away before reaching the controller (see IngestThrottleFilter)")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    public <T> T timeCreate(boolean async, Supplier<T> create) {
+        return (async ? createAsync : createSync).record(create);
+    }
+
+    public <T> T timePage(Supplier<T> read) {
+        return page.record(read);
+    }
+
+    public void pageRows(int rows) {
+        pageRows.record(rows);
+    }
+
+    public void streamRows(long rows) {
+        streamRows.record(rows);
+    }
+
+    // Chunked uploads without a length are skipped rather than guessed
+    public void payload(HttpServletRequest request) {
+        Object wire = request.getAttribute(WIRE_BYTES_ATTRIBUTE);
+        if (wire instanceof Long bytes) {
+            if (bytes >= 0) payloadGzip.record(bytes);
+            return;
+        }
+        long bytes = request.getContentLengthLong();
+        if (bytes >= 0) payloadPlain.record(bytes);
+    }
+
+    public void rateLimited() {
+        rateLimited.increment();
+    }
+
+    public void shed() {
+        shed.increment();
+    }
+}
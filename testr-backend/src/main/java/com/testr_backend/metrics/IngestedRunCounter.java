@@ -0,0 +1,67 @@
+package com.testr_backend.metrics;
+
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.service.DiagnosticRunsSavedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts committed runs per device model (testr.ingest.runs{deviceModel=...}),
+ * whichever path stored them: sync, async queue or batch.
+ *
+ * deviceModel is free text from the client, so only the first
+ * testr.metrics.max-device-models distinct models get their own series; later
+ * ones are counted under "other". That bounds the series a bad client or a
+ * long tail of models can create, at the cost of an arbitrary (first-seen)
+ * choice of which models are named until the next restart.
+ */
+@Component
+public class IngestedRunCounter {
+
+    static final String OTHER = "other";
+    static final String UNKNOWN = "unknown";
+    private static final int MAX_TAG_LENGTH = 64;
+
+    private final MeterRegistry registry;
+    private final int maxModels;
+    private final Map<String, Counter> byModel = new ConcurrentHashMap<>();
+    private final Counter other;
+
+    public IngestedRunCounter(MeterRegistry registry,
+                              @Value("${testr.metrics.max-device-models:100}") int maxModels) {
+        this.registry = registry;
+        this.maxModels = maxModels;
+        this.other = counter(OTHER);
+    }
+
+    @TransactionalEventListener
+    public void onSaved(DiagnosticRunsSavedEvent event) {
+        for (DiagnosticRun run : event.runs()) {
+            counterFor(run.getDeviceModel()).increment();
+        }
+    }
+
+    Counter counterFor(String deviceModel) {
+        String model = deviceModel == null || deviceModel.isBlank() ? UNKNOWN : deviceModel.trim();
+        if (model.length() > MAX_TAG_LENGTH) model = model.substring(0, MAX_TAG_LENGTH);
+
+        Counter c = byModel.get(model);
+        if (c != null) return c;
+        // The size check races with other inserts, so the cap can be overshot by a few; that's fine.
+        if (byModel.size() >= maxModels) return other;
+        return byModel.computeIfAbsent(model, this::counter);
+    }
+
+    private Counter counter(String model) {
+        return Counter.builder("testr.ingest.runs")
+                .description("Runs committed, by device model (capped; the rest count as \"other\")")
+                .tag("deviceModel", model)
+                .register(registry);
+    }
+}
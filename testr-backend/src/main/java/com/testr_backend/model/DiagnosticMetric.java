@@ -0,0 +1,42 @@
+package com.testr_backend.model;
+
+import java.util.function.ToIntFunction;
+
+// The per-run percentage metrics. Every value is 0-100, or -1 when the DUT could not measure it.
+public enum DiagnosticMetric {
+    BATTERY_HEALTH("batteryHealth", "battery_health", DiagnosticRun::getBatteryHealth),
+    STORAGE_SPEED("storageSpeedPct", "storage_speed_pct", DiagnosticRun::getStorageSpeedPct),
+    CPU_PERFORMANCE("cpuPerformancePct", "cpu_performance_pct", DiagnosticRun::getCpuPerformancePct),
+    RAM_HEALTH("ramHealthPct", "ram_health_pct", DiagnosticRun::getRamHealthPct),
+    DISPLAY_TOUCH("displayTouchPct", "display_touch_pct", DiagnosticRun::getDisplayTouchPct),
+    CAMERA_CHECK("cameraCheckPct", "camera_check_pct", DiagnosticRun::getCameraCheckPct);
+
+    public static final int UNKNOWN = -1;
+    public static final int MAX_VALUE = 100;
+
+    private final String jsonName;
+    private final String column;
+    private final ToIntFunction<DiagnosticRun> getter;
+
+    DiagnosticMetric(String jsonName, String column, ToIntFunction<DiagnosticRun> getter) {
+        this.jsonName = jsonName;
+        this.column = column;
+        this.getter = getter;
+    }
+
+    // Same name the field has in DiagnosticRun's JSON, so API consumers see one vocabulary.
+    public String jsonName() {
+        return jsonName;
+    }
+
+    // Column in the diagnostic_run table.
+    public String column() {
+        return column;
+    }
+
+    // Reads the metric from a run, mapping anything outside 0-100 to UNKNOWN.
+    public int valueOf(DiagnosticRun run) {
+        int v = getter.applyAsInt(run);
+        return (v < 0 || v > MAX_VALUE) ? UNKNOWN : v;
+    }
+}
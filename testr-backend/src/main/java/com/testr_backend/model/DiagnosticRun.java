@@ -1,5 +1,7 @@
 package com.testr_backend.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
@@ -10,6 +12,10 @@ public class DiagnosticRun {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Set by the device per diagnostic session; uploads carrying the same id are stored once.
+    @Column(unique = true)
+    private String sessionId;
+
     private String deviceModel;
     private int batteryHealth;
     private int storageSpeedPct;
@@ -18,9 +24,18 @@ public class DiagnosticRun {
     private int displayTouchPct;
     private int cameraCheckPct;
 
+    // Summary of the device report; the rest lives in diagnostic_run_detail.
+    private String manufacturer;
+    private String androidVersion;
+    private String securityPatch;
 
     private LocalDateTime timestamp = LocalDateTime.now();
 
+    // Full report as uploaded, carried to the write path only (see DiagnosticRunDetail).
+    @Transient
+    @JsonIgnore
+    private JsonNode details;
+
     public DiagnosticRun() {}
 
     public DiagnosticRun(String deviceModel, int batteryHealth, int storageSpeedPct, int cpuPerformancePct, int ramHealthPct, int displayTouchPct, int cameraCheckPct) {
@@ -35,12 +50,28 @@ public class DiagnosticRun {
 
     // Getters and setters
     public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getSessionId() { return sessionId; }
+    public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+
     public String getDeviceModel() { return deviceModel; }
     public void setDeviceModel(String deviceModel) { this.deviceModel = deviceModel; }
 
     public int getBatteryHealth() { return batteryHealth; }
     public void setBatteryHealth(int batteryHealth) { this.batteryHealth = batteryHealth; }
 
+    public String getManufacturer() { return manufacturer; }
+    public void setManufacturer(String manufacturer) { this.manufacturer = manufacturer; }
+
+    public String getAndroidVersion() { return androidVersion; }
+    public void setAndroidVersion(String androidVersion) { this.androidVersion = androidVersion; }
+
+    public String getSecurityPatch() { return securityPatch; }
+    public void setSecurityPatch(String securityPatch) { this.securityPatch = securityPatch; }
+
+    public JsonNode getDetails() { return details; }
+    public void setDetails(JsonNode details) { this.details = details; }
+
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
 
@@ -68,6 +99,14 @@ public class DiagnosticRun {
         this.ramHealthPct = ramHealthPct;
     }
 
+    public int getStorageSpeedPct() {
+        return storageSpeedPct;
+    }
+
+    public void setStorageSpeedPct(int storageSpeedPct) {
+        this.storageSpeedPct = storageSpeedPct;
+    }
+
     public int getCpuPerformancePct() {
         return cpuPerformancePct;
     }
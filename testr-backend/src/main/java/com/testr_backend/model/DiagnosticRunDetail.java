@@ -0,0 +1,47 @@
+package com.testr_backend.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * The full device report for one run (sensors, connectivity, cameras, raw
+ * benchmark numbers...), kept out of diagnostic_run so list and stats queries
+ * never read it. Stored as JSONB on Postgres and only loaded when a single run
+ * is opened.
+ */
+@Entity
+@Table(name = "diagnostic_run_detail")
+public class DiagnosticRunDetail implements Persistable<Long> {
+
+    @Id
+    private Long runId;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(nullable = false)
+    private JsonNode report;
+
+    // Rows are only ever inserted once, so skip the select-before-merge for assigned ids.
+    @Transient
+    private boolean fresh;
+
+    protected DiagnosticRunDetail() {}
+
+    public DiagnosticRunDetail(Long runId, JsonNode report) {
+        this.runId = runId;
+        this.report = report;
+        this.fresh = true;
+    }
+
+    public Long getRunId() { return runId; }
+
+    public JsonNode getReport() { return report; }
+
+    @Override
+    public Long getId() { return runId; }
+
+    @Override
+    public boolean isNew() { return fresh; }
+}
@@ -0,0 +1,72 @@
+package com.testr_backend.model;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Hourly per-model rollup of one metric: the runs of {@code deviceModel} in the
+ * hour starting at {@code bucketHour}, as the count and sum of their known
+ * values, the count of unknown ones and a histogram with a slot per value 0-100.
+ * Metric values are whole percentages, so these give exact counts, averages
+ * and percentiles without touching diagnostic_run.
+ */
+@Entity
+@Table(name = "metric_rollup")
+@IdClass(MetricRollup.Key.class)
+public class MetricRollup {
+
+    @Id
+    private String deviceModel;
+
+    @Id
+    private LocalDateTime bucketHour;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 32)
+    private DiagnosticMetric metric;
+
+    private long runCount;
+
+    private long valueSum;
+
+    private long unknownCount;
+
+    @Column(nullable = false)
+    private int[] histogram;
+
+    public MetricRollup() {}
+
+    public String getDeviceModel() { return deviceModel; }
+    public LocalDateTime getBucketHour() { return bucketHour; }
+    public DiagnosticMetric getMetric() { return metric; }
+    public long getRunCount() { return runCount; }
+    public long getValueSum() { return valueSum; }
+    public long getUnknownCount() { return unknownCount; }
+    public int[] getHistogram() { return histogram; }
+
+    public static class Key implements Serializable {
+        private String deviceModel;
+        private LocalDateTime bucketHour;
+        private DiagnosticMetric metric;
+
+        public Key() {}
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key k)) return false;
+            return Objects.equals(deviceModel, k.deviceModel)
+                    && Objects.equals(bucketHour, k.bucketHour)
+                    && metric == k.metric;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(deviceModel, bucketHour, metric);
+        }
+    }
+}
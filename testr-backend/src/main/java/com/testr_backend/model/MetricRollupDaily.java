@@ -0,0 +1,71 @@
+package com.testr_backend.model;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Daily per-model rollup, the same cell as {@link MetricRollup} at day
+ * resolution. Every insert adds to it along with the hour cell, so whole days
+ * read from here; RunRetention drops the hour cells once they are older than
+ * the raw retention window.
+ */
+@Entity
+@Table(name = "metric_rollup_daily")
+@IdClass(MetricRollupDaily.Key.class)
+public class MetricRollupDaily {
+
+    @Id
+    private String deviceModel;
+
+    @Id
+    private LocalDate bucketDay;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 32)
+    private DiagnosticMetric metric;
+
+    private long runCount;
+
+    private long valueSum;
+
+    private long unknownCount;
+
+    @Column(nullable = false)
+    private int[] histogram;
+
+    public MetricRollupDaily() {}
+
+    public String getDeviceModel() { return deviceModel; }
+    public LocalDate getBucketDay() { return bucketDay; }
+    public DiagnosticMetric getMetric() { return metric; }
+    public long getRunCount() { return runCount; }
+    public long getValueSum() { return valueSum; }
+    public long getUnknownCount() { return unknownCount; }
+    public int[] getHistogram() { return histogram; }
+
+    public static class Key implements Serializable {
+        private String deviceModel;
+        private LocalDate bucketDay;
+        private DiagnosticMetric metric;
+
+        public Key() {}
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key k)) return false;
+            return Objects.equals(deviceModel, k.deviceModel)
+                    && Objects.equals(bucketDay, k.bucketDay)
+                    && metric == k.metric;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(deviceModel, bucketDay, metric);
+        }
+    }
+}
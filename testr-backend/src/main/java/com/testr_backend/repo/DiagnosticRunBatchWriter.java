@@ -0,0 +1,65 @@
+package com.testr_backend.repo;
+
+import com.testr_backend.model.DiagnosticRun;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Inserts many runs as one JDBC batch. Hibernate disables insert batching for
+ * IDENTITY ids, so bulk ingest goes straight to JDBC: the driver pipelines the
+ * whole batch in a single round trip and hands back the generated ids.
+ */
+@Repository
+public class DiagnosticRunBatchWriter {
+
+    private static final String INSERT =
+            "INSERT INTO diagnostic_run (session_id, device_model, battery_health, storage_speed_pct, cpu_performance_pct, " +
+            "ram_health_pct, display_touch_pct, camera_check_pct, manufacturer, android_version, security_patch, " +
+            "timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbc;
+
+    public DiagnosticRunBatchWriter(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    // Inserts every run and sets its generated id. Runs join the caller's transaction.
+    public void insertAll(List<DiagnosticRun> runs) {
+        if (runs.isEmpty()) return;
+
+        jdbc.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(INSERT, new String[]{"id"})) {
+                for (DiagnosticRun run : runs) {
+                    ps.setString(1, run.getSessionId());
+                    ps.setString(2, run.getDeviceModel());
+                    ps.setInt(3, run.getBatteryHealth());
+                    ps.setInt(4, run.getStorageSpeedPct());
+                    ps.setInt(5, run.getCpuPerformancePct());
+                    ps.setInt(6, run.getRamHealthPct());
+                    ps.setInt(7, run.getDisplayTouchPct());
+                    ps.setInt(8, run.getCameraCheckPct());
+                    ps.setString(9, run.getManufacturer());
+                    ps.setString(10, run.getAndroidVersion());
+                    ps.setString(11, run.getSecurityPatch());
+                    ps.setTimestamp(12, Timestamp.valueOf(run.getTimestamp()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    int i = 0;
+                    while (keys.next() && i < runs.size()) {
+                        runs.get(i++).setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+}
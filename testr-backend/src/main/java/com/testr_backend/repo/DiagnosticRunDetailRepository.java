@@ -0,0 +1,7 @@
+package com.testr_backend.repo;
+
+import com.testr_backend.model.DiagnosticRunDetail;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface DiagnosticRunDetailRepository extends JpaRepository<DiagnosticRunDetail, Long> {
+}
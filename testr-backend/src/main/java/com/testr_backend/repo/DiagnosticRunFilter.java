@@ -0,0 +1,49 @@
+package com.testr_backend.repo;
+
+import com.testr_backend.model.DiagnosticRun;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Optional filters shared by the paged, streaming and export read paths.
+// Any field left null is not applied. Also used as a cache key, so treat it as immutable once built.
+public class DiagnosticRunFilter {
+    public String deviceModel;
+    public LocalDateTime from; // inclusive
+    public LocalDateTime to;   // exclusive
+
+    public DiagnosticRunFilter() {}
+
+    public DiagnosticRunFilter(String deviceModel, LocalDateTime from, LocalDateTime to) {
+        this.deviceModel = deviceModel;
+        this.from = from;
+        this.to = to;
+    }
+
+    public boolean hasModel() {
+        return deviceModel != null && !deviceModel.isBlank();
+    }
+
+    // Same semantics as the SQL WHERE clause in DiagnosticRunReader.
+    public boolean matches(DiagnosticRun run) {
+        if (hasModel() && !deviceModel.equals(run.getDeviceModel())) return false;
+        LocalDateTime ts = run.getTimestamp();
+        if (from != null && (ts == null || ts.isBefore(from))) return false;
+        if (to != null && (ts == null || !ts.isBefore(to))) return false;
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DiagnosticRunFilter f)) return false;
+        return Objects.equals(deviceModel, f.deviceModel)
+                && Objects.equals(from, f.from)
+                && Objects.equals(to, f.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(deviceModel, from, to);
+    }
+}
@@ -0,0 +1,166 @@
+package com.testr_backend.repo;
+
+import com.testr_backend.cache.CacheNames;
+import com.testr_backend.model.DiagnosticRun;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Read side for diagnostic runs that never loads the whole table.
+ * Pages use keyset pagination on (timestamp, id), newest first, so each page
+ * costs the same no matter how deep the client scrolls. Streams read from a
+ * server-side JDBC cursor and hand rows over one at a time.
+ */
+@Repository
+public class DiagnosticRunReader {
+
+    // Rows pulled per round trip while streaming.
+    static final int STREAM_FETCH_SIZE = 500;
+
+    static final String SELECT_COLUMNS =
+            "SELECT id, session_id, device_model, battery_health, storage_speed_pct, cpu_performance_pct, " +
+            "ram_health_pct, display_touch_pct, camera_check_pct, manufacturer, android_version, security_patch, " +
+            "timestamp FROM diagnostic_run";
+
+    static final RowMapper<DiagnosticRun> ROW_MAPPER = (rs, rowNum) -> {
+        DiagnosticRun run = new DiagnosticRun(
+                rs.getString("device_model"),
+                rs.getInt("battery_health"),
+                rs.getInt("storage_speed_pct"),
+                rs.getInt("cpu_performance_pct"),
+                rs.getInt("ram_health_pct"),
+                rs.getInt("display_touch_pct"),
+                rs.getInt("camera_check_pct")
+        );
+        run.setId(rs.getLong("id"));
+        run.setSessionId(rs.getString("session_id"));
+        run.setManufacturer(rs.getString("manufacturer"));
+        run.setAndroidVersion(rs.getString("android_version"));
+        run.setSecurityPatch(rs.getString("security_patch"));
+        Timestamp ts = rs.getTimestamp("timestamp");
+        run.setTimestamp(ts != null ? ts.toLocalDateTime() : null);
+        return run;
+    };
+
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate streamingJdbc;
+    private final TransactionTemplate readOnlyTx;
+
+    public DiagnosticRunReader(DataSource dataSource, PlatformTransactionManager txManager) {
+        this.jdbc = new JdbcTemplate(dataSource);
+
+        this.streamingJdbc = new JdbcTemplate(dataSource);
+        this.streamingJdbc.setFetchSize(STREAM_FETCH_SIZE);
+
+        // PostgreSQL only honours the fetch size (and so only uses a cursor)
+        // when autocommit is off, hence the explicit read-only transaction.
+        this.readOnlyTx = new TransactionTemplate(txManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    public Optional<DiagnosticRun> findById(long id) {
+        return jdbc.query(SELECT_COLUMNS + " WHERE id = ?", ROW_MAPPER, id).stream().findFirst();
+    }
+
+    // Oldest runs first, for retention; relies on the timestamp index.
+    public List<DiagnosticRun> findOlderThan(LocalDateTime cutoff, int limit) {
+        return jdbc.query(SELECT_COLUMNS + " WHERE timestamp < ? ORDER BY timestamp, id LIMIT ?",
+                ROW_MAPPER, Timestamp.valueOf(cutoff), limit);
+    }
+
+    // Runs already stored under any of the given session ids, keyed by session id.
+    public Map<String, DiagnosticRun> findBySessionIds(Collection<String> sessionIds) {
+        Map<String, DiagnosticRun> found = new HashMap<>();
+        if (sessionIds.isEmpty()) return found;
+        String marks = String.join(", ", Collections.nCopies(sessionIds.size(), "?"));
+        jdbc.query(SELECT_COLUMNS + " WHERE session_id IN (" + marks + ")", rs -> {
+            DiagnosticRun run = ROW_MAPPER.mapRow(rs, 0);
+            found.put(run.getSessionId(), run);
+        }, sessionIds.toArray());
+        return found;
+    }
+
+    /**
+     * Returns up to {@code limit} runs older than the cursor position.
+     * Pass null for the cursor fields to start at the newest run.
+     * First pages are cached (that's what the dashboard polls); RunCacheInvalidator
+     * evicts the ones a new run lands on. Deeper pages sit behind a fixed cursor, so
+     * new runs never change them, and with the keyset index they cost under a millisecond anyway.
+     */
+    @Cacheable(cacheNames = CacheNames.FIRST_PAGES, key = "{#filter, #limit}", condition = "#beforeId == null")
+    public List<DiagnosticRun> findPage(DiagnosticRunFilter filter,
+                                        LocalDateTime beforeTimestamp,
+                                        Long beforeId,
+                                        int limit) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS);
+        appendWhere(sql, args, filter);
+
+        if (beforeTimestamp != null && beforeId != null) {
+            sql.append(args.isEmpty() ? " WHERE " : " AND ");
+            sql.append("(timestamp, id) < (?, ?)");
+            args.add(Timestamp.valueOf(beforeTimestamp));
+            args.add(beforeId);
+        }
+
+        sql.append(" ORDER BY timestamp DESC, id DESC LIMIT ?");
+        args.add(limit);
+
+        return jdbc.query(sql.toString(), ROW_MAPPER, args.toArray());
+    }
+
+    /**
+     * Streams every run matching the filter, newest first, to {@code sink}.
+     * Memory use is bounded by the fetch size, not by the table size.
+     */
+    public void stream(DiagnosticRunFilter filter, Consumer<DiagnosticRun> sink) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS);
+        appendWhere(sql, args, filter);
+        sql.append(" ORDER BY timestamp DESC, id DESC");
+
+        readOnlyTx.executeWithoutResult(status ->
+                streamingJdbc.query(sql.toString(),
+                        rs -> { sink.accept(ROW_MAPPER.mapRow(rs, 0)); },
+                        args.toArray())
+        );
+    }
+
+    static void appendWhere(StringBuilder sql, List<Object> args, DiagnosticRunFilter filter) {
+        if (filter == null) return;
+
+        List<String> clauses = new ArrayList<>();
+        if (filter.hasModel()) {
+            clauses.add("device_model = ?");
+            args.add(filter.deviceModel);
+        }
+        if (filter.from != null) {
+            clauses.add("timestamp >= ?");
+            args.add(Timestamp.valueOf(filter.from));
+        }
+        if (filter.to != null) {
+            clauses.add("timestamp < ?");
+            args.add(Timestamp.valueOf(filter.to));
+        }
+
+        if (!clauses.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", clauses));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.testr_backend.repo;
+
+import com.testr_backend.model.DiagnosticRun;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// Runs in the diagnostic_run table: JPA for single saves, DiagnosticRunBatchWriter for batches, DiagnosticRunReader for reads.
+@Repository
+@Profile("!embedded")
+public class JdbcRunStore implements RunStore {
+
+    private final DiagnosticRunRepository repo;
+    private final DiagnosticRunReader reader;
+    private final DiagnosticRunBatchWriter batchWriter;
+    private final JdbcTemplate jdbc;
+
+    public JdbcRunStore(DiagnosticRunRepository repo,
+                        DiagnosticRunReader reader,
+                        DiagnosticRunBatchWriter batchWriter,
+                        JdbcTemplate jdbc) {
+        this.repo = repo;
+        this.reader = reader;
+        this.batchWriter = batchWriter;
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public Optional<DiagnosticRun> findById(long id) {
+        return reader.findById(id);
+    }
+
+    @Override
+    public Map<String, DiagnosticRun> findBySessionIds(Collection<String> sessionIds) {
+        return reader.findBySessionIds(sessionIds);
+    }
+
+    @Override
+    public List<DiagnosticRun> findOlderThan(LocalDateTime cutoff, int limit) {
+        return reader.findOlderThan(cutoff, limit);
+    }
+
+    @Override
+    public List<DiagnosticRun> findPage(DiagnosticRunFilter filter, LocalDateTime beforeTimestamp, Long beforeId, int limit) {
+        return reader.findPage(filter, beforeTimestamp, beforeId, limit);
+    }
+
+    @Override
+    public void stream(DiagnosticRunFilter filter, Consumer<DiagnosticRun> sink) {
+        reader.stream(filter, sink);
+    }
+
+    @Override
+    public DiagnosticRun insert(DiagnosticRun run) {
+        return repo.save(run);
+    }
+
+    @Override
+    public void insertAll(List<DiagnosticRun> runs) {
+        batchWriter.insertAll(runs);
+    }
+
+    @Override
+    public int deleteAll(Collection<Long> ids) {
+        if (ids.isEmpty()) return 0;
+        String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+        return jdbc.update("DELETE FROM diagnostic_run WHERE id IN (" + in + ")", ids.toArray());
+    }
+
+    @Override
+    public long count() {
+        return repo.count();
+    }
+}
@@ -0,0 +1,815 @@
+package com.testr_backend.repo;
+
+import com.testr_backend.model.DiagnosticRun;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Run storage for the "embedded" profile: single-node installs such as edge
+ * benches that shouldn't need a PostgreSQL server next to them.
+ *
+ * runs.N.dat is an append-only log of fixed 64-byte records, memory-mapped, so
+ * an insert is a handful of puts into the page cache and reading a run is a
+ * handful of gets; there is no SQL, no row mapping and no syscall per row.
+ * Strings (model, session id, device summary) are dictionary-coded into
+ * strings.N.dat so the records stay fixed-width. Models and versions repeat,
+ * so apart from one entry per session id the dictionary stays small. CURRENT
+ * names the generation N in use.
+ *
+ * The index lives on the heap and is rebuilt from the log on startup: slot by
+ * id (ids ascend through the log, so a binary search), (timestamp, id) sets
+ * for the whole fleet and per deviceModel, and slot by sessionId. Pages and
+ * streams walk those sets the way the keyset queries walk the Postgres
+ * indexes. Expect roughly 250 bytes of heap per stored run.
+ *
+ * Inserts join the caller's transaction. Records are written PENDING with
+ * their ids assigned (reports and rollups reference them), become LIVE and
+ * visible after commit, and DELETED on rollback. A second insert of a pending
+ * sessionId waits for it to settle, like a unique index. After a crash,
+ * PENDING records count as rolled back; a crash between the H2 commit and the
+ * flip to LIVE leaves that run in the rollups without its row.
+ *
+ * Deletes (retention, rollbacks) only flip the state byte. Once dead records
+ * are compact-dead-ratio of the log, compaction copies the live records and
+ * the strings they still use into the next generation and switches CURRENT.
+ */
+@Repository
+@Profile("embedded")
+public class MappedRunStore implements RunStore, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedRunStore.class);
+
+    static final int RECORD_SIZE = 64;
+    static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC = 0x54525331; // "TRS1"
+    private static final int VERSION = 1;
+
+    // Header: magic, version, record size, then the next id so ids are never reused after compaction.
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_RECORD_SIZE = 8;
+    private static final int H_NEXT_ID = 16;
+
+    static final byte EMPTY = 0;
+    static final byte LIVE = 1;
+    static final byte PENDING = 2;
+    static final byte DELETED = 3;
+
+    // Record layout; 64 bytes so a record never straddles a page.
+    private static final int STATE = 0;
+    private static final int MODEL = 4;
+    private static final int ID = 8;
+    private static final int TIMESTAMP = 16; // microseconds since the epoch, wall clock read as UTC
+    private static final int METRICS = 24;   // six ints, in DiagnosticMetric order
+    private static final int SESSION = 48;
+    private static final int MANUFACTURER = 52;
+    private static final int ANDROID_VERSION = 56;
+    private static final int SECURITY_PATCH = 60;
+    private static final int[] STRING_FIELDS = {MODEL, SESSION, MANUFACTURER, ANDROID_VERSION, SECURITY_PATCH};
+
+    private static final int NO_STRING = -1;
+    private static final int MAX_BYTES = Integer.MAX_VALUE / RECORD_SIZE * RECORD_SIZE;
+
+    // Runs read per lock hold while streaming, so a long export never blocks writers.
+    static final int STREAM_BATCH = 500;
+
+    private static final long SESSION_WAIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // Position in the (timestamp, id) order; slot -1 marks a bound.
+    record Key(long timestamp, long id, int slot) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key o) {
+            int c = Long.compare(timestamp, o.timestamp);
+            return c != 0 ? c : Long.compare(id, o.id);
+        }
+    }
+
+    private final Path dir;
+    private final boolean syncOnCommit;
+    private final int initialRecords;
+    private final double compactDeadRatio;
+    private final int compactMinDead;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Condition settled = lock.writeLock().newCondition();
+
+    // Everything below is guarded by lock.
+    private int generation;
+    private FileChannel runsChannel;
+    private MappedByteBuffer runs;
+    private FileChannel stringsChannel;
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> sharedCodes = new HashMap<>(); // repeating strings only, not session ids
+
+    private int slots;
+    private long[] slotIds = new long[0];
+    private long nextId;
+    private long live;
+    private int dead;
+    private int pending;
+
+    private final NavigableSet<Key> byTime = new TreeSet<>();
+    private final Map<String, NavigableSet<Key>> byModel = new HashMap<>();
+    private final Map<String, Integer> bySession = new HashMap<>();
+
+    public MappedRunStore(@Value("${testr.store.dir}") String dir,
+                          @Value("${testr.store.sync-on-commit:true}") boolean syncOnCommit,
+                          @Value("${testr.store.initial-records:65536}") int initialRecords,
+                          @Value("${testr.store.compact-dead-ratio:0.25}") double compactDeadRatio,
+                          @Value("${testr.store.compact-min-dead:10000}") int compactMinDead) {
+        this.dir = Path.of(dir);
+        this.syncOnCommit = syncOnCommit;
+        this.initialRecords = Math.max(1, initialRecords);
+        this.compactDeadRatio = compactDeadRatio;
+        this.compactMinDead = compactMinDead;
+        try {
+            Files.createDirectories(this.dir);
+            Path current = this.dir.resolve("CURRENT");
+            generation = Files.exists(current) ? Integer.parseInt(Files.readString(current).trim()) : 0;
+            removeOtherGenerations();
+            open();
+            if (!Files.exists(current)) writeCurrent(generation);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the run log in " + this.dir, e);
+        }
+        log.info("Run log {} generation {}: {} runs, {} dead records", this.dir, generation, live, dead);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("testr.store.records", this, s -> s.live).tag("state", "live")
+                .description("Records in the embedded run log").register(registry);
+        Gauge.builder("testr.store.records", this, s -> s.dead).tag("state", "dead")
+                .description("Records in the embedded run log").register(registry);
+    }
+
+    // ---- reads
+
+    @Override
+    public Optional<DiagnosticRun> findById(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            return slot >= 0 && state(slot) == LIVE ? Optional.of(decode(slot)) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, DiagnosticRun> findBySessionIds(Collection<String> sessionIds) {
+        Map<String, DiagnosticRun> found = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String sessionId : sessionIds) {
+                Integer slot = bySession.get(sessionId);
+                if (slot != null && state(slot) == LIVE) found.put(sessionId, decode(slot));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found;
+    }
+
+    @Override
+    public List<DiagnosticRun> findOlderThan(LocalDateTime cutoff, int limit) {
+        List<DiagnosticRun> out = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Iterator<Key> it = byTime.headSet(bound(cutoff), false).iterator(); it.hasNext() && out.size() < limit; ) {
+                out.add(decode(it.next().slot()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return out;
+    }
+
+    @Override
+    public List<DiagnosticRun> findPage(DiagnosticRunFilter filter, LocalDateTime beforeTimestamp, Long beforeId, int limit) {
+        List<DiagnosticRun> out = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            NavigableSet<Key> keys = byTime;
+            if (filter != null && filter.hasModel()) {
+                keys = byModel.getOrDefault(filter.deviceModel, Collections.emptyNavigableSet());
+            }
+
+            // Upper bound exclusive: the lower of the cursor and `to`; lower bound inclusive: `from`.
+            Key upper = null;
+            if (beforeTimestamp != null && beforeId != null) upper = new Key(micros(beforeTimestamp), beforeId, -1);
+            if (filter != null && filter.to != null) {
+                Key to = bound(filter.to);
+                if (upper == null || to.compareTo(upper) < 0) upper = to;
+            }
+            Key lower = filter != null && filter.from != null ? bound(filter.from) : null;
+            // An empty range (from >= to, or a cursor already past from) has no subset to take
+            if (upper != null && lower != null && lower.compareTo(upper) >= 0) return List.of();
+            if (upper != null) keys = keys.headSet(upper, false);
+            if (lower != null) keys = keys.tailSet(lower, true);
+
+            for (Iterator<Key> it = keys.descendingIterator(); it.hasNext() && out.size() < limit; ) {
+                out.add(decode(it.next().slot()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return out;
+    }
+
+    @Override
+    public void stream(DiagnosticRunFilter filter, Consumer<DiagnosticRun> sink) {
+        List<DiagnosticRun> batch = findPage(filter, null, null, STREAM_BATCH);
+        while (!batch.isEmpty()) {
+            batch.forEach(sink);
+            if (batch.size() < STREAM_BATCH) return;
+            DiagnosticRun last = batch.get(batch.size() - 1);
+            batch = findPage(filter, last.getTimestamp(), last.getId(), STREAM_BATCH);
+        }
+    }
+
+    @Override
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---- writes
+
+    @Override
+    public DiagnosticRun insert(DiagnosticRun run) {
+        insertAll(List.of(run));
+        return run;
+    }
+
+    @Override
+    public void insertAll(List<DiagnosticRun> batch) {
+        if (batch.isEmpty()) return;
+        boolean inTx = TransactionSynchronizationManager.isSynchronizationActive();
+        int first;
+        int end;
+        MappedByteBuffer written;
+        FileChannel stringsWritten;
+
+        lock.writeLock().lock();
+        try {
+            awaitNewSessions(batch);
+            ensureCapacity(batch.size());
+            first = slots;
+            for (DiagnosticRun run : batch) {
+                run.setId(nextId++);
+                write(slots, run, inTx ? PENDING : LIVE);
+                slots++;
+            }
+            end = slots;
+            runs.putLong(H_NEXT_ID, nextId);
+            if (inTx) {
+                pending += end - first;
+            } else {
+                for (int slot = first; slot < end; slot++) index(slot);
+            }
+            written = runs;
+            stringsWritten = stringsChannel;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Could not append to the run log in " + dir, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (inTx) {
+            TransactionSynchronizationManager.registerSynchronization(new Settle(first, end));
+        } else {
+            sync(written, stringsWritten, first, end);
+        }
+    }
+
+    // Applied after commit when called in a transaction, like the inserts.
+    @Override
+    public int deleteAll(Collection<Long> ids) {
+        List<Long> found = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (long id : ids) {
+                int slot = slotOf(id);
+                if (slot >= 0 && state(slot) == LIVE) found.add(id);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (found.isEmpty()) return 0;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    delete(found);
+                }
+            });
+        } else {
+            delete(found);
+        }
+        return found.size();
+    }
+
+    // By id, not slot: a compaction may have moved the records since they were looked up.
+    private void delete(List<Long> ids) {
+        MappedByteBuffer written;
+        FileChannel stringsWritten;
+        lock.writeLock().lock();
+        try {
+            for (long id : ids) {
+                int slot = slotOf(id);
+                if (slot < 0 || state(slot) != LIVE) continue;
+                unindex(slot);
+                runs.put(offset(slot) + STATE, DELETED);
+                dead++;
+            }
+            written = runs;
+            stringsWritten = stringsChannel;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(written, stringsWritten, 0, slotsOf(written));
+    }
+
+    // Makes a transaction's records visible once it commits, or drops them if it doesn't.
+    private final class Settle implements TransactionSynchronization {
+        private final int first;
+        private final int end;
+        private boolean done;
+
+        Settle(int first, int end) {
+            this.first = first;
+            this.end = end;
+        }
+
+        // Ahead of the after-commit event listeners, so a run is readable by the time its event fires.
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+
+        @Override
+        public void afterCommit() {
+            settle(true);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status != STATUS_COMMITTED) settle(false);
+        }
+
+        private void settle(boolean committed) {
+            MappedByteBuffer written;
+            FileChannel stringsWritten;
+            lock.writeLock().lock();
+            try {
+                if (done) return;
+                done = true;
+                for (int slot = first; slot < end; slot++) {
+                    if (committed) {
+                        runs.put(offset(slot) + STATE, LIVE);
+                        index(slot);
+                    } else {
+                        runs.put(offset(slot) + STATE, DELETED);
+                        String session = string(runs.getInt(offset(slot) + SESSION));
+                        if (session != null) bySession.remove(session);
+                        dead++;
+                    }
+                }
+                pending -= end - first;
+                settled.signalAll();
+                written = runs;
+                stringsWritten = stringsChannel;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (committed) sync(written, stringsWritten, first, end);
+        }
+    }
+
+    // Fails like the unique index if a session is stored already; waits out sessions other transactions are storing.
+    private void awaitNewSessions(List<DiagnosticRun> batch) {
+        Set<String> sessions = new LinkedHashSet<>();
+        for (DiagnosticRun run : batch) {
+            String s = run.getSessionId();
+            if (s != null && !sessions.add(s)) throw new DuplicateKeyException("sessionId " + s + " appears twice in one insert");
+        }
+        if (sessions.isEmpty()) return;
+
+        long deadline = System.nanoTime() + SESSION_WAIT_NANOS;
+        while (true) {
+            boolean inFlight = false;
+            for (String s : sessions) {
+                Integer slot = bySession.get(s);
+                if (slot == null) continue;
+                if (state(slot) != PENDING) throw new DuplicateKeyException("sessionId " + s + " is already stored");
+                inFlight = true;
+            }
+            if (!inFlight) return;
+
+            long left = deadline - System.nanoTime();
+            if (left <= 0) throw new DuplicateKeyException("sessionId is still being stored by another transaction");
+            try {
+                settled.awaitNanos(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataAccessResourceFailureException("Interrupted waiting for a concurrent insert", e);
+            }
+        }
+    }
+
+    private void write(int slot, DiagnosticRun run, byte state) throws IOException {
+        int o = offset(slot);
+        runs.putInt(o + MODEL, code(run.getDeviceModel(), true));
+        runs.putLong(o + ID, run.getId());
+        runs.putLong(o + TIMESTAMP, micros(run.getTimestamp()));
+        runs.putInt(o + METRICS, run.getBatteryHealth());
+        runs.putInt(o + METRICS + 4, run.getStorageSpeedPct());
+        runs.putInt(o + METRICS + 8, run.getCpuPerformancePct());
+        runs.putInt(o + METRICS + 12, run.getRamHealthPct());
+        runs.putInt(o + METRICS + 16, run.getDisplayTouchPct());
+        runs.putInt(o + METRICS + 20, run.getCameraCheckPct());
+        runs.putInt(o + SESSION, code(run.getSessionId(), false));
+        runs.putInt(o + MANUFACTURER, code(run.getManufacturer(), true));
+        runs.putInt(o + ANDROID_VERSION, code(run.getAndroidVersion(), true));
+        runs.putInt(o + SECURITY_PATCH, code(run.getSecurityPatch(), true));
+        // State last: a record is only ever seen once all its fields are in place.
+        runs.put(o + STATE, state);
+
+        if (slot == slotIds.length) slotIds = Arrays.copyOf(slotIds, Math.max(1024, slotIds.length * 2));
+        slotIds[slot] = run.getId();
+        if (run.getSessionId() != null) bySession.put(run.getSessionId(), slot);
+    }
+
+    private DiagnosticRun decode(int slot) {
+        int o = offset(slot);
+        DiagnosticRun run = new DiagnosticRun(
+                string(runs.getInt(o + MODEL)),
+                runs.getInt(o + METRICS),
+                runs.getInt(o + METRICS + 4),
+                runs.getInt(o + METRICS + 8),
+                runs.getInt(o + METRICS + 12),
+                runs.getInt(o + METRICS + 16),
+                runs.getInt(o + METRICS + 20)
+        );
+        run.setId(runs.getLong(o + ID));
+        run.setTimestamp(timestamp(runs.getLong(o + TIMESTAMP)));
+        run.setSessionId(string(runs.getInt(o + SESSION)));
+        run.setManufacturer(string(runs.getInt(o + MANUFACTURER)));
+        run.setAndroidVersion(string(runs.getInt(o + ANDROID_VERSION)));
+        run.setSecurityPatch(string(runs.getInt(o + SECURITY_PATCH)));
+        return run;
+    }
+
+    // ---- index
+
+    private void index(int slot) {
+        int o = offset(slot);
+        Key key = new Key(runs.getLong(o + TIMESTAMP), runs.getLong(o + ID), slot);
+        byTime.add(key);
+        String model = string(runs.getInt(o + MODEL));
+        if (model != null) byModel.computeIfAbsent(model, m -> new TreeSet<>()).add(key);
+        live++;
+    }
+
+    private void unindex(int slot) {
+        int o = offset(slot);
+        Key key = new Key(runs.getLong(o + TIMESTAMP), runs.getLong(o + ID), slot);
+        byTime.remove(key);
+        String model = string(runs.getInt(o + MODEL));
+        if (model != null) {
+            NavigableSet<Key> keys = byModel.get(model);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) byModel.remove(model);
+        }
+        String session = string(runs.getInt(o + SESSION));
+        if (session != null) bySession.remove(session);
+        live--;
+    }
+
+    private int slotOf(long id) {
+        return Arrays.binarySearch(slotIds, 0, slots, id);
+    }
+
+    private byte state(int slot) {
+        return runs.get(offset(slot) + STATE);
+    }
+
+    private static int slotsOf(ByteBuffer buffer) {
+        return (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    // ---- strings
+
+    private String string(int code) {
+        return code == NO_STRING ? null : strings.get(code);
+    }
+
+    private int code(String s, boolean shared) throws IOException {
+        if (s == null) return NO_STRING;
+        if (shared) {
+            Integer known = sharedCodes.get(s);
+            if (known != null) return known;
+        }
+        int code = strings.size();
+        writeString(stringsChannel, s);
+        strings.add(s);
+        if (shared) sharedCodes.put(s, code);
+        return code;
+    }
+
+    // ---- files
+
+    private void open() throws IOException {
+        loadStrings(dir.resolve("strings." + generation + ".dat"));
+        runsChannel = FileChannel.open(dir.resolve("runs." + generation + ".dat"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(runsChannel.size(), HEADER_SIZE + (long) initialRecords * RECORD_SIZE);
+        runs = runsChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, MAX_BYTES));
+
+        if (runs.getInt(H_MAGIC) == 0) {
+            writeHeader(runs, 1);
+        } else if (runs.getInt(H_MAGIC) != MAGIC || runs.getInt(H_VERSION) != VERSION
+                || runs.getInt(H_RECORD_SIZE) != RECORD_SIZE) {
+            throw new IllegalStateException(dir + " holds a run log this version can't read");
+        }
+        rebuildIndex();
+    }
+
+    // Torn tail entries (a crash mid-append) are cut off; nothing refers to them yet.
+    private void loadStrings(Path path) throws IOException {
+        strings.clear();
+        sharedCodes.clear();
+        stringsChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer all = ByteBuffer.wrap(Files.readAllBytes(path));
+        int good = 0;
+        while (all.remaining() >= 4) {
+            int len = all.getInt();
+            if (len < 0 || len > all.remaining()) break;
+            strings.add(new String(all.array(), all.position(), len, UTF_8));
+            all.position(all.position() + len);
+            good = all.position();
+        }
+        if (good < stringsChannel.size()) stringsChannel.truncate(good);
+        stringsChannel.position(good);
+    }
+
+    private void rebuildIndex() {
+        byTime.clear();
+        byModel.clear();
+        bySession.clear();
+        slots = 0;
+        live = 0;
+        dead = 0;
+        pending = 0;
+        nextId = Math.max(1, runs.getLong(H_NEXT_ID));
+        int capacity = slotsOf(runs);
+        slotIds = new long[Math.max(1024, capacity)];
+
+        for (int slot = 0; slot < capacity; slot++) {
+            int o = offset(slot);
+            byte state = runs.get(o + STATE);
+            if (state == EMPTY) break;
+            if (state == PENDING) {
+                // Its transaction never reported back before the process stopped.
+                runs.put(o + STATE, DELETED);
+                state = DELETED;
+            }
+            long id = runs.getLong(o + ID);
+            slotIds[slot] = id;
+            nextId = Math.max(nextId, id + 1);
+            slots = slot + 1;
+            for (int field : new int[]{MODEL, MANUFACTURER, ANDROID_VERSION, SECURITY_PATCH}) {
+                int code = runs.getInt(o + field);
+                if (code != NO_STRING) sharedCodes.putIfAbsent(strings.get(code), code);
+            }
+            if (state == LIVE) {
+                index(slot);
+                String session = string(runs.getInt(o + SESSION));
+                if (session != null) bySession.put(session, slot);
+            } else {
+                dead++;
+            }
+        }
+        runs.putLong(H_NEXT_ID, nextId);
+    }
+
+    private void ensureCapacity(int more) throws IOException {
+        long needed = HEADER_SIZE + (long) (slots + more) * RECORD_SIZE;
+        if (needed <= runs.capacity()) return;
+        if (needed > MAX_BYTES) throw new IllegalStateException("The run log in " + dir + " is full; enable retention");
+        long grown = Math.min(MAX_BYTES, Math.max(needed, (long) runs.capacity() * 2));
+        runs = runsChannel.map(FileChannel.MapMode.READ_WRITE, 0, grown);
+    }
+
+    // Outside the lock, on the buffer and channel the records went to. A compaction that closed
+    // them in the meantime has already forced everything they held.
+    private void sync(MappedByteBuffer buffer, FileChannel stringsFile, int first, int end) {
+        if (!syncOnCommit) return;
+        try {
+            stringsFile.force(false);
+            buffer.force(offset(first), (end - first) * RECORD_SIZE);
+        } catch (ClosedChannelException e) {
+            // see above
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Could not sync the run log in " + dir, e);
+        }
+    }
+
+    private static void writeHeader(ByteBuffer buf, long nextId) {
+        buf.putInt(H_MAGIC, MAGIC);
+        buf.putInt(H_VERSION, VERSION);
+        buf.putInt(H_RECORD_SIZE, RECORD_SIZE);
+        buf.putLong(H_NEXT_ID, nextId);
+    }
+
+    // ---- compaction
+
+    @Scheduled(fixedDelayString = "${testr.store.compact-interval-ms:600000}")
+    public void compactIfWorthIt() {
+        lock.writeLock().lock();
+        try {
+            if (pending == 0 && dead >= compactMinDead && dead >= slots * compactDeadRatio) compact();
+        } catch (IOException e) {
+            log.error("Run log compaction failed; it is retried on the next pass", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the live records, and only the strings they use, into the next
+     * generation. Readers and writers wait meanwhile, which for a log of a
+     * few hundred thousand runs is tens of milliseconds. Skipped while any
+     * transaction has records pending, since those are addressed by slot.
+     */
+    void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (pending > 0) return;
+            long started = System.nanoTime();
+            int next = generation + 1;
+            Path runsNext = dir.resolve("runs." + next + ".dat");
+            Path stringsNext = dir.resolve("strings." + next + ".dat");
+            Files.deleteIfExists(runsNext);
+            Files.deleteIfExists(stringsNext);
+
+            int dropped = dead;
+            long size = HEADER_SIZE + Math.max((long) initialRecords, live + live / 2) * RECORD_SIZE;
+            try (FileChannel rc = FileChannel.open(runsNext, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileChannel sc = FileChannel.open(stringsNext, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                MappedByteBuffer out = rc.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, MAX_BYTES));
+                writeHeader(out, nextId);
+
+                Map<Integer, Integer> recoded = new HashMap<>();
+                int kept = 0;
+                byte[] record = new byte[RECORD_SIZE];
+                for (int slot = 0; slot < slots; slot++) {
+                    if (state(slot) != LIVE) continue;
+                    int from = offset(slot);
+                    int to = offset(kept++);
+                    runs.get(from, record);
+                    out.put(to, record);
+                    for (int field : STRING_FIELDS) {
+                        int code = runs.getInt(from + field);
+                        if (code == NO_STRING) continue;
+                        Integer c = recoded.get(code);
+                        if (c == null) {
+                            c = recoded.size();
+                            writeString(sc, strings.get(code));
+                            recoded.put(code, c);
+                        }
+                        out.putInt(to + field, c);
+                    }
+                }
+                out.force();
+                sc.force(true);
+            }
+
+            writeCurrent(next);
+            runsChannel.close();
+            stringsChannel.close();
+            int previous = generation;
+            generation = next;
+            open();
+            Files.deleteIfExists(dir.resolve("runs." + previous + ".dat"));
+            Files.deleteIfExists(dir.resolve("strings." + previous + ".dat"));
+            log.info("Compacted the run log: {} live runs kept, {} dead records dropped, {} ms",
+                    live, dropped, (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void writeString(FileChannel channel, String s) throws IOException {
+        byte[] utf8 = s.getBytes(UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(4 + utf8.length).putInt(utf8.length).put(utf8).flip();
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+
+    // Written to a temp file and renamed, so CURRENT always names a complete generation.
+    private void writeCurrent(int gen) throws IOException {
+        Path tmp = dir.resolve("CURRENT.tmp");
+        Files.writeString(tmp, Integer.toString(gen));
+        try (FileChannel c = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            c.force(true);
+        }
+        Files.move(tmp, dir.resolve("CURRENT"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Leftovers of a compaction that crashed before or after switching CURRENT.
+    private void removeOtherGenerations() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : files.toList()) {
+                String name = p.getFileName().toString();
+                if ((name.startsWith("runs.") || name.startsWith("strings.")) && name.endsWith(".dat")
+                        && !name.equals("runs." + generation + ".dat") && !name.equals("strings." + generation + ".dat")) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            runs.force();
+            stringsChannel.force(true);
+            runsChannel.close();
+            stringsChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---- timestamps, microsecond precision like TIMESTAMP(6)
+
+    static long micros(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + t.getNano() / 1_000;
+    }
+
+    static LocalDateTime timestamp(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static Key bound(LocalDateTime t) {
+        return new Key(micros(t), Long.MIN_VALUE, -1);
+    }
+}
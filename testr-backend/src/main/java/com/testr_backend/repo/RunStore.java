@@ -0,0 +1,50 @@
+package com.testr_backend.repo;
+
+import com.testr_backend.model.DiagnosticRun;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Where diagnostic run rows live. Everything that reads or writes runs goes
+ * through this, so the storage engine is picked by profile: JdbcRunStore keeps
+ * them in the diagnostic_run table (default), MappedRunStore in a memory-mapped
+ * log on local disk ("embedded" profile, no PostgreSQL needed).
+ *
+ * Reads only see committed runs. Inserts join the caller's transaction and set
+ * the id on each run; storing a sessionId that is already stored fails with a
+ * DataIntegrityViolationException, as the unique index does on Postgres.
+ */
+public interface RunStore {
+
+    Optional<DiagnosticRun> findById(long id);
+
+    // Runs already stored under any of the given session ids, keyed by session id.
+    Map<String, DiagnosticRun> findBySessionIds(Collection<String> sessionIds);
+
+    // Oldest runs first, for retention.
+    List<DiagnosticRun> findOlderThan(LocalDateTime cutoff, int limit);
+
+    /**
+     * Up to {@code limit} runs ordered by (timestamp, id), newest first, below the
+     * cursor position. Pass null for the cursor fields to start at the newest run.
+     */
+    List<DiagnosticRun> findPage(DiagnosticRunFilter filter, LocalDateTime beforeTimestamp, Long beforeId, int limit);
+
+    // Every run matching the filter, newest first; memory use doesn't grow with the result.
+    void stream(DiagnosticRunFilter filter, Consumer<DiagnosticRun> sink);
+
+    DiagnosticRun insert(DiagnosticRun run);
+
+    // Inserts the runs as one batch and sets their ids.
+    void insertAll(List<DiagnosticRun> runs);
+
+    // Deletes the runs with these ids and returns how many there were.
+    int deleteAll(Collection<Long> ids);
+
+    long count();
+}
@@ -0,0 +1,60 @@
+package com.testr_backend.service;
+
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.model.DiagnosticRunDetail;
+import com.testr_backend.repo.DiagnosticRunDetailRepository;
+import com.testr_backend.repo.RunStore;
+import com.testr_backend.stats.MetricRollupRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Write path for diagnostic runs: the row, its report details and its rollups commit together.
+@Service
+public class DiagnosticRunService {
+
+    private final RunStore store;
+    private final DiagnosticRunDetailRepository details;
+    private final MetricRollupRepository rollups;
+    private final ApplicationEventPublisher events;
+
+    public DiagnosticRunService(RunStore store,
+                                DiagnosticRunDetailRepository details,
+                                MetricRollupRepository rollups,
+                                ApplicationEventPublisher events) {
+        this.store = store;
+        this.details = details;
+        this.rollups = rollups;
+        this.events = events;
+    }
+
+    @Transactional
+    public DiagnosticRun save(DiagnosticRun run) {
+        DiagnosticRun saved = store.insert(run);
+        saveDetails(List.of(saved));
+        rollups.record(saved);
+        events.publishEvent(new DiagnosticRunsSavedEvent(List.of(saved)));
+        return saved;
+    }
+
+    // Bulk insert in one batch and one transaction; ids are set on the given runs.
+    @Transactional
+    public List<DiagnosticRun> saveAll(List<DiagnosticRun> runs) {
+        store.insertAll(runs);
+        saveDetails(runs);
+        rollups.recordAll(runs);
+        events.publishEvent(new DiagnosticRunsSavedEvent(List.copyOf(runs)));
+        return runs;
+    }
+
+    private void saveDetails(List<DiagnosticRun> runs) {
+        List<DiagnosticRunDetail> rows = new ArrayList<>();
+        for (DiagnosticRun run : runs) {
+            if (run.getDetails() != null) rows.add(new DiagnosticRunDetail(run.getId(), run.getDetails()));
+        }
+        if (!rows.isEmpty()) details.saveAll(rows);
+    }
+}
@@ -0,0 +1,11 @@
+package com.testr_backend.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published by RunRetention after a pass that deleted runs: every run stored
+ * with a timestamp before {@code before} is gone. Published after the deletes
+ * committed, so a plain {@code @EventListener} is enough.
+ */
+public record DiagnosticRunsPurgedEvent(LocalDateTime before) {
+}
@@ -0,0 +1,13 @@
+package com.testr_backend.service;
+
+import com.testr_backend.model.DiagnosticRun;
+
+import java.util.List;
+
+/**
+ * Published by DiagnosticRunService for every insert, single or batch, inside the
+ * writing transaction. Listeners that must only see committed data use
+ * {@code @TransactionalEventListener} (AFTER_COMMIT is the default).
+ */
+public record DiagnosticRunsSavedEvent(List<DiagnosticRun> runs) {
+}
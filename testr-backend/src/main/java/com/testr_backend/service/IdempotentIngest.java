@@ -0,0 +1,143 @@
+package com.testr_backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.repo.RunStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores each device session at most once. Runs carrying a sessionId that is
+ * already stored are not inserted again; the caller gets the run stored the
+ * first time, so a client retrying after a timeout sees the original response.
+ *
+ * The store's unique session id (an index on Postgres) is the source of truth. A
+ * bounded Caffeine map of recently stored sessions answers most retries (they
+ * come within seconds or minutes) without touching the database. Runs without
+ * a sessionId are stored as before.
+ */
+@Service
+public class IdempotentIngest implements MeterBinder {
+
+    public record Outcome(DiagnosticRun run, boolean replayed) {}
+
+    private final DiagnosticRunService runs;
+    private final RunStore store;
+    private final Cache<String, DiagnosticRun> recent;
+
+    public IdempotentIngest(DiagnosticRunService runs,
+                            RunStore store,
+                            @Value("${testr.ingest.recent-keys:100000}") long recentKeys) {
+        this.runs = runs;
+        this.store = store;
+        this.recent = Caffeine.newBuilder().maximumSize(recentKeys).recordStats().build();
+    }
+
+    // Hit rate here is the share of retries answered without a database lookup. Prometheus
+    // needs one tag set per metric name, so the tags mirror Spring's cache_* series.
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, recent, "ingestRecentKeys",
+                "cache_manager", "none", "name", "ingestRecentKeys");
+    }
+
+    // The run stored earlier under this session, if it is still in the recent-keys map.
+    public DiagnosticRun recentlyStored(String sessionId) {
+        return sessionId == null ? null : recent.getIfPresent(sessionId);
+    }
+
+    public Outcome save(DiagnosticRun run) {
+        String key = run.getSessionId();
+        if (key == null) return new Outcome(runs.save(run), false);
+
+        DiagnosticRun earlier = recent.getIfPresent(key);
+        if (earlier != null) return new Outcome(earlier, true);
+
+        try {
+            DiagnosticRun saved = runs.save(run);
+            remember(saved);
+            return new Outcome(saved, false);
+        } catch (DataIntegrityViolationException e) {
+            // Stored before this process saw it (restart, another instance) or by a concurrent retry.
+            DiagnosticRun stored = store.findBySessionIds(List.of(key)).get(key);
+            if (stored == null) throw e;
+            remember(stored);
+            return new Outcome(stored, true);
+        }
+    }
+
+    /**
+     * Stores the runs whose sessions are new in one batch and returns one
+     * outcome per input run, in order. A session repeated within the batch is
+     * stored once.
+     */
+    public List<Outcome> saveAll(List<DiagnosticRun> batch) {
+        try {
+            return saveAllOnce(batch);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent request stored one of these sessions after our lookup; its row is visible now.
+            return saveAllOnce(batch);
+        }
+    }
+
+    private List<Outcome> saveAllOnce(List<DiagnosticRun> batch) {
+        Map<String, DiagnosticRun> known = new HashMap<>();
+        Set<String> lookup = new LinkedHashSet<>();
+        for (DiagnosticRun run : batch) {
+            String key = run.getSessionId();
+            if (key == null) continue;
+            DiagnosticRun earlier = recent.getIfPresent(key);
+            if (earlier != null) known.put(key, earlier);
+            else lookup.add(key);
+        }
+        known.putAll(store.findBySessionIds(lookup));
+
+        List<DiagnosticRun> fresh = new ArrayList<>();
+        Map<String, DiagnosticRun> firstInBatch = new HashMap<>();
+        for (DiagnosticRun run : batch) {
+            String key = run.getSessionId();
+            if (key == null) {
+                fresh.add(run);
+            } else if (!known.containsKey(key) && firstInBatch.putIfAbsent(key, run) == null) {
+                fresh.add(run);
+            }
+        }
+
+        if (!fresh.isEmpty()) runs.saveAll(fresh);
+        fresh.forEach(this::remember);
+        known.values().forEach(this::remember);
+
+        List<Outcome> outcomes = new ArrayList<>(batch.size());
+        for (DiagnosticRun run : batch) {
+            String key = run.getSessionId();
+            if (key == null) {
+                outcomes.add(new Outcome(run, false));
+            } else if (known.containsKey(key)) {
+                outcomes.add(new Outcome(known.get(key), true));
+            } else {
+                DiagnosticRun stored = firstInBatch.get(key);
+                outcomes.add(new Outcome(stored, stored != run));
+            }
+        }
+        return outcomes;
+    }
+
+    private void remember(DiagnosticRun run) {
+        if (run.getSessionId() == null) return;
+        // The full report lives in diagnostic_run_detail; don't pin it in memory.
+        run.setDetails(null);
+        recent.put(run.getSessionId(), run);
+    }
+}
@@ -0,0 +1,304 @@
+package com.testr_backend.service;
+
+import com.testr_backend.model.DiagnosticRun;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind ingestion (testr.ingest.mode=async). Requests only enqueue the
+ * run and get a 202 back; a single writer thread drains the queue and commits
+ * whatever has piled up as one batch, so a slow commit delays many runs by one
+ * commit instead of holding one servlet thread per run.
+ *
+ * Each accepted run gets an ingest id that GET /v1/diagnostics/ingest/{id}
+ * resolves to queued, stored (with the run id) or dropped for status-ttl-seconds.
+ *
+ * A group commit that fails for a transient reason (connection, lock, timeout)
+ * is retried; any other failure is usually one bad run, so the group is then
+ * committed run by run and only the runs that fail on their own are dropped.
+ *
+ * Runs still in the queue are lost if the process is killed. A normal shutdown
+ * stops intake once in-flight requests have finished (the phase is just after
+ * the web server's graceful shutdown) and drains the queue before the
+ * DataSource closes.
+ */
+@Component
+@ConditionalOnProperty(name = "testr.ingest.mode", havingValue = "async")
+public class IngestQueue implements SmartLifecycle, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestQueue.class);
+
+    private static final int MAX_COMMIT_ATTEMPTS = 3;
+
+    public enum State { QUEUED, STORED, DROPPED }
+
+    // What GET /ingest/{id} reports; runId is set once the run is stored
+    public record Status(String ingestId, State state, Long runId) {}
+
+    private static final class Ticket {
+        final String id = UUID.randomUUID().toString();
+        final DiagnosticRun run;
+        volatile State state = State.QUEUED;
+        volatile Long runId;
+
+        Ticket(DiagnosticRun run) {
+            this.run = run;
+        }
+
+        void stored(DiagnosticRun saved) {
+            runId = saved.getId();
+            state = State.STORED;
+        }
+    }
+
+    private final IdempotentIngest runs;
+    private final BlockingQueue<Ticket> queue;
+    private final Cache<String, Ticket> tickets;
+    private final int maxBatch;
+    private final long lingerMs;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong commitNanosTotal = new AtomicLong();
+    private final AtomicLong commitNanosMax = new AtomicLong();
+    private volatile long lastCommitNanos;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public IngestQueue(IdempotentIngest runs,
+                       @Value("${testr.ingest.queue-capacity:10000}") int capacity,
+                       @Value("${testr.ingest.max-batch:200}") int maxBatch,
+                       @Value("${testr.ingest.linger-ms:20}") long lingerMs,
+                       @Value("${testr.ingest.status-ttl-seconds:900}") long statusTtlSeconds) {
+        this.runs = runs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.tickets = Caffeine.newBuilder()
+                .expireAfterWrite(statusTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        this.maxBatch = maxBatch;
+        this.lingerMs = lingerMs;
+    }
+
+    /**
+     * Queues a run for the writer.
+     * @return the run's ingest id, or null if the queue is full or shutting down
+     */
+    public String offer(DiagnosticRun run) {
+        Ticket ticket = new Ticket(run);
+        // Registered first, so the id resolves as soon as the caller has it
+        tickets.put(ticket.id, ticket);
+        if (!running || !queue.offer(ticket)) {
+            tickets.invalidate(ticket.id);
+            rejected.incrementAndGet();
+            return null;
+        }
+        accepted.incrementAndGet();
+        return ticket.id;
+    }
+
+    // Where an accepted run got to, or null once status-ttl-seconds have passed (or never accepted).
+    public Status status(String ingestId) {
+        Ticket t = tickets.getIfPresent(ingestId);
+        return t == null ? null : new Status(t.id, t.state, t.runId);
+    }
+
+    private void writeLoop() {
+        List<Ticket> batch = new ArrayList<>(maxBatch);
+        // Keep going after stop() until everything accepted has been written.
+        while (running || !queue.isEmpty()) {
+            Ticket first;
+            try {
+                first = queue.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) continue;
+
+            batch.add(first);
+            // Give a burst a moment to accumulate so it lands in one commit.
+            if (running && lingerMs > 0 && queue.size() < maxBatch - 1) {
+                pause(lingerMs);
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Ticket> batch) {
+        for (int attempt = 1; ; attempt++) {
+            List<DiagnosticRun> group = new ArrayList<>(batch.size());
+            for (Ticket t : batch) {
+                t.run.setId(null); // a rolled-back attempt may have assigned one
+                group.add(t.run);
+            }
+            long start = System.nanoTime();
+            try {
+                List<IdempotentIngest.Outcome> outcomes = runs.saveAll(group);
+                long took = System.nanoTime() - start;
+
+                for (int i = 0; i < batch.size(); i++) batch.get(i).stored(outcomes.get(i).run());
+                committed.addAndGet(batch.size());
+                commits.incrementAndGet();
+                commitNanosTotal.addAndGet(took);
+                commitNanosMax.accumulateAndGet(took, Math::max);
+                lastCommitNanos = took;
+                return;
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    log.warn("Group commit of {} runs failed, committing them one by one", batch.size(), e);
+                    commitEach(batch);
+                    return;
+                }
+                if (attempt >= MAX_COMMIT_ATTEMPTS) {
+                    dropped.addAndGet(batch.size());
+                    batch.forEach(t -> t.state = State.DROPPED);
+                    log.error("Dropping {} queued runs after {} failed commits", batch.size(), attempt, e);
+                    return;
+                }
+                log.warn("Group commit of {} runs failed (attempt {}), retrying", batch.size(), attempt, e);
+                pause(500L * attempt);
+            }
+        }
+    }
+
+    private void commitEach(List<Ticket> batch) {
+        for (Ticket t : batch) {
+            t.run.setId(null);
+            try {
+                t.stored(runs.save(t.run).run());
+                committed.incrementAndGet();
+            } catch (RuntimeException e) {
+                t.state = State.DROPPED;
+                dropped.incrementAndGet();
+                log.error("Dropping queued run {} (session {})", t.id, t.run.getSessionId(), e);
+            }
+        }
+    }
+
+    // Failures worth retrying the same group for: the database, not the data, was the problem.
+    static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    // Nothing interrupts the writer on purpose, so a stray interrupt just ends the pause early.
+    private static void pause(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    public Stats stats() {
+        Stats s = new Stats();
+        s.queueDepth = queue.size();
+        s.queueCapacity = queue.size() + queue.remainingCapacity();
+        s.accepted = accepted.get();
+        s.rejected = rejected.get();
+        s.committed = committed.get();
+        s.dropped = dropped.get();
+        s.commits = commits.get();
+        long n = s.commits;
+        s.avgCommitMs = n == 0 ? 0 : commitNanosTotal.get() / n / 1_000_000.0;
+        s.maxCommitMs = commitNanosMax.get() / 1_000_000.0;
+        s.lastCommitMs = lastCommitNanos / 1_000_000.0;
+        return s;
+    }
+
+    // The same counters as stats(), for /actuator/prometheus
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("testr.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Runs accepted but not yet committed")
+                .register(registry);
+        Gauge.builder("testr.ingest.queue.capacity", queue, q -> q.size() + q.remainingCapacity())
+                .register(registry);
+        count(registry, "accepted", accepted);
+        count(registry, "rejected", rejected);
+        count(registry, "committed", committed);
+        count(registry, "dropped", dropped);
+        FunctionTimer.builder("testr.ingest.queue.commit", this,
+                        q -> q.commits.get(), q -> q.commitNanosTotal.get(), TimeUnit.NANOSECONDS)
+                .description("Group commits by the writer thread")
+                .register(registry);
+    }
+
+    private static void count(MeterRegistry registry, String outcome, AtomicLong counter) {
+        FunctionCounter.builder("testr.ingest.queue.runs", counter, AtomicLong::get)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    public static class Stats {
+        public int queueDepth;
+        public int queueCapacity;
+        public long accepted;
+        public long rejected;
+        public long committed;
+        public long dropped;
+        public long commits;
+        public double avgCommitMs;
+        public double maxCommitMs;
+        public double lastCommitMs;
+    }
+
+    @Override
+    public int getPhase() {
+        return WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 1;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::writeLoop, "ingest-writer");
+        writer.start();
+    }
+
+    @Override
+    public void stop() {
+        // Intake stops immediately; the writer exits once the queue is empty.
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Ingest queue drained: {} runs committed, {} dropped", committed.get(), dropped.get());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
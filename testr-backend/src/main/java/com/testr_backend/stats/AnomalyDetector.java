@@ -0,0 +1,186 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.service.DiagnosticRunsSavedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flags committed runs whose metrics sit far outside their model's norm, e.g.
+ * a lot of one model arriving with worn batteries or slow storage.
+ *
+ * Each (model, metric) keeps a RunningMoments baseline, so scoring a run is
+ * O(1) and never touches the database. A run is scored against the baseline as
+ * it was before the run arrived, and flagged when |value - mean| > k-sigma *
+ * max(sigma, min-sigma) once the baseline has min-samples values. The sigma
+ * floor keeps near-constant metrics (RAM health is almost always 100) from
+ * flagging every 1-point wobble.
+ *
+ * Flagged values are not added to the baseline. Otherwise a bad lot widens
+ * sigma within a handful of runs and stops being flagged; this way a sustained
+ * regression keeps showing up until the rollups the baseline is seeded from
+ * absorb it after a restart.
+ *
+ * Baselines are seeded once at startup from the last seed-days of rollups, so a
+ * restart doesn't need min-samples new runs per model before scoring resumes.
+ * Runs committed while seeding may be counted twice; that only nudges the mean.
+ */
+@Component
+public class AnomalyDetector {
+
+    private static final Logger log = LoggerFactory.getLogger(AnomalyDetector.class);
+
+    public record Baseline(long count, double mean, double sigma) {}
+
+    private static final DiagnosticMetric[] METRICS = DiagnosticMetric.values();
+
+    private final MetricRollupRepository rollups;
+    private final double kSigma;
+    private final long minSamples;
+    private final double minSigma;
+    private final int maxModels;
+    private final int maxFlags;
+    private final int seedDays;
+
+    private final Map<String, RunningMoments[]> baselines = new ConcurrentHashMap<>();
+    private final Deque<AnomalyFlag> recent = new ArrayDeque<>();
+    private final EnumMap<DiagnosticMetric, Counter> flagged = new EnumMap<>(DiagnosticMetric.class);
+
+    public AnomalyDetector(MetricRollupRepository rollups,
+                           MeterRegistry registry,
+                           @Value("${testr.anomaly.k-sigma:3.0}") double kSigma,
+                           @Value("${testr.anomaly.min-samples:30}") long minSamples,
+                           @Value("${testr.anomaly.min-sigma:1.0}") double minSigma,
+                           @Value("${testr.anomaly.max-models:10000}") int maxModels,
+                           @Value("${testr.anomaly.max-flags:1000}") int maxFlags,
+                           @Value("${testr.anomaly.seed-days:30}") int seedDays) {
+        this.rollups = rollups;
+        this.kSigma = kSigma;
+        this.minSamples = minSamples;
+        this.minSigma = minSigma;
+        this.maxModels = maxModels;
+        this.maxFlags = maxFlags;
+        this.seedDays = seedDays;
+        for (DiagnosticMetric metric : METRICS) {
+            flagged.put(metric, Counter.builder("testr.anomaly.flags")
+                    .description("Run metrics flagged as outside their model's baseline")
+                    .tag("metric", metric.jsonName())
+                    .register(registry));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (seedDays <= 0) return;
+        Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> byModel =
+                rollups.load(null, LocalDateTime.now().minusDays(seedDays), null);
+        byModel.forEach((model, histograms) -> {
+            RunningMoments[] baseline = baselineFor(model);
+            if (baseline == null) return;
+            histograms.forEach((metric, h) -> baseline[metric.ordinal()].add(RunningMoments.of(h)));
+        });
+        log.info("Anomaly baselines seeded for {} models from {} days of rollups", byModel.size(), seedDays);
+    }
+
+    @TransactionalEventListener
+    public void onSaved(DiagnosticRunsSavedEvent event) {
+        for (DiagnosticRun run : event.runs()) {
+            score(run);
+        }
+    }
+
+    void score(DiagnosticRun run) {
+        String model = MetricRollupRepository.modelKey(run.getDeviceModel());
+        RunningMoments[] baseline = baselineFor(model);
+        if (baseline == null) return;
+
+        for (DiagnosticMetric metric : METRICS) {
+            int v = metric.valueOf(run);
+            if (v == DiagnosticMetric.UNKNOWN) continue;
+
+            RunningMoments moments = baseline[metric.ordinal()];
+            RunningMoments.Moments before = moments.snapshot();
+            if (before.count() >= minSamples) {
+                double sigma = Math.max(before.stdDev(), minSigma);
+                double z = (v - before.mean()) / sigma;
+                if (Math.abs(z) > kSigma) {
+                    flag(new AnomalyFlag(run.getId() != null ? run.getId() : -1, model, metric.jsonName(), v,
+                            before.mean(), before.stdDev(), before.count(), z, run.getTimestamp()));
+                    flagged.get(metric).increment();
+                    continue;
+                }
+            }
+            moments.add(v);
+        }
+    }
+
+    // null once maxModels baselines exist: bounds memory against junk model names
+    private RunningMoments[] baselineFor(String model) {
+        RunningMoments[] b = baselines.get(model);
+        if (b != null || baselines.size() >= maxModels) return b;
+        return baselines.computeIfAbsent(model, m -> {
+            RunningMoments[] fresh = new RunningMoments[METRICS.length];
+            for (int i = 0; i < fresh.length; i++) fresh[i] = new RunningMoments();
+            return fresh;
+        });
+    }
+
+    private void flag(AnomalyFlag f) {
+        synchronized (recent) {
+            recent.addFirst(f);
+            if (recent.size() > maxFlags) recent.removeLast();
+        }
+    }
+
+    /**
+     * Most recent flags first, optionally for one model and/or metric (JSON name).
+     * Only the last max-flags flags are kept.
+     */
+    public List<AnomalyFlag> recentFlags(String deviceModel, String metric, int limit) {
+        List<AnomalyFlag> out = new ArrayList<>();
+        synchronized (recent) {
+            for (Iterator<AnomalyFlag> it = recent.iterator(); it.hasNext() && out.size() < limit; ) {
+                AnomalyFlag f = it.next();
+                if (deviceModel != null && !deviceModel.equals(f.deviceModel())) continue;
+                if (metric != null && !metric.equals(f.metric())) continue;
+                out.add(f);
+            }
+        }
+        return out;
+    }
+
+    // model -> metric JSON name -> current baseline, models sorted by name
+    public Map<String, Map<String, Baseline>> baselines(String deviceModel) {
+        Map<String, Map<String, Baseline>> out = new TreeMap<>();
+        baselines.forEach((model, moments) -> {
+            if (deviceModel != null && !deviceModel.equals(model)) return;
+            Map<String, Baseline> metrics = new LinkedHashMap<>();
+            for (DiagnosticMetric metric : METRICS) {
+                RunningMoments.Moments m = moments[metric.ordinal()].snapshot();
+                metrics.put(metric.jsonName(), new Baseline(m.count(), m.mean(), m.stdDev()));
+            }
+            out.put(model, metrics);
+        });
+        return out;
+    }
+}
@@ -0,0 +1,19 @@
+package com.testr_backend.stats;
+
+import java.time.LocalDateTime;
+
+/**
+ * One metric of one run that sat more than k standard deviations from its
+ * model's running baseline when it arrived. z is negative for values below
+ * the mean, which for these health percentages is the bad direction.
+ */
+public record AnomalyFlag(long runId,
+                          String deviceModel,
+                          String metric,
+                          int value,
+                          double baselineMean,
+                          double baselineSigma,
+                          long baselineCount,
+                          double z,
+                          LocalDateTime timestamp) {
+}
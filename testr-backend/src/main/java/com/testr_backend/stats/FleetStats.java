@@ -0,0 +1,51 @@
+package com.testr_backend.stats;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Response body for GET /v1/diagnostics/stats.
+public class FleetStats {
+    public GroupStats fleet;
+    public List<GroupStats> models = new ArrayList<>();
+
+    public static class GroupStats {
+        public String deviceModel; // null for the fleet-wide group
+        public long runCount;
+        public Map<String, MetricSummary> metrics = new LinkedHashMap<>();
+    }
+
+    // Summary of the known (non -1) values of one metric. Values are -1 when count is 0.
+    public static class MetricSummary {
+        public long count;
+        public long unknownCount;
+        public long sum;
+        public double avg;
+        public int min;
+        public int max;
+        public int p5;
+        public int p50;
+        public int p95;
+        // Fleet group only: value -> count of known values. Clients add live StatsDelta
+        // values to it and recompute any percentile exactly without refetching.
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Map<Integer, Long> histogram;
+
+        public static MetricSummary of(MetricHistogram h) {
+            MetricSummary s = new MetricSummary();
+            s.count = h.count();
+            s.unknownCount = h.unknownCount();
+            s.sum = h.sum();
+            s.avg = h.count() == 0 ? -1 : Math.round(h.mean() * 10.0) / 10.0;
+            s.min = h.min();
+            s.max = h.max();
+            s.p5 = h.percentile(5);
+            s.p50 = h.percentile(50);
+            s.p95 = h.percentile(95);
+            return s;
+        }
+    }
+}
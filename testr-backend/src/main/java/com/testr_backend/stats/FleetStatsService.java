@@ -0,0 +1,51 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.cache.CacheNames;
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.repo.DiagnosticRunFilter;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Service
+public class FleetStatsService {
+
+    private final MetricRollupRepository rollups;
+
+    public FleetStatsService(MetricRollupRepository rollups) {
+        this.rollups = rollups;
+    }
+
+    // Per-model and fleet-wide summaries, built from rollups only.
+    @Cacheable(CacheNames.FLEET_STATS)
+    @Transactional(readOnly = true)
+    public FleetStats stats(DiagnosticRunFilter filter) {
+        return build(rollups.load(filter.deviceModel, filter.from, filter.to));
+    }
+
+    // The response for per-model histograms, whether they come from rollups or a RunColumns scan.
+    static FleetStats build(Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> byModel) {
+        EnumMap<DiagnosticMetric, MetricHistogram> fleet = MetricRollupRepository.newHistograms();
+        FleetStats result = new FleetStats();
+
+        byModel.forEach((model, histograms) -> {
+            result.models.add(summarize(model, histograms));
+            histograms.forEach((metric, h) -> fleet.get(metric).merge(h));
+        });
+        result.fleet = summarize(null, fleet);
+        fleet.forEach((metric, h) -> result.fleet.metrics.get(metric.jsonName()).histogram = h.nonZero());
+        return result;
+    }
+
+    static FleetStats.GroupStats summarize(String model, EnumMap<DiagnosticMetric, MetricHistogram> histograms) {
+        FleetStats.GroupStats group = new FleetStats.GroupStats();
+        group.deviceModel = model;
+        // Every run contributes exactly one value (possibly unknown) to each metric.
+        group.runCount = histograms.get(DiagnosticMetric.BATTERY_HEALTH).total();
+        histograms.forEach((metric, h) -> group.metrics.put(metric.jsonName(), FleetStats.MetricSummary.of(h)));
+        return group;
+    }
+}
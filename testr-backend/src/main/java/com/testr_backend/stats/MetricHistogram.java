@@ -0,0 +1,130 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.model.DiagnosticMetric;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exact histogram over one metric's 0-100 range plus an "unknown" slot for -1.
+ * Because the domain is only 101 integers, this is both the rollup format and
+ * the percentile structure: a rollup cell stores the 101 counts as one array,
+ * counts from any number of hours or models can be merged by adding, and every
+ * summary is exact.
+ */
+public class MetricHistogram {
+
+    private final long[] counts = new long[DiagnosticMetric.MAX_VALUE + 1];
+    private long unknown;
+
+    public void add(int value, long n) {
+        if (value < 0 || value > DiagnosticMetric.MAX_VALUE) {
+            unknown += n;
+        } else {
+            counts[value] += n;
+        }
+    }
+
+    public void add(int value) {
+        add(value, 1);
+    }
+
+    // Adds a stored histogram: the count at each value 0-100, and the runs without one.
+    public void add(int[] slots, long unknownRuns) {
+        for (int v = 0; v < counts.length; v++) {
+            counts[v] += slots[v];
+        }
+        unknown += unknownRuns;
+    }
+
+    // The count at each value 0-100, as the rollup tables store them.
+    public int[] slots() {
+        int[] slots = new int[counts.length];
+        for (int v = 0; v < counts.length; v++) {
+            slots[v] = Math.toIntExact(counts[v]);
+        }
+        return slots;
+    }
+
+    public void merge(MetricHistogram other) {
+        for (int v = 0; v < counts.length; v++) {
+            counts[v] += other.counts[v];
+        }
+        unknown += other.unknown;
+    }
+
+    public long countAt(int value) {
+        return counts[value];
+    }
+
+    // value -> count for the values that occur; the whole histogram in a few hundred bytes.
+    public Map<Integer, Long> nonZero() {
+        Map<Integer, Long> out = new TreeMap<>();
+        for (int v = 0; v < counts.length; v++) {
+            if (counts[v] > 0) out.put(v, counts[v]);
+        }
+        return out;
+    }
+
+    // Runs that reported a real value.
+    public long count() {
+        long c = 0;
+        for (long n : counts) c += n;
+        return c;
+    }
+
+    public long unknownCount() {
+        return unknown;
+    }
+
+    // Every run that reported this metric, known or not.
+    public long total() {
+        return count() + unknown;
+    }
+
+    public long sum() {
+        long s = 0;
+        for (int v = 0; v < counts.length; v++) s += (long) v * counts[v];
+        return s;
+    }
+
+    // Mean of known values, or -1 if there are none.
+    public double mean() {
+        long c = count();
+        return c == 0 ? -1 : (double) sum() / c;
+    }
+
+    public int min() {
+        for (int v = 0; v < counts.length; v++) {
+            if (counts[v] > 0) return v;
+        }
+        return DiagnosticMetric.UNKNOWN;
+    }
+
+    public int max() {
+        for (int v = counts.length - 1; v >= 0; v--) {
+            if (counts[v] > 0) return v;
+        }
+        return DiagnosticMetric.UNKNOWN;
+    }
+
+    /**
+     * Nearest-rank percentile of the known values.
+     * @param p percentile in [0, 100]
+     * @return the value at that rank, or -1 if the histogram is empty
+     */
+    public int percentile(double p) {
+        long c = count();
+        if (c == 0) return DiagnosticMetric.UNKNOWN;
+
+        long rank = (long) Math.ceil(p / 100.0 * c);
+        if (rank < 1) rank = 1;
+
+        long seen = 0;
+        for (int v = 0; v < counts.length; v++) {
+            seen += counts[v];
+            if (seen >= rank) return v;
+        }
+        return max();
+    }
+}
@@ -0,0 +1,26 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.model.DiagnosticMetric;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// One RunColumns scan condition: min <= metric value <= max. -1 is the unknown value, so "-1--1" selects unknowns.
+public record MetricRange(DiagnosticMetric metric, int min, int max) {
+
+    private static final Pattern FORMAT = Pattern.compile("(\\w+):(-?\\d{1,3})-(-?\\d{1,3})");
+
+    // "batteryHealth:0-69", as in ?where= on GET /v1/diagnostics/stats/scan
+    public static MetricRange parse(String s) {
+        Matcher m = FORMAT.matcher(s.strip());
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Expected metric:min-max, e.g. batteryHealth:0-69, got '" + s + "'");
+        }
+        for (DiagnosticMetric metric : DiagnosticMetric.values()) {
+            if (metric.jsonName().equals(m.group(1))) {
+                return new MetricRange(metric, Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)));
+            }
+        }
+        throw new IllegalArgumentException("Unknown metric '" + m.group(1) + "'");
+    }
+}
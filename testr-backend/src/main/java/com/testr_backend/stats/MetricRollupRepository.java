@@ -0,0 +1,431 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.model.DiagnosticRun;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Maintains the rollup tables: one row per (model, bucket, metric) holding the
+ * count and sum of the known values, the unknown count and a 101-slot histogram
+ * of the values. metric_rollup has hour buckets and metric_rollup_daily day
+ * buckets, and every insert adds to both, so a read takes whole days from the
+ * day cells and hours only for the partial days at its ends. Past the raw
+ * retention window the hour cells are dropped; their days stay whole.
+ */
+@Repository
+public class MetricRollupRepository {
+
+    // Rollup keys can't be null; runs without a model are grouped under this.
+    public static final String UNKNOWN_MODEL = "unknown";
+
+    // modelKey() in SQL. Blank means empty or only spaces in both, so backfilled cells match live ones.
+    static final String MODEL_KEY_SQL =
+            "CASE WHEN COALESCE(TRIM(device_model), '') = '' THEN '" + UNKNOWN_MODEL + "' ELSE device_model END";
+
+    // Cells sent per batch by backfill() on H2, so it never holds a whole table of histograms.
+    static final int BACKFILL_BATCH = 1_000;
+
+    // pg_advisory_xact_lock key held by a backfill ("testr" in ASCII).
+    static final long BACKFILL_LOCK = 0x7465737472L;
+
+    private final JdbcTemplate jdbc;
+    private final boolean postgres;
+    private final String upsertHourly;
+    private final String upsertDaily;
+
+    public MetricRollupRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+        this.postgres = "PostgreSQL".equals(jdbc.execute(
+                (ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName()));
+        if (!postgres) {
+            jdbc.execute("CREATE ALIAS IF NOT EXISTS rollup_add FOR '" + MetricRollupRepository.class.getName() + ".addSlots'");
+        }
+        this.upsertHourly = upsertSql("metric_rollup", "bucket_hour");
+        this.upsertDaily = upsertSql("metric_rollup_daily", "bucket_day");
+    }
+
+    public static String modelKey(String deviceModel) {
+        return (deviceModel == null || deviceModel.chars().allMatch(c -> c == ' ')) ? UNKNOWN_MODEL : deviceModel;
+    }
+
+    public static LocalDateTime bucketOf(LocalDateTime timestamp) {
+        return timestamp.truncatedTo(ChronoUnit.HOURS);
+    }
+
+    // Start of the first hour bucket at or after the timestamp: the end of the bucket it falls in.
+    static LocalDateTime bucketCeiling(LocalDateTime timestamp) {
+        LocalDateTime start = bucketOf(timestamp);
+        return start.equals(timestamp) ? start : start.plusHours(1);
+    }
+
+    /**
+     * Adds one run to its hour and day cells. Must run in the same transaction
+     * as the insert so the rollups never drift from diagnostic_run.
+     */
+    public void record(DiagnosticRun run) {
+        recordAll(List.of(run));
+    }
+
+    // A day cell's bucket is the start of its day.
+    private record Cell(String model, LocalDateTime bucket, String metric) implements Comparable<Cell> {
+        private static final Comparator<Cell> ORDER = Comparator.comparing(Cell::model)
+                .thenComparing(Cell::bucket)
+                .thenComparing(Cell::metric);
+
+        @Override
+        public int compareTo(Cell other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    /**
+     * Adds many runs, collapsing runs that hit the same cell into one histogram.
+     * Hour cells are written before day cells, each in key order, so concurrent
+     * batches lock shared rows in the same order and can't deadlock on each other.
+     */
+    public void recordAll(List<DiagnosticRun> runs) {
+        Map<Cell, MetricHistogram> hours = new TreeMap<>();
+        Map<Cell, MetricHistogram> days = new TreeMap<>();
+        for (DiagnosticRun run : runs) {
+            String model = modelKey(run.getDeviceModel());
+            LocalDateTime hour = bucketOf(run.getTimestamp());
+            LocalDateTime day = hour.truncatedTo(ChronoUnit.DAYS);
+            for (DiagnosticMetric metric : DiagnosticMetric.values()) {
+                int value = metric.valueOf(run);
+                hours.computeIfAbsent(new Cell(model, hour, metric.name()), c -> new MetricHistogram()).add(value);
+                days.computeIfAbsent(new Cell(model, day, metric.name()), c -> new MetricHistogram()).add(value);
+            }
+        }
+        upsert(upsertHourly, hours, Timestamp::valueOf);
+        upsert(upsertDaily, days, bucket -> Date.valueOf(bucket.toLocalDate()));
+    }
+
+    /**
+     * One statement that adds a histogram to a cell or creates it. PostgreSQL
+     * takes INSERT ... ON CONFLICT: a plain INSERT that loses a race with
+     * another transaction would abort the caller's whole transaction. H2
+     * (tests, embedded mode) has no ON CONFLICT ... DO UPDATE, so it gets the
+     * standard MERGE, and adds the arrays with the rollup_add alias because it
+     * can't unnest a row's columns in an UPDATE. (The cast types the VALUES
+     * column, which H2 would otherwise take for a string.)
+     */
+    private String upsertSql(String table, String bucketColumn) {
+        String key = "device_model, " + bucketColumn + ", metric";
+        String columns = key + ", run_count, value_sum, unknown_count, histogram";
+        if (postgres) {
+            return "INSERT INTO " + table + " AS t (" + columns + ") VALUES (?, ?, ?, ?, ?, ?, ?)" + onConflict(key);
+        }
+        return "MERGE INTO " + table + " t USING (VALUES (?, ?, ?, ?, ?, ?, CAST(? AS INTEGER ARRAY))) " +
+                "s(device_model, bucket, metric, run_count, value_sum, unknown_count, histogram) " +
+                "ON t.device_model = s.device_model AND t." + bucketColumn + " = s.bucket AND t.metric = s.metric " +
+                "WHEN MATCHED THEN UPDATE SET run_count = t.run_count + s.run_count, " +
+                "value_sum = t.value_sum + s.value_sum, unknown_count = t.unknown_count + s.unknown_count, " +
+                "histogram = rollup_add(t.histogram, s.histogram) " +
+                "WHEN NOT MATCHED THEN INSERT (" + columns + ") " +
+                "VALUES (s.device_model, s.bucket, s.metric, s.run_count, s.value_sum, s.unknown_count, s.histogram)";
+    }
+
+    // PostgreSQL's upsert clause, shared by live inserts and backfill(): adds the new cell to the stored one.
+    private static String onConflict(String key) {
+        return " ON CONFLICT (" + key + ") DO UPDATE SET run_count = t.run_count + EXCLUDED.run_count, " +
+                "value_sum = t.value_sum + EXCLUDED.value_sum, " +
+                "unknown_count = t.unknown_count + EXCLUDED.unknown_count, " +
+                "histogram = ARRAY(SELECT a + b FROM unnest(t.histogram, EXCLUDED.histogram) " +
+                "WITH ORDINALITY u(a, b, i) ORDER BY i)";
+    }
+
+    // rollup_add on H2: the element-wise sum of two histograms.
+    public static Integer[] addSlots(Integer[] a, Integer[] b) {
+        Integer[] sum = new Integer[a.length];
+        for (int v = 0; v < a.length; v++) sum[v] = a[v] + b[v];
+        return sum;
+    }
+
+    private void upsert(String sql, Map<Cell, MetricHistogram> cells, Function<LocalDateTime, Object> bucket) {
+        List<Object[]> rows = new ArrayList<>(cells.size());
+        cells.forEach((c, h) -> {
+            Integer[] slots = new Integer[DiagnosticMetric.MAX_VALUE + 1];
+            int[] counts = h.slots();
+            for (int v = 0; v < slots.length; v++) slots[v] = counts[v];
+            rows.add(new Object[]{c.model(), bucket.apply(c.bucket()), c.metric(),
+                    h.count(), h.sum(), h.unknownCount(), slots});
+        });
+        if (postgres) {
+            jdbc.batchUpdate(sql, rows, rows.size(), MetricRollupRepository::bind);
+            return;
+        }
+        // A MERGE racing another transaction's insert of the same new cell fails
+        // with a duplicate key. H2 fails only that statement, so a second MERGE,
+        // which now finds the committed cell, merges into it.
+        for (Object[] r : rows) {
+            try {
+                jdbc.update(sql, ps -> bind(ps, r));
+            } catch (DuplicateKeyException e) {
+                jdbc.update(sql, ps -> bind(ps, r));
+            }
+        }
+    }
+
+    // The histogram goes last, bound as an SQL array: drivers don't all map a Java array to one.
+    private static void bind(PreparedStatement ps, Object[] row) throws SQLException {
+        int last = row.length - 1;
+        for (int i = 0; i < last; i++) ps.setObject(i + 1, row[i]);
+        ps.setArray(last + 1, ps.getConnection().createArrayOf("INTEGER", (Integer[]) row[last]));
+    }
+
+    // Start of the oldest hourly bucket before `cutoff`, or null if none is left.
+    public LocalDateTime oldestHourBefore(LocalDateTime cutoff) {
+        Timestamp oldest = jdbc.queryForObject(
+                "SELECT MIN(bucket_hour) FROM metric_rollup WHERE bucket_hour < ?",
+                Timestamp.class, Timestamp.valueOf(cutoff));
+        return oldest != null ? oldest.toLocalDateTime() : null;
+    }
+
+    /**
+     * Drops one day's hour cells, leaving the day at day resolution; returns how
+     * many were dropped. The day cells already hold every run of the day, so
+     * nothing has to be folded, and a second pass over the same day (another
+     * instance, or runs that arrived late for it) just drops what is left.
+     */
+    public int compactDay(LocalDate day) {
+        return jdbc.update("DELETE FROM metric_rollup WHERE bucket_hour >= ? AND bucket_hour < ?",
+                Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+    }
+
+    /**
+     * Sums rollup cells into one histogram per model and metric, in model order.
+     * Time bounds widen to whole hours: a cell counts if any of it lies in
+     * [from, to). Null means unbounded. Whole days come from the day cells.
+     * For a partial day at either end, the hours in range are used while the
+     * day still has all of its hours, and the whole day once retention has
+     * dropped them.
+     */
+    public Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> load(String deviceModel,
+                                                                       LocalDateTime from,
+                                                                       LocalDateTime to) {
+        String model = (deviceModel != null && !deviceModel.isBlank()) ? deviceModel : null;
+        LocalDateTime start = from != null ? bucketOf(from) : null;
+        LocalDateTime end = to != null ? bucketCeiling(to) : null;
+        Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> byModel = new TreeMap<>();
+        if (start != null && end != null && !start.isBefore(end)) return byModel;
+
+        LocalDate firstWholeDay = start != null ? dayCeiling(start) : null;
+        LocalDate endWholeDay = end != null ? end.toLocalDate() : null;
+        if (firstWholeDay != null && endWholeDay != null && firstWholeDay.isAfter(endWholeDay)) {
+            // Both ends fall inside one day
+            loadPartialDay(model, start.toLocalDate(), start, end, byModel);
+            return byModel;
+        }
+        if (firstWholeDay == null || endWholeDay == null || firstWholeDay.isBefore(endWholeDay)) {
+            loadDays(model, firstWholeDay, endWholeDay, byModel);
+        }
+        if (start != null && !start.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            loadPartialDay(model, start.toLocalDate(), start, firstWholeDay.atStartOfDay(), byModel);
+        }
+        if (end != null && !end.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            loadPartialDay(model, endWholeDay, endWholeDay.atStartOfDay(), end, byModel);
+        }
+        return byModel;
+    }
+
+    // First midnight at or after the timestamp.
+    static LocalDate dayCeiling(LocalDateTime t) {
+        return t.toLocalTime().equals(LocalTime.MIDNIGHT) ? t.toLocalDate() : t.toLocalDate().plusDays(1);
+    }
+
+    // Day cells in [fromDay, toDay); null means unbounded.
+    private void loadDays(String model, LocalDate fromDay, LocalDate toDay,
+                          Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> byModel) {
+        List<Object> args = new ArrayList<>();
+        String sql = cells("metric_rollup_daily", "bucket_day", model,
+                fromDay != null ? Date.valueOf(fromDay) : null,
+                toDay != null ? Date.valueOf(toDay) : null, args);
+        jdbc.query(sql, rs -> {
+            histogram(byModel, rs.getString("device_model"), rs.getString("metric"))
+                    .add(slots(rs.getArray("histogram")), rs.getLong("unknown_count"));
+        }, args.toArray());
+    }
+
+    // The hours of `day` in [from, to), or the whole day for a (model, metric) whose hours were dropped.
+    private void loadPartialDay(String model, LocalDate day, LocalDateTime from, LocalDateTime to,
+                                Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> byModel) {
+        Map<List<String>, MetricHistogram> inRange = new HashMap<>();
+        Map<List<String>, Long> hourRuns = new HashMap<>();
+        List<Object> args = new ArrayList<>();
+        String hourly = cells("metric_rollup", "bucket_hour", model,
+                Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(1).atStartOfDay()), args);
+        jdbc.query(hourly, rs -> {
+            List<String> key = List.of(rs.getString("device_model"), rs.getString("metric"));
+            hourRuns.merge(key, rs.getLong("run_count") + rs.getLong("unknown_count"), Long::sum);
+            LocalDateTime hour = rs.getTimestamp("bucket_hour").toLocalDateTime();
+            if (!hour.isBefore(from) && hour.isBefore(to)) {
+                inRange.computeIfAbsent(key, k -> new MetricHistogram())
+                        .add(slots(rs.getArray("histogram")), rs.getLong("unknown_count"));
+            }
+        }, args.toArray());
+
+        args.clear();
+        String daily = cells("metric_rollup_daily", "bucket_day", model,
+                Date.valueOf(day), Date.valueOf(day.plusDays(1)), args);
+        jdbc.query(daily, rs -> {
+            List<String> key = List.of(rs.getString("device_model"), rs.getString("metric"));
+            long dayRuns = rs.getLong("run_count") + rs.getLong("unknown_count");
+            if (dayRuns != hourRuns.getOrDefault(key, 0L)) {
+                MetricHistogram whole = new MetricHistogram();
+                whole.add(slots(rs.getArray("histogram")), rs.getLong("unknown_count"));
+                inRange.put(key, whole);
+            }
+        }, args.toArray());
+
+        inRange.forEach((key, h) -> histogram(byModel, key.get(0), key.get(1)).merge(h));
+    }
+
+    private static MetricHistogram histogram(Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> byModel,
+                                             String model, String metric) {
+        return byModel.computeIfAbsent(model, m -> newHistograms()).get(DiagnosticMetric.valueOf(metric));
+    }
+
+    // PostgreSQL gives back Integer[], H2 Object[] of Integer.
+    private static int[] slots(Array histogram) throws SQLException {
+        Object[] values = (Object[]) histogram.getArray();
+        int[] slots = new int[values.length];
+        for (int v = 0; v < values.length; v++) slots[v] = ((Number) values[v]).intValue();
+        return slots;
+    }
+
+    private static String cells(String table, String bucketColumn, String deviceModel,
+                                Object from, Object to, List<Object> args) {
+        List<String> clauses = new ArrayList<>();
+        if (deviceModel != null) {
+            clauses.add("device_model = ?");
+            args.add(deviceModel);
+        }
+        if (from != null) {
+            clauses.add(bucketColumn + " >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            clauses.add(bucketColumn + " < ?");
+            args.add(to);
+        }
+        return "SELECT device_model, " + (table.equals("metric_rollup") ? "bucket_hour, " : "") +
+                "metric, run_count, unknown_count, histogram FROM " + table +
+                (clauses.isEmpty() ? "" : " WHERE " + String.join(" AND ", clauses));
+    }
+
+    public boolean isEmpty() {
+        Integer one = jdbc.query(
+                "SELECT 1 FROM metric_rollup UNION ALL SELECT 1 FROM metric_rollup_daily LIMIT 1",
+                rs -> rs.next() ? 1 : null);
+        return one == null;
+    }
+
+    /**
+     * Holds off other instances' backfills until the caller's transaction ends.
+     * Only PostgreSQL needs it: an H2 database is opened by one process.
+     */
+    public void lockForBackfill() {
+        if (postgres) jdbc.execute("SELECT pg_advisory_xact_lock(" + BACKFILL_LOCK + ")");
+    }
+
+    /**
+     * Rebuilds rollups from diagnostic_run, through the same upsert as live
+     * inserts, and does nothing once there are any. Used once, when rollups are
+     * introduced on a table that already has runs. On PostgreSQL it is one
+     * statement, so the emptiness check, the scan and both inserts share one
+     * snapshot: a run ingested meanwhile either shows up with its cells (and
+     * nothing is backfilled) or not at all (and its own upsert counts it).
+     */
+    public void backfill() {
+        if (postgres) {
+            jdbc.update(backfillSql());
+            return;
+        }
+        if (!isEmpty()) return;
+        for (DiagnosticMetric metric : DiagnosticMetric.values()) {
+            Map<Cell, MetricHistogram> hours = new TreeMap<>();
+            Map<Cell, MetricHistogram> days = new TreeMap<>();
+            jdbc.query("SELECT " + MODEL_KEY_SQL + " AS model, " +
+                    "DATE_TRUNC('hour', timestamp) AS bucket, " + valueSql(metric) + " AS v, COUNT(*) AS n " +
+                    "FROM diagnostic_run GROUP BY 1, 2, 3 ORDER BY 1, 2", (ResultSet rs) -> {
+                String model = rs.getString("model");
+                LocalDateTime hour = rs.getTimestamp("bucket").toLocalDateTime();
+                // A day split across two batches is merged by the upsert like any other
+                if (hours.size() >= BACKFILL_BATCH) {
+                    upsert(upsertHourly, hours, Timestamp::valueOf);
+                    upsert(upsertDaily, days, bucket -> Date.valueOf(bucket.toLocalDate()));
+                    hours.clear();
+                    days.clear();
+                }
+                hours.computeIfAbsent(new Cell(model, hour, metric.name()), c -> new MetricHistogram())
+                        .add(rs.getInt("v"), rs.getLong("n"));
+                days.computeIfAbsent(new Cell(model, hour.truncatedTo(ChronoUnit.DAYS), metric.name()),
+                        c -> new MetricHistogram()).add(rs.getInt("v"), rs.getLong("n"));
+            });
+            upsert(upsertHourly, hours, Timestamp::valueOf);
+            upsert(upsertDaily, days, bucket -> Date.valueOf(bucket.toLocalDate()));
+        }
+    }
+
+    private static String valueSql(DiagnosticMetric metric) {
+        return "CASE WHEN " + metric.column() + " BETWEEN 0 AND " + DiagnosticMetric.MAX_VALUE +
+                " THEN " + metric.column() + " ELSE " + DiagnosticMetric.UNKNOWN + " END";
+    }
+
+    /**
+     * PostgreSQL's backfill: groups each run's metric values into hour cells and
+     * into day cells, counting every histogram slot in the same pass (a FILTER
+     * per slot, much faster here than building each array in a subquery).
+     */
+    private static String backfillSql() {
+        List<String> metrics = new ArrayList<>();
+        for (DiagnosticMetric metric : DiagnosticMetric.values()) {
+            metrics.add("('" + metric.name() + "', " + valueSql(metric) + ")");
+        }
+        List<String> slots = new ArrayList<>();
+        for (int v = 0; v <= DiagnosticMetric.MAX_VALUE; v++) slots.add("COUNT(*) FILTER (WHERE v = " + v + ")");
+        String runs = "(SELECT " + MODEL_KEY_SQL + " AS device_model, " +
+                "DATE_TRUNC('hour', timestamp) AS bucket_hour, m.metric, m.v " +
+                "FROM diagnostic_run CROSS JOIN LATERAL (VALUES " + String.join(", ", metrics) + ") AS m(metric, v) " +
+                "WHERE NOT EXISTS (SELECT 1 FROM metric_rollup) AND NOT EXISTS (SELECT 1 FROM metric_rollup_daily)) runs";
+        String cell = "metric, COUNT(*) FILTER (WHERE v >= 0), COALESCE(SUM(v) FILTER (WHERE v >= 0), 0), " +
+                "COUNT(*) FILTER (WHERE v < 0), CAST(ARRAY[" + String.join(", ", slots) + "] AS INTEGER[])";
+        String columns = "metric, run_count, value_sum, unknown_count, histogram";
+        return "WITH hourly AS (INSERT INTO metric_rollup AS t (device_model, bucket_hour, " + columns + ") " +
+                "SELECT device_model, bucket_hour, " + cell + " FROM " + runs + " GROUP BY 1, 2, 3" +
+                onConflict("device_model, bucket_hour, metric") + ") " +
+                "INSERT INTO metric_rollup_daily AS t (device_model, bucket_day, " + columns + ") " +
+                "SELECT device_model, CAST(bucket_hour AS DATE), " + cell + " FROM " + runs + " GROUP BY 1, 2, 3" +
+                onConflict("device_model, bucket_day, metric");
+    }
+
+    static EnumMap<DiagnosticMetric, MetricHistogram> newHistograms() {
+        EnumMap<DiagnosticMetric, MetricHistogram> m = new EnumMap<>(DiagnosticMetric.class);
+        for (DiagnosticMetric metric : DiagnosticMetric.values()) {
+            m.put(metric, new MetricHistogram());
+        }
+        return m;
+    }
+}
@@ -0,0 +1,45 @@
+package com.testr_backend.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Seeds the rollups from existing runs the first time the app starts with none.
+ * Runs once every bean is created, before the web server starts taking uploads.
+ * Instances starting together take turns on the backfill lock, and all but the
+ * first find the rollups already there.
+ */
+@Component
+public class RollupBackfill implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupBackfill.class);
+
+    private final MetricRollupRepository rollups;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+
+    public RollupBackfill(MetricRollupRepository rollups, JdbcTemplate jdbc, PlatformTransactionManager txManager) {
+        this.rollups = rollups;
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        tx.executeWithoutResult(s -> {
+            rollups.lockForBackfill();
+            if (!rollups.isEmpty()) return;
+
+            Integer anyRun = jdbc.query("SELECT 1 FROM diagnostic_run LIMIT 1", rs -> rs.next() ? 1 : null);
+            if (anyRun == null) return;
+
+            log.info("metric_rollup is empty; backfilling from diagnostic_run");
+            rollups.backfill();
+        });
+    }
+}
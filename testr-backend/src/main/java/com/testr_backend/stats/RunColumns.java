@@ -0,0 +1,419 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.repo.DiagnosticRunFilter;
+import com.testr_backend.repo.RunStore;
+import com.testr_backend.service.DiagnosticRunsPurgedEvent;
+import com.testr_backend.service.DiagnosticRunsSavedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A columnar copy of the stored runs' metrics (testr.columns.enabled), for the
+ * stats rollups can't answer: conditions across metrics ("storage speed of the
+ * runs whose battery is under 70") and time bounds finer than an hour.
+ *
+ * Rows live in segments of primitive arrays: run id, timestamp in seconds, a
+ * dictionary code for the model, and one byte per metric (values are -1..100).
+ * That is 20 bytes a run and no object per row, so ten million runs take about
+ * 200 MB that the collector never has to trace. A scan is a plain loop over the
+ * arrays into per-model histograms; segments are scanned in parallel on the
+ * common fork-join pool, and skipped whole when their time range misses the
+ * filter.
+ *
+ * Loaded from the RunStore in the background on the first scan (or once the
+ * app is up, with testr.columns.preload), so a start never has to read the
+ * whole table; then kept current from DiagnosticRunsSavedEvent, and retention's
+ * purges drop the same rows. Runs committed while loading are held back and
+ * added afterwards, unless the load already read them. Scans are refused
+ * (isReady) until the load finishes.
+ */
+@Component
+@ConditionalOnProperty(name = "testr.columns.enabled", havingValue = "true")
+public class RunColumns implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(RunColumns.class);
+
+    static final int SEGMENT_ROWS = 1 << 16;
+    private static final int LOAD_BATCH = 1000;
+    private static final DiagnosticMetric[] METRICS = DiagnosticMetric.values();
+    // Histogram slot of a value: 0 for unknown (-1), 1..101 for 0..100
+    private static final int SLOTS = DiagnosticMetric.MAX_VALUE + 2;
+    // Model codes are chars; models past that are counted as "unknown" (code 0)
+    private static final int MAX_MODELS = Character.MAX_VALUE + 1;
+    // Timestamps are int seconds from here, which covers 1952 to 2088
+    private static final long EPOCH_SECOND = LocalDateTime.of(2020, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final long[][] NO_COUNTS = new long[0][];
+
+    private static final class Segment {
+        final long[] ids = new long[SEGMENT_ROWS];
+        final int[] seconds = new int[SEGMENT_ROWS];
+        final char[] models = new char[SEGMENT_ROWS];
+        final byte[][] metrics = new byte[METRICS.length][SEGMENT_ROWS];
+        // Written before size; a scan reads size first, so these cover every row it sees.
+        int minSecond = Integer.MAX_VALUE;
+        int maxSecond = Integer.MIN_VALUE;
+        volatile int size;
+    }
+
+    private final RunStore store;
+    private final boolean preload;
+    private final AtomicBoolean loadStarted = new AtomicBoolean();
+
+    // Writers (appends, purges, the end of a load) hold this; scans take no lock.
+    private final Object lock = new Object();
+    // Appends fill the last segment in place; new segments and purges replace the array.
+    private volatile Segment[] segments = new Segment[0];
+    private volatile String[] modelNames = {MetricRollupRepository.UNKNOWN_MODEL};
+    private final Map<String, Integer> modelCodes = new ConcurrentHashMap<>(Map.of(MetricRollupRepository.UNKNOWN_MODEL, 0));
+    private volatile boolean ready;
+    private boolean modelsFullLogged;
+    // While loading: runs committed meanwhile, and the latest purge cutoff. null when not loading.
+    private List<DiagnosticRun> backlog;
+    private LocalDateTime purgedBefore;
+
+    public RunColumns(RunStore store, @Value("${testr.columns.preload:false}") boolean preload) {
+        this.store = store;
+        this.preload = preload;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadWhenReady() {
+        if (preload) startLoading();
+    }
+
+    // Starts the background load unless it has already started; a failed load can be started again.
+    public void startLoading() {
+        if (!loadStarted.compareAndSet(false, true)) return;
+        Thread.ofPlatform().name("run-columns-load").daemon().start(() -> {
+            try {
+                load();
+            } catch (RuntimeException e) {
+                loadStarted.set(false);
+                log.error("Loading run columns failed; the next scan tries again", e);
+            }
+        });
+    }
+
+    // (Re)builds the columns from every stored run.
+    synchronized void load() {
+        long started = System.nanoTime();
+        synchronized (lock) {
+            ready = false;
+            backlog = new ArrayList<>();
+            purgedBefore = null;
+            segments = new Segment[0];
+        }
+
+        List<DiagnosticRun> batch = new ArrayList<>(LOAD_BATCH);
+        try {
+            store.stream(new DiagnosticRunFilter(), run -> {
+                batch.add(run);
+                if (batch.size() == LOAD_BATCH) {
+                    synchronized (lock) {
+                        append(batch);
+                    }
+                    batch.clear();
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (lock) {
+                backlog = null;
+            }
+            throw e;
+        }
+
+        synchronized (lock) {
+            append(batch);
+            // The stream may or may not have seen runs committed while it ran
+            Set<Long> pending = new HashSet<>();
+            for (DiagnosticRun run : backlog) pending.add(run.getId());
+            if (!pending.isEmpty()) {
+                for (Segment seg : segments) {
+                    for (int row = 0, n = seg.size; row < n; row++) pending.remove(seg.ids[row]);
+                }
+            }
+            append(backlog.stream().filter(run -> pending.remove(run.getId())).toList());
+            if (purgedBefore != null) dropBefore(purgedBefore);
+            backlog = null;
+            purgedBefore = null;
+            ready = true;
+        }
+        log.info("Run columns loaded: {} runs of {} models in {} ms",
+                rows(), modelNames.length, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @TransactionalEventListener
+    public void onSaved(DiagnosticRunsSavedEvent event) {
+        synchronized (lock) {
+            if (ready) append(event.runs());
+            else if (backlog != null) backlog.addAll(event.runs());
+        }
+    }
+
+    @EventListener
+    public void onPurged(DiagnosticRunsPurgedEvent event) {
+        synchronized (lock) {
+            if (ready) {
+                dropBefore(event.before());
+            } else if (backlog != null && (purgedBefore == null || event.before().isAfter(purgedBefore))) {
+                purgedBefore = event.before();
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long rows() {
+        long n = 0;
+        for (Segment seg : segments) n += seg.size;
+        return n;
+    }
+
+    /**
+     * The same summaries as FleetStatsService.stats, over the runs that match the
+     * filter and all of the ranges. Timestamps are compared in whole seconds.
+     */
+    public FleetStats scan(DiagnosticRunFilter filter, List<MetricRange> where) {
+        int model = -1;
+        if (filter.hasModel()) {
+            Integer code = modelCodes.get(filter.deviceModel);
+            if (code == null) return FleetStatsService.build(Map.of());
+            model = code;
+        }
+        Scan scan = new Scan(model,
+                filter.from != null ? second(filter.from) : Integer.MIN_VALUE,
+                filter.to != null ? second(filter.to) : Integer.MAX_VALUE,
+                where);
+
+        long[][] counts = Arrays.stream(segments).parallel()
+                .map(seg -> count(scan, seg))
+                .reduce(NO_COUNTS, RunColumns::merge);
+
+        String[] names = modelNames;
+        Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> byModel = new TreeMap<>();
+        for (int m = 0; m < counts.length; m++) {
+            if (counts[m] == null) continue;
+            EnumMap<DiagnosticMetric, MetricHistogram> histograms = MetricRollupRepository.newHistograms();
+            for (int k = 0; k < METRICS.length; k++) {
+                MetricHistogram h = histograms.get(METRICS[k]);
+                for (int slot = 0; slot < SLOTS; slot++) {
+                    long n = counts[m][k * SLOTS + slot];
+                    if (n > 0) h.add(slot - 1, n);
+                }
+            }
+            byModel.put(names[m], histograms);
+        }
+        return FleetStatsService.build(byModel);
+    }
+
+    // Rows with from <= second < to, of the model (-1 = any), with every ranged metric inside its range.
+    private record Scan(int model, int from, int to, List<MetricRange> where) {}
+
+    // Per model code (null = no rows), the counts of each metric's value slots in one segment.
+    private long[][] count(Scan scan, Segment seg) {
+        int n = seg.size;
+        int from = scan.from();
+        int to = scan.to();
+        int model = scan.model();
+        if (n == 0 || seg.maxSecond < from || seg.minSecond >= to) return NO_COUNTS;
+        boolean allInTime = seg.minSecond >= from && seg.maxSecond < to;
+
+        List<MetricRange> where = scan.where();
+        byte[][] ranged = new byte[where.size()][];
+        int[] min = new int[where.size()];
+        int[] max = new int[where.size()];
+        for (int c = 0; c < ranged.length; c++) {
+            MetricRange r = where.get(c);
+            ranged[c] = seg.metrics[r.metric().ordinal()];
+            min[c] = r.min();
+            max[c] = r.max();
+        }
+        int[] seconds = seg.seconds;
+        char[] models = seg.models;
+
+        // Pass 1: the matching rows, with their models renumbered densely for this segment
+        int[] selected = new int[n];
+        int[] localModel = new int[n];
+        // Read after size, so it has a slot for every code in the rows below n
+        int[] localOf = new int[modelNames.length];
+        int[] modelOf = new int[Math.min(localOf.length, n)];
+        int locals = 0;
+        int matched = 0;
+        rows:
+        for (int row = 0; row < n; row++) {
+            if (!allInTime && (seconds[row] < from || seconds[row] >= to)) continue;
+            int m = models[row];
+            if (model >= 0 && m != model) continue;
+            for (int c = 0; c < ranged.length; c++) {
+                int v = ranged[c][row];
+                if (v < min[c] || v > max[c]) continue rows;
+            }
+            int local = localOf[m] - 1;
+            if (local < 0) {
+                local = locals++;
+                localOf[m] = local + 1;
+                modelOf[local] = m;
+            }
+            selected[matched] = row;
+            localModel[matched++] = local;
+        }
+        if (matched == 0) return NO_COUNTS;
+
+        // Pass 2, one metric column at a time: a small int histogram per model stays in cache
+        long[][] counts = new long[localOf.length][];
+        for (int local = 0; local < locals; local++) counts[modelOf[local]] = new long[METRICS.length * SLOTS];
+        int[] h = new int[locals * SLOTS];
+        for (int k = 0; k < METRICS.length; k++) {
+            byte[] column = seg.metrics[k];
+            Arrays.fill(h, 0);
+            for (int j = 0; j < matched; j++) {
+                h[localModel[j] * SLOTS + column[selected[j]] + 1]++;
+            }
+            for (int local = 0; local < locals; local++) {
+                long[] into = counts[modelOf[local]];
+                for (int slot = 0; slot < SLOTS; slot++) into[k * SLOTS + slot] = h[local * SLOTS + slot];
+            }
+        }
+        return counts;
+    }
+
+    private static long[][] merge(long[][] a, long[][] b) {
+        if (a.length < b.length) {
+            long[][] t = a;
+            a = b;
+            b = t;
+        }
+        for (int m = 0; m < b.length; m++) {
+            if (b[m] == null) continue;
+            if (a[m] == null) {
+                a[m] = b[m];
+            } else {
+                for (int i = 0; i < b[m].length; i++) a[m][i] += b[m][i];
+            }
+        }
+        return a;
+    }
+
+    // Callers hold lock.
+    private void append(List<DiagnosticRun> runs) {
+        int i = 0;
+        while (i < runs.size()) {
+            Segment[] segs = segments;
+            Segment tail = segs.length > 0 ? segs[segs.length - 1] : null;
+            if (tail == null || tail.size == SEGMENT_ROWS) {
+                tail = new Segment();
+                Segment[] grown = Arrays.copyOf(segs, segs.length + 1);
+                grown[segs.length] = tail;
+                segments = grown;
+            }
+            int row = tail.size;
+            int end = Math.min(SEGMENT_ROWS, row + runs.size() - i);
+            for (; row < end; row++, i++) {
+                DiagnosticRun run = runs.get(i);
+                int second = second(run.getTimestamp());
+                tail.ids[row] = run.getId();
+                tail.seconds[row] = second;
+                tail.models[row] = (char) modelCode(MetricRollupRepository.modelKey(run.getDeviceModel()));
+                for (int k = 0; k < METRICS.length; k++) {
+                    tail.metrics[k][row] = (byte) METRICS[k].valueOf(run);
+                }
+                tail.minSecond = Math.min(tail.minSecond, second);
+                tail.maxSecond = Math.max(tail.maxSecond, second);
+            }
+            tail.size = row;
+        }
+    }
+
+    // Callers hold lock. Copies the rows to keep into new segments and swaps them in; scans in flight keep the old ones.
+    private void dropBefore(LocalDateTime cutoff) {
+        int keepFrom = second(cutoff);
+        Segment[] old = segments;
+        if (Arrays.stream(old).noneMatch(seg -> seg.size > 0 && seg.minSecond < keepFrom)) return;
+
+        List<Segment> kept = new ArrayList<>();
+        Segment to = null;
+        long dropped = 0;
+        for (Segment from : old) {
+            for (int row = 0, n = from.size; row < n; row++) {
+                int second = from.seconds[row];
+                if (second < keepFrom) {
+                    dropped++;
+                    continue;
+                }
+                if (to == null || to.size == SEGMENT_ROWS) {
+                    to = new Segment();
+                    kept.add(to);
+                }
+                int r = to.size;
+                to.ids[r] = from.ids[row];
+                to.seconds[r] = second;
+                to.models[r] = from.models[row];
+                for (int k = 0; k < METRICS.length; k++) to.metrics[k][r] = from.metrics[k][row];
+                to.minSecond = Math.min(to.minSecond, second);
+                to.maxSecond = Math.max(to.maxSecond, second);
+                to.size = r + 1;
+            }
+        }
+        segments = kept.toArray(new Segment[0]);
+        log.debug("Dropped {} runs before {} from the run columns", dropped, cutoff);
+    }
+
+    // Callers hold lock.
+    private int modelCode(String model) {
+        Integer code = modelCodes.get(model);
+        if (code != null) return code;
+        String[] names = modelNames;
+        if (names.length == MAX_MODELS) {
+            if (!modelsFullLogged) {
+                log.warn("Run columns hold {} device models; runs of new models count as '{}'",
+                        MAX_MODELS, MetricRollupRepository.UNKNOWN_MODEL);
+                modelsFullLogged = true;
+            }
+            return 0;
+        }
+        String[] grown = Arrays.copyOf(names, names.length + 1);
+        grown[names.length] = model;
+        // Name first: a scan that sees the code in a row must find its name
+        modelNames = grown;
+        modelCodes.put(model, names.length);
+        return names.length;
+    }
+
+    private static int second(LocalDateTime t) {
+        long s = t.toEpochSecond(ZoneOffset.UTC) - EPOCH_SECOND;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, s));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("testr.columns.rows", this, RunColumns::rows)
+                .description("Runs held in the columnar scan store")
+                .register(registry);
+    }
+}
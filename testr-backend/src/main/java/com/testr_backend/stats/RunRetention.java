@@ -0,0 +1,185 @@
+package com.testr_backend.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.testr_backend.cache.CacheNames;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.model.DiagnosticRunDetail;
+import com.testr_backend.repo.DiagnosticRunDetailRepository;
+import com.testr_backend.repo.RunStore;
+import com.testr_backend.service.DiagnosticRunsPurgedEvent;
+import com.testr_backend.web.DiagnosticRunView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps diagnostic_run bounded (testr.retention.enabled=true). Runs older than
+ * testr.retention.raw-days are dropped in chunks, optionally archived first as
+ * gzipped NDJSON (with their full reports) under testr.retention.archive-dir.
+ *
+ * Stats never read raw runs: every run is already counted in the hourly and
+ * daily rollup histograms when it is inserted, and those give exact counts,
+ * means, min/max and percentiles. Before the raw rows go, the hour cells of
+ * those days are dropped too, so metric_rollup stays bounded; the day cells
+ * (metric_rollup_daily) keep the days whole, so nothing changes for callers
+ * except that the retained past has day resolution.
+ *
+ * Each day and each chunk is its own transaction; an interrupted pass just
+ * picks up where it stopped on the next run.
+ */
+@Component
+@ConditionalOnProperty(name = "testr.retention.enabled", havingValue = "true")
+public class RunRetention {
+
+    private static final Logger log = LoggerFactory.getLogger(RunRetention.class);
+
+    public record Summary(int daysCompacted, long runsDeleted, int archiveFiles) {}
+
+    private final MetricRollupRepository rollups;
+    private final RunStore store;
+    private final DiagnosticRunDetailRepository details;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final CacheManager caches;
+    private final ApplicationEventPublisher events;
+    private final ObjectWriter archiveWriter;
+    private final int rawDays;
+    private final int chunkSize;
+    private final Path archiveDir; // null = delete without archiving
+
+    public RunRetention(MetricRollupRepository rollups,
+                        RunStore store,
+                        DiagnosticRunDetailRepository details,
+                        JdbcTemplate jdbc,
+                        PlatformTransactionManager txManager,
+                        CacheManager caches,
+                        ApplicationEventPublisher events,
+                        ObjectMapper mapper,
+                        @Value("${testr.retention.raw-days:90}") int rawDays,
+                        @Value("${testr.retention.chunk-size:1000}") int chunkSize,
+                        @Value("${testr.retention.archive-dir:}") String archiveDir) {
+        if (rawDays < 1) throw new IllegalArgumentException("testr.retention.raw-days must be at least 1");
+        this.rollups = rollups;
+        this.store = store;
+        this.details = details;
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.caches = caches;
+        this.events = events;
+        this.archiveWriter = mapper.writerFor(DiagnosticRunView.class).withRootValueSeparator("\n");
+        this.rawDays = rawDays;
+        this.chunkSize = chunkSize;
+        this.archiveDir = archiveDir.isBlank() ? null : Path.of(archiveDir);
+    }
+
+    @Scheduled(cron = "${testr.retention.cron:0 30 3 * * *}")
+    public void scheduled() {
+        try {
+            run();
+        } catch (RuntimeException e) {
+            log.error("Retention pass failed; it resumes on the next run", e);
+        }
+    }
+
+    // Everything before the start of the day raw-days ago; whole days, so no day is split.
+    public Summary run() {
+        LocalDateTime cutoff = LocalDate.now().minusDays(rawDays).atStartOfDay();
+        long started = System.nanoTime();
+
+        int days = 0;
+        LocalDateTime oldest;
+        while ((oldest = rollups.oldestHourBefore(cutoff)) != null) {
+            LocalDate day = oldest.toLocalDate();
+            Integer dropped = tx.execute(s -> rollups.compactDay(day));
+            log.debug("Dropped {} hourly rollup cells of {}", dropped, day);
+            days++;
+        }
+
+        long deleted = 0;
+        int files = 0;
+        List<DiagnosticRun> chunk;
+        while (!(chunk = store.findOlderThan(cutoff, chunkSize)).isEmpty()) {
+            if (archiveDir != null) {
+                archive(chunk);
+                files++;
+            }
+            deleted += deleteChunk(chunk);
+        }
+        if (deleted > 0) events.publishEvent(new DiagnosticRunsPurgedEvent(cutoff));
+
+        if (days > 0 || deleted > 0) {
+            for (String name : List.of(CacheNames.FIRST_PAGES, CacheNames.FLEET_STATS)) {
+                Cache cache = caches.getCache(name);
+                if (cache != null) cache.clear();
+            }
+            log.info("Retention before {}: {} days compacted, {} runs deleted, {} archive files, {} ms",
+                    cutoff.toLocalDate(), days, deleted, files, (System.nanoTime() - started) / 1_000_000);
+        }
+        return new Summary(days, deleted, files);
+    }
+
+    private int deleteChunk(List<DiagnosticRun> chunk) {
+        String in = String.join(",", Collections.nCopies(chunk.size(), "?"));
+        List<Long> ids = chunk.stream().map(DiagnosticRun::getId).toList();
+        Integer n = tx.execute(s -> {
+            // The FK cascades on Postgres; explicit so it holds on any schema and store.
+            jdbc.update("DELETE FROM diagnostic_run_detail WHERE run_id IN (" + in + ")", ids.toArray());
+            return store.deleteAll(ids);
+        });
+        return n == null ? 0 : n;
+    }
+
+    // Written to a temp file and renamed, so a crash never leaves half a chunk behind a deleted one.
+    private void archive(List<DiagnosticRun> chunk) {
+        Map<Long, DiagnosticRunDetail> reports = details.findAllById(
+                        chunk.stream().map(DiagnosticRun::getId).toList())
+                .stream().collect(Collectors.toMap(DiagnosticRunDetail::getRunId, Function.identity()));
+
+        DiagnosticRun first = chunk.get(0);
+        Path target = archiveDir.resolve("runs-" + first.getTimestamp().toLocalDate() + "-" + first.getId() + ".ndjson.gz");
+        try {
+            Files.createDirectories(archiveDir);
+            Path tmp = Files.createTempFile(archiveDir, "runs-", ".tmp");
+            try {
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp));
+                     SequenceWriter seq = archiveWriter.writeValues(out)) {
+                    for (DiagnosticRun run : chunk) {
+                        DiagnosticRunDetail d = reports.get(run.getId());
+                        seq.write(new DiagnosticRunView(run, d != null ? d.getReport() : null));
+                    }
+                }
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not archive runs to " + target, e);
+        }
+    }
+}
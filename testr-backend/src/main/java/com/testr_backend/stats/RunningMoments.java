@@ -0,0 +1,94 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.model.DiagnosticMetric;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Running count, mean and variance of one metric (Welford), safe to update from
+ * any number of ingest threads without locks.
+ *
+ * Updates go to one of a few stripes picked by thread, each an immutable
+ * {@link Moments} swapped in by CAS, so concurrent writers rarely contend on the
+ * same slot. Reads merge the stripes with Chan's parallel formula. Memory and
+ * cost per update are constant however many values have been added.
+ */
+public class RunningMoments {
+
+    public record Moments(long count, double mean, double m2) {
+
+        static final Moments EMPTY = new Moments(0, 0, 0);
+
+        Moments plus(double x) {
+            long n = count + 1;
+            double delta = x - mean;
+            double newMean = mean + delta / n;
+            return new Moments(n, newMean, m2 + delta * (x - newMean));
+        }
+
+        Moments merge(Moments o) {
+            if (o.count == 0) return this;
+            if (count == 0) return o;
+            long n = count + o.count;
+            double delta = o.mean - mean;
+            return new Moments(n,
+                    mean + delta * o.count / n,
+                    m2 + o.m2 + delta * delta * ((double) count * o.count / n));
+        }
+
+        // Population standard deviation; 0 until there are two values.
+        public double stdDev() {
+            return count < 2 ? 0 : Math.sqrt(m2 / count);
+        }
+    }
+
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors())) * 2);
+
+    private final AtomicReferenceArray<Moments> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    public RunningMoments() {
+        for (int i = 0; i < STRIPES; i++) stripes.set(i, Moments.EMPTY);
+    }
+
+    public void add(double x) {
+        int i = stripeOf(Thread.currentThread());
+        Moments prev;
+        do {
+            prev = stripes.get(i);
+        } while (!stripes.compareAndSet(i, prev, prev.plus(x)));
+    }
+
+    // Folds in moments computed elsewhere (e.g. from rollup histograms at startup).
+    public void add(Moments m) {
+        int i = stripeOf(Thread.currentThread());
+        Moments prev;
+        do {
+            prev = stripes.get(i);
+        } while (!stripes.compareAndSet(i, prev, prev.merge(m)));
+    }
+
+    public Moments snapshot() {
+        Moments total = Moments.EMPTY;
+        for (int i = 0; i < STRIPES; i++) total = total.merge(stripes.get(i));
+        return total;
+    }
+
+    // Moments of the known values in a histogram, exact because its buckets are the values.
+    public static Moments of(MetricHistogram h) {
+        long n = h.count();
+        if (n == 0) return Moments.EMPTY;
+        double mean = h.mean();
+        double m2 = 0;
+        for (int v = 0; v <= DiagnosticMetric.MAX_VALUE; v++) {
+            long c = h.countAt(v);
+            if (c > 0) m2 += c * (v - mean) * (v - mean);
+        }
+        return new Moments(n, mean, m2);
+    }
+
+    private static int stripeOf(Thread t) {
+        long id = t.threadId();
+        return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,129 @@
+package com.testr_backend.throttle;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * One token bucket per ingest client (a device or a bench station), so a client
+ * stuck in a retry loop runs out of tokens without slowing anyone else down.
+ *
+ * Each bucket is a single AtomicLong holding the time at which it will be full
+ * again (the GCRA form of a token bucket). A request takes a token with one
+ * CAS, so the hot path never locks: a bucket refills at per-second tokens a
+ * second and holds at most burst of them.
+ *
+ * Buckets live in a fixed number of stripes, each a map with its own share of
+ * max-clients. The size check for a new client and the idle sweep each touch
+ * one stripe. A full bucket that has been idle for idle-seconds is the same as
+ * a new one, so the sweep drops it. Clients that arrive while their stripe is
+ * full share one overflow bucket until the sweep makes room. That caps memory
+ * when clients make up identities.
+ */
+@Component
+@ConditionalOnProperty(name = "testr.ratelimit.enabled", havingValue = "true")
+public class ClientRateLimiter implements MeterBinder {
+
+    static final int STRIPES = 64;
+
+    private final Map<String, AtomicLong>[] stripes;
+    private final AtomicLong overflow;
+    private final int maxPerStripe;
+    private final long intervalNanos;  // time to earn one token
+    private final long toleranceNanos; // how far ahead of now a bucket may be booked: burst - 1 tokens
+    private final long idleNanos;
+    private final LongSupplier nanoClock;
+
+    @Autowired
+    public ClientRateLimiter(@Value("${testr.ratelimit.per-second:10}") double perSecond,
+                             @Value("${testr.ratelimit.burst:50}") int burst,
+                             @Value("${testr.ratelimit.max-clients:100000}") int maxClients,
+                             @Value("${testr.ratelimit.idle-seconds:300}") long idleSeconds) {
+        this(perSecond, burst, maxClients, idleSeconds, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    ClientRateLimiter(double perSecond, int burst, int maxClients, long idleSeconds, LongSupplier nanoClock) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("testr.ratelimit.per-second must be > 0 and burst >= 1");
+        }
+        this.intervalNanos = (long) (1e9 / perSecond);
+        this.toleranceNanos = (burst - 1) * intervalNanos;
+        this.maxPerStripe = Math.max(1, maxClients / STRIPES);
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        this.nanoClock = nanoClock;
+        this.stripes = new Map[STRIPES];
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ConcurrentHashMap<>();
+        this.overflow = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Takes a token from the client's bucket.
+     * @return 0 if the request may go ahead, otherwise the nanoseconds until the next token
+     */
+    public long acquire(String client) {
+        long now = nanoClock.getAsLong();
+        AtomicLong bucket = bucket(client, now);
+        while (true) {
+            long full = bucket.get();
+            long booked = full - now > 0 ? full : now; // nanoTime may wrap, so compare differences
+            if (booked - now > toleranceNanos) {
+                return booked - now - toleranceNanos;
+            }
+            if (bucket.compareAndSet(full, booked + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong bucket(String client, long now) {
+        Map<String, AtomicLong> stripe = stripe(client);
+        AtomicLong bucket = stripe.get(client);
+        if (bucket != null) return bucket;
+        // Racing inserts can overshoot the share by a few entries; that is fine
+        if (stripe.size() >= maxPerStripe) return overflow;
+        return stripe.computeIfAbsent(client, c -> new AtomicLong(now));
+    }
+
+    private Map<String, AtomicLong> stripe(String client) {
+        int h = client.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Drops buckets that have been full for idle-seconds. A request racing the
+     * removal may take its token from the dropped bucket, which gives that
+     * client at most one extra token.
+     */
+    @Scheduled(fixedDelayString = "${testr.ratelimit.sweep-ms:30000}")
+    public void sweep() {
+        long cutoff = nanoClock.getAsLong() - idleNanos;
+        for (Map<String, AtomicLong> stripe : stripes) {
+            stripe.values().removeIf(bucket -> bucket.get() - cutoff < 0);
+        }
+    }
+
+    public int clients() {
+        int n = 0;
+        for (Map<String, AtomicLong> stripe : stripes) n += stripe.size();
+        return n;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("testr.ratelimit.clients", this, ClientRateLimiter::clients)
+                .description("Ingest clients with a token bucket in memory")
+                .register(registry);
+    }
+}
@@ -0,0 +1,103 @@
+package com.testr_backend.throttle;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheds ingest writes while the database pool is saturated, so dashboard reads
+ * keep getting connections when uploads pile up.
+ *
+ * Every interval-ms it takes the mean Hikari acquire wait since the last check
+ * (hikaricp.connections.acquire). Threads still waiting when no acquire finished
+ * count as over the limit too. Each interval over max-acquire-ms halves the
+ * share of writes admitted, down to min-admit. Each interval under it adds
+ * back a tenth. A brief spike therefore sheds little, while sustained
+ * saturation sheds most writes. Reads are never shed.
+ */
+@Component
+@ConditionalOnProperty(name = "testr.shed.enabled", havingValue = "true")
+public class PoolPressure {
+
+    private static final Logger log = LoggerFactory.getLogger(PoolPressure.class);
+
+    private final MeterRegistry registry;
+    private final double maxAcquireNanos;
+    private final double minAdmit;
+
+    private long lastCount;
+    private double lastNanos;
+    private volatile double admit = 1.0;
+    private volatile double recentAcquireMs;
+
+    public PoolPressure(MeterRegistry registry,
+                        @Value("${testr.shed.max-acquire-ms:50}") double maxAcquireMs,
+                        @Value("${testr.shed.min-admit:0.05}") double minAdmit) {
+        this.registry = registry;
+        this.maxAcquireNanos = maxAcquireMs * 1_000_000;
+        this.minAdmit = minAdmit;
+        Gauge.builder("testr.shed.admit", this, p -> p.admit)
+                .description("Share of ingest writes admitted; below 1 while the DB pool is saturated")
+                .register(registry);
+    }
+
+    // Whether this write may go ahead; always true unless the pool is saturated.
+    public boolean admitWrite() {
+        double a = admit;
+        return a >= 1.0 || ThreadLocalRandom.current().nextDouble() < a;
+    }
+
+    public double admitted() {
+        return admit;
+    }
+
+    public double recentAcquireMs() {
+        return recentAcquireMs;
+    }
+
+    @Scheduled(fixedDelayString = "${testr.shed.interval-ms:250}")
+    public synchronized void sample() {
+        long count = 0;
+        double nanos = 0;
+        for (Timer t : registry.find("hikaricp.connections.acquire").timers()) {
+            count += t.count();
+            nanos += t.totalTime(TimeUnit.NANOSECONDS);
+        }
+        double pending = 0;
+        for (Gauge g : registry.find("hikaricp.connections.pending").gauges()) {
+            pending += g.value();
+        }
+
+        long acquired = count - lastCount;
+        double waited = nanos - lastNanos;
+        lastCount = count;
+        lastNanos = nanos;
+
+        boolean saturated;
+        if (acquired > 0) {
+            double mean = waited / acquired;
+            recentAcquireMs = mean / 1_000_000;
+            saturated = mean > maxAcquireNanos;
+        } else {
+            saturated = pending > 0;
+        }
+
+        double before = admit;
+        admit = saturated ? Math.max(minAdmit, before / 2) : Math.min(1.0, before + 0.1);
+        if (before >= 1.0 && admit < 1.0) {
+            log.warn("DB pool saturated ({} waiting, last mean acquire {} ms); shedding ingest writes",
+                    (long) pending, String.format("%.1f", recentAcquireMs));
+        } else if (before < 1.0 && admit >= 1.0) {
+            log.info("DB pool recovered; admitting all ingest writes again");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.testr_backend.web;
+
+import com.testr_backend.stats.AnomalyDetector;
+import com.testr_backend.stats.AnomalyFlag;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/v1/diagnostics/anomalies")
+@CrossOrigin(origins = "*")
+public class AnomalyController {
+
+    static final int MAX_LIMIT = 1000;
+
+    private final AnomalyDetector detector;
+
+    public AnomalyController(AnomalyDetector detector) {
+        this.detector = detector;
+    }
+
+    //recently flagged run metrics, newest first (kept in memory, lost on restart)
+    @GetMapping
+    public List<AnomalyFlag> flags(@RequestParam(required = false) String deviceModel,
+                                   @RequestParam(required = false) String metric,
+                                   @RequestParam(defaultValue = "100") int limit) {
+        return detector.recentFlags(deviceModel, metric, Math.max(1, Math.min(limit, MAX_LIMIT)));
+    }
+
+    //the running per-model mean and sigma each new run is scored against
+    @GetMapping("/baselines")
+    public Map<String, Map<String, AnomalyDetector.Baseline>> baselines(@RequestParam(required = false) String deviceModel) {
+        return detector.baselines(deviceModel);
+    }
+}
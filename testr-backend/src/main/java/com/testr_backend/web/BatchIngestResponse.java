@@ -0,0 +1,30 @@
+package com.testr_backend.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Response for POST /v1/diagnostics/batch: one result per submitted item, in order.
+public class BatchIngestResponse {
+    public int created;
+    public int replayed; // items whose sessionId was already stored
+    public int rejected;
+    public List<ItemResult> items = new ArrayList<>();
+
+    public static class ItemResult {
+        public int index;
+        public Long id;      // set when stored
+        public String error; // set when rejected
+        public boolean replayed; // id is the run stored earlier for the same sessionId
+
+        public ItemResult(int index, Long id, String error) {
+            this.index = index;
+            this.id = id;
+            this.error = error;
+        }
+
+        public ItemResult(int index, Long id, boolean replayed) {
+            this(index, id, null);
+            this.replayed = replayed;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.testr_backend.web;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/v1/diagnostics/cache")
+@CrossOrigin(origins = "*")
+public class CacheStatsController {
+
+    private final CacheManager cacheManager;
+
+    public CacheStatsController(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    //hit/miss counters for the dashboard read caches
+    @GetMapping
+    public List<CacheStatsView> get() {
+        List<CacheStatsView> out = new ArrayList<>();
+        for (String name : cacheManager.getCacheNames()) {
+            if (cacheManager.getCache(name) instanceof CaffeineCache cache) {
+                out.add(new CacheStatsView(name, cache.getNativeCache()));
+            }
+        }
+        return out;
+    }
+
+    public static class CacheStatsView {
+        public String name;
+        public long size;
+        public long hits;
+        public long misses;
+        public double hitRate;
+        public long evictions;
+
+        CacheStatsView(String name, Cache<Object, Object> cache) {
+            CacheStats s = cache.stats();
+            this.name = name;
+            this.size = cache.estimatedSize();
+            this.hits = s.hitCount();
+            this.misses = s.missCount();
+            this.hitRate = s.hitRate();
+            this.evictions = s.evictionCount();
+        }
+    }
+}
@@ -1,40 +1,276 @@
 package com.testr_backend.web;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.testr_backend.export.RunExportFormat;
+import com.testr_backend.export.RunWriter;
+import com.testr_backend.metrics.ApiMetrics;
 import com.testr_backend.model.DiagnosticRun;
-import com.testr_backend.repo.DiagnosticRunRepository;
+import com.testr_backend.repo.DiagnosticRunDetailRepository;
+import com.testr_backend.repo.DiagnosticRunFilter;
+import com.testr_backend.repo.RunStore;
+import com.testr_backend.service.IdempotentIngest;
+import com.testr_backend.service.IngestQueue;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 @RestController
 @RequestMapping("/v1/diagnostics")
 @CrossOrigin(origins = "*")
 public class DiagnosticRunController {
 
-    private final DiagnosticRunRepository repo;
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_BATCH_SIZE = 500;
 
-    public DiagnosticRunController(DiagnosticRunRepository repo) {
-        this.repo = repo;
+    // Replays of an already stored sessionId answer with the original run and this header.
+    static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private final IdempotentIngest runs;
+    private final RunStore store;
+    private final DiagnosticRunDetailRepository details;
+    private final IngestQueue ingestQueue; // null unless testr.ingest.mode=async
+    private final ApiMetrics metrics;
+    private final ObjectWriter ndjsonWriter;
+
+    public DiagnosticRunController(IdempotentIngest runs,
+                                   RunStore store,
+                                   DiagnosticRunDetailRepository details,
+                                   Optional<IngestQueue> ingestQueue,
+                                   ApiMetrics metrics,
+                                   ObjectMapper mapper) {
+        this.runs = runs;
+        this.store = store;
+        this.details = details;
+        this.ingestQueue = ingestQueue.orElse(null);
+        this.metrics = metrics;
+        this.ndjsonWriter = mapper.writerFor(DiagnosticRun.class)
+                .withRootValueSeparator("\n")
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
 
-    //Create a new device
+    //Create a new device; in async mode it is queued and stored by the group-commit writer
     @PostMapping
-    public DiagnosticRun create(@RequestBody DiagnosticRunRequest body){
-        DiagnosticRun run = new DiagnosticRun(
-                body.deviceModel,
-                body.batteryHealth,
-                body.storageSpeedPct,
-                body.cpuPerformancePct,
-                body.ramHealthPct,
-                body.displayTouchPct,
-                body.cameraCheckPct
-        );
-        return repo.save(run);
+    public ResponseEntity<?> create(@RequestBody DiagnosticRunRequest body, HttpServletRequest request){
+        metrics.payload(request);
+        return metrics.timeCreate(ingestQueue != null, () -> doCreate(body));
+    }
+
+    private ResponseEntity<?> doCreate(DiagnosticRunRequest body) {
+        String problem = body.validate();
+        if (problem != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, problem);
+        }
+
+        DiagnosticRun run = body.toRun();
+        if (ingestQueue == null) {
+            IdempotentIngest.Outcome outcome = runs.save(run);
+            return stored(outcome.run(), outcome.replayed());
+        }
+
+        DiagnosticRun earlier = runs.recentlyStored(run.getSessionId());
+        if (earlier != null) {
+            return stored(earlier, true);
+        }
+
+        String ingestId = ingestQueue.offer(run);
+        if (ingestId == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
+        return ResponseEntity.accepted().body(new IngestAccepted(ingestId));
+    }
+
+    private static ResponseEntity<DiagnosticRun> stored(DiagnosticRun run, boolean replayed) {
+        ResponseEntity.BodyBuilder res = ResponseEntity.ok();
+        if (replayed) res.header(REPLAYED_HEADER, "true");
+        return res.body(run);
+    }
+
+    //queue depth and commit latency of the async writer
+    @GetMapping("/ingest")
+    public IngestQueue.Stats ingestStats() {
+        if (ingestQueue == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Async ingest is not enabled");
+        }
+        return ingestQueue.stats();
+    }
+
+    //where a 202'd run got to: queued, stored (with its run id) or dropped
+    @GetMapping("/ingest/{ingestId}")
+    public IngestAccepted ingestStatus(@PathVariable String ingestId) {
+        IngestQueue.Status status = ingestQueue == null ? null : ingestQueue.status(ingestId);
+        if (status == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown or expired ingest id");
+        }
+        return new IngestAccepted(status);
+    }
+
+    //Create many devices at once (bench stations), stored as one batch
+    @PostMapping("/batch")
+    public BatchIngestResponse createBatch(@RequestBody List<DiagnosticRunRequest> body, HttpServletRequest request) {
+        metrics.payload(request);
+        if (body.size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Batch holds " + body.size() + " runs; the limit is " + MAX_BATCH_SIZE);
+        }
+
+        BatchIngestResponse response = new BatchIngestResponse();
+        List<DiagnosticRun> accepted = new ArrayList<>();
+        List<Integer> acceptedIndexes = new ArrayList<>();
+
+        for (int i = 0; i < body.size(); i++) {
+            DiagnosticRunRequest item = body.get(i);
+            String problem = (item == null) ? "item is null" : item.validate();
+            if (problem != null) {
+                response.items.add(new BatchIngestResponse.ItemResult(i, null, problem));
+                response.rejected++;
+            } else {
+                accepted.add(item.toRun());
+                acceptedIndexes.add(i);
+            }
+        }
+
+        List<IdempotentIngest.Outcome> outcomes = runs.saveAll(accepted);
+
+        for (int j = 0; j < outcomes.size(); j++) {
+            IdempotentIngest.Outcome o = outcomes.get(j);
+            response.items.add(new BatchIngestResponse.ItemResult(acceptedIndexes.get(j), o.run().getId(), o.replayed()));
+            if (o.replayed()) response.replayed++;
+            else response.created++;
+        }
+        response.items.sort(Comparator.comparingInt(r -> r.index));
+        return response;
     }
 
-    //read for react dashboard
+    //read for react dashboard, one keyset page at a time (newest first)
     @GetMapping
-    public List<DiagnosticRun> getAll(){
-        return repo.findAll();
+    public DiagnosticRunPage getAll(
+            @RequestParam(required = false) String deviceModel,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+
+        return metrics.timePage(() -> page(deviceModel, from, to, cursor, limit));
+    }
+
+    private DiagnosticRunPage page(String deviceModel, LocalDateTime from, LocalDateTime to, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        PageCursor after = (cursor != null && !cursor.isBlank()) ? PageCursor.decode(cursor) : null;
+
+        List<DiagnosticRun> items = store.findPage(
+                new DiagnosticRunFilter(deviceModel, from, to),
+                after != null ? after.timestamp() : null,
+                after != null ? after.id() : null,
+                pageSize
+        );
+
+        metrics.pageRows(items.size());
+
+        String next = null;
+        if (items.size() == pageSize) {
+            DiagnosticRun last = items.get(items.size() - 1);
+            next = new PageCursor(last.getTimestamp(), last.getId()).encode();
+        }
+        return new DiagnosticRunPage(items, next);
+    }
+
+    //one run with its full device report, the only read that touches diagnostic_run_detail
+    @GetMapping("/{id:\\d+}")
+    public DiagnosticRunView getOne(@PathVariable long id) {
+        DiagnosticRun run = store.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No run " + id));
+        return new DiagnosticRunView(run, details.findById(id).map(d -> d.getReport()).orElse(null));
+    }
+
+    //full export as NDJSON, streamed straight from the store (a JDBC cursor on Postgres)
+    @GetMapping(produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAll(
+            @RequestParam(required = false) String deviceModel,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+
+        DiagnosticRunFilter filter = new DiagnosticRunFilter(deviceModel, from, to);
+
+        StreamingResponseBody body = out -> {
+            AtomicLong rows = new AtomicLong();
+            try (SequenceWriter seq = ndjsonWriter.writeValues(out)) {
+                store.stream(filter, run -> {
+                    try {
+                        seq.write(run);
+                        rows.incrementAndGet();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } finally {
+                metrics.streamRows(rows.get());
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    //bulk export for offline analysis: gzipped CSV or an Arrow IPC stream, encoded chunk by chunk off the same cursor
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) String deviceModel,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        RunExportFormat exportFormat;
+        try {
+            exportFormat = RunExportFormat.of(format);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        DiagnosticRunFilter filter = new DiagnosticRunFilter(deviceModel, from, to);
+
+        StreamingResponseBody body = out -> {
+            AtomicLong rows = new AtomicLong();
+            try {
+                RunWriter writer = exportFormat.open(out);
+                store.stream(filter, run -> {
+                    try {
+                        writer.write(run);
+                        rows.incrementAndGet();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                writer.finish();
+            } finally {
+                metrics.streamRows(rows.get());
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(exportFormat.fileName()).build().toString())
+                .body(body);
     }
 }
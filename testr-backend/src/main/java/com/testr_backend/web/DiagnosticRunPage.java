@@ -0,0 +1,15 @@
+package com.testr_backend.web;
+
+import com.testr_backend.model.DiagnosticRun;
+
+import java.util.List;
+
+public class DiagnosticRunPage {
+    public List<DiagnosticRun> items;
+    public String nextCursor; // null when there are no more rows
+
+    public DiagnosticRunPage(List<DiagnosticRun> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+}
@@ -1,6 +1,10 @@
 package com.testr_backend.web;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.testr_backend.model.DiagnosticRun;
+
 public class DiagnosticRunRequest {
+    public String sessionId; // idempotency key: a repeated upload returns the run stored first
     public String deviceModel;
     public int batteryHealth; //0-100 = health %, -1 = unknown
     public int storageSpeedPct;
@@ -8,5 +12,44 @@ public class DiagnosticRunRequest {
     public int ramHealthPct;
     public int displayTouchPct;
     public int cameraCheckPct;
+    public String manufacturer;
+    public String androidVersion;
+    public String securityPatch;
+    public JsonNode details; // full device report, stored as-is and returned only by GET /{id}
+
+    public DiagnosticRun toRun() {
+        DiagnosticRun run = new DiagnosticRun(
+                deviceModel,
+                batteryHealth,
+                storageSpeedPct,
+                cpuPerformancePct,
+                ramHealthPct,
+                displayTouchPct,
+                cameraCheckPct
+        );
+        run.setSessionId(sessionId);
+        run.setManufacturer(manufacturer);
+        run.setAndroidVersion(androidVersion);
+        run.setSecurityPatch(securityPatch);
+        run.setDetails(details);
+        return run;
+    }
+
+    // Returns why this request can't be stored, or null if it's fine.
+    public String validate() {
+        if (deviceModel == null || deviceModel.isBlank()) return "deviceModel is required";
+        if (sessionId != null && (sessionId.isBlank() || sessionId.length() > 255)) return "sessionId must be 1-255 characters";
+        if (!isPct(batteryHealth)) return "batteryHealth must be -1 or 0-100";
+        if (!isPct(storageSpeedPct)) return "storageSpeedPct must be -1 or 0-100";
+        if (!isPct(cpuPerformancePct)) return "cpuPerformancePct must be -1 or 0-100";
+        if (!isPct(ramHealthPct)) return "ramHealthPct must be -1 or 0-100";
+        if (!isPct(displayTouchPct)) return "displayTouchPct must be -1 or 0-100";
+        if (!isPct(cameraCheckPct)) return "cameraCheckPct must be -1 or 0-100";
+        if (details != null && !details.isObject() && !details.isNull()) return "details must be an object";
+        return null;
+    }
 
+    private static boolean isPct(int v) {
+        return v >= -1 && v <= 100;
+    }
 }
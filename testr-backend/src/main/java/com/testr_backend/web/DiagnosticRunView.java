@@ -0,0 +1,17 @@
+package com.testr_backend.web;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.testr_backend.model.DiagnosticRun;
+
+// A run's summary fields plus the full report it was uploaded with.
+public class DiagnosticRunView {
+    @JsonUnwrapped
+    public DiagnosticRun run;
+    public JsonNode details; // null for runs uploaded without one
+
+    public DiagnosticRunView(DiagnosticRun run, JsonNode details) {
+        this.run = run;
+        this.details = details;
+    }
+}
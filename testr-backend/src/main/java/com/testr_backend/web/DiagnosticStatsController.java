@@ -0,0 +1,63 @@
+package com.testr_backend.web;
+
+import com.testr_backend.repo.DiagnosticRunFilter;
+import com.testr_backend.stats.FleetStats;
+import com.testr_backend.stats.FleetStatsService;
+import com.testr_backend.stats.MetricRange;
+import com.testr_backend.stats.RunColumns;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/v1/diagnostics/stats")
+@CrossOrigin(origins = "*")
+public class DiagnosticStatsController {
+
+    private final FleetStatsService stats;
+    private final RunColumns columns; // null unless testr.columns.enabled
+
+    public DiagnosticStatsController(FleetStatsService stats, Optional<RunColumns> columns) {
+        this.stats = stats;
+        this.columns = columns.orElse(null);
+    }
+
+    //fleet-wide and per-model averages, counts and percentiles
+    @GetMapping
+    public FleetStats get(
+            @RequestParam(required = false) String deviceModel,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return stats.stats(new DiagnosticRunFilter(deviceModel, from, to));
+    }
+
+    //same summaries over raw runs, for conditions rollups can't answer, e.g. ?where=batteryHealth:0-69&where=ramHealthPct:100-100
+    @GetMapping("/scan")
+    public ResponseEntity<FleetStats> scan(
+            @RequestParam(required = false) String deviceModel,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) List<String> where) {
+        if (columns == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Columnar scans are not enabled");
+        }
+        List<MetricRange> ranges;
+        try {
+            ranges = where == null ? List.of() : where.stream().map(MetricRange::parse).toList();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (!columns.isReady()) {
+            columns.startLoading();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+        return ResponseEntity.ok(columns.scan(new DiagnosticRunFilter(deviceModel, from, to), ranges));
+    }
+}
@@ -0,0 +1,165 @@
+package com.testr_backend.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import com.testr_backend.metrics.ApiMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Inflates request bodies sent with {@code Content-Encoding: gzip}, which
+ * Tomcat doesn't do on its own. Inflation is streamed and capped, so a small
+ * compressed body can't expand into an unbounded one; going over the cap
+ * answers 413 (see RequestBodyAdvice).
+ */
+@Component
+public class GzipRequestFilter extends OncePerRequestFilter {
+
+    private final long maxInflatedBytes;
+
+    public GzipRequestFilter(@Value("${testr.http.max-inflated-bytes:10485760}") long maxInflatedBytes) {
+        this.maxInflatedBytes = maxInflatedBytes;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        return encoding == null || !encoding.trim().equalsIgnoreCase("gzip");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        request.setAttribute(ApiMetrics.WIRE_BYTES_ATTRIBUTE, request.getContentLengthLong());
+
+        GZIPInputStream gzip;
+        try {
+            gzip = new GZIPInputStream(request.getInputStream(), 8192);
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed gzip body");
+            return;
+        }
+
+        chain.doFilter(new InflatedRequest(request, new CappedStream(gzip, maxInflatedBytes)), response);
+    }
+
+    // Thrown from the body stream while a converter reads it; RequestBodyAdvice turns it into a 413.
+    static class BodyTooLargeException extends IOException {
+        BodyTooLargeException(long limit) {
+            super("Inflated request body exceeds " + limit + " bytes");
+        }
+    }
+
+    private static class CappedStream extends ServletInputStream {
+        private final InputStream in;
+        private final long limit;
+        private long read;
+        private boolean finished;
+
+        CappedStream(InputStream in, long limit) {
+            this.in = in;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                finished = true;
+            } else {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = in.read(buf, off, len);
+            if (n < 0) {
+                finished = true;
+            } else {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) throws BodyTooLargeException {
+            read += n;
+            if (read > limit) throw new BodyTooLargeException(limit);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        // Inflation reads the wrapped stream blocking, and no endpoint reads bodies
+        // non-blocking, so there is nothing to hand a ReadListener to.
+        @Override
+        public void setReadListener(ReadListener listener) {
+            throw new IllegalStateException("Non-blocking reads of gzip request bodies are not supported");
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Hides the encoding and original length so converters see a plain body.
+    private static class InflatedRequest extends HttpServletRequestWrapper {
+        private final ServletInputStream body;
+
+        InflatedRequest(HttpServletRequest request, ServletInputStream body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return body;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)) return null;
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) return null;
+            return super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)) return Collections.emptyEnumeration();
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) return Collections.emptyEnumeration();
+            return super.getHeaders(name);
+        }
+    }
+}
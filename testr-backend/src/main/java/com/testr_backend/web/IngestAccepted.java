@@ -0,0 +1,24 @@
+package com.testr_backend.web;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.testr_backend.service.IngestQueue;
+
+import java.util.Locale;
+
+// 202 body in async ingest mode, and what GET /v1/diagnostics/ingest/{ingestId} answers later.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IngestAccepted {
+    public String ingestId;
+    public String status = "queued"; // queued, stored or dropped
+    public Long runId;               // once stored
+
+    public IngestAccepted(String ingestId) {
+        this.ingestId = ingestId;
+    }
+
+    IngestAccepted(IngestQueue.Status status) {
+        this.ingestId = status.ingestId();
+        this.status = status.state().name().toLowerCase(Locale.ROOT);
+        this.runId = status.runId();
+    }
+}
@@ -0,0 +1,90 @@
+package com.testr_backend.web;
+
+import com.testr_backend.metrics.ApiMetrics;
+import com.testr_backend.throttle.ClientRateLimiter;
+import com.testr_backend.throttle.PoolPressure;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guards the upload endpoints (POST /v1/diagnostics and /batch) before any
+ * body is read. A client over its rate gets 429 and a shed write gets 503,
+ * both with Retry-After, which the DUT outbox already backs off on. Reads pass
+ * straight through.
+ *
+ * Clients are told apart by the Testr-Client header (the DUT's install id, or
+ * a bench station's name), falling back to the remote address.
+ *
+ * Ordered after the observation filter, so turned-away requests still show in
+ * http_server_requests, and before GzipRequestFilter, so their bodies are
+ * never inflated.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class IngestThrottleFilter extends OncePerRequestFilter {
+
+    static final String CLIENT_HEADER = "Testr-Client";
+    static final int MAX_CLIENT_LENGTH = 128;
+
+    private final ClientRateLimiter limiter; // null if testr.ratelimit.enabled=false
+    private final PoolPressure pressure;     // null if testr.shed.enabled=false
+    private final ApiMetrics metrics;
+
+    public IngestThrottleFilter(Optional<ClientRateLimiter> limiter,
+                                Optional<PoolPressure> pressure,
+                                ApiMetrics metrics) {
+        this.limiter = limiter.orElse(null);
+        this.pressure = pressure.orElse(null);
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod())
+                || !request.getRequestURI().startsWith(request.getContextPath() + "/v1/diagnostics");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (limiter != null) {
+            long waitNanos = limiter.acquire(client(request));
+            if (waitNanos > 0) {
+                metrics.rateLimited();
+                long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999));
+                response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+                response.sendError(429, "Upload rate limit exceeded for this client");
+                return;
+            }
+        }
+        if (pressure != null && !pressure.admitWrite()) {
+            metrics.shed();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Database busy; try the upload again shortly");
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    static String client(HttpServletRequest request) {
+        String id = request.getHeader(CLIENT_HEADER);
+        if (id != null) {
+            id = id.trim();
+            if (!id.isEmpty()) {
+                return "id:" + (id.length() > MAX_CLIENT_LENGTH ? id.substring(0, MAX_CLIENT_LENGTH) : id);
+            }
+        }
+        return "addr:" + request.getRemoteAddr();
+    }
+}
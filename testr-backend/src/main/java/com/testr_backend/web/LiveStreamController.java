@@ -0,0 +1,30 @@
+package com.testr_backend.web;
+
+import com.testr_backend.live.LiveRunBroadcaster;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/v1/diagnostics/stream")
+@CrossOrigin(origins = "*")
+public class LiveStreamController {
+
+    private final LiveRunBroadcaster broadcaster;
+
+    public LiveStreamController(LiveRunBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    //server-sent events: "runs" with newly saved runs, "stats" with the delta they add
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        SseEmitter emitter = broadcaster.subscribe();
+        if (emitter == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many live subscribers");
+        }
+        return emitter;
+    }
+}
@@ -0,0 +1,29 @@
+package com.testr_backend.web;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.io.IOException;
+
+/**
+ * Bodies that can't be read: 413 when GzipRequestFilter's inflation cap was
+ * hit, 400 for anything else, as before. The cap trips inside the message
+ * converter, which wraps it like any other read error, so the cause chain is
+ * the only place it shows.
+ */
+@RestControllerAdvice
+public class RequestBodyAdvice {
+
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public void unreadable(HttpMessageNotReadableException e, HttpServletResponse response) throws IOException {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof GzipRequestFilter.BodyTooLargeException) {
+                response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, t.getMessage());
+                return;
+            }
+        }
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Request body could not be read");
+    }
+}
@@ -1,15 +1,13 @@
+-- Matches the table Hibernate created while the schema was ddl-auto managed,
+-- so databases that predate Flyway are baselined at this version and skip it.
 CREATE TABLE IF NOT EXISTS diagnostic_run (
-                                              id UUID PRIMARY KEY,
-                                              session_id TEXT NOT NULL,
-                                              collected_at TIMESTAMPTZ NOT NULL,
-                                              manufacturer TEXT,
-                                              model TEXT,
-                                              score INT,
-                                              grade TEXT,
-                                              payload_json JSONB NOT NULL,
-                                              created_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
-    );
-
-CREATE INDEX IF NOT EXISTS idx_diagnostic_run_session ON diagnostic_run (session_id);
-CREATE INDEX IF NOT EXISTS idx_diagnostic_run_model ON diagnostic_run (manufacturer, model);
-CREATE INDEX IF NOT EXISTS idx_diagnostic_run_created ON diagnostic_run (created_at DESC);
+    id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    device_model        VARCHAR(255),
+    battery_health      INTEGER NOT NULL,
+    storage_speed_pct   INTEGER NOT NULL,
+    cpu_performance_pct INTEGER NOT NULL,
+    ram_health_pct      INTEGER NOT NULL,
+    display_touch_pct   INTEGER NOT NULL,
+    camera_check_pct    INTEGER NOT NULL,
+    timestamp           TIMESTAMP(6)
+);
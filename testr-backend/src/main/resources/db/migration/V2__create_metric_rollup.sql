@@ -0,0 +1,10 @@
+-- Hourly per-model histogram cells maintained on every insert (see MetricRollupRepository).
+-- IF NOT EXISTS because ddl-auto may already have created it on baselined databases.
+CREATE TABLE IF NOT EXISTS metric_rollup (
+    device_model VARCHAR(255) NOT NULL,
+    bucket_hour  TIMESTAMP(6) NOT NULL,
+    metric       VARCHAR(32)  NOT NULL,
+    metric_value INTEGER      NOT NULL,
+    run_count    BIGINT       NOT NULL,
+    PRIMARY KEY (device_model, bucket_hour, metric, metric_value)
+);
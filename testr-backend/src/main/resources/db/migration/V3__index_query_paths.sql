@@ -0,0 +1,18 @@
+-- Indexes for the read paths in DiagnosticRunReader and MetricRollupRepository.
+-- Built CONCURRENTLY so adding them to a large live table doesn't block ingest
+-- (which is why this script runs outside a transaction, see the .conf file).
+
+-- GET /v1/diagnostics and the NDJSON stream: ORDER BY timestamp DESC, id DESC
+-- with a (timestamp, id) keyset cursor and an optional from/to range.
+-- A BRIN index would be smaller, but it can't return rows in order, and
+-- every list query here needs that ordering.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_diagnostic_run_ts_id
+    ON diagnostic_run (timestamp, id);
+
+-- The same queries filtered by deviceModel.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_diagnostic_run_model_ts_id
+    ON diagnostic_run (device_model, timestamp, id);
+
+-- Fleet-wide stats over an hour range (no model filter). Model-filtered stats use the primary key.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_metric_rollup_hour
+    ON metric_rollup (bucket_hour);
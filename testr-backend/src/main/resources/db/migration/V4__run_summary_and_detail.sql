@@ -0,0 +1,10 @@
+-- Report summary columns on the hot table, everything else in a side table
+-- read only when one run is opened. IF NOT EXISTS for ddl-auto baselines.
+ALTER TABLE diagnostic_run ADD COLUMN IF NOT EXISTS manufacturer    VARCHAR(255);
+ALTER TABLE diagnostic_run ADD COLUMN IF NOT EXISTS android_version VARCHAR(255);
+ALTER TABLE diagnostic_run ADD COLUMN IF NOT EXISTS security_patch  VARCHAR(255);
+
+CREATE TABLE IF NOT EXISTS diagnostic_run_detail (
+    run_id BIGINT NOT NULL PRIMARY KEY REFERENCES diagnostic_run (id) ON DELETE CASCADE,
+    report JSONB  NOT NULL
+);
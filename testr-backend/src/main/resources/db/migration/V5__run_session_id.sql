@@ -0,0 +1,6 @@
+-- Device session id, the idempotency key for uploads (see IdempotentIngest).
+-- Older runs have none; Postgres unique indexes allow any number of NULLs.
+ALTER TABLE diagnostic_run ADD COLUMN IF NOT EXISTS session_id VARCHAR(255);
+
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS ux_diagnostic_run_session_id
+    ON diagnostic_run (session_id);
@@ -0,0 +1,10 @@
+-- Day-resolution histogram cells for periods past raw retention (see RunRetention).
+-- Same shape as metric_rollup; stats read both. IF NOT EXISTS for ddl-auto baselines.
+CREATE TABLE IF NOT EXISTS metric_rollup_daily (
+    device_model VARCHAR(255) NOT NULL,
+    bucket_day   DATE         NOT NULL,
+    metric       VARCHAR(32)  NOT NULL,
+    metric_value INTEGER      NOT NULL,
+    run_count    BIGINT       NOT NULL,
+    PRIMARY KEY (device_model, bucket_day, metric, metric_value)
+);
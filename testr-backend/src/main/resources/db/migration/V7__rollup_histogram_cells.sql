@@ -0,0 +1,28 @@
+-- Rollups become one row per (model, bucket, metric) with a 101-slot histogram of the values,
+-- instead of one row per value (see MetricRollupRepository). The per-value tables are set
+-- aside here and converted by V8.
+ALTER TABLE metric_rollup RENAME TO metric_rollup_by_value;
+ALTER TABLE metric_rollup_daily RENAME TO metric_rollup_daily_by_value;
+
+-- run_count and value_sum cover the known values; histogram[v + 1] counts value v.
+CREATE TABLE metric_rollup (
+    device_model  VARCHAR(255)  NOT NULL,
+    bucket_hour   TIMESTAMP(6)  NOT NULL,
+    metric        VARCHAR(32)   NOT NULL,
+    run_count     BIGINT        NOT NULL,
+    value_sum     BIGINT        NOT NULL,
+    unknown_count BIGINT        NOT NULL,
+    histogram     INTEGER ARRAY NOT NULL,
+    CONSTRAINT metric_rollup_cell_pkey PRIMARY KEY (device_model, bucket_hour, metric)
+);
+
+CREATE TABLE metric_rollup_daily (
+    device_model  VARCHAR(255)  NOT NULL,
+    bucket_day    DATE          NOT NULL,
+    metric        VARCHAR(32)   NOT NULL,
+    run_count     BIGINT        NOT NULL,
+    value_sum     BIGINT        NOT NULL,
+    unknown_count BIGINT        NOT NULL,
+    histogram     INTEGER ARRAY NOT NULL,
+    CONSTRAINT metric_rollup_daily_cell_pkey PRIMARY KEY (device_model, bucket_day, metric)
+);
@@ -0,0 +1,41 @@
+-- Converts the per-value cells V7 set aside into histogram cells, then drops them.
+-- Day cells are now kept up on every insert, so every day gets one, including the
+-- days that so far were only held in hour cells.
+
+INSERT INTO metric_rollup (device_model, bucket_hour, metric, run_count, value_sum, unknown_count, histogram)
+SELECT device_model, bucket_hour, metric, run_count, value_sum, unknown_count,
+       ARRAY(SELECT CAST(COALESCE(SUM(c.n), 0) AS INTEGER)
+             FROM generate_series(0, 100) AS s(v) LEFT JOIN unnest(vals, counts) AS c(v, n) ON c.v = s.v
+             GROUP BY s.v ORDER BY s.v)
+FROM (SELECT device_model, bucket_hour, metric,
+             SUM(CASE WHEN metric_value BETWEEN 0 AND 100 THEN run_count ELSE 0 END) AS run_count,
+             SUM(CASE WHEN metric_value BETWEEN 0 AND 100 THEN metric_value * run_count ELSE 0 END) AS value_sum,
+             SUM(CASE WHEN metric_value BETWEEN 0 AND 100 THEN 0 ELSE run_count END) AS unknown_count,
+             array_agg(metric_value) AS vals, array_agg(run_count) AS counts
+      FROM metric_rollup_by_value
+      GROUP BY device_model, bucket_hour, metric) cells;
+
+INSERT INTO metric_rollup_daily (device_model, bucket_day, metric, run_count, value_sum, unknown_count, histogram)
+SELECT device_model, bucket_day, metric, run_count, value_sum, unknown_count,
+       ARRAY(SELECT CAST(COALESCE(SUM(c.n), 0) AS INTEGER)
+             FROM generate_series(0, 100) AS s(v) LEFT JOIN unnest(vals, counts) AS c(v, n) ON c.v = s.v
+             GROUP BY s.v ORDER BY s.v)
+FROM (SELECT device_model, bucket_day, metric,
+             SUM(CASE WHEN metric_value BETWEEN 0 AND 100 THEN run_count ELSE 0 END) AS run_count,
+             SUM(CASE WHEN metric_value BETWEEN 0 AND 100 THEN metric_value * run_count ELSE 0 END) AS value_sum,
+             SUM(CASE WHEN metric_value BETWEEN 0 AND 100 THEN 0 ELSE run_count END) AS unknown_count,
+             array_agg(metric_value) AS vals, array_agg(run_count) AS counts
+      FROM (SELECT device_model, CAST(bucket_hour AS DATE) AS bucket_day, metric, metric_value, run_count
+            FROM metric_rollup_by_value
+            UNION ALL
+            SELECT device_model, bucket_day, metric, metric_value, run_count
+            FROM metric_rollup_daily_by_value) by_value
+      GROUP BY device_model, bucket_day, metric) cells;
+
+DROP TABLE metric_rollup_by_value;
+DROP TABLE metric_rollup_daily_by_value;
+
+-- Fleet-wide stats over a range (no model filter); model-filtered stats use the primary keys.
+-- Replaces V3's index on the per-value table.
+CREATE INDEX IF NOT EXISTS idx_metric_rollup_hour ON metric_rollup (bucket_hour);
+CREATE INDEX IF NOT EXISTS idx_metric_rollup_daily_day ON metric_rollup_daily (bucket_day);
@@ -0,0 +1,82 @@
+package com.testr_backend.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files (-rf json, as written by -Pjmh) and exits
+ * non-zero when any benchmark got slower than the threshold. Direction follows the
+ * mode: throughput must not drop, time per op must not rise. A change inside the
+ * two runs' combined error bars is never flagged.
+ *
+ *   mvn -Pbench test-compile exec:java -Dbench.class=JmhRegressionCheck \
+ *       -Dexec.args="baseline/jmh-result.json target/jmh-result.json 10"
+ */
+public class JmhRegressionCheck {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: JmhRegressionCheck <baseline.json> <current.json> [threshold %, default 10]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, JsonNode> baseline = load(new File(args[0]));
+        Map<String, JsonNode> current = load(new File(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-70s %12s %12s %8s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, JsonNode> e : current.entrySet()) {
+            JsonNode before = baseline.get(e.getKey());
+            JsonNode now = e.getValue().get("primaryMetric");
+            if (before == null) {
+                System.out.printf("%-70s %12s %12.3f %8s%n", e.getKey(), "-", now.get("score").asDouble(), "new");
+                continue;
+            }
+            before = before.get("primaryMetric");
+
+            double was = before.get("score").asDouble();
+            double is = now.get("score").asDouble();
+            boolean higherIsBetter = "thrpt".equals(e.getValue().get("mode").asText());
+            double worsePct = (higherIsBetter ? was - is : is - was) / was * 100.0;
+            double noise = errorOf(before) + errorOf(now);
+
+            boolean regressed = worsePct > threshold && Math.abs(is - was) > noise;
+            if (regressed) regressions++;
+            System.out.printf("%-70s %12.3f %12.3f %+7.1f%%%s%n", e.getKey(), was, is,
+                    higherIsBetter ? -worsePct : worsePct, regressed ? "  REGRESSION" : "");
+        }
+
+        System.out.printf("%d regression(s) over %.1f%% (unit: %s)%n", regressions, threshold,
+                current.isEmpty() ? "-" : current.values().iterator().next().get("primaryMetric").get("scoreUnit").asText());
+        if (regressions > 0) System.exit(1);
+    }
+
+    // Keyed by benchmark name plus its @Param values, so each parameter set is compared with itself
+    static Map<String, JsonNode> load(File file) throws IOException {
+        Map<String, JsonNode> out = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText()
+                    .replace("com.testr_backend.bench.jmh.", ""));
+            JsonNode params = result.get("params");
+            if (params != null) {
+                for (Map.Entry<String, JsonNode> p : params.properties()) {
+                    key.append(' ').append(p.getKey()).append('=').append(p.getValue().asText());
+                }
+            }
+            out.put(key.toString(), result);
+        }
+        return out;
+    }
+
+    // JMH writes NaN for the error when there were too few iterations to compute one
+    static double errorOf(JsonNode metric) {
+        double err = metric.path("scoreError").asDouble(0);
+        return Double.isNaN(err) ? 0 : err;
+    }
+}
@@ -0,0 +1,176 @@
+package com.testr_backend.bench;
+
+import com.testr_backend.repo.DiagnosticRunFilter;
+import com.testr_backend.repo.DiagnosticRunReader;
+import com.testr_backend.stats.MetricRollupRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.postgresql.PGConnection;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+
+import javax.sql.DataSource;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the API's query paths on PostgreSQL before and after the V3 indexes.
+ *
+ * Loads N synthetic runs (default 1M, spread over a year across 40 models) into a
+ * scratch schema using the other migrations, times each query through the real
+ * DiagnosticRunReader / MetricRollupRepository code, applies V3, and times again.
+ *
+ *   mvn -Pbench test-compile exec:java -Dbench.class=SchemaIndexBenchmark \
+ *       -Dbench.jdbcUrl=jdbc:postgresql://localhost:5432/postgres -Dbench.user=postgres -Dbench.rows=1000000
+ */
+public class SchemaIndexBenchmark {
+
+    static final String SCHEMA = "testr_bench";
+    static final int MODELS = 40;
+    static final int REPEATS = 15;
+    static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("bench.jdbcUrl", "jdbc:postgresql://localhost:5432/postgres");
+        int rows = Integer.getInteger("bench.rows", 1_000_000);
+
+        HikariDataSource ds = new HikariDataSource();
+        ds.setJdbcUrl(url + (url.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA);
+        ds.setUsername(System.getProperty("bench.user", "postgres"));
+        ds.setPassword(System.getProperty("bench.password", ""));
+        JdbcTemplate jdbc = new JdbcTemplate(ds);
+
+        jdbc.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        jdbc.execute("CREATE SCHEMA " + SCHEMA);
+        runScript(jdbc, "db/migration/V1__create_diagnostic_run.sql");
+        runScript(jdbc, "db/migration/V2__create_metric_rollup.sql");
+        runScript(jdbc, "db/migration/V4__run_summary_and_detail.sql");
+        runScript(jdbc, "db/migration/V5__run_session_id.sql");
+        runScript(jdbc, "db/migration/V6__metric_rollup_daily.sql");
+        runScript(jdbc, "db/migration/V7__rollup_histogram_cells.sql");
+        runScript(jdbc, "db/migration/V8__convert_rollup_cells.sql");
+
+        long t0 = System.nanoTime();
+        load(ds, rows);
+        new MetricRollupRepository(jdbc).backfill();
+        jdbc.execute("VACUUM ANALYZE diagnostic_run");
+        jdbc.execute("VACUUM ANALYZE metric_rollup");
+        jdbc.execute("VACUUM ANALYZE metric_rollup_daily");
+        System.out.printf("Loaded %,d runs in %.1fs (%,d hourly and %,d daily rollup rows)%n%n", rows,
+                (System.nanoTime() - t0) / 1e9,
+                jdbc.queryForObject("SELECT COUNT(*) FROM metric_rollup", Long.class),
+                jdbc.queryForObject("SELECT COUNT(*) FROM metric_rollup_daily", Long.class));
+
+        DiagnosticRunReader reader = new DiagnosticRunReader(ds, new DataSourceTransactionManager(ds));
+        MetricRollupRepository rollups = new MetricRollupRepository(jdbc);
+
+        Map<String, Double> before = runQueries(reader, rollups);
+
+        t0 = System.nanoTime();
+        runScript(jdbc, "db/migration/V3__index_query_paths.sql");
+        jdbc.execute("ANALYZE diagnostic_run");
+        jdbc.execute("ANALYZE metric_rollup");
+        System.out.printf("Built V3 indexes in %.1fs%n%n", (System.nanoTime() - t0) / 1e9);
+
+        Map<String, Double> after = runQueries(reader, rollups);
+
+        System.out.printf("%-40s %12s %12s %9s%n", "query (median of " + REPEATS + ")", "before ms", "after ms", "speedup");
+        before.forEach((name, b) -> {
+            double a = after.get(name);
+            System.out.printf("%-40s %12.2f %12.2f %8.1fx%n", name, b, a, b / a);
+        });
+
+        jdbc.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+        ds.close();
+    }
+
+    static Map<String, Double> runQueries(DiagnosticRunReader reader, MetricRollupRepository rollups) {
+        LocalDateTime mid = START.plusDays(180);
+        String model = "Model-7";
+
+        Map<String, Runnable> queries = new LinkedHashMap<>();
+        queries.put("latest page (limit 100)", () ->
+                reader.findPage(new DiagnosticRunFilter(), null, null, 100));
+        queries.put("deep keyset page (mid-table)", () ->
+                reader.findPage(new DiagnosticRunFilter(), mid, Long.MAX_VALUE, 100));
+        queries.put("model page", () ->
+                reader.findPage(new DiagnosticRunFilter(model, null, null), null, null, 100));
+        queries.put("model + 7 day range page", () ->
+                reader.findPage(new DiagnosticRunFilter(model, mid, mid.plusDays(7)), null, null, 100));
+        queries.put("stream model + 30 day range", () -> {
+            AtomicLong n = new AtomicLong();
+            reader.stream(new DiagnosticRunFilter(model, mid, mid.plusDays(30)), r -> n.incrementAndGet());
+        });
+        queries.put("stats fleet, 30 day range", () ->
+                rollups.load(null, mid, mid.plusDays(30)));
+        queries.put("stats one model, all time", () ->
+                rollups.load(model, null, null));
+
+        Map<String, Double> medians = new LinkedHashMap<>();
+        queries.forEach((name, q) -> {
+            q.run(); // warm the plan and buffer cache
+            double[] ms = new double[REPEATS];
+            for (int i = 0; i < REPEATS; i++) {
+                long s = System.nanoTime();
+                q.run();
+                ms[i] = (System.nanoTime() - s) / 1e6;
+            }
+            Arrays.sort(ms);
+            medians.put(name, ms[REPEATS / 2]);
+        });
+        return medians;
+    }
+
+    // Bulk-loads rows with COPY, in insertion (time) order like production ingest.
+    static void load(DataSource ds, int rows) throws Exception {
+        Random rnd = new Random(42);
+        long spanSeconds = 365L * 24 * 3600;
+
+        try (Connection con = ds.getConnection()) {
+            PGConnection pg = con.unwrap(PGConnection.class);
+            final int chunk = 50_000;
+            for (int done = 0; done < rows; done += chunk) {
+                StringBuilder csv = new StringBuilder(chunk * 64);
+                for (int i = done; i < Math.min(rows, done + chunk); i++) {
+                    LocalDateTime ts = START.plusSeconds(spanSeconds * i / rows);
+                    csv.append("Model-").append(rnd.nextInt(MODELS)).append(',')
+                            .append(60 + rnd.nextInt(41)).append(',')
+                            .append(rnd.nextInt(101)).append(',')
+                            .append(rnd.nextInt(101)).append(',')
+                            .append(rnd.nextInt(10) == 0 ? -1 : 100).append(",-1,-1,")
+                            .append(ts).append('\n');
+                }
+                Reader in = new StringReader(csv.toString());
+                pg.getCopyAPI().copyIn(
+                        "COPY diagnostic_run (device_model, battery_health, storage_speed_pct, cpu_performance_pct, " +
+                        "ram_health_pct, display_touch_pct, camera_check_pct, timestamp) FROM STDIN WITH (FORMAT csv)", in);
+            }
+        }
+    }
+
+    static void runScript(JdbcTemplate jdbc, String path) throws Exception {
+        String sql = new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8);
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : sql.split("\n")) {
+            if (line.strip().startsWith("--")) continue;
+            current.append(line).append('\n');
+            if (line.strip().endsWith(";")) {
+                statements.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        statements.forEach(jdbc::execute);
+    }
+}
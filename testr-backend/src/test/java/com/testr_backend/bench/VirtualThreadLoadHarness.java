@@ -0,0 +1,175 @@
+package com.testr_backend.bench;
+
+import com.testr_backend.TestrBackendApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares platform-thread and virtual-thread request handling under the same load.
+ *
+ * Boots the app twice in-process (spring.threads.virtual.enabled=false, then true),
+ * and for each of create() and getAll() drives the same concurrency levels for a
+ * fixed time, printing throughput and p50/p99 latency per run. The database is
+ * the "test" profile's in-memory H2 unless overridden; pass -Dspring.datasource.url=...
+ * (plus username/password) to measure against Postgres.
+ *
+ *   mvn -Pbench test-compile exec:java -Dbench.class=VirtualThreadLoadHarness \
+ *       -Dload.concurrency=16,64,256 -Dload.seconds=10
+ */
+public class VirtualThreadLoadHarness {
+
+    static final String RUN_JSON = """
+            {"deviceModel": "Pixel 7", "batteryHealth": 91, "storageSpeedPct": 64, "cpuPerformancePct": 77,
+             "ramHealthPct": 100, "displayTouchPct": -1, "cameraCheckPct": -1}
+            """;
+
+    public static void main(String[] args) throws Exception {
+        int[] levels = Arrays.stream(System.getProperty("load.concurrency", "16,64,256").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+        int seconds = Integer.getInteger("load.seconds", 10);
+        int seedRows = Integer.getInteger("load.seedRows", 5_000);
+
+        System.out.printf("%-8s %-8s %6s %10s %9s %9s %8s%n",
+                "threads", "endpoint", "conc", "req/s", "p50 ms", "p99 ms", "errors");
+
+        for (boolean virtual : new boolean[]{false, true}) {
+            try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(TestrBackendApplication.class)
+                    .profiles("test")
+                    // One client at this concurrency would be throttled into fast 429s and 503s
+                    .properties("server.port=0", "spring.threads.virtual.enabled=" + virtual,
+                            "testr.ratelimit.enabled=false", "testr.shed.enabled=false")
+                    .run()) {
+
+                int port = ((WebServerApplicationContext) ctx).getWebServer().getPort();
+                String base = "http://localhost:" + port + "/v1/diagnostics";
+                HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .build();
+
+                seed(client, base, seedRows);
+
+                HttpRequest create = HttpRequest.newBuilder(URI.create(base))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(RUN_JSON))
+                        .build();
+                HttpRequest getAll = HttpRequest.newBuilder(URI.create(base + "?limit=100")).GET().build();
+
+                String label = virtual ? "virtual" : "platform";
+                for (int c : levels) {
+                    print(label, "create", c, drive(client, create, c, seconds));
+                    print(label, "getAll", c, drive(client, getAll, c, seconds));
+                }
+            }
+        }
+    }
+
+    static void seed(HttpClient client, String base, int rows) throws Exception {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            if (i > 0) batch.append(',');
+            batch.append(RUN_JSON);
+        }
+        batch.append(']');
+
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/batch"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(batch.toString()))
+                .build();
+        for (int done = 0; done < rows; done += 500) {
+            client.send(req, HttpResponse.BodyHandlers.discarding());
+        }
+    }
+
+    // Warms up for a couple of seconds, then runs `concurrency` closed-loop clients for `seconds`.
+    static Result drive(HttpClient client, HttpRequest req, int concurrency, int seconds) throws Exception {
+        run(client, req, concurrency, Math.min(2, seconds));
+        return run(client, req, concurrency, seconds);
+    }
+
+    static Result run(HttpClient client, HttpRequest req, int concurrency, int seconds) throws Exception {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<long[]>> workers = new ArrayList<>();
+
+        // Load generators are virtual threads in both modes so only the server side differs.
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(pool.submit(() -> {
+                    long[] samples = new long[1024];
+                    int n = 0;
+                    long errors = 0;
+                    while (System.nanoTime() < end) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> res = client.send(req, HttpResponse.BodyHandlers.discarding());
+                            if (res.statusCode() >= 300) errors++;
+                        } catch (Exception e) {
+                            errors++;
+                        }
+                        if (n == samples.length) samples = Arrays.copyOf(samples, n * 2);
+                        samples[n++] = System.nanoTime() - start;
+                    }
+                    long[] out = Arrays.copyOf(samples, n + 1);
+                    out[n] = errors; // last slot carries the error count
+                    return out;
+                }));
+            }
+
+            Result r = new Result();
+            List<long[]> all = new ArrayList<>();
+            int total = 0;
+            for (Future<long[]> f : workers) {
+                long[] w = f.get();
+                r.errors += w[w.length - 1];
+                all.add(w);
+                total += w.length - 1;
+            }
+
+            long[] latencies = new long[total];
+            int pos = 0;
+            for (long[] w : all) {
+                System.arraycopy(w, 0, latencies, pos, w.length - 1);
+                pos += w.length - 1;
+            }
+            Arrays.sort(latencies);
+
+            r.requests = total;
+            r.throughput = total / (double) seconds;
+            r.p50Ms = percentile(latencies, 50) / 1e6;
+            r.p99Ms = percentile(latencies, 99) / 1e6;
+            return r;
+        }
+    }
+
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+    }
+
+    static void print(String threads, String endpoint, int concurrency, Result r) {
+        System.out.printf("%-8s %-8s %6d %10.0f %9.2f %9.2f %8d%n",
+                threads, endpoint, concurrency, r.throughput, r.p50Ms, r.p99Ms, r.errors);
+    }
+
+    static class Result {
+        long requests;
+        long errors;
+        double throughput;
+        double p50Ms;
+        double p99Ms;
+    }
+}
@@ -0,0 +1,106 @@
+package com.testr_backend.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.testr_backend.web.DiagnosticRunRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares upload encodings for diagnostic runs: JSON vs CBOR, each with and
+ * without gzip. For a single run and a 50-run batch it prints the bytes on the
+ * wire and the encode and decode cost per message. The decode side is the
+ * server's work (inflate + databind into DiagnosticRunRequest).
+ *
+ *   mvn -Pbench test-compile exec:java -Dbench.class=WireFormatBenchmark -Dwire.seconds=3
+ */
+public class WireFormatBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = Integer.getInteger("wire.seconds", 3);
+
+        ObjectMapper json = new ObjectMapper();
+        ObjectMapper cbor = new CBORMapper();
+
+        Random rnd = new Random(42);
+        List<DiagnosticRunRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++) batch.add(sample(rnd));
+
+        System.out.printf("%-6s %-10s %8s %12s %12s%n", "msg", "format", "bytes", "encode us", "decode us");
+        for (Object message : new Object[]{batch.get(0), batch}) {
+            String label = message instanceof List ? "batch" : "single";
+            Class<?> type = message instanceof List ? DiagnosticRunRequest[].class : DiagnosticRunRequest.class;
+            for (ObjectMapper mapper : new ObjectMapper[]{json, cbor}) {
+                String name = mapper == json ? "json" : "cbor";
+                measure(label, name, mapper.writer(), mapper.readerFor(type), message, false, seconds);
+                measure(label, name + "+gzip", mapper.writer(), mapper.readerFor(type), message, true, seconds);
+            }
+        }
+    }
+
+    static DiagnosticRunRequest sample(Random rnd) {
+        DiagnosticRunRequest r = new DiagnosticRunRequest();
+        r.deviceModel = "Pixel " + (6 + rnd.nextInt(4));
+        r.batteryHealth = 60 + rnd.nextInt(41);
+        r.storageSpeedPct = rnd.nextInt(101);
+        r.cpuPerformancePct = rnd.nextInt(101);
+        r.ramHealthPct = 100;
+        r.displayTouchPct = -1;
+        r.cameraCheckPct = -1;
+        return r;
+    }
+
+    static void measure(String label, String format, ObjectWriter writer, ObjectReader reader,
+                        Object message, boolean gzip, int seconds) throws IOException {
+        byte[] wire = encode(writer, message, gzip);
+
+        // Warm up both paths before timing them.
+        loop(() -> encode(writer, message, gzip), 1);
+        loop(() -> decode(reader, wire, gzip), 1);
+
+        double encodeUs = loop(() -> encode(writer, message, gzip), seconds);
+        double decodeUs = loop(() -> decode(reader, wire, gzip), seconds);
+        System.out.printf("%-6s %-10s %8d %12.2f %12.2f%n", label, format, wire.length, encodeUs, decodeUs);
+    }
+
+    static byte[] encode(ObjectWriter writer, Object message, boolean gzip) throws IOException {
+        if (!gzip) return writer.writeValueAsBytes(message);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            writer.writeValue(gz, message);
+        }
+        return out.toByteArray();
+    }
+
+    static Object decode(ObjectReader reader, byte[] wire, boolean gzip) throws IOException {
+        if (!gzip) return reader.readValue(wire);
+        return reader.readValue(new GZIPInputStream(new ByteArrayInputStream(wire)));
+    }
+
+    interface Op {
+        Object run() throws IOException;
+    }
+
+    static Object sink;
+
+    // Runs op repeatedly for `seconds` and returns the mean time per call in microseconds.
+    static double loop(Op op, int seconds) throws IOException {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long start = System.nanoTime();
+        long n = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100; i++) sink = op.run();
+            n += 100;
+        }
+        return (System.nanoTime() - start) / 1e3 / n;
+    }
+}
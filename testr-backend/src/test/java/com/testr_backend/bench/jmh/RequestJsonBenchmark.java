@@ -0,0 +1,92 @@
+package com.testr_backend.bench.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.web.DiagnosticRunRequest;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ingest path before the database: databind of an upload into
+ * DiagnosticRunRequest (summary only, with the full device report, and a
+ * 50-run batch), then the validate + toRun() mapping create() does per run.
+ * The mapper is built the way Spring Boot builds the app's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class RequestJsonBenchmark {
+
+    static final String SUMMARY = """
+            {"sessionId": "7f0c2a4e-5d1b-4c38-9a0e-3b6f2d9c1e55", "deviceModel": "Pixel 8",
+             "batteryHealth": 91, "storageSpeedPct": 64, "cpuPerformancePct": 77, "ramHealthPct": 100,
+             "displayTouchPct": -1, "cameraCheckPct": -1, "manufacturer": "Google",
+             "androidVersion": "15", "securityPatch": "2026-09-05"}""";
+
+    // Roughly the shape the DUT sends: a few nested sections and per-core arrays
+    static final String DETAILS = """
+            {"battery": {"healthPct": 91, "cycleCount": 412, "temperatureC": 31.5, "voltageMv": 4012},
+             "cpu": {"singleCore": 1180, "multiCore": 4720, "cores": [1180, 1175, 1169, 1181, 802, 798, 805, 801],
+                     "clusters": [{"cores": 4, "maxFreqKhz": 2850000}, {"cores": 4, "maxFreqKhz": 1800000}]},
+             "storage": {"profiles": [{"name": "seq-read", "mbPerSec": 1450.2}, {"name": "rand-read", "iops": 9100, "queueDepth": 1},
+                                      {"name": "seq-write", "mbPerSec": 610.8}, {"name": "rand-write", "iops": 2100}]},
+             "collectors": [{"name": "battery", "status": "ok", "ms": 12}, {"name": "cpu", "status": "ok", "ms": 1840},
+                            {"name": "storage", "status": "ok", "ms": 5210}, {"name": "ram", "status": "ok", "ms": 640}]}""";
+
+    byte[] summary;
+    byte[] withDetails;
+    byte[] batch;
+    ObjectReader single;
+    ObjectReader array;
+    DiagnosticRunRequest parsed;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        single = mapper.readerFor(DiagnosticRunRequest.class);
+        array = mapper.readerFor(DiagnosticRunRequest[].class);
+
+        summary = SUMMARY.getBytes(StandardCharsets.UTF_8);
+        String full = SUMMARY.substring(0, SUMMARY.length() - 1) + ", \"details\": " + DETAILS + "}";
+        withDetails = full.getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(SUMMARY);
+        }
+        batch = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        parsed = single.readValue(withDetails);
+    }
+
+    @Benchmark
+    public DiagnosticRunRequest readSummary() throws IOException {
+        return single.readValue(summary);
+    }
+
+    @Benchmark
+    public DiagnosticRunRequest readWithDetails() throws IOException {
+        return single.readValue(withDetails);
+    }
+
+    @Benchmark
+    public DiagnosticRunRequest[] readBatchOf50() throws IOException {
+        return array.readValue(batch);
+    }
+
+    // What create() does between databind and the save
+    @Benchmark
+    public DiagnosticRun validateAndMap() {
+        if (parsed.validate() != null) throw new IllegalStateException();
+        return parsed.toRun();
+    }
+}
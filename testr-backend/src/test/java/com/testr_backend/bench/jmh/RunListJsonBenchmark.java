@@ -0,0 +1,82 @@
+package com.testr_backend.bench.jmh;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.web.DiagnosticRunPage;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of DiagnosticRun for the read endpoints: one dashboard page
+ * (GET /v1/diagnostics, DiagnosticRunPage) and the same runs written as NDJSON
+ * the way streamAll() writes them, at the default and maximum page sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class RunListJsonBenchmark {
+
+    @Param({"100", "1000"})
+    int pageSize;
+
+    ObjectWriter pageWriter;
+    ObjectWriter ndjsonWriter;
+    DiagnosticRunPage page;
+    ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        pageWriter = mapper.writerFor(DiagnosticRunPage.class);
+        ndjsonWriter = mapper.writerFor(DiagnosticRun.class)
+                .withRootValueSeparator("\n")
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        Random rnd = new Random(42);
+        LocalDateTime now = LocalDateTime.of(2026, 10, 1, 12, 0);
+        List<DiagnosticRun> runs = new ArrayList<>();
+        for (int i = 0; i < pageSize; i++) {
+            DiagnosticRun run = new DiagnosticRun("Pixel " + (6 + rnd.nextInt(4)), 60 + rnd.nextInt(41),
+                    rnd.nextInt(101), rnd.nextInt(101), 100, -1, -1);
+            run.setId(1_000_000L - i);
+            run.setSessionId("session-" + i);
+            run.setManufacturer("Google");
+            run.setAndroidVersion("15");
+            run.setSecurityPatch("2026-09-05");
+            run.setTimestamp(now.minusSeconds(i * 37L));
+            runs.add(run);
+        }
+        page = new DiagnosticRunPage(runs, "MjAyNi0xMC0wMVQxMjowMDowMHw5OTk5MDE");
+        out = new ByteArrayOutputStream(pageSize * 512);
+    }
+
+    @Benchmark
+    public int writePage() throws IOException {
+        out.reset();
+        pageWriter.writeValue(out, page);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeNdjson() throws IOException {
+        out.reset();
+        try (SequenceWriter seq = ndjsonWriter.writeValues(out)) {
+            for (DiagnosticRun run : page.items) seq.write(run);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,129 @@
+package com.testr_backend.bench.jmh;
+
+import com.testr_backend.TestrBackendApplication;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.repo.DiagnosticRunFilter;
+import com.testr_backend.repo.RunStore;
+import com.testr_backend.service.DiagnosticRunService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Save and read through the real beans: DiagnosticRunService for inserts (one run,
+ * and a 50-run batch), the RunStore for a lookup by id and a keyset page below a
+ * cursor (deeper pages skip the first-page cache, so this is the query cost).
+ *
+ * store=jdbc is the default JPA/JDBC path, on the "test" profile's in-memory H2
+ * unless a datasource is passed to the forked JVMs, e.g. for Postgres
+ *   -Djmh.args="-p store=jdbc -jvmArgsAppend -Dspring.datasource.url=jdbc:postgresql://localhost:5432/testr
+ *               -Dspring.datasource.username=... -Dspring.datasource.password=..."
+ * store=embedded is the "embedded" profile: the memory-mapped run log plus an H2 file,
+ * in a temp directory, with fsync on commit as configured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class RunStoreBenchmark {
+
+    static final int SEED_ROWS = 20_000;
+    static final DiagnosticRunFilter ALL = new DiagnosticRunFilter(null, null, null);
+
+    @Param({"jdbc", "embedded"})
+    String store;
+
+    ConfigurableApplicationContext ctx;
+    DiagnosticRunService service;
+    RunStore runs;
+    List<DiagnosticRun> seeded = new ArrayList<>();
+    Path dataDir;
+
+    @Setup(Level.Trial)
+    public void boot() throws IOException {
+        SpringApplicationBuilder app = new SpringApplicationBuilder(TestrBackendApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN");
+        String[] args = {};
+        if (store.equals("embedded")) {
+            dataDir = Files.createTempDirectory("testr-store-bench");
+            app.profiles("embedded");
+            // An argument, since builder properties are defaults the profile's own file would override
+            args = new String[]{"--testr.store.dir=" + dataDir};
+        } else {
+            app.profiles("test");
+        }
+        ctx = app.run(args);
+        service = ctx.getBean(DiagnosticRunService.class);
+        runs = ctx.getBean(RunStore.class);
+
+        for (int done = 0; done < SEED_ROWS; done += 500) {
+            List<DiagnosticRun> batch = new ArrayList<>();
+            for (int i = 0; i < 500; i++) batch.add(newRun());
+            seeded.addAll(service.saveAll(batch));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() throws IOException {
+        ctx.close();
+        if (dataDir != null) {
+            try (Stream<Path> files = Files.walk(dataDir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+            }
+        }
+    }
+
+    static DiagnosticRun newRun() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        DiagnosticRun run = new DiagnosticRun("Pixel " + (6 + rnd.nextInt(4)), 60 + rnd.nextInt(41),
+                rnd.nextInt(101), rnd.nextInt(101), 100, -1, -1);
+        run.setManufacturer("Google");
+        run.setAndroidVersion("15");
+        return run;
+    }
+
+    DiagnosticRun randomSeeded() {
+        return seeded.get(ThreadLocalRandom.current().nextInt(seeded.size()));
+    }
+
+    @Benchmark
+    public DiagnosticRun saveOne() {
+        return service.save(newRun());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(50)
+    public List<DiagnosticRun> saveBatchOf50() {
+        List<DiagnosticRun> batch = new ArrayList<>(50);
+        for (int i = 0; i < 50; i++) batch.add(newRun());
+        return service.saveAll(batch);
+    }
+
+    @Benchmark
+    public Optional<DiagnosticRun> findById() {
+        return runs.findById(randomSeeded().getId());
+    }
+
+    @Benchmark
+    public List<DiagnosticRun> findPageAfterCursor() {
+        DiagnosticRun cursor = randomSeeded();
+        LocalDateTime ts = cursor.getTimestamp();
+        return runs.findPage(ALL, ts, cursor.getId(), 100);
+    }
+}
@@ -0,0 +1,101 @@
+package com.testr_backend.export;
+
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.model.DiagnosticRun;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ArrowRunWriterTests {
+
+    static byte[] export(List<DiagnosticRun> runs) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RunWriter writer = RunExportFormat.ARROW.open(out);
+        for (DiagnosticRun run : runs) writer.write(run);
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    // A run whose optional fields are null on some rows, with metrics out of range on others.
+    static DiagnosticRun run(int i) {
+        DiagnosticRun run = new DiagnosticRun(i % 2 == 0 ? "Pixel 7" : "Galaxy S21 Ünicode ✓",
+                i % 101, 100 - i % 101, 50, 100, -1, i % 7 == 0 ? 250 : 75);
+        run.setId(1_000L + i);
+        run.setSessionId(i % 3 == 0 ? null : "session-" + i);
+        run.setManufacturer(i % 2 == 0 ? null : "Samsung");
+        run.setAndroidVersion("14");
+        run.setSecurityPatch(i % 4 == 0 ? "" : "2025-0" + (1 + i % 9) + "-01");
+        run.setTimestamp(i % 5 == 0 ? null : LocalDateTime.of(1969, 12, 31, 23, 59).plusSeconds(i).plusNanos(123_456_789));
+        return run;
+    }
+
+    // The row ArrowStreamReader should give back for a run.
+    static List<Object> expected(DiagnosticRun run) {
+        List<Object> row = new ArrayList<>();
+        row.add(run.getId());
+        row.add(run.getSessionId());
+        row.add(run.getDeviceModel());
+        for (DiagnosticMetric metric : DiagnosticMetric.values()) row.add(metric.valueOf(run));
+        row.add(run.getManufacturer());
+        row.add(run.getAndroidVersion());
+        row.add(run.getSecurityPatch());
+        row.add(run.getTimestamp() == null ? null : run.getTimestamp().withNano(run.getTimestamp().getNano() / 1_000 * 1_000));
+        return row;
+    }
+
+    static List<Object> row(ArrowStreamReader.Batch batch, int row) {
+        List<Object> values = new ArrayList<>();
+        for (Object[] column : batch.columns()) values.add(column[row]);
+        return values;
+    }
+
+    @Test
+    void schemaNamesEveryColumnWithItsType() throws Exception {
+        List<ArrowStreamReader.Field> expected = new ArrayList<>();
+        expected.add(new ArrowStreamReader.Field("id", "int64", false));
+        expected.add(new ArrowStreamReader.Field("sessionId", "utf8", true));
+        expected.add(new ArrowStreamReader.Field("deviceModel", "utf8", true));
+        for (DiagnosticMetric metric : DiagnosticMetric.values()) {
+            expected.add(new ArrowStreamReader.Field(metric.jsonName(), "int8", false));
+        }
+        expected.add(new ArrowStreamReader.Field("manufacturer", "utf8", true));
+        expected.add(new ArrowStreamReader.Field("androidVersion", "utf8", true));
+        expected.add(new ArrowStreamReader.Field("securityPatch", "utf8", true));
+        expected.add(new ArrowStreamReader.Field("timestamp", "timestamp[us]", true));
+
+        ArrowStreamReader empty = new ArrowStreamReader(export(List.of()));
+        assertEquals(expected, empty.fields);
+        assertEquals(0, empty.batches.size());
+    }
+
+    @Test
+    void roundTripsValuesAndNullsAcrossBatches() throws Exception {
+        List<DiagnosticRun> runs = new ArrayList<>();
+        for (int i = 0; i < ArrowRunWriter.BATCH_ROWS + 3; i++) runs.add(run(i));
+
+        ArrowStreamReader read = new ArrowStreamReader(export(runs));
+        assertEquals(2, read.batches.size());
+        assertEquals(ArrowRunWriter.BATCH_ROWS, read.batches.get(0).length());
+        assertEquals(3, read.batches.get(1).length());
+
+        int i = 0;
+        for (ArrowStreamReader.Batch batch : read.batches) {
+            long[] nulls = new long[read.fields.size()];
+            for (int row = 0; row < batch.length(); row++, i++) {
+                List<Object> expected = expected(runs.get(i));
+                assertEquals(expected, row(batch, row), "run " + i);
+                for (int c = 0; c < nulls.length; c++) if (expected.get(c) == null) nulls[c]++;
+            }
+            // Each batch counts its own nulls; the bitmaps start afresh
+            assertArrayEquals(nulls, batch.nullCounts());
+        }
+        // The last batch's rows 16384..16386: one null session and timestamp, two null manufacturers
+        assertArrayEquals(new long[]{0, 1, 0, 0, 0, 0, 0, 0, 0, 2, 0, 0, 1}, read.batches.get(1).nullCounts());
+    }
+}
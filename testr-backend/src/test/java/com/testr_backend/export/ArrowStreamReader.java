@@ -0,0 +1,197 @@
+package com.testr_backend.export;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Decodes an Arrow IPC stream independently of ArrowRunWriter, for checking
+ * what it wrote: the schema's fields and every record batch's values. Reads the
+ * FlatBuffers metadata through the vtables, so absent fields take the .fbs
+ * defaults, and covers only the types the export uses (signed ints, utf8 and
+ * timestamps without a zone).
+ *
+ * Values come back as Long (int64), Integer (narrower ints), String or
+ * LocalDateTime, and null where the validity bitmap says so.
+ */
+public final class ArrowStreamReader {
+
+    // type is "int8", "int64", "utf8" or "timestamp[us]"
+    public record Field(String name, String type, boolean nullable) {}
+
+    // columns.get(c)[row]; nullCounts as declared in the batch's field nodes
+    public record Batch(long length, long[] nullCounts, List<Object[]> columns) {}
+
+    public final List<Field> fields = new ArrayList<>();
+    public final List<Batch> batches = new ArrayList<>();
+
+    private final ByteBuffer b;
+
+    public ArrowStreamReader(byte[] stream) {
+        b = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+        int pos = 0;
+        while (true) {
+            assertEquals(-1, b.getInt(pos)); // continuation marker
+            int metadataLength = b.getInt(pos + 4);
+            pos += 8;
+            if (metadataLength == 0) break;
+            assertEquals(0, metadataLength % 8, "metadata is padded to 8 bytes");
+            int message = pos + b.getInt(pos);
+            // Message { version, header_type, header, bodyLength }
+            assertEquals(4, b.getShort(field(message, 0))); // V5
+            byte headerType = b.get(field(message, 1));
+            int header = ref(field(message, 2));
+            int bodyLength = (int) b.getLong(field(message, 3));
+            int body = pos + metadataLength;
+            if (headerType == 1) {
+                assertTrue(fields.isEmpty() && batches.isEmpty(), "the schema comes first, once");
+                schema(header);
+            } else {
+                assertEquals(3, headerType);
+                assertEquals(0, body % 8, "bodies are 8-aligned");
+                batch(header, body, bodyLength);
+            }
+            pos = body + bodyLength;
+        }
+        assertEquals(stream.length, pos);
+    }
+
+    // Schema { endianness, fields }
+    private void schema(int schema) {
+        int at = field(schema, 0);
+        assertEquals(0, at < 0 ? 0 : b.getShort(at)); // little-endian
+        int vector = ref(field(schema, 1));
+        for (int i = 0; i < b.getInt(vector); i++) {
+            // Field { name, nullable, type_type, type, dictionary, children }
+            int f = ref(vector + 4 + 4 * i);
+            String name = string(ref(field(f, 0)));
+            boolean nullable = bool(f, 1);
+            int typeType = byteOr(f, 2, 0);
+            int type = ref(field(f, 3));
+            String typeName = switch (typeType) {
+                case 2 -> { // Int { bitWidth, is_signed }
+                    assertTrue(bool(type, 1), name + " is signed");
+                    yield "int" + b.getInt(field(type, 0));
+                }
+                case 5 -> "utf8";
+                case 10 -> { // Timestamp { unit, timezone }
+                    assertTrue(field(type, 1) < 0, name + " has no zone");
+                    int unit = field(type, 0) < 0 ? 0 : b.getShort(field(type, 0));
+                    yield "timestamp[" + List.of("s", "ms", "us", "ns").get(unit) + "]";
+                }
+                default -> throw new AssertionError("Unexpected type " + typeType + " for " + name);
+            };
+            int children = field(f, 5);
+            assertTrue(children < 0 || b.getInt(ref(children)) == 0, name + " has no children");
+            fields.add(new Field(name, typeName, nullable));
+        }
+    }
+
+    // RecordBatch { length, nodes, buffers }
+    private void batch(int batch, int body, int bodyLength) {
+        int length = (int) b.getLong(field(batch, 0));
+        int nodes = ref(field(batch, 1));
+        int buffers = ref(field(batch, 2));
+        assertEquals(fields.size(), b.getInt(nodes));
+
+        long[] nullCounts = new long[fields.size()];
+        List<Object[]> columns = new ArrayList<>();
+        int buffer = 0;
+        for (int c = 0; c < fields.size(); c++) {
+            Field field = fields.get(c);
+            assertEquals(length, b.getLong(nodes + 4 + 16 * c), field.name() + " length");
+            nullCounts[c] = b.getLong(nodes + 4 + 16 * c + 8);
+
+            int[] validity = buffer(buffers, buffer++, body, bodyLength);
+            boolean[] valid = new boolean[length];
+            int nulls = 0;
+            for (int row = 0; row < length; row++) {
+                valid[row] = validity[1] == 0 || (b.get(validity[0] + (row >> 3)) & (1 << (row & 7))) != 0;
+                if (!valid[row]) nulls++;
+            }
+            assertEquals(nullCounts[c], nulls, field.name() + " null count");
+            assertTrue(nulls == 0 || field.nullable(), field.name() + " is nullable");
+
+            Object[] values = new Object[length];
+            int[] data = buffer(buffers, buffer++, body, bodyLength);
+            if (field.type().equals("utf8")) {
+                int[] bytes = buffer(buffers, buffer++, body, bodyLength);
+                assertEquals(0, b.getInt(data[0]));
+                for (int row = 0; row < length; row++) {
+                    int start = b.getInt(data[0] + 4 * row);
+                    int end = b.getInt(data[0] + 4 * row + 4);
+                    assertTrue(start <= end && end <= bytes[1], field.name() + " offsets");
+                    byte[] s = new byte[end - start];
+                    b.get(bytes[0] + start, s);
+                    if (valid[row]) values[row] = new String(s, StandardCharsets.UTF_8);
+                }
+            } else {
+                int width = switch (field.type()) {
+                    case "int8" -> 1;
+                    case "int64", "timestamp[us]" -> 8;
+                    default -> throw new AssertionError(field.type());
+                };
+                assertTrue(data[1] >= width * length, field.name() + " values");
+                for (int row = 0; row < length; row++) {
+                    if (!valid[row]) continue;
+                    if (width == 1) {
+                        values[row] = (int) b.get(data[0] + row);
+                    } else {
+                        long v = b.getLong(data[0] + 8 * row);
+                        values[row] = field.type().equals("int64") ? (Object) v : LocalDateTime.ofEpochSecond(
+                                Math.floorDiv(v, 1_000_000), (int) Math.floorMod(v, 1_000_000) * 1_000, ZoneOffset.UTC);
+                    }
+                }
+            }
+            columns.add(values);
+        }
+        assertEquals(buffer, b.getInt(buffers), "buffer count");
+        batches.add(new Batch(length, nullCounts, columns));
+    }
+
+    // Buffer i of a batch as {absolute start, length}; it has to lie within the body, 8-aligned.
+    private int[] buffer(int buffers, int i, int body, int bodyLength) {
+        long offset = b.getLong(buffers + 4 + 16 * i);
+        long length = b.getLong(buffers + 4 + 16 * i + 8);
+        assertEquals(0, offset % 8, "buffer " + i + " is 8-aligned");
+        assertTrue(offset + length <= bodyLength, "buffer " + i + " lies within the body");
+        return new int[]{body + (int) offset, (int) length};
+    }
+
+    // Position of field slot {@code slot} of the table at {@code table}, or -1 if it is absent.
+    private int field(int table, int slot) {
+        int vtable = table - b.getInt(table);
+        int vtableSize = b.getShort(vtable);
+        if (4 + 2 * slot >= vtableSize) return -1;
+        int offset = b.getShort(vtable + 4 + 2 * slot);
+        return offset == 0 ? -1 : table + offset;
+    }
+
+    private int ref(int at) {
+        assertTrue(at >= 0, "required reference is present");
+        return at + b.getInt(at);
+    }
+
+    private boolean bool(int table, int slot) {
+        return byteOr(table, slot, 0) != 0;
+    }
+
+    private int byteOr(int table, int slot, int absent) {
+        int at = field(table, slot);
+        return at < 0 ? absent : b.get(at);
+    }
+
+    private String string(int at) {
+        byte[] s = new byte[b.getInt(at)];
+        b.get(at + 4, s);
+        assertEquals(0, b.get(at + 4 + s.length), "strings are NUL-terminated");
+        return new String(s, StandardCharsets.UTF_8);
+    }
+}
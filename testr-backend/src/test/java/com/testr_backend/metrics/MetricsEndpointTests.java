@@ -0,0 +1,52 @@
+package com.testr_backend.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = "testr.metrics.max-device-models=2")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class MetricsEndpointTests {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    void exposesIngestQueryPoolAndHibernateMetrics() throws Exception {
+        for (String model : new String[]{"Pixel 7", "Pixel 8", "Galaxy S21", "Galaxy S22", "Pixel 7"}) {
+            mvc.perform(post("/v1/diagnostics").contentType("application/json").content("""
+                            {"deviceModel": "%s", "batteryHealth": 90, "storageSpeedPct": 80, "cpuPerformancePct": 70,
+                             "ramHealthPct": 100, "displayTouchPct": -1, "cameraCheckPct": -1}
+                            """.formatted(model)))
+                    .andExpect(status().isOk());
+        }
+        mvc.perform(get("/v1/diagnostics").param("limit", "3")).andExpect(status().isOk());
+
+        mvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        containsString("testr_api_create_seconds_count{application=\"testr-backend\",mode=\"sync\"} 5"),
+                        containsString("testr_api_page_seconds_bucket"),
+                        containsString("testr_api_rows_sum{application=\"testr-backend\",endpoint=\"page\"} 3"),
+                        containsString("testr_ingest_payload_bytes_count{application=\"testr-backend\",encoding=\"identity\"} 5"),
+                        // first two models are named, the rest share one series
+                        containsString("testr_ingest_runs_total{application=\"testr-backend\",deviceModel=\"Pixel 7\"} 2"),
+                        containsString("testr_ingest_runs_total{application=\"testr-backend\",deviceModel=\"other\"} 2"),
+                        not(containsString("deviceModel=\"Galaxy S21\"")),
+                        containsString("cache_gets_total{application=\"testr-backend\",cache=\"ingestRecentKeys\""),
+                        containsString("hikaricp_connections_pending"),
+                        containsString("hibernate_statements_total"))));
+    }
+}
@@ -0,0 +1,188 @@
+package com.testr_backend.repo;
+
+import com.testr_backend.model.DiagnosticRun;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedRunStoreTests {
+
+    static final LocalDateTime BASE = LocalDateTime.of(2025, 1, 1, 12, 0, 0, 123_456_789);
+
+    @TempDir
+    Path dir;
+
+    MappedRunStore store;
+
+    @AfterEach
+    void close() throws Exception {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) TransactionSynchronizationManager.clearSynchronization();
+        if (store != null) store.close();
+    }
+
+    MappedRunStore open() throws Exception {
+        if (store != null) store.close();
+        // 16 records to start with, so the tests also cover growing the mapping
+        store = new MappedRunStore(dir.toString(), false, 16, 0.25, 1);
+        return store;
+    }
+
+    static DiagnosticRun run(String model, int battery, LocalDateTime at) {
+        DiagnosticRun run = new DiagnosticRun(model, battery, 50, -1, 100, 0, 7);
+        run.setTimestamp(at);
+        run.setManufacturer("Google");
+        run.setAndroidVersion("15");
+        return run;
+    }
+
+    @Test
+    void pagesAndFiltersLikeTheKeysetQueries() throws Exception {
+        open();
+        List<DiagnosticRun> runs = new ArrayList<>();
+        // Timestamps out of id order, and two runs sharing one timestamp
+        for (int i = 0; i < 1200; i++) {
+            runs.add(run(i % 3 == 0 ? "Pixel 7" : "Galaxy S21", i % 101, BASE.plusMinutes((i * 7) % 1200)));
+        }
+        runs.add(run("Pixel 7", 1, BASE.plusMinutes(21)));
+        store.insertAll(runs);
+        assertEquals(1201, store.count());
+
+        DiagnosticRun third = runs.get(3);
+        DiagnosticRun found = store.findById(third.getId()).orElseThrow();
+        assertEquals("Pixel 7", found.getDeviceModel());
+        assertEquals(3, found.getBatteryHealth());
+        assertEquals(-1, found.getCpuPerformancePct());
+        assertEquals(7, found.getCameraCheckPct());
+        assertEquals("15", found.getAndroidVersion());
+        assertNull(found.getSecurityPatch());
+        assertEquals(BASE.plusMinutes(21).withNano(123_456_000), found.getTimestamp());
+
+        List<DiagnosticRun> page = store.findPage(new DiagnosticRunFilter(), null, null, 10);
+        assertEquals(BASE.plusMinutes(1199).withNano(123_456_000), page.get(0).getTimestamp());
+        DiagnosticRun last = page.get(9);
+        List<DiagnosticRun> next = store.findPage(new DiagnosticRunFilter(), last.getTimestamp(), last.getId(), 10);
+        assertTrue(next.get(0).getTimestamp().isBefore(last.getTimestamp()));
+
+        // Same timestamp: the higher id comes first, and the cursor splits them
+        List<DiagnosticRun> tie = store.findPage(new DiagnosticRunFilter("Pixel 7", BASE.plusMinutes(21), BASE.plusMinutes(22)), null, null, 10);
+        assertEquals(2, tie.size());
+        assertTrue(tie.get(0).getId() > tie.get(1).getId());
+        assertEquals(1, store.findPage(new DiagnosticRunFilter("Pixel 7", null, null),
+                tie.get(0).getTimestamp(), tie.get(0).getId(), 1).size());
+        assertEquals(List.of(tie.get(1).getId()), store.findPage(new DiagnosticRunFilter("Pixel 7", BASE.plusMinutes(21), null),
+                tie.get(0).getTimestamp(), tie.get(0).getId(), 100).stream().map(DiagnosticRun::getId).toList());
+
+        List<DiagnosticRun> streamed = new ArrayList<>();
+        store.stream(new DiagnosticRunFilter("Galaxy S21", null, null), streamed::add);
+        assertEquals(800, streamed.size());
+        for (int i = 1; i < streamed.size(); i++) {
+            assertTrue(streamed.get(i).getTimestamp().isBefore(streamed.get(i - 1).getTimestamp()));
+        }
+
+        List<DiagnosticRun> oldest = store.findOlderThan(BASE.plusMinutes(3), 100);
+        assertEquals(3, oldest.size());
+        assertEquals(BASE.withNano(123_456_000), oldest.get(0).getTimestamp());
+    }
+
+    @Test
+    void storedSessionIdsAreRejectedLikeTheUniqueIndex() throws Exception {
+        open();
+        DiagnosticRun first = run("Pixel 7", 80, BASE);
+        first.setSessionId("s-1");
+        store.insert(first);
+
+        DiagnosticRun again = run("Pixel 7", 81, BASE);
+        again.setSessionId("s-1");
+        assertThrows(DuplicateKeyException.class, () -> store.insert(again));
+        assertEquals(1, store.count());
+        assertEquals(first.getId(), store.findBySessionIds(List.of("s-1", "s-2")).get("s-1").getId());
+    }
+
+    @Test
+    void runsBecomeVisibleOnCommitAndVanishOnRollback() throws Exception {
+        open();
+        TransactionSynchronizationManager.initSynchronization();
+        DiagnosticRun committed = run("Pixel 7", 80, BASE);
+        committed.setSessionId("s-1");
+        store.insert(committed);
+        assertTrue(store.findById(committed.getId()).isEmpty());
+        assertEquals(0, store.count());
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(80, store.findById(committed.getId()).orElseThrow().getBatteryHealth());
+
+        TransactionSynchronizationManager.initSynchronization();
+        DiagnosticRun rolledBack = run("Pixel 7", 70, BASE);
+        rolledBack.setSessionId("s-2");
+        store.insert(rolledBack);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertTrue(store.findById(rolledBack.getId()).isEmpty());
+        assertEquals(1, store.count());
+
+        // Its session is free again, and a rolled back id is never handed out twice
+        DiagnosticRun retry = run("Pixel 7", 70, BASE);
+        retry.setSessionId("s-2");
+        store.insert(retry);
+        assertTrue(retry.getId() > rolledBack.getId());
+    }
+
+    @Test
+    void reopensAndCompactsWithoutLosingRunsOrReusingIds() throws Exception {
+        open();
+        List<DiagnosticRun> runs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            DiagnosticRun run = run("Model " + (i % 4), i, BASE.plusHours(i));
+            run.setSessionId("s-" + i);
+            runs.add(run);
+        }
+        store.insertAll(runs);
+        assertEquals(30, store.deleteAll(runs.subList(0, 30).stream().map(DiagnosticRun::getId).toList()));
+        assertEquals(0, store.deleteAll(List.of(runs.get(0).getId(), 999L)));
+        long lastId = runs.get(39).getId();
+
+        open();
+        assertEquals(10, store.count());
+        assertEquals(35, store.findById(runs.get(35).getId()).orElseThrow().getBatteryHealth());
+
+        store.compact();
+        assertEquals(Set.of("CURRENT", "runs.1.dat", "strings.1.dat"), files());
+        assertEquals(10, store.count());
+        assertEquals("s-35", store.findById(runs.get(35).getId()).orElseThrow().getSessionId());
+        assertTrue(store.findBySessionIds(List.of("s-3")).isEmpty());
+        assertEquals(3, store.findPage(new DiagnosticRunFilter("Model 2", null, null), null, null, 10).size());
+
+        DiagnosticRun after = store.insert(run("Model 9", 99, BASE));
+        assertEquals(lastId + 1, after.getId());
+
+        open();
+        assertEquals(11, store.count());
+        assertEquals("Model 9", store.findById(after.getId()).orElseThrow().getDeviceModel());
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) syncs.forEach(TransactionSynchronization::afterCommit);
+        syncs.forEach(s -> s.afterCompletion(status));
+    }
+
+    private Set<String> files() throws Exception {
+        try (var list = Files.list(dir)) {
+            return Set.copyOf(list.map(p -> p.getFileName().toString()).toList());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.testr_backend.service;
+
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.repo.DiagnosticRunRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "testr.ingest.mode=async",
+        "testr.ingest.queue-capacity=50"
+})
+@AutoConfigureMockMvc
+class IngestQueueTests {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    IngestQueue queue;
+
+    @Autowired
+    DiagnosticRunRepository repo;
+
+    @Test
+    void acceptsWith202AndCommitsInBackground() throws Exception {
+        long before = repo.count();
+        String body = """
+                {"deviceModel": "Pixel 6", "batteryHealth": 88, "storageSpeedPct": 50, "cpuPerformancePct": 60,
+                 "ramHealthPct": 100, "displayTouchPct": -1, "cameraCheckPct": -1}
+                """;
+
+        for (int i = 0; i < 10; i++) {
+            mvc.perform(post("/v1/diagnostics").contentType("application/json").content(body))
+                    .andExpect(status().isAccepted())
+                    .andExpect(jsonPath("$.ingestId", notNullValue()));
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (queue.stats().committed < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(before + 10, repo.count());
+        mvc.perform(get("/v1/diagnostics/ingest"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.queueCapacity").value(50));
+    }
+
+    @Test
+    void oneBadRunInAGroupOnlyDropsItself() throws Exception {
+        long before = repo.count();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            // Longer than the device_model column: fails on its own, whatever else is in its group
+            ids.add(queue.offer(new DiagnosticRun(i == 3 ? "x".repeat(300) : "Pixel 6", 88, 50, 60, 100, -1, -1)));
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (ids.stream().anyMatch(id -> queue.status(id).state() == IngestQueue.State.QUEUED)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        String bad = ids.remove(3);
+        List<String> good = ids;
+        assertEquals(before + 5, repo.count());
+
+        mvc.perform(get("/v1/diagnostics/ingest/" + bad))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("dropped")))
+                .andExpect(jsonPath("$.runId").doesNotExist());
+        for (String id : good) {
+            Long runId = queue.status(id).runId();
+            mvc.perform(get("/v1/diagnostics/ingest/" + id))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.status", is("stored")))
+                    .andExpect(jsonPath("$.runId").value(runId));
+            mvc.perform(get("/v1/diagnostics/" + runId))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.deviceModel", is("Pixel 6")));
+        }
+        mvc.perform(get("/v1/diagnostics/ingest/no-such-id"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void drainsAfterTheWebServerStopsTakingRequests() {
+        assertTrue(queue.getPhase() < WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE);
+    }
+}
@@ -0,0 +1,59 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.model.DiagnosticRun;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnomalyDetectorTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // k=3, 30 samples, sigma floor 1 point; no rollups, so no seeding
+    private final AnomalyDetector detector = new AnomalyDetector(null, registry, 3.0, 30, 1.0, 100, 10, 0);
+
+    private long nextId = 1;
+
+    private void run(String model, int battery, int storage, int ram) {
+        DiagnosticRun r = new DiagnosticRun(model, battery, storage, 70, ram, -1, -1);
+        r.setId(nextId++);
+        detector.score(r);
+    }
+
+    @Test
+    void flagsRunsFarFromTheirModelsBaseline() {
+        for (int i = 0; i < 40; i++) run("Pixel 7", 88 + i % 5, 60 + i % 7, 100);
+
+        // Waits for min-samples before scoring a new model
+        for (int i = 0; i < 5; i++) run("Galaxy S21", 40, 10, 100);
+        assertTrue(detector.recentFlags(null, null, 10).isEmpty());
+
+        run("Pixel 7", 90, 62, 99); // RAM 99 vs a constant 100 stays under the sigma floor
+        assertTrue(detector.recentFlags(null, null, 10).isEmpty());
+
+        run("Pixel 7", 55, 61, 100);
+        List<AnomalyFlag> flags = detector.recentFlags("Pixel 7", null, 10);
+        assertEquals(1, flags.size());
+        AnomalyFlag f = flags.get(0);
+        assertEquals("batteryHealth", f.metric());
+        assertEquals(55, f.value());
+        assertEquals(41, f.baselineCount());
+        assertTrue(f.z() < -3, "z=" + f.z());
+        assertEquals(1.0, registry.get("testr.anomaly.flags").tag("metric", "batteryHealth").counter().count());
+
+        // A sustained shift stays flagged (flagged values don't widen the baseline);
+        // only the newest max-flags flags are kept
+        for (int i = 0; i < 15; i++) run("Pixel 7", 90, 5, 100);
+        assertEquals(10, detector.recentFlags(null, null, 100).size());
+        assertEquals(15.0, registry.get("testr.anomaly.flags").tag("metric", "storageSpeedPct").counter().count());
+        assertEquals("storageSpeedPct", detector.recentFlags(null, null, 1).get(0).metric());
+
+        AnomalyDetector.Baseline battery = detector.baselines("Pixel 7").get("Pixel 7").get("batteryHealth");
+        assertEquals(56, battery.count());
+        AnomalyDetector.Baseline storage = detector.baselines(null).get("Pixel 7").get("storageSpeedPct");
+        assertEquals(42, storage.count());
+    }
+}
@@ -0,0 +1,66 @@
+package com.testr_backend.stats;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MetricHistogramTests {
+
+    @Test
+    void summarizesKnownValuesAndSeparatesUnknown() {
+        MetricHistogram h = new MetricHistogram();
+        for (int v = 1; v <= 100; v++) h.add(v);
+        h.add(-1, 3);
+
+        assertEquals(100, h.count());
+        assertEquals(3, h.unknownCount());
+        assertEquals(50.5, h.mean(), 1e-9);
+        assertEquals(1, h.min());
+        assertEquals(100, h.max());
+        assertEquals(5, h.percentile(5));
+        assertEquals(50, h.percentile(50));
+        assertEquals(95, h.percentile(95));
+    }
+
+    @Test
+    void mergeAddsCounts() {
+        MetricHistogram a = new MetricHistogram();
+        MetricHistogram b = new MetricHistogram();
+        a.add(10, 2);
+        b.add(10, 3);
+        b.add(90);
+        a.merge(b);
+
+        assertEquals(5, a.countAt(10));
+        assertEquals(6, a.count());
+        assertEquals(10, a.percentile(50));
+        assertEquals(90, a.percentile(100));
+    }
+
+    @Test
+    void slotsRoundTripTheKnownCounts() {
+        MetricHistogram a = new MetricHistogram();
+        a.add(0, 4);
+        a.add(100);
+        a.add(-1, 2);
+        int[] slots = a.slots();
+        assertEquals(101, slots.length);
+        assertEquals(4, slots[0]);
+        assertEquals(1, slots[100]);
+
+        MetricHistogram b = new MetricHistogram();
+        b.add(slots, a.unknownCount());
+        b.add(slots, 0);
+        assertEquals(8, b.countAt(0));
+        assertEquals(2, b.countAt(100));
+        assertEquals(2, b.unknownCount());
+    }
+
+    @Test
+    void emptyHistogramReportsUnknown() {
+        MetricHistogram h = new MetricHistogram();
+        assertEquals(-1, h.percentile(50));
+        assertEquals(-1, h.mean(), 0);
+        assertEquals(-1, h.min());
+    }
+}
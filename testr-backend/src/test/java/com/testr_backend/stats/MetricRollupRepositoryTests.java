@@ -0,0 +1,383 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.model.DiagnosticRun;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs against in-memory H2, and also against PostgreSQL when one is given:
+ *
+ *   mvn test -Dtest=MetricRollupRepositoryTests -Dtestr.test.pgUrl=jdbc:postgresql://localhost:5432/postgres
+ *
+ * (user postgres, no password; the tables go into a scratch schema that is dropped first).
+ */
+class MetricRollupRepositoryTests {
+
+    static final String PG_SCHEMA = "testr_rollup_test";
+    static final LocalDateTime HOUR = LocalDateTime.of(2025, 6, 1, 10, 0);
+
+    HikariDataSource ds;
+    JdbcTemplate jdbc;
+    TransactionTemplate tx;
+    MetricRollupRepository rollups;
+
+    static List<String> databases() {
+        List<String> urls = new ArrayList<>();
+        urls.add("jdbc:h2:mem:rollups-" + UUID.randomUUID() + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE");
+        String pg = System.getProperty("testr.test.pgUrl");
+        if (pg != null && !pg.isBlank()) urls.add(pg);
+        return urls;
+    }
+
+    void open(String url) throws Exception {
+        boolean postgres = url.startsWith("jdbc:postgresql:");
+        open(url, postgres ? MIGRATIONS : MIGRATIONS.subList(0, MIGRATIONS.size() - 1));
+    }
+
+    // The rollup migrations; the last one converts per-value cells with PostgreSQL's arrays and unnest.
+    static final List<String> MIGRATIONS = List.of("V2__create_metric_rollup.sql", "V6__metric_rollup_daily.sql",
+            "V7__rollup_histogram_cells.sql", "V8__convert_rollup_cells.sql");
+
+    void open(String url, List<String> migrations) throws Exception {
+        ds = new HikariDataSource();
+        boolean postgres = url.startsWith("jdbc:postgresql:");
+        if (postgres) {
+            try (HikariDataSource admin = new HikariDataSource()) {
+                admin.setJdbcUrl(url);
+                admin.setUsername("postgres");
+                JdbcTemplate a = new JdbcTemplate(admin);
+                a.execute("DROP SCHEMA IF EXISTS " + PG_SCHEMA + " CASCADE");
+                a.execute("CREATE SCHEMA " + PG_SCHEMA);
+            }
+            ds.setJdbcUrl(url + (url.contains("?") ? "&" : "?") + "currentSchema=" + PG_SCHEMA);
+            ds.setUsername("postgres");
+        } else {
+            ds.setJdbcUrl(url);
+            ds.setUsername("sa");
+        }
+        migrate(migrations);
+        jdbc = new JdbcTemplate(ds);
+        tx = new TransactionTemplate(new DataSourceTransactionManager(ds));
+        rollups = new MetricRollupRepository(jdbc);
+    }
+
+    void migrate(List<String> migrations) throws Exception {
+        try (Connection c = ds.getConnection()) {
+            for (String script : migrations) {
+                ScriptUtils.executeSqlScript(c, new ClassPathResource("db/migration/" + script));
+            }
+        }
+    }
+
+    @AfterEach
+    void close() {
+        if (ds != null) ds.close();
+    }
+
+    static DiagnosticRun run(String model, int battery, LocalDateTime at) {
+        DiagnosticRun run = new DiagnosticRun(model, battery, 50, 50, 100, -1, -1);
+        run.setTimestamp(at);
+        return run;
+    }
+
+    long batteryCount(Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> loaded, String model) {
+        EnumMap<DiagnosticMetric, MetricHistogram> metrics = loaded.get(model);
+        return metrics == null ? 0 : metrics.get(DiagnosticMetric.BATTERY_HEALTH).total();
+    }
+
+    @ParameterizedTest
+    @MethodSource("databases")
+    void concurrentFirstWritesToACellBothCount(String url) throws Exception {
+        open(url);
+        DiagnosticRun run = run("Pixel 7", 80, HOUR.plusMinutes(5));
+
+        // The first transaction creates the cells and holds them uncommitted...
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FutureTask<Void> first = new FutureTask<>(() -> tx.execute(s -> {
+            rollups.record(run);
+            written.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        }));
+        new Thread(first).start();
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+
+        // ...while a second one writes the same new cells, and has to wait for it
+        FutureTask<Void> second = new FutureTask<>(() -> tx.execute(s -> {
+            rollups.record(run);
+            return null;
+        }));
+        new Thread(second).start();
+        Thread.sleep(300);
+        assertFalse(second.isDone());
+
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, batteryCount(rollups.load("Pixel 7", null, null), "Pixel 7"));
+        assertEquals(2L, jdbc.queryForObject(
+                "SELECT run_count FROM metric_rollup WHERE metric = 'BATTERY_HEALTH'", Long.class));
+        assertEquals(2L, jdbc.queryForObject(
+                "SELECT run_count FROM metric_rollup_daily WHERE metric = 'BATTERY_HEALTH'", Long.class));
+    }
+
+    @ParameterizedTest
+    @MethodSource("databases")
+    void boundsWidenToWholeHours(String url) throws Exception {
+        open(url);
+        rollups.recordAll(List.of(
+                run("Pixel 7", 80, HOUR.plusMinutes(10)),
+                run("Pixel 7", 80, HOUR.plusHours(2).plusMinutes(50))));
+
+        assertEquals(1, batteryCount(rollups.load(null, HOUR.plusMinutes(30), HOUR.plusHours(1)), "Pixel 7"));
+        assertEquals(1, batteryCount(rollups.load(null, HOUR.plusMinutes(30), HOUR.plusHours(2)), "Pixel 7"));
+        assertEquals(2, batteryCount(rollups.load(null, HOUR.plusMinutes(30), HOUR.plusHours(2).plusMinutes(1)), "Pixel 7"));
+        assertEquals(1, batteryCount(rollups.load(null, HOUR.plusHours(2).plusMinutes(59), null), "Pixel 7"));
+        assertEquals(0, batteryCount(rollups.load(null, HOUR.plusHours(3), null), "Pixel 7"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("databases")
+    void batchesInOppositeOrdersDontDeadlock(String url) throws Exception {
+        open(url);
+        int threads = 8;
+        int batches = 25;
+        List<DiagnosticRun> forward = new ArrayList<>();
+        for (int m = 0; m < 20; m++) forward.add(run("Model " + m, 80, HOUR));
+        List<DiagnosticRun> backward = new ArrayList<>(forward);
+        Collections.reverse(backward);
+
+        List<FutureTask<Void>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<DiagnosticRun> batch = t % 2 == 0 ? forward : backward;
+            FutureTask<Void> writer = new FutureTask<>(() -> {
+                for (int i = 0; i < batches; i++) {
+                    tx.executeWithoutResult(s -> rollups.recordAll(batch));
+                }
+                return null;
+            });
+            writers.add(writer);
+            new Thread(writer).start();
+        }
+        for (FutureTask<Void> writer : writers) writer.get(60, TimeUnit.SECONDS);
+
+        Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> loaded = rollups.load(null, null, null);
+        for (int m = 0; m < 20; m++) assertEquals(threads * batches, batteryCount(loaded, "Model " + m));
+    }
+
+    @ParameterizedTest
+    @MethodSource("databases")
+    void keepsOneCellPerModelBucketAndMetric(String url) throws Exception {
+        open(url);
+        rollups.recordAll(List.of(
+                run("Pixel 7", 80, HOUR),
+                run("Pixel 7", 81, HOUR.plusMinutes(10)),
+                run("Pixel 7", -1, HOUR.plusMinutes(20)),
+                run("Pixel 7", 80, HOUR.plusDays(1))));
+        rollups.record(run("Pixel 7", 80, HOUR.plusMinutes(30)));
+
+        // Two hours and two days of six metrics, however many values they hold
+        assertEquals(12L, jdbc.queryForObject("SELECT COUNT(*) FROM metric_rollup", Long.class));
+        assertEquals(12L, jdbc.queryForObject("SELECT COUNT(*) FROM metric_rollup_daily", Long.class));
+        Map<String, Object> cell = jdbc.queryForMap("SELECT run_count, value_sum, unknown_count FROM metric_rollup " +
+                "WHERE bucket_hour = ? AND metric = 'BATTERY_HEALTH'", HOUR);
+        assertEquals(3L, ((Number) cell.get("run_count")).longValue());
+        assertEquals(241L, ((Number) cell.get("value_sum")).longValue());
+        assertEquals(1L, ((Number) cell.get("unknown_count")).longValue());
+
+        MetricHistogram battery = rollups.load(null, null, null).get("Pixel 7").get(DiagnosticMetric.BATTERY_HEALTH);
+        assertEquals(3, battery.countAt(80));
+        assertEquals(1, battery.countAt(81));
+        assertEquals(1, battery.unknownCount());
+        assertEquals(5, battery.total());
+    }
+
+    @ParameterizedTest
+    @MethodSource("databases")
+    void partialDaysReadHoursAndWholeDaysReadDayCells(String url) throws Exception {
+        open(url);
+        LocalDateTime midnight = HOUR.toLocalDate().atStartOfDay();
+        List<LocalDateTime> times = new ArrayList<>();
+        for (int h : new int[]{0, 5, 13, 23, 24, 34, 36, 47, 49, 71}) times.add(midnight.plusHours(h).plusMinutes(h));
+        List<DiagnosticRun> runs = new ArrayList<>();
+        for (LocalDateTime t : times) runs.add(run(t.getHour() % 2 == 0 ? "Pixel 7" : "Galaxy S21", 80, t));
+        rollups.recordAll(runs);
+
+        List<LocalDateTime> bounds = new ArrayList<>();
+        bounds.add(null);
+        for (int m = -60; m <= 73 * 60; m += 210) bounds.add(midnight.plusMinutes(m));
+        bounds.add(midnight.plusDays(1));
+        bounds.add(midnight.plusDays(2));
+        for (LocalDateTime from : bounds) {
+            for (LocalDateTime to : bounds) {
+                // A run counts if its hour overlaps [from, to)
+                long expected = times.stream().filter(t ->
+                        (from == null || !MetricRollupRepository.bucketOf(t).isBefore(MetricRollupRepository.bucketOf(from)))
+                                && (to == null || MetricRollupRepository.bucketOf(t).isBefore(to))).count();
+                Map<String, EnumMap<DiagnosticMetric, MetricHistogram>> loaded = rollups.load(null, from, to);
+                assertEquals(expected, batteryCount(loaded, "Pixel 7") + batteryCount(loaded, "Galaxy S21"),
+                        from + " - " + to);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("databases")
+    void compactedDaysReadWholeFromTheirDayCells(String url) throws Exception {
+        open(url);
+        LocalDate day = HOUR.toLocalDate();
+        rollups.recordAll(List.of(run("Pixel 7", 80, HOUR), run("Pixel 7", 90, HOUR.plusHours(3))));
+        assertEquals(Integer.valueOf(12), tx.execute(s -> rollups.compactDay(day)));
+        assertEquals(2, batteryCount(rollups.load("Pixel 7", HOUR, HOUR.plusHours(1)), "Pixel 7"));
+
+        // A run that arrives late for a compacted day leaves its hours incomplete: still the whole day
+        rollups.record(run("Pixel 7", 80, HOUR.plusHours(5)));
+        assertEquals(3, batteryCount(rollups.load("Pixel 7", HOUR, HOUR.plusHours(1)), "Pixel 7"));
+        assertEquals(Integer.valueOf(6), tx.execute(s -> rollups.compactDay(day)));
+
+        assertEquals(0L, jdbc.queryForObject("SELECT COUNT(*) FROM metric_rollup", Long.class));
+        assertEquals(3L, jdbc.queryForObject("SELECT run_count FROM metric_rollup_daily " +
+                "WHERE metric = 'BATTERY_HEALTH'", Long.class));
+        assertEquals(3, batteryCount(rollups.load("Pixel 7", HOUR, HOUR.plusHours(1)), "Pixel 7"));
+        assertEquals(3, batteryCount(rollups.load("Pixel 7", null, null), "Pixel 7"));
+    }
+
+    List<Map<String, Object>> allCells() {
+        List<Map<String, Object>> cells = new ArrayList<>();
+        for (String table : List.of("metric_rollup", "metric_rollup_daily")) {
+            jdbc.query("SELECT * FROM " + table + " ORDER BY 1, 2, 3", rs -> {
+                cells.add(Map.of("key", rs.getString(1) + " " + rs.getObject(2) + " " + rs.getString(3),
+                        "counts", List.of(rs.getLong("run_count"), rs.getLong("value_sum"), rs.getLong("unknown_count")),
+                        "histogram", List.of((Object[]) rs.getArray("histogram").getArray())));
+            });
+        }
+        return cells;
+    }
+
+    @ParameterizedTest
+    @MethodSource("databases")
+    void backfillBuildsTheCellsLiveInsertsDoOnce(String url) throws Exception {
+        open(url);
+        migrate(List.of("V1__create_diagnostic_run.sql"));
+        List<DiagnosticRun> runs = List.of(
+                run("Pixel 7", 80, HOUR),
+                run(" Pixel 7 ", 81, HOUR.plusMinutes(5)),
+                run("  ", -1, HOUR.plusHours(1)),
+                run(null, 100, HOUR.plusDays(1)),
+                run("Galaxy S21", 0, HOUR.minusHours(11)));
+        for (DiagnosticRun r : runs) {
+            jdbc.update("INSERT INTO diagnostic_run (device_model, battery_health, storage_speed_pct, " +
+                    "cpu_performance_pct, ram_health_pct, display_touch_pct, camera_check_pct, timestamp) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", r.getDeviceModel(), r.getBatteryHealth(), r.getStorageSpeedPct(),
+                    r.getCpuPerformancePct(), r.getRamHealthPct(), r.getDisplayTouchPct(), r.getCameraCheckPct(),
+                    r.getTimestamp());
+        }
+        rollups.recordAll(runs);
+        List<Map<String, Object>> live = allCells();
+
+        jdbc.update("DELETE FROM metric_rollup");
+        jdbc.update("DELETE FROM metric_rollup_daily");
+        rollups.backfill();
+        assertEquals(live, allCells());
+        rollups.backfill();
+        assertEquals(live, allCells());
+
+        if (url.startsWith("jdbc:postgresql:")) {
+            // Instances starting together: the second waits on the lock, then finds the cells there
+            jdbc.update("DELETE FROM metric_rollup");
+            jdbc.update("DELETE FROM metric_rollup_daily");
+            CountDownLatch locked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            FutureTask<Void> first = new FutureTask<>(() -> tx.execute(s -> {
+                rollups.lockForBackfill();
+                rollups.backfill();
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            }));
+            FutureTask<Void> second = new FutureTask<>(() -> tx.execute(s -> {
+                rollups.lockForBackfill();
+                if (rollups.isEmpty()) rollups.backfill();
+                return null;
+            }));
+            new Thread(first).start();
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            new Thread(second).start();
+            Thread.sleep(300);
+            assertFalse(second.isDone());
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+            assertEquals(live, allCells());
+        }
+    }
+
+    @Test
+    void migrationConvertsPerValueCellsIntoHistograms() throws Exception {
+        String pg = System.getProperty("testr.test.pgUrl");
+        assumeTrue(pg != null && !pg.isBlank(), "needs -Dtestr.test.pgUrl");
+        open(pg, MIGRATIONS.subList(0, 2));
+        String insert = "INSERT INTO %s (device_model, %s, metric, metric_value, run_count) VALUES (?, ?, ?, ?, ?)";
+        for (Object[] row : new Object[][]{{HOUR, 80, 2}, {HOUR, 90, 1}, {HOUR, -1, 4}, {HOUR.plusHours(1), 80, 3}}) {
+            jdbc.update(insert.formatted("metric_rollup", "bucket_hour"), "Pixel 7", row[0], "BATTERY_HEALTH", row[1], row[2]);
+        }
+        // An older day, compacted before day cells were kept for every day
+        jdbc.update(insert.formatted("metric_rollup_daily", "bucket_day"), "Pixel 7", HOUR.toLocalDate().minusDays(1),
+                "BATTERY_HEALTH", 70, 5);
+        migrate(MIGRATIONS.subList(2, 4));
+        rollups = new MetricRollupRepository(jdbc);
+
+        assertEquals(2L, jdbc.queryForObject("SELECT COUNT(*) FROM metric_rollup", Long.class));
+        assertEquals(2L, jdbc.queryForObject("SELECT COUNT(*) FROM metric_rollup_daily", Long.class));
+        Map<String, Object> first = jdbc.queryForMap("SELECT run_count, value_sum, unknown_count FROM metric_rollup " +
+                "WHERE bucket_hour = ?", HOUR);
+        assertEquals(3L, ((Number) first.get("run_count")).longValue());
+        assertEquals(250L, ((Number) first.get("value_sum")).longValue());
+        assertEquals(4L, ((Number) first.get("unknown_count")).longValue());
+
+        MetricHistogram day = rollups.load("Pixel 7", HOUR.toLocalDate().atStartOfDay(), HOUR.toLocalDate().plusDays(1).atStartOfDay())
+                .get("Pixel 7").get(DiagnosticMetric.BATTERY_HEALTH);
+        assertEquals(5, day.countAt(80));
+        assertEquals(1, day.countAt(90));
+        assertEquals(4, day.unknownCount());
+        assertEquals(15, batteryCount(rollups.load("Pixel 7", null, null), "Pixel 7"));
+        assertEquals(3, batteryCount(rollups.load("Pixel 7", HOUR.plusHours(1), HOUR.plusHours(2)), "Pixel 7"));
+    }
+}
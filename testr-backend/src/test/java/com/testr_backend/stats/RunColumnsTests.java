@@ -0,0 +1,115 @@
+package com.testr_backend.stats;
+
+import com.testr_backend.model.DiagnosticMetric;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.repo.DiagnosticRunFilter;
+import com.testr_backend.repo.MappedRunStore;
+import com.testr_backend.service.DiagnosticRunsPurgedEvent;
+import com.testr_backend.service.DiagnosticRunsSavedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunColumnsTests {
+
+    static final LocalDateTime BASE = LocalDateTime.of(2025, 3, 1, 0, 0);
+    // More than one segment, so scans also merge across segments
+    static final int RUNS = RunColumns.SEGMENT_ROWS + 4464;
+
+    @TempDir
+    Path dir;
+
+    MappedRunStore store;
+    RunColumns columns;
+    List<DiagnosticRun> runs = new ArrayList<>();
+
+    @BeforeEach
+    void load() throws Exception {
+        store = new MappedRunStore(dir.toString(), false, RUNS, 0.25, 1);
+        for (int i = 0; i < RUNS; i++) {
+            DiagnosticRun run = new DiagnosticRun(i % 2 == 0 ? "Pixel 7" : "Galaxy S21",
+                    i % 101, (i * 7) % 101, i % 10 == 0 ? -1 : 50, 100, -1, 90);
+            run.setTimestamp(BASE.plusSeconds(i));
+            runs.add(run);
+        }
+        store.insertAll(runs);
+
+        columns = new RunColumns(store, false);
+        assertFalse(columns.isReady());
+        columns.load();
+        assertTrue(columns.isReady());
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        store.close();
+    }
+
+    @Test
+    void scansMatchABruteForceFilter() {
+        FleetStats all = columns.scan(new DiagnosticRunFilter(), List.of());
+        assertEquals(RUNS, all.fleet.runCount);
+        assertEquals(List.of("Galaxy S21", "Pixel 7"), all.models.stream().map(g -> g.deviceModel).toList());
+        assertEquals((RUNS + 9) / 10, all.fleet.metrics.get("cpuPerformancePct").unknownCount);
+
+        LocalDateTime from = BASE.plusSeconds(1000);
+        LocalDateTime to = BASE.plusSeconds(60_000);
+        FleetStats scanned = columns.scan(new DiagnosticRunFilter("Pixel 7", from, to),
+                List.of(MetricRange.parse("batteryHealth:0-69"), MetricRange.parse("cpuPerformancePct:-1--1")));
+
+        List<DiagnosticRun> expected = runs.stream()
+                .filter(r -> r.getDeviceModel().equals("Pixel 7"))
+                .filter(r -> !r.getTimestamp().isBefore(from) && r.getTimestamp().isBefore(to))
+                .filter(r -> r.getBatteryHealth() <= 69 && r.getCpuPerformancePct() == -1)
+                .toList();
+        assertEquals(1, scanned.models.size());
+        assertEquals(expected.size(), scanned.fleet.runCount);
+        FleetStats.MetricSummary storage = scanned.models.get(0).metrics.get("storageSpeedPct");
+        assertEquals(expected.stream().mapToInt(DiagnosticRun::getStorageSpeedPct).sum(), storage.sum);
+        assertEquals(expected.stream().mapToInt(DiagnosticRun::getStorageSpeedPct).min().orElseThrow(), storage.min);
+        assertEquals(expected.stream().mapToInt(DiagnosticRun::getStorageSpeedPct).max().orElseThrow(), storage.max);
+
+        assertEquals(0, columns.scan(new DiagnosticRunFilter("Nokia 3310", null, null), List.of()).fleet.runCount);
+        // A blank model (?deviceModel=) filters nothing, as in the SQL reader
+        assertEquals(RUNS, columns.scan(new DiagnosticRunFilter("", null, null), List.of()).fleet.runCount);
+        assertEquals(RUNS, columns.scan(new DiagnosticRunFilter(" ", null, null), List.of()).fleet.runCount);
+    }
+
+    @Test
+    void followsSavesAndRetention() {
+        DiagnosticRun late = new DiagnosticRun(null, 12, 34, 56, 78, 90, 100);
+        late.setId(10_000_000L);
+        late.setTimestamp(BASE.plusDays(30));
+        columns.onSaved(new DiagnosticRunsSavedEvent(List.of(late)));
+        assertEquals(RUNS + 1, columns.rows());
+
+        FleetStats unknown = columns.scan(new DiagnosticRunFilter(MetricRollupRepository.UNKNOWN_MODEL, null, null), List.of());
+        assertEquals(1, unknown.fleet.runCount);
+        assertEquals(12, unknown.fleet.metrics.get(DiagnosticMetric.BATTERY_HEALTH.jsonName()).max);
+
+        columns.onPurged(new DiagnosticRunsPurgedEvent(BASE.plusSeconds(RunColumns.SEGMENT_ROWS + 64)));
+        assertEquals(RUNS - RunColumns.SEGMENT_ROWS - 64 + 1, columns.rows());
+        Predicate<DiagnosticRun> kept = r -> r.getTimestamp().isAfter(BASE.plusSeconds(RunColumns.SEGMENT_ROWS + 63));
+        long pixels = runs.stream().filter(kept).filter(r -> r.getDeviceModel().equals("Pixel 7")).count();
+        assertEquals(pixels, columns.scan(new DiagnosticRunFilter("Pixel 7", null, null), List.of()).fleet.runCount);
+    }
+
+    @Test
+    void parsesRanges() {
+        assertEquals(new MetricRange(DiagnosticMetric.RAM_HEALTH, 90, 100), MetricRange.parse(" ramHealthPct:90-100"));
+        assertThrows(IllegalArgumentException.class, () -> MetricRange.parse("ramHealthPct:90"));
+        assertThrows(IllegalArgumentException.class, () -> MetricRange.parse("ram:0-100"));
+    }
+}
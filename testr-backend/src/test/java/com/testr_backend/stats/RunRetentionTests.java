@@ -0,0 +1,133 @@
+package com.testr_backend.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.repo.DiagnosticRunFilter;
+import com.testr_backend.repo.DiagnosticRunRepository;
+import com.testr_backend.service.DiagnosticRunService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "testr.retention.enabled=true",
+        "testr.retention.raw-days=30",
+        "testr.retention.chunk-size=2"
+})
+class RunRetentionTests {
+
+    @TempDir
+    static Path archiveDir;
+
+    @DynamicPropertySource
+    static void archive(DynamicPropertyRegistry registry) {
+        registry.add("testr.retention.archive-dir", () -> archiveDir.toString());
+    }
+
+    @Autowired
+    RunRetention retention;
+
+    @Autowired
+    DiagnosticRunService runs;
+
+    @Autowired
+    DiagnosticRunRepository repo;
+
+    @Autowired
+    FleetStatsService stats;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    CacheManager caches;
+
+    @BeforeEach
+    void clean() {
+        caches.getCacheNames().forEach(name -> caches.getCache(name).clear());
+        jdbc.update("DELETE FROM diagnostic_run_detail");
+        repo.deleteAll();
+        jdbc.update("DELETE FROM metric_rollup");
+        jdbc.update("DELETE FROM metric_rollup_daily");
+    }
+
+    @Test
+    void foldsOldRunsIntoDailyRollupsAndKeepsStatsWhole() throws Exception {
+        LocalDate today = LocalDate.now();
+        save("Pixel 7", 80, today.minusDays(40).atTime(10, 5), true);
+        save("Pixel 7", 90, today.minusDays(40).atTime(14, 30), false);
+        save("Galaxy S21", 70, today.minusDays(45).atTime(9, 0), false);
+        save("Pixel 7", 60, today.minusDays(1).atTime(12, 0), false);
+        save("Galaxy S21", 50, today.atStartOfDay(), false);
+
+        DiagnosticRunFilter all = new DiagnosticRunFilter(null, null, null);
+        FleetStats before = stats.stats(all);
+
+        RunRetention.Summary summary = retention.run();
+        assertEquals(new RunRetention.Summary(2, 3, 2), summary);
+
+        assertEquals(2, repo.count());
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM metric_rollup WHERE bucket_hour < ?",
+                Integer.class, today.minusDays(30).atStartOfDay()));
+        assertTrue(jdbc.queryForObject("SELECT COUNT(*) FROM metric_rollup_daily", Integer.class) > 0);
+
+        FleetStats after = stats.stats(all);
+        assertEquals(5, after.fleet.runCount);
+        assertEquals(before.fleet.metrics.get("batteryHealth").avg, after.fleet.metrics.get("batteryHealth").avg);
+        assertEquals(before.fleet.metrics.get("batteryHealth").p50, after.fleet.metrics.get("batteryHealth").p50);
+        assertEquals(70, after.fleet.metrics.get("batteryHealth").p50);
+
+        // A range starting after the compacted days reads hourly cells only
+        FleetStats recent = stats.stats(new DiagnosticRunFilter(null, today.minusDays(2).atStartOfDay(), null));
+        assertEquals(2, recent.fleet.runCount);
+        // One bounded to the old day picks its daily cells up whole
+        FleetStats oldDay = stats.stats(new DiagnosticRunFilter("Pixel 7",
+                today.minusDays(40).atTime(12, 0), today.minusDays(39).atStartOfDay()));
+        assertEquals(2, oldDay.fleet.runCount);
+
+        List<String> archived;
+        try (Stream<Path> files = Files.list(archiveDir)) {
+            archived = files.sorted().flatMap(RunRetentionTests::lines).toList();
+        }
+        assertEquals(3, archived.size());
+        assertTrue(archived.stream().anyMatch(l -> l.contains("\"details\":{\"battery\"")));
+
+        assertEquals(new RunRetention.Summary(0, 0, 0), retention.run());
+    }
+
+    private void save(String model, int battery, LocalDateTime at, boolean withReport) throws Exception {
+        DiagnosticRun run = new DiagnosticRun(model, battery, 50, 50, 100, -1, -1);
+        run.setTimestamp(at);
+        if (withReport) run.setDetails(new ObjectMapper().readTree("{\"battery\": {\"cycleCount\": 300}}"));
+        runs.save(run);
+    }
+
+    private static Stream<String> lines(Path gz) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(gz))))) {
+            return in.lines().toList().stream();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
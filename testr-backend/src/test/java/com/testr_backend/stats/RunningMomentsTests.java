@@ -0,0 +1,62 @@
+package com.testr_backend.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RunningMomentsTests {
+
+    @Test
+    void concurrentAddsMatchTwoPassStatistics() throws Exception {
+        int threads = 8, perThread = 20_000;
+        double[][] values = new double[threads][perThread];
+        Random rnd = new Random(7);
+        double sum = 0;
+        for (double[] row : values) {
+            for (int i = 0; i < perThread; i++) {
+                row[i] = 80 + rnd.nextGaussian() * 5;
+                sum += row[i];
+            }
+        }
+        double mean = sum / (threads * perThread);
+        double sq = 0;
+        for (double[] row : values) for (double v : row) sq += (v - mean) * (v - mean);
+
+        RunningMoments moments = new RunningMoments();
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> done = new ArrayList<>();
+            for (double[] row : values) done.add(pool.submit(() -> { for (double v : row) moments.add(v); }));
+            for (Future<?> f : done) f.get();
+        }
+
+        RunningMoments.Moments m = moments.snapshot();
+        assertEquals((long) threads * perThread, m.count());
+        assertEquals(mean, m.mean(), 1e-9);
+        assertEquals(Math.sqrt(sq / m.count()), m.stdDev(), 1e-9);
+    }
+
+    @Test
+    void histogramMomentsMergeWithLiveValues() {
+        MetricHistogram h = new MetricHistogram();
+        h.add(90, 3);
+        h.add(100, 1);
+        h.add(-1, 5); // unknown values don't count
+
+        RunningMoments moments = new RunningMoments();
+        moments.add(RunningMoments.of(h));
+        moments.add(80);
+
+        // 90, 90, 90, 100, 80: mean 90, population variance 40
+        RunningMoments.Moments m = moments.snapshot();
+        assertEquals(5, m.count());
+        assertEquals(90.0, m.mean(), 1e-12);
+        assertEquals(Math.sqrt(40), m.stdDev(), 1e-12);
+    }
+}
@@ -0,0 +1,56 @@
+package com.testr_backend.throttle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientRateLimiterTests {
+
+    // Starts near the wrap-around point, so bucket times cross it
+    final AtomicLong clock = new AtomicLong(Long.MAX_VALUE - TimeUnit.SECONDS.toNanos(1));
+
+    @Test
+    void refillsEachClientAtItsRate() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 3, 1000, 300, clock::get);
+
+        for (int i = 0; i < 3; i++) assertEquals(0, limiter.acquire("bench-1"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.acquire("bench-1"));
+        assertEquals(0, limiter.acquire("bench-2"));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, limiter.acquire("bench-1"));
+        assertTrue(limiter.acquire("bench-1") > 0);
+
+        // An idle client earns back its whole burst, and no more
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int i = 0; i < 3; i++) assertEquals(0, limiter.acquire("bench-1"));
+        assertTrue(limiter.acquire("bench-1") > 0);
+    }
+
+    @Test
+    void capsAndSweepsClients() {
+        int maxClients = ClientRateLimiter.STRIPES * 2;
+        ClientRateLimiter limiter = new ClientRateLimiter(1, 1, maxClients, 60, clock::get);
+
+        int refused = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (limiter.acquire("device-" + i) > 0) refused++;
+        }
+        assertEquals(maxClients, limiter.clients());
+        // The rest shared the overflow bucket, which had a single token
+        assertEquals(10_000 - maxClients - 1, refused);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        limiter.sweep();
+        assertEquals(maxClients, limiter.clients());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(32));
+        limiter.sweep();
+        assertEquals(0, limiter.clients());
+        assertEquals(0, limiter.acquire("device-1"));
+    }
+}
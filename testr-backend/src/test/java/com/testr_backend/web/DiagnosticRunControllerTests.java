@@ -0,0 +1,424 @@
+package com.testr_backend.web;
+
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.jayway.jsonpath.JsonPath;
+import com.testr_backend.cache.CacheNames;
+import com.testr_backend.export.ArrowStreamReader;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.repo.DiagnosticRunRepository;
+import com.testr_backend.service.DiagnosticRunService;
+import com.testr_backend.stats.MetricRollupRepository;
+import com.testr_backend.stats.RollupBackfill;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.json.JsonCompareMode;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+class DiagnosticRunControllerTests {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    DiagnosticRunRepository repo;
+
+    @Autowired
+    DiagnosticRunService runs;
+
+    @Autowired
+    MetricRollupRepository rollups;
+
+    @Autowired
+    RollupBackfill backfill;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    CacheManager caches;
+
+    @BeforeEach
+    void seed() {
+        caches.getCacheNames().forEach(name -> caches.getCache(name).clear());
+        jdbc.update("DELETE FROM diagnostic_run_detail");
+        repo.deleteAll();
+        jdbc.update("DELETE FROM metric_rollup");
+        jdbc.update("DELETE FROM metric_rollup_daily");
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 12, 0);
+        for (int i = 0; i < 5; i++) {
+            DiagnosticRun run = new DiagnosticRun(i % 2 == 0 ? "Pixel 7" : "Galaxy S21", 90, 80, 70, 100, -1, -1);
+            run.setTimestamp(base.plusMinutes(i));
+            runs.save(run);
+        }
+    }
+
+    @Test
+    void pagesWithCursorNewestFirst() throws Exception {
+        MvcResult first = mvc.perform(get("/v1/diagnostics").param("limit", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(3)))
+                .andExpect(jsonPath("$.items[0].timestamp", startsWith("2025-01-01T12:04")))
+                .andExpect(jsonPath("$.nextCursor", notNullValue()))
+                .andReturn();
+
+        String cursor = JsonPath.read(first.getResponse().getContentAsString(), "$.nextCursor");
+
+        mvc.perform(get("/v1/diagnostics").param("limit", "3").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[1].timestamp", startsWith("2025-01-01T12:00")))
+                .andExpect(jsonPath("$.nextCursor", nullValue()));
+    }
+
+    @Test
+    void filtersByModelAndTimeRange() throws Exception {
+        mvc.perform(get("/v1/diagnostics")
+                        .param("deviceModel", "Pixel 7")
+                        .param("from", "2025-01-01T12:01:00")
+                        .param("to", "2025-01-01T12:04:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].deviceModel", is("Pixel 7")));
+    }
+
+    @Test
+    void statsComeFromRollups() throws Exception {
+        mvc.perform(get("/v1/diagnostics/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fleet.runCount", is(5)))
+                .andExpect(jsonPath("$.fleet.metrics.batteryHealth.avg", is(90.0)))
+                .andExpect(jsonPath("$.fleet.metrics.cameraCheckPct.count", is(0)))
+                .andExpect(jsonPath("$.fleet.metrics.cameraCheckPct.unknownCount", is(5)))
+                .andExpect(jsonPath("$.fleet.metrics.batteryHealth.histogram['90']", is(5)))
+                .andExpect(jsonPath("$.fleet.metrics.cameraCheckPct.histogram", anEmptyMap()))
+                .andExpect(jsonPath("$.models", hasSize(2)))
+                .andExpect(jsonPath("$.models[0].metrics.batteryHealth.histogram").doesNotExist());
+
+        mvc.perform(get("/v1/diagnostics/stats").param("deviceModel", "Pixel 7"))
+                .andExpect(jsonPath("$.fleet.runCount", is(3)))
+                .andExpect(jsonPath("$.models[0].deviceModel", is("Pixel 7")));
+    }
+
+    @Test
+    void backfillRebuildsRollupsFromRuns() throws Exception {
+        jdbc.update("DELETE FROM metric_rollup");
+        jdbc.update("DELETE FROM metric_rollup_daily");
+        rollups.backfill();
+
+        mvc.perform(get("/v1/diagnostics/stats"))
+                .andExpect(jsonPath("$.fleet.runCount", is(5)))
+                .andExpect(jsonPath("$.fleet.metrics.cpuPerformancePct.p50", is(70)));
+    }
+
+    @Test
+    void startupBackfillMatchesLiveRollupsAndRunsOnce() throws Exception {
+        runs.save(new DiagnosticRun(" Pixel 7 ", 50, 50, 50, 50, -1, -1));
+        runs.save(new DiagnosticRun("   ", 60, 50, 50, 50, -1, -1));
+        String live = mvc.perform(get("/v1/diagnostics/stats")).andReturn().getResponse().getContentAsString();
+
+        jdbc.update("DELETE FROM metric_rollup");
+        jdbc.update("DELETE FROM metric_rollup_daily");
+        caches.getCacheNames().forEach(name -> caches.getCache(name).clear());
+        backfill.afterSingletonsInstantiated();
+        backfill.afterSingletonsInstantiated();
+
+        mvc.perform(get("/v1/diagnostics/stats"))
+                .andExpect(content().json(live, JsonCompareMode.STRICT))
+                .andExpect(jsonPath("$.fleet.runCount", is(7)))
+                .andExpect(jsonPath("$.models[*].deviceModel", hasItems(" Pixel 7 ", "unknown")));
+    }
+
+    @Test
+    void batchStoresValidItemsAndReportsEachOne() throws Exception {
+        String body = """
+                [
+                  {"deviceModel": "Pixel 8", "batteryHealth": 95, "storageSpeedPct": 60, "cpuPerformancePct": 80,
+                   "ramHealthPct": 100, "displayTouchPct": -1, "cameraCheckPct": -1},
+                  {"deviceModel": "Pixel 8", "batteryHealth": 250},
+                  {"deviceModel": "Pixel 8", "batteryHealth": 85, "storageSpeedPct": 70, "cpuPerformancePct": 90,
+                   "ramHealthPct": 100, "displayTouchPct": -1, "cameraCheckPct": -1}
+                ]
+                """;
+
+        mvc.perform(post("/v1/diagnostics/batch").contentType("application/json").content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created", is(2)))
+                .andExpect(jsonPath("$.rejected", is(1)))
+                .andExpect(jsonPath("$.items[0].id", notNullValue()))
+                .andExpect(jsonPath("$.items[1].error", containsString("batteryHealth")))
+                .andExpect(jsonPath("$.items[2].id", notNullValue()));
+
+        mvc.perform(get("/v1/diagnostics/stats").param("deviceModel", "Pixel 8"))
+                .andExpect(jsonPath("$.fleet.runCount", is(2)))
+                .andExpect(jsonPath("$.fleet.metrics.batteryHealth.avg", is(90.0)));
+    }
+
+    @Test
+    void cachedFirstPageAndStatsAreEvictedByMatchingInsertOnly() throws Exception {
+        CacheStats before = firstPageStats();
+
+        mvc.perform(get("/v1/diagnostics").param("deviceModel", "Galaxy S21"));
+        mvc.perform(get("/v1/diagnostics").param("deviceModel", "Pixel 7"));
+        mvc.perform(get("/v1/diagnostics/stats"));
+
+        runs.save(new DiagnosticRun("Pixel 7", 10, 10, 10, 10, -1, -1));
+
+        // Galaxy page untouched: served from cache
+        mvc.perform(get("/v1/diagnostics").param("deviceModel", "Galaxy S21"))
+                .andExpect(jsonPath("$.items", hasSize(2)));
+        // Pixel page and fleet stats were evicted, so the new run shows up
+        mvc.perform(get("/v1/diagnostics").param("deviceModel", "Pixel 7"))
+                .andExpect(jsonPath("$.items", hasSize(4)))
+                .andExpect(jsonPath("$.items[0].batteryHealth", is(10)));
+        mvc.perform(get("/v1/diagnostics/stats"))
+                .andExpect(jsonPath("$.fleet.runCount", is(6)));
+
+        CacheStats delta = firstPageStats().minus(before);
+        assertEquals(1, delta.hitCount());
+        assertEquals(3, delta.missCount());
+        mvc.perform(get("/v1/diagnostics/cache"))
+                .andExpect(jsonPath("$[?(@.name == 'runFirstPages')].hits", hasSize(1)));
+    }
+
+    private CacheStats firstPageStats() {
+        return ((CaffeineCache) caches.getCache(CacheNames.FIRST_PAGES)).getNativeCache().stats();
+    }
+
+    @Test
+    void liveStreamPushesCommittedRunsAndStatsDelta() throws Exception {
+        MvcResult stream = mvc.perform(get("/v1/diagnostics/stream").accept("text/event-stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        runs.save(new DiagnosticRun("Pixel 9", 77, 10, 10, 10, -1, -1));
+
+        String body = "";
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!body.contains("event:stats") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            body = stream.getResponse().getContentAsString();
+        }
+
+        assertTrue(body.contains("event:runs"), body);
+        assertTrue(body.contains("\"deviceModel\":\"Pixel 9\""), body);
+        assertTrue(body.contains("\"batteryHealth\":{\"count\":1,\"sum\":77,\"unknownCount\":0,\"values\":{\"77\":1}}"), body);
+    }
+
+    @Test
+    void acceptsGzippedCborUploads() throws Exception {
+        Map<String, Object> run = Map.of("deviceModel", "Pixel 6", "batteryHealth", 88, "storageSpeedPct", 50,
+                "cpuPerformancePct", 60, "ramHealthPct", 100, "displayTouchPct", -1, "cameraCheckPct", -1);
+        CBORMapper cbor = new CBORMapper();
+
+        mvc.perform(post("/v1/diagnostics").contentType("application/cbor")
+                        .header("Content-Encoding", "gzip")
+                        .content(gzip(cbor.writeValueAsBytes(run))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deviceModel", is("Pixel 6")))
+                .andExpect(jsonPath("$.batteryHealth", is(88)));
+
+        mvc.perform(post("/v1/diagnostics/batch").contentType("application/cbor")
+                        .header("Content-Encoding", "gzip")
+                        .content(gzip(cbor.writeValueAsBytes(List.of(run, run)))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created", is(2)));
+
+        mvc.perform(post("/v1/diagnostics").contentType("application/json")
+                        .header("Content-Encoding", "gzip")
+                        .content("not gzip"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void rejectsGzipBombsWith413() throws Exception {
+        // ~11 KB on the wire, 11 MB of valid JSON once inflated: over the 10 MB cap
+        byte[] bomb = gzip(("[" + " ".repeat(11 << 20) + "]").getBytes(StandardCharsets.US_ASCII));
+        assertTrue(bomb.length < 64 * 1024);
+
+        mvc.perform(post("/v1/diagnostics/batch").contentType("application/json")
+                        .header("Content-Encoding", "gzip")
+                        .content(bomb))
+                .andExpect(status().isPayloadTooLarge());
+        assertEquals(5, repo.count());
+
+        mvc.perform(post("/v1/diagnostics").contentType("application/json")
+                        .content("{\"deviceModel\": "))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static byte[] gzip(byte[] raw) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void fullReportIsStoredAsideAndReturnedForOneRun() throws Exception {
+        String body = """
+                {"deviceModel": "Pixel 8", "manufacturer": "Google", "androidVersion": "15",
+                 "securityPatch": "2025-01-05", "batteryHealth": 93, "storageSpeedPct": 70, "cpuPerformancePct": 80,
+                 "ramHealthPct": 100, "displayTouchPct": -1, "cameraCheckPct": -1,
+                 "details": {"sensors": {"hasGyroscope": true}, "connectivity": {"wifiRssi": -51}}}
+                """;
+        MvcResult created = mvc.perform(post("/v1/diagnostics").contentType("application/json").content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.details").doesNotExist())
+                .andReturn();
+        Number id = JsonPath.read(created.getResponse().getContentAsString(), "$.id");
+
+        mvc.perform(get("/v1/diagnostics/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deviceModel", is("Pixel 8")))
+                .andExpect(jsonPath("$.androidVersion", is("15")))
+                .andExpect(jsonPath("$.details.sensors.hasGyroscope", is(true)))
+                .andExpect(jsonPath("$.details.connectivity.wifiRssi", is(-51)));
+
+        // Lists carry the summary columns but never the report
+        mvc.perform(get("/v1/diagnostics").param("deviceModel", "Pixel 8"))
+                .andExpect(jsonPath("$.items[0].manufacturer", is("Google")))
+                .andExpect(jsonPath("$.items[0].details").doesNotExist());
+
+        mvc.perform(get("/v1/diagnostics/999999"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void repeatedSessionIdReplaysTheOriginalRun() throws Exception {
+        String body = """
+                {"sessionId": "sess-1", "deviceModel": "Pixel 8", "batteryHealth": 93, "storageSpeedPct": 70,
+                 "cpuPerformancePct": 80, "ramHealthPct": 100, "displayTouchPct": -1, "cameraCheckPct": -1}
+                """;
+        MvcResult first = mvc.perform(post("/v1/diagnostics").contentType("application/json").content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andReturn();
+        Number id = JsonPath.read(first.getResponse().getContentAsString(), "$.id");
+
+        mvc.perform(post("/v1/diagnostics").contentType("application/json").content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.id", is(id.intValue())));
+
+        // Stored behind the recent-keys map's back (as after a restart): the unique index catches it
+        DiagnosticRun direct = new DiagnosticRun("Pixel 8", 50, 50, 50, 50, -1, -1);
+        direct.setSessionId("sess-2");
+        runs.save(direct);
+        mvc.perform(post("/v1/diagnostics").contentType("application/json")
+                        .content(body.replace("sess-1", "sess-2")))
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.id", is(direct.getId().intValue())))
+                .andExpect(jsonPath("$.batteryHealth", is(50)));
+
+        String batch = "[" + body + "," + body.replace("sess-1", "sess-3") + "," + body.replace("sess-1", "sess-3") + "]";
+        mvc.perform(post("/v1/diagnostics/batch").contentType("application/json").content(batch))
+                .andExpect(jsonPath("$.created", is(1)))
+                .andExpect(jsonPath("$.replayed", is(2)))
+                .andExpect(jsonPath("$.items[0].id", is(id.intValue())))
+                .andExpect(jsonPath("$.items[0].replayed", is(true)))
+                .andExpect(jsonPath("$.items[1].replayed", is(false)))
+                .andExpect(jsonPath("$.items[2].replayed", is(true)));
+
+        mvc.perform(get("/v1/diagnostics/stats").param("deviceModel", "Pixel 8"))
+                .andExpect(jsonPath("$.fleet.runCount", is(3)));
+    }
+
+    @Test
+    void rejectsGarbageCursor() throws Exception {
+        mvc.perform(get("/v1/diagnostics").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamsNdjson() throws Exception {
+        MvcResult result = mvc.perform(get("/v1/diagnostics").accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(5, body.strip().split("\n").length);
+    }
+
+    @Test
+    void exportsGzippedCsvAndArrow() throws Exception {
+        MvcResult csv = mvc.perform(get("/v1/diagnostics/export").param("deviceModel", "Pixel 7"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] gzipped = mvc.perform(asyncDispatch(csv))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"runs.csv.gz\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        String[] lines;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\r\n");
+        }
+        assertEquals(4, lines.length);
+        assertEquals("id,sessionId,deviceModel,batteryHealth,storageSpeedPct,cpuPerformancePct,ramHealthPct,"
+                + "displayTouchPct,cameraCheckPct,manufacturer,androidVersion,securityPatch,timestamp", lines[0]);
+        assertTrue(lines[1].matches("\\d+,,Pixel 7,90,80,70,100,-1,-1,,,,2025-01-01T12:04:00"), lines[1]);
+
+        MvcResult arrow = mvc.perform(get("/v1/diagnostics/export").param("format", "arrow"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] stream = mvc.perform(asyncDispatch(arrow))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/vnd.apache.arrow.stream"))
+                .andReturn().getResponse().getContentAsByteArray();
+        ArrowStreamReader read = new ArrowStreamReader(stream);
+        assertEquals(new ArrowStreamReader.Field("id", "int64", false), read.fields.get(0));
+        assertEquals(new ArrowStreamReader.Field("timestamp", "timestamp[us]", true), read.fields.get(12));
+        assertEquals(1, read.batches.size());
+        ArrowStreamReader.Batch batch = read.batches.get(0);
+        assertEquals(5, batch.length());
+        // Newest first, like the CSV; manufacturer is null on every seeded run
+        List<DiagnosticRun> stored = repo.findAll(Sort.by(Sort.Direction.DESC, "timestamp"));
+        for (int i = 0; i < 5; i++) {
+            int row = i;
+            DiagnosticRun run = stored.get(row);
+            assertEquals(run.getId(), batch.columns().get(0)[row]);
+            assertNull(batch.columns().get(1)[row]);
+            assertEquals(run.getDeviceModel(), batch.columns().get(2)[row]);
+            assertEquals(List.of(90, 80, 70, 100, -1, -1),
+                    batch.columns().subList(3, 9).stream().map(c -> c[row]).toList());
+            assertNull(batch.columns().get(9)[row]);
+            assertEquals(run.getTimestamp(), batch.columns().get(12)[row]);
+        }
+        assertEquals(5, batch.nullCounts()[9]);
+
+        mvc.perform(get("/v1/diagnostics/export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+}
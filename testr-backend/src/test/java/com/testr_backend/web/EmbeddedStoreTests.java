@@ -0,0 +1,156 @@
+package com.testr_backend.web;
+
+import com.jayway.jsonpath.JsonPath;
+import com.testr_backend.model.DiagnosticRun;
+import com.testr_backend.repo.MappedRunStore;
+import com.testr_backend.repo.RunStore;
+import com.testr_backend.service.DiagnosticRunService;
+import com.testr_backend.stats.RunColumns;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// The API on the "embedded" profile: runs in the memory-mapped log, reports and rollups in an H2 file.
+@ActiveProfiles("embedded")
+@SpringBootTest
+@AutoConfigureMockMvc
+class EmbeddedStoreTests {
+
+    @TempDir
+    static Path dataDir;
+
+    @DynamicPropertySource
+    static void store(DynamicPropertyRegistry registry) {
+        registry.add("testr.store.dir", () -> dataDir.toString());
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    RunStore store;
+
+    @Autowired
+    DiagnosticRunService runs;
+
+    @Autowired
+    RunColumns columns;
+
+    @Test
+    void servesTheSameApiWithoutPostgres() throws Exception {
+        assertInstanceOf(MappedRunStore.class, store);
+
+        String body = """
+                {"sessionId": "sess-1", "deviceModel": "Pixel 8", "manufacturer": "Google", "batteryHealth": 93,
+                 "storageSpeedPct": 70, "cpuPerformancePct": 80, "ramHealthPct": 100, "displayTouchPct": -1,
+                 "cameraCheckPct": -1, "details": {"sensors": {"hasGyroscope": true}}}
+                """;
+        MvcResult created = mvc.perform(post("/v1/diagnostics").contentType("application/json").content(body))
+                .andExpect(status().isOk())
+                .andReturn();
+        Number id = JsonPath.read(created.getResponse().getContentAsString(), "$.id");
+
+        mvc.perform(post("/v1/diagnostics").contentType("application/json").content(body))
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.id", is(id.intValue())));
+
+        // Stored behind the recent-keys map's back: the log's session index catches it
+        DiagnosticRun direct = new DiagnosticRun("Galaxy S21", 50, 50, 50, 50, -1, -1);
+        direct.setSessionId("sess-2");
+        runs.save(direct);
+        mvc.perform(post("/v1/diagnostics").contentType("application/json").content(body.replace("sess-1", "sess-2")))
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.id", is(direct.getId().intValue())));
+
+        String batch = "[" + body.replace("sess-1", "sess-3") + "," + body.replace("sess-1", "sess-4") + "]";
+        mvc.perform(post("/v1/diagnostics/batch").contentType("application/json").content(batch))
+                .andExpect(jsonPath("$.created", is(2)));
+
+        MvcResult first = mvc.perform(get("/v1/diagnostics").param("deviceModel", "Pixel 8").param("limit", "2"))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[0].manufacturer", is("Google")))
+                .andExpect(jsonPath("$.items[0].details").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor", notNullValue()))
+                .andReturn();
+        String cursor = JsonPath.read(first.getResponse().getContentAsString(), "$.nextCursor");
+        mvc.perform(get("/v1/diagnostics").param("deviceModel", "Pixel 8").param("limit", "2").param("cursor", cursor))
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].id", is(id.intValue())))
+                .andExpect(jsonPath("$.nextCursor", nullValue()));
+
+        mvc.perform(get("/v1/diagnostics/" + id))
+                .andExpect(jsonPath("$.sessionId", is("sess-1")))
+                .andExpect(jsonPath("$.details.sensors.hasGyroscope", is(true)));
+        mvc.perform(get("/v1/diagnostics/999999"))
+                .andExpect(status().isNotFound());
+
+        mvc.perform(get("/v1/diagnostics/stats"))
+                .andExpect(jsonPath("$.fleet.runCount", is(4)))
+                .andExpect(jsonPath("$.models", hasSize(2)));
+
+        MvcResult streamed = mvc.perform(get("/v1/diagnostics").accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String ndjson = mvc.perform(asyncDispatch(streamed)).andReturn().getResponse().getContentAsString();
+        assertEquals(4, ndjson.strip().split("\n").length);
+
+        // Nothing is loaded until the first scan asks for it
+        assertFalse(columns.isReady());
+        mvc.perform(get("/v1/diagnostics/stats/scan"));
+        for (int i = 0; i < 100 && !columns.isReady(); i++) Thread.sleep(50);
+        mvc.perform(get("/v1/diagnostics/stats/scan").param("where", "batteryHealth:90-100", "storageSpeedPct:0-80"))
+                .andExpect(jsonPath("$.fleet.runCount", is(3)))
+                .andExpect(jsonPath("$.models[0].deviceModel", is("Pixel 8")));
+        mvc.perform(get("/v1/diagnostics/stats/scan").param("where", "battery:0-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void emptyRangesGiveEmptyPagesLikeJdbc() throws Exception {
+        // The subsets' bounds are checked even when the log holds no run in them
+        for (String[] range : new String[][]{{"2025-01-02T00:00:00", "2025-01-01T00:00:00"},
+                {"2025-01-01T00:00:00", "2025-01-01T00:00:00"}}) {
+            mvc.perform(get("/v1/diagnostics").param("from", range[0]).param("to", range[1]))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.items", hasSize(0)))
+                    .andExpect(jsonPath("$.nextCursor", nullValue()));
+
+            MvcResult streamed = mvc.perform(get("/v1/diagnostics").accept("application/x-ndjson")
+                            .param("from", range[0]).param("to", range[1]))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mvc.perform(asyncDispatch(streamed))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(""));
+
+            MvcResult exported = mvc.perform(get("/v1/diagnostics/export").param("from", range[0]).param("to", range[1]))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mvc.perform(asyncDispatch(exported))
+                    .andExpect(status().isOk());
+        }
+
+        // A cursor from before `from` leaves nothing between the two
+        String cursor = new PageCursor(LocalDateTime.of(2024, 12, 31, 0, 0), 1).encode();
+        mvc.perform(get("/v1/diagnostics").param("from", "2025-01-01T00:00:00").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(0)));
+    }
+}
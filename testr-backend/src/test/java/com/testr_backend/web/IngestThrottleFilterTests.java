@@ -0,0 +1,81 @@
+package com.testr_backend.web;
+
+import com.testr_backend.metrics.ApiMetrics;
+import com.testr_backend.throttle.ClientRateLimiter;
+import com.testr_backend.throttle.PoolPressure;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestThrottleFilterTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ApiMetrics metrics = new ApiMetrics(registry);
+
+    private MockHttpServletResponse send(IngestThrottleFilter filter, String method, String path, String client)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        if (client != null) request.addHeader(IngestThrottleFilter.CLIENT_HEADER, client);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    @Test
+    void limitsEachClientSeparately() throws Exception {
+        IngestThrottleFilter filter = new IngestThrottleFilter(
+                Optional.of(new ClientRateLimiter(0.5, 2, 1000, 300)), Optional.empty(), metrics);
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(200, send(filter, "POST", "/v1/diagnostics/batch", "bench-7").getStatus());
+        }
+        MockHttpServletResponse limited = send(filter, "POST", "/v1/diagnostics", "bench-7");
+        assertEquals(429, limited.getStatus());
+        assertEquals("2", limited.getHeader("Retry-After"));
+
+        assertEquals(200, send(filter, "POST", "/v1/diagnostics", "bench-8").getStatus());
+        assertEquals(200, send(filter, "POST", "/v1/diagnostics", null).getStatus());
+        assertEquals(200, send(filter, "GET", "/v1/diagnostics", "bench-7").getStatus());
+        assertEquals(1.0, registry.get("testr.ingest.throttled").tag("reason", "rate-limit").counter().count());
+    }
+
+    @Test
+    void shedsWritesWhilePoolWaitsAreLong() throws Exception {
+        PoolPressure pressure = new PoolPressure(registry, 50, 0.0);
+        IngestThrottleFilter filter = new IngestThrottleFilter(Optional.empty(), Optional.of(pressure), metrics);
+        Timer acquire = registry.timer("hikaricp.connections.acquire", "pool", "HikariPool-1");
+
+        acquire.record(Duration.ofMillis(2));
+        pressure.sample();
+        assertEquals(1.0, pressure.admitted());
+
+        for (int i = 0; i < 30; i++) {
+            acquire.record(Duration.ofMillis(200));
+            pressure.sample();
+        }
+        assertEquals(0.0, pressure.admitted(), 1e-3);
+        assertTrue(pressure.recentAcquireMs() > 50);
+
+        MockHttpServletResponse shed = send(filter, "POST", "/v1/diagnostics", "bench-7");
+        assertEquals(503, shed.getStatus());
+        assertEquals("1", shed.getHeader("Retry-After"));
+        assertEquals(200, send(filter, "GET", "/v1/diagnostics/stats", "bench-7").getStatus());
+
+        // No acquires to measure: waiting threads are what tell saturation from an idle pool
+        pressure.sample();
+        assertTrue(pressure.admitted() > 0.09);
+        for (int i = 0; i < 10; i++) pressure.sample();
+        assertEquals(1.0, pressure.admitted());
+        assertNull(send(filter, "POST", "/v1/diagnostics", "bench-7").getErrorMessage());
+    }
+}
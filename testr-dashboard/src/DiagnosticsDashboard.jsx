@@ -1,22 +1,74 @@
 import React, { useState, useEffect } from 'react';
 
+const API_BASE = 'http://localhost:8080';
+const PAGE_SIZE = 100;
+// Per-model stats (percentiles have no live delta) are refetched this often
+const MODEL_STATS_REFRESH_MS = 60000;
+// A model whose 5th percentile is below this has a tail of degraded devices
+const TAIL_WARN_PCT = 70;
+
+// Nearest-rank percentile over a { value: count } histogram, the same rule the backend uses
+function percentile(histogram, count, p) {
+  if (!histogram || count === 0) return -1;
+  const rank = Math.max(1, Math.ceil((p / 100) * count));
+  let seen = 0;
+  const values = Object.keys(histogram).map(Number).sort((a, b) => a - b);
+  for (const v of values) {
+    seen += histogram[v];
+    if (seen >= rank) return v;
+  }
+  return values[values.length - 1];
+}
+
+// Adds a live stats delta to the fleet summary (count/sum/unknownCount and the value
+// histogram), then recomputes averages and percentiles
+function applyStatsDelta(stats, delta) {
+  const fleet = { ...stats.fleet, metrics: { ...stats.fleet.metrics } };
+
+  delta.models.forEach((model) => {
+    fleet.runCount += model.runCount;
+    Object.entries(model.metrics).forEach(([name, d]) => {
+      const m = { ...fleet.metrics[name], histogram: { ...fleet.metrics[name].histogram } };
+      m.count += d.count;
+      m.sum += d.sum;
+      m.unknownCount += d.unknownCount;
+      Object.entries(d.values || {}).forEach(([v, n]) => {
+        m.histogram[v] = (m.histogram[v] || 0) + n;
+      });
+      m.avg = m.count > 0 ? m.sum / m.count : -1;
+      m.p5 = percentile(m.histogram, m.count, 5);
+      m.p50 = percentile(m.histogram, m.count, 50);
+      m.p95 = percentile(m.histogram, m.count, 95);
+      fleet.metrics[name] = m;
+    });
+  });
+
+  return { ...stats, fleet };
+}
+
 function DiagnosticsDashboard() {
   const [runs, setRuns] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [stats, setStats] = useState(null);
   const [searchModel, setSearchModel] = useState('');
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState(null);
 
-  // Fetch diagnostics from Spring Boot when the component mounts
-  useEffect(() => {
-    fetch('http://localhost:8080/v1/diagnostics')
+  // Fetch one page of diagnostics; the backend returns the newest runs first
+  const loadPage = (cursor) => {
+    const params = new URLSearchParams({ limit: PAGE_SIZE });
+    if (cursor) params.set('cursor', cursor);
+
+    return fetch(`${API_BASE}/v1/diagnostics?${params}`)
       .then((res) => {
         if (!res.ok) {
           throw new Error('Failed to fetch diagnostics');
         }
         return res.json();
       })
-      .then((data) => {
-        setRuns(data);
+      .then((page) => {
+        setRuns((prev) => (cursor ? [...prev, ...page.items] : page.items));
+        setNextCursor(page.nextCursor);
         setLoading(false);
       })
       .catch((err) => {
@@ -24,34 +76,78 @@ function DiagnosticsDashboard() {
         setError(err.message);
         setLoading(false);
       });
+  };
+
+  // Fleet averages are computed server-side from rollups
+  const loadStats = () =>
+    fetch(`${API_BASE}/v1/diagnostics/stats`)
+      .then((res) => (res.ok ? res.json() : null))
+      .then((data) => setStats(data))
+      .catch((err) => console.error(err));
+
+  // Fetch the first page and the stats from Spring Boot when the component mounts,
+  // then apply live updates instead of reloading
+  useEffect(() => {
+    loadPage(null);
+    loadStats();
+
+    const source = new EventSource(`${API_BASE}/v1/diagnostics/stream`);
+
+    source.addEventListener('runs', (e) => {
+      const newRuns = JSON.parse(e.data);
+      setRuns((prev) => [...newRuns.reverse(), ...prev]);
+    });
+
+    source.addEventListener('stats', (e) => {
+      const delta = JSON.parse(e.data);
+      setStats((prev) => (prev ? applyStatsDelta(prev, delta) : prev));
+    });
+
+    // EventSource reconnects by itself; resync in case updates were missed meanwhile
+    source.addEventListener('hello', () => loadStats());
+
+    const refresh = setInterval(loadStats, MODEL_STATS_REFRESH_MS);
+
+    return () => {
+      source.close();
+      clearInterval(refresh);
+    };
   }, []); 
 
   const filteredRuns = runs.filter((run) =>
     run.deviceModel?.toLowerCase().includes(searchModel.toLowerCase())
   );
 
-  const totalDevices = runs.length;
-
-  const avgBattery =
-    runs.length > 0
-      ? Math.round(
-          runs.reduce((sum, r) => sum + (r.batteryHealth || 0), 0) / runs.length
-        )
-      : 0;
-
-  const avgCpu =
-    runs.length > 0
-      ? Math.round(
-          runs.reduce((sum, r) => sum + (r.cpuPerformancePct || 0), 0) / runs.length
-        )
-      : 0;
-
-  const avgStorageSpeed =
-    runs.length > 0
-      ? Math.round(
-          runs.reduce((sum, r) => sum + (r.storageSpeedPct || 0), 0) / runs.length
-        )
-      : 0;
+  const fleetAvg = (metric) => {
+    const summary = stats?.fleet?.metrics?.[metric];
+    return summary && summary.count > 0 ? Math.round(summary.avg) : 0;
+  };
+
+  // "p5 / p50 / p95" of the fleet, so the cards show the spread and not just the mean
+  const fleetSpread = (metric) => {
+    const summary = stats?.fleet?.metrics?.[metric];
+    if (!summary || summary.count === 0) return null;
+    return `p5 ${summary.p5} · p50 ${summary.p50} · p95 ${summary.p95}`;
+  };
+
+  // Worst tail first: models sorted by their 5th-percentile battery health
+  const modelRows = [...(stats?.models ?? [])].sort(
+    (a, b) => (a.metrics.batteryHealth?.p5 ?? 101) - (b.metrics.batteryHealth?.p5 ?? 101)
+  );
+
+  const tailCell = (summary) => {
+    if (!summary || summary.count === 0) return <td className="text-muted">–</td>;
+    return (
+      <td className={summary.p5 < TAIL_WARN_PCT ? 'text-danger fw-semibold' : undefined}>
+        {summary.p5} / {summary.p50}
+      </td>
+    );
+  };
+
+  const totalDevices = stats?.fleet?.runCount ?? runs.length;
+  const avgBattery = fleetAvg('batteryHealth');
+  const avgCpu = fleetAvg('cpuPerformancePct');
+  const avgStorageSpeed = fleetAvg('storageSpeedPct');
 
   const overallScore = (run) => {
     const parts = [
@@ -104,6 +200,7 @@ function DiagnosticsDashboard() {
                 Avg battery health
               </h6>
               <p className="display-6 mb-0">{avgBattery}%</p>
+              <small className="text-muted">{fleetSpread('batteryHealth')}</small>
             </div>
           </div>
         </div>
@@ -115,6 +212,7 @@ function DiagnosticsDashboard() {
                 Avg CPU performance
               </h6>
               <p className="display-6 mb-0">{avgCpu}%</p>
+              <small className="text-muted">{fleetSpread('cpuPerformancePct')}</small>
             </div>
           </div>
         </div>
@@ -126,11 +224,45 @@ function DiagnosticsDashboard() {
                 Avg storage speed
               </h6>
               <p className="display-6 mb-0">{avgStorageSpeed}%</p>
+              <small className="text-muted">{fleetSpread('storageSpeedPct')}</small>
             </div>
           </div>
         </div>
       </div>
 
+      {/* Per-model distribution -- the low tail the averages hide */}
+      <div className="card shadow-sm mb-3">
+        <div className="card-body">
+          <h2 className="h5 mb-3">Per-model distribution (p5 / p50)</h2>
+          <div className="table-responsive">
+            <table className="table table-sm align-middle mb-0">
+              <thead>
+                <tr>
+                  <th>Model</th>
+                  <th>Runs</th>
+                  <th>Battery %</th>
+                  <th>Storage speed %</th>
+                  <th>CPU performance %</th>
+                  <th>RAM health %</th>
+                </tr>
+              </thead>
+              <tbody>
+                {modelRows.map((group) => (
+                  <tr key={group.deviceModel}>
+                    <td>{group.deviceModel}</td>
+                    <td>{group.runCount}</td>
+                    {tailCell(group.metrics.batteryHealth)}
+                    {tailCell(group.metrics.storageSpeedPct)}
+                    {tailCell(group.metrics.cpuPerformancePct)}
+                    {tailCell(group.metrics.ramHealthPct)}
+                  </tr>
+                ))}
+              </tbody>
+            </table>
+          </div>
+        </div>
+      </div>
+
       {/* Filters -- search by device model */}
       <div className="card shadow-sm mb-3">
         <div className="card-body">
@@ -148,7 +280,7 @@ function DiagnosticsDashboard() {
 
             <div className="col-md-6 text-md-end">
               <small className="text-muted">
-                Showing {filteredRuns.length} of {runs.length} runs
+                Showing {filteredRuns.length} of {totalDevices} runs
               </small>
             </div>
           </div>
@@ -201,6 +333,14 @@ function DiagnosticsDashboard() {
               </tbody>
             </table>
           </div>
+          {nextCursor && (
+            <button
+              className="btn btn-outline-secondary btn-sm mt-2"
+              onClick={() => loadPage(nextCursor)}
+            >
+              Load more
+            </button>
+          )}
           <p className="text-muted small mb-0 mt-2"></p>
         </div>
       </div>